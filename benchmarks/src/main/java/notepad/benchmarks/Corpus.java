@@ -0,0 +1,82 @@
+package notepad.benchmarks;
+
+import notepad.model.Note;
+import notepad.model.StyleRuns;
+import notepad.ui.NoteDocument;
+import notepad.ui.PieceTableContent;
+
+import javax.swing.text.BadLocationException;
+import javax.swing.text.SimpleAttributeSet;
+import javax.swing.text.StyleConstants;
+import javax.swing.text.StyleContext;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Deterministic test data: prose-like text built from a fixed vocabulary, so every run of a
+ * benchmark, and every engine version it is compared across, sees the same input.
+ */
+final class Corpus {
+    static final long SEED = 42;
+    private static final String[] WORDS = {
+            "the", "quick", "brown", "fox", "jumps", "over", "lazy", "dog", "note", "editor",
+            "swing", "document", "paragraph", "style", "search", "index", "journal", "snapshot",
+            "a", "of", "and", "to", "in", "is", "it", "that", "for", "on", "with", "as",
+            "Fox", "Note", "Swing", "performance", "latency", "throughput", "buffer", "piece", "table"
+    };
+    private static final int LINE_CHARS = 72;
+
+    private Corpus() {}
+
+    /** About {@code chars} characters of words in lines of up to 72 characters. */
+    static String text(int chars, Random random) {
+        StringBuilder text = new StringBuilder(chars + LINE_CHARS);
+        int lineStart = 0;
+        while (text.length() < chars) {
+            String word = WORDS[random.nextInt(WORDS.length)];
+            if (text.length() - lineStart + word.length() >= LINE_CHARS) {
+                text.append('\n');
+                lineStart = text.length();
+            } else if (text.length() > lineStart) {
+                text.append(' ');
+            }
+            text.append(word);
+        }
+        return text.toString();
+    }
+
+    /** {@code count} notes of {@code chars} characters each. */
+    static List<Note> notes(int count, int chars) {
+        Random random = new Random(SEED);
+        List<Note> notes = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            notes.add(new Note("Note " + i, text(chars, random)));
+        }
+        return notes;
+    }
+
+    /** A document holding {@code text}, with every tenth line bold and every seventh italic. */
+    static NoteDocument styledDocument(String text) throws BadLocationException {
+        NoteDocument doc = new NoteDocument(new PieceTableContent(), new StyleContext());
+        doc.load(text, null);
+        SimpleAttributeSet bold = new SimpleAttributeSet();
+        StyleConstants.setBold(bold, true);
+        SimpleAttributeSet italic = new SimpleAttributeSet();
+        StyleConstants.setItalic(italic, true);
+        int line = 0;
+        for (int start = 0; start < text.length(); line++) {
+            int end = text.indexOf('\n', start);
+            if (end < 0) end = text.length();
+            if (line % 10 == 0) doc.setCharacterAttributes(start, end - start, bold, false);
+            else if (line % 7 == 0) doc.setCharacterAttributes(start, end - start, italic, false);
+            start = end + 1;
+        }
+        return doc;
+    }
+
+    /** The formatting of {@link #styledDocument}, as notes store it. */
+    static StyleRuns styles(String text) throws BadLocationException {
+        return styledDocument(text).captureStyles();
+    }
+}
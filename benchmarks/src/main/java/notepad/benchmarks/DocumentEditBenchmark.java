@@ -0,0 +1,68 @@
+package notepad.benchmarks;
+
+import notepad.ui.NoteDocument;
+import notepad.ui.PieceTableContent;
+import org.openjdk.jmh.annotations.*;
+
+import javax.swing.text.AbstractDocument;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.GapContent;
+import javax.swing.text.StyleContext;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Inserting and removing text in the editor's document model at random offsets, the way typing
+ * and pasting do, on the piece table the editor uses and on Swing's own gap buffer for
+ * comparison. Each operation is undone in the same invocation, so the document keeps its size.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@State(Scope.Thread)
+public class DocumentEditBenchmark {
+    @Param({"100000", "10000000"})
+    int documentChars;
+
+    @Param({"piece", "gap"})
+    String content;
+
+    private NoteDocument doc;
+    private Random random;
+    private String paste;
+
+    @Setup(Level.Trial)
+    public void setUp() throws BadLocationException {
+        AbstractDocument.Content chars = content.equals("gap") ? new GapContent() : new PieceTableContent();
+        doc = new NoteDocument(chars, new StyleContext());
+        random = new Random(Corpus.SEED);
+        doc.load(Corpus.text(documentChars, random), null);
+        paste = Corpus.text(4096, random);
+    }
+
+    @Benchmark
+    public int typeAndBackspace() throws BadLocationException {
+        int offset = random.nextInt(doc.getLength());
+        doc.insertString(offset, "x", null);
+        doc.remove(offset, 1);
+        return doc.getLength();
+    }
+
+    @Benchmark
+    public int pasteAndCut() throws BadLocationException {
+        int offset = random.nextInt(doc.getLength());
+        doc.insertString(offset, paste, null);
+        doc.remove(offset, paste.length());
+        return doc.getLength();
+    }
+
+    @Benchmark
+    public int insertAndRemoveLine() throws BadLocationException {
+        int offset = random.nextInt(doc.getLength());
+        doc.insertString(offset, "\n", null);
+        doc.remove(offset, 1);
+        return doc.getDefaultRootElement().getElementCount();
+    }
+}
@@ -0,0 +1,79 @@
+package notepad.benchmarks;
+
+import notepad.export.ExportFormat;
+import notepad.model.StyleRuns;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rendering a formatted note in each export format. Output goes to a writer that only counts
+ * characters, so the numbers are the cost of the format, not of the disk.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@State(Scope.Thread)
+public class ExportBenchmark {
+    @Param({"TXT", "RTF", "HTML"})
+    ExportFormat format;
+
+    @Param({"1000000"})
+    int noteChars;
+
+    private String text;
+    private StyleRuns styles;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        text = Corpus.text(noteChars, new Random(Corpus.SEED));
+        styles = Corpus.styles(text);
+    }
+
+    @Benchmark
+    public long export(Blackhole blackhole) throws IOException {
+        CountingWriter out = new CountingWriter(blackhole);
+        format.newWriter(out).write("Benchmark", text, styles);
+        return out.chars;
+    }
+
+    private static final class CountingWriter extends Writer {
+        private final Blackhole blackhole;
+        long chars;
+
+        CountingWriter(Blackhole blackhole) {
+            this.blackhole = blackhole;
+        }
+
+        @Override
+        public void write(char[] buffer, int off, int len) {
+            blackhole.consume(buffer);
+            chars += len;
+        }
+
+        @Override
+        public void write(String s, int off, int len) {
+            blackhole.consume(s);
+            chars += len;
+        }
+
+        @Override
+        public void write(int c) {
+            chars++;
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
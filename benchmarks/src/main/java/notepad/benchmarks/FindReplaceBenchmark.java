@@ -0,0 +1,83 @@
+package notepad.benchmarks;
+
+import notepad.model.Note;
+import notepad.search.DocumentCharSequence;
+import notepad.search.TextFinder;
+import notepad.ui.NoteDocument;
+import notepad.ui.TextEditorPanel;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Finding every match in a note's document, in each of the find dialog's modes, and Replace
+ * All through the editor panel, which applies the replacements as one undoable edit.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@State(Scope.Thread)
+public class FindReplaceBenchmark {
+    @Param({"1000000"})
+    int documentChars;
+
+    private String text;
+    private NoteDocument doc;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        text = Corpus.text(documentChars, new Random(Corpus.SEED));
+        doc = Corpus.styledDocument(text);
+    }
+
+    @State(Scope.Thread)
+    public static class Editor {
+        TextEditorPanel panel;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            panel = new TextEditorPanel();
+        }
+
+        // Replace All changes the note, so every invocation starts from a fresh copy of it.
+        @Setup(Level.Invocation)
+        public void openNote(FindReplaceBenchmark benchmark) {
+            panel.displayNote(new Note("Benchmark", benchmark.text));
+        }
+    }
+
+    @Benchmark
+    public int findLiteral() {
+        return countMatches(new TextFinder("fox", false, false, false));
+    }
+
+    @Benchmark
+    public int findMatchCaseWholeWord() {
+        return countMatches(new TextFinder("Fox", true, true, false));
+    }
+
+    @Benchmark
+    public int findRegex() {
+        return countMatches(new TextFinder("\\b(qu|la)\\w+", false, false, true));
+    }
+
+    @Benchmark
+    public int replaceAllLiteral(Editor editor) {
+        return editor.panel.replaceAll(new TextFinder("fox", false, false, false), "cat");
+    }
+
+    @Benchmark
+    public int replaceAllRegex(Editor editor) {
+        return editor.panel.replaceAll(new TextFinder("(\\w+) (dog)", false, false, true), "$2 $1");
+    }
+
+    private int countMatches(TextFinder finder) {
+        finder.reset(new DocumentCharSequence(doc));
+        int count = 0;
+        while (finder.findNext()) count++;
+        return count;
+    }
+}
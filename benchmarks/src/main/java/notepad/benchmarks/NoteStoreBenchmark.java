@@ -0,0 +1,107 @@
+package notepad.benchmarks;
+
+import notepad.service.NoteService;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Saving and loading the whole note store. Saving folds the journal into a fresh snapshot of
+ * every note; loading reads that snapshot back, which is what startup waits for.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Djava.awt.headless=true", "-Xmx2g"})
+public class NoteStoreBenchmark {
+    static final int NOTE_CHARS = 512;
+
+    @State(Scope.Benchmark)
+    public static class SaveState {
+        @Param({"1000", "10000", "100000"})
+        int noteCount;
+
+        Path dir;
+        NoteService service;
+
+        @Setup(Level.Trial)
+        public void setUp() throws Exception {
+            dir = Files.createTempDirectory("notepad-bench");
+            service = new NoteService(dir.resolve("notes-store"));
+            service.loadAllNotes();
+            service.addNotes(Corpus.notes(noteCount, NOTE_CHARS));
+            settle(service);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws IOException {
+            service.shutdown();
+            delete(dir);
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class LoadState {
+        @Param({"1000", "10000", "100000"})
+        int noteCount;
+
+        Path dir;
+        Path store;
+        NoteService loaded;
+
+        @Setup(Level.Trial)
+        public void setUp() throws Exception {
+            dir = Files.createTempDirectory("notepad-bench");
+            store = dir.resolve("notes-store");
+            NoteService service = new NoteService(store);
+            service.loadAllNotes();
+            service.addNotes(Corpus.notes(noteCount, NOTE_CHARS));
+            settle(service);
+            service.shutdown();
+        }
+
+        // Each load opens the store for appending; it is closed again outside the measurement.
+        @TearDown(Level.Invocation)
+        public void close() {
+            if (loaded != null) loaded.shutdown();
+            loaded = null;
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws IOException {
+            delete(dir);
+        }
+    }
+
+    @Benchmark
+    public void saveAllNotes(SaveState state) {
+        state.service.saveAllNotes();
+    }
+
+    @Benchmark
+    public int loadAllNotes(LoadState state) {
+        state.loaded = new NoteService(state.store);
+        state.loaded.loadAllNotes();
+        return state.loaded.getNoteCount();
+    }
+
+    // Waits for the checkpoints and indexing queued by adding the notes, so they do not run
+    // during the measurement.
+    static void settle(NoteService service) throws InterruptedException, ExecutionException {
+        service.saveAllNotes();
+        service.search("fox", 1).get();
+    }
+
+    static void delete(Path dir) throws IOException {
+        try (Stream<Path> files = Files.walk(dir)) {
+            files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+        }
+    }
+}
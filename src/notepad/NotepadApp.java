@@ -1,12 +1,18 @@
 package notepad;
 
+import notepad.diagnostics.EdtMonitor;
+import notepad.ui.FontCatalog;
+
 import javax.swing.SwingUtilities;
 
 public class NotepadApp {
     public static void launch() {
+        EdtMonitor.install();
+        FontCatalog.prewarm();
         SwingUtilities.invokeLater(() -> {
             NotepadFrame frame = new NotepadFrame();
             frame.setVisible(true);
+            frame.loadNotes();
         });
     }
 } 
\ No newline at end of file
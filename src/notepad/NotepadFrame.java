@@ -1,8 +1,10 @@
 package notepad;
 
+import notepad.diagnostics.StartupTimer;
 import notepad.model.Note;
 import notepad.service.NoteService;
 import notepad.ui.NoteListPanel;
+import notepad.ui.NoteLoadWorker;
 import notepad.ui.TextEditorPanel;
 
 import javax.swing.*;
@@ -18,7 +20,16 @@ public class NotepadFrame extends JFrame {
         setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
         setSize(1000, 600);
         setLocationRelativeTo(null);
-        setLayout(new BorderLayout());
+        setContentPane(new JPanel(new BorderLayout()) {
+            @Override
+            public void paint(Graphics g) {
+                super.paint(g);
+                if (StartupTimer.getFirstPaintMillis() < 0) {
+                    StartupTimer.firstPaint();
+                    SwingUtilities.invokeLater(textEditorPanel::installToolBar);
+                }
+            }
+        });
 
         textEditorPanel.setNoteService(noteService);
         JSplitPane splitPane = new JSplitPane(JSplitPane.HORIZONTAL_SPLIT, noteListPanel, textEditorPanel);
@@ -30,21 +41,33 @@ public class NotepadFrame extends JFrame {
         );
         setJMenuBar(menuBar);
 
-        noteService.loadAllNotes();
-        noteListPanel.refresh();
         addWindowListener(new java.awt.event.WindowAdapter() {
             @Override
             public void windowClosing(java.awt.event.WindowEvent e) {
-                noteService.saveAllNotes();
+                noteService.shutdown();
             }
         });
 
         noteListPanel.getNoteJList().addListSelectionListener(e -> {
+            if (noteListPanel.isUpdatingFilter()) return;
             Note selected = noteListPanel.getNoteJList().getSelectedValue();
+            // Rows shifting under an unchanged selection still fire; only a new note needs loading.
+            if (selected == textEditorPanel.getCurrentNote()) return;
             textEditorPanel.displayNote(selected);
-            noteService.saveAllNotes();
         });
-        textEditorPanel.addDocumentChangeListener(() -> noteService.saveAllNotes());
+    }
+
+    /**
+     * Loads the notes into the list in the background; call once the frame is showing. Until they
+     * are all in, new notes and edits are kept but the store is not compacted.
+     */
+    public void loadNotes() {
+        NoteLoadWorker.start(noteService, () -> {
+            StartupTimer.interactive(noteService.getNoteCount());
+            if (Boolean.getBoolean(StartupTimer.EXIT_PROPERTY)) {
+                dispatchEvent(new java.awt.event.WindowEvent(this, java.awt.event.WindowEvent.WINDOW_CLOSING));
+            }
+        });
     }
 
     // ... (menu creation and actions as previously implemented) ...
@@ -0,0 +1,21 @@
+package notepad.diagnostics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/** One event handled on the event dispatch thread; only slow ones are recorded by default. */
+@Name("notepad.EdtDispatch")
+@Label("EDT Dispatch")
+@Category("Notepad")
+@Description("An AWT event that kept the event dispatch thread busy")
+@Threshold("20 ms")
+@StackTrace(false)
+class EdtDispatchEvent extends Event {
+    @Label("Event Type")
+    String eventType;
+}
@@ -0,0 +1,189 @@
+package notepad.diagnostics;
+
+import java.awt.*;
+import java.awt.event.InputEvent;
+import java.awt.event.KeyEvent;
+import java.time.LocalTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Times every event the event dispatch thread handles, by replacing the system event queue
+ * with one that measures around each dispatch, and runs a watchdog thread that takes the EDT's
+ * stack when a single event has run for {@link #STALL_MILLIS}. It also measures how long typed
+ * keys wait to be painted, from the key event reaching the queue to the next paint of the text
+ * component it was typed into.
+ */
+public final class EdtMonitor {
+    public static final long STALL_MILLIS = 250;
+    private static final long POLL_MILLIS = 50;
+    private static final int MAX_STALLS = 20;
+    private static final int MAX_STACK_FRAMES = 40;
+    private static final int MAX_DESCRIPTION_CHARS = 120;
+
+    private static final LatencyHistogram DISPATCH = Metrics.histogram(Metrics.EDT_DISPATCH);
+    private static final LatencyHistogram INPUT_DELAY = Metrics.histogram(Metrics.EDT_INPUT_DELAY);
+    private static final LatencyHistogram KEYSTROKE = Metrics.histogram(Metrics.KEYSTROKE_TO_PAINT);
+    private static final Deque<Stall> STALLS = new ArrayDeque<>();
+    private static boolean installed;
+
+    // Written on the EDT, read by the watchdog.
+    private static volatile Thread edt;
+    private static volatile long dispatchStart;
+    private static volatile long dispatchSeq;
+    private static volatile AWTEvent dispatching;
+    // EDT only.
+    private static long keyNanos;
+    private static Component keyTarget;
+
+    private EdtMonitor() {}
+
+    /** An event that held the EDT past the stall threshold, and where the EDT was when it was caught. */
+    public static final class Stall {
+        private final LocalTime time;
+        private final String eventType;
+        private final long runningMillis;
+        private final String stack;
+
+        Stall(LocalTime time, String eventType, long runningMillis, String stack) {
+            this.time = time;
+            this.eventType = eventType;
+            this.runningMillis = runningMillis;
+            this.stack = stack;
+        }
+
+        public String getStack() {
+            return stack;
+        }
+
+        @Override
+        public String toString() {
+            return time.withNano(0) + "  " + eventType + " running for " + runningMillis + " ms";
+        }
+    }
+
+    /** Starts monitoring in the background; later calls do nothing. */
+    public static synchronized void install() {
+        if (installed) return;
+        installed = true;
+        Thread watchdog = new Thread(() -> {
+            Metrics.registerEvents();
+            Toolkit.getDefaultToolkit().getSystemEventQueue().push(new TimedEventQueue());
+            watch();
+        }, "edt-watchdog");
+        watchdog.setDaemon(true);
+        watchdog.start();
+    }
+
+    /** Ends a keystroke-to-repaint measurement; text components call it after painting. Called on the EDT. */
+    public static void painted(Component component) {
+        if (keyTarget != component) return;
+        KEYSTROKE.record(System.nanoTime() - keyNanos);
+        keyTarget = null;
+    }
+
+    /** The most recent stalls, oldest first. */
+    public static List<Stall> recentStalls() {
+        synchronized (STALLS) {
+            return new ArrayList<>(STALLS);
+        }
+    }
+
+    public static void clearStalls() {
+        synchronized (STALLS) {
+            STALLS.clear();
+        }
+    }
+
+    private static final class TimedEventQueue extends EventQueue {
+        @Override
+        protected void dispatchEvent(AWTEvent event) {
+            long start = System.nanoTime();
+            long seq = ++dispatchSeq;
+            edt = Thread.currentThread();
+            dispatching = event;
+            dispatchStart = start;
+            if (event instanceof InputEvent) {
+                long waited = System.currentTimeMillis() - ((InputEvent) event).getWhen();
+                if (waited >= 0) INPUT_DELAY.record(waited * 1_000_000);
+                // A paint still owed for an earlier key keeps its start, so the wait of a burst counts in full.
+                if (event.getID() == KeyEvent.KEY_TYPED && keyTarget == null) {
+                    // Key events reach the queue aimed at the window; the focus owner is where they land.
+                    keyTarget = KeyboardFocusManager.getCurrentKeyboardFocusManager().getFocusOwner();
+                    keyNanos = start;
+                }
+            }
+            EdtDispatchEvent jfr = new EdtDispatchEvent();
+            jfr.begin();
+            try {
+                super.dispatchEvent(event);
+            } finally {
+                dispatchStart = 0;
+                // A modal dialog pumps events from inside this one; its time open is not a stall.
+                if (dispatchSeq == seq) {
+                    DISPATCH.record(System.nanoTime() - start);
+                    jfr.end();
+                    if (jfr.shouldCommit()) {
+                        jfr.eventType = describe(event);
+                        jfr.commit();
+                    }
+                }
+            }
+        }
+    }
+
+    private static void watch() {
+        long reportedSeq = -1;
+        while (true) {
+            try {
+                Thread.sleep(POLL_MILLIS);
+            } catch (InterruptedException e) {
+                return;
+            }
+            long start = dispatchStart;
+            long seq = dispatchSeq;
+            AWTEvent event = dispatching;
+            if (start == 0 || seq == reportedSeq) continue;
+            long running = (System.nanoTime() - start) / 1_000_000;
+            if (running < STALL_MILLIS) continue;
+            StackTraceElement[] frames = edt.getStackTrace();
+            // The EDT may have moved on while its stack was taken.
+            if (dispatchSeq != seq || dispatchStart != start) continue;
+            reportedSeq = seq;
+            report(new Stall(LocalTime.now(), describe(event), running, format(frames)));
+        }
+    }
+
+    private static void report(Stall stall) {
+        synchronized (STALLS) {
+            if (STALLS.size() == MAX_STALLS) STALLS.removeFirst();
+            STALLS.addLast(stall);
+        }
+        EdtStallEvent jfr = new EdtStallEvent();
+        if (jfr.shouldCommit()) {
+            jfr.eventType = stall.eventType;
+            jfr.runningMillis = stall.runningMillis;
+            jfr.stack = stall.stack;
+            jfr.commit();
+        }
+    }
+
+    private static String describe(AWTEvent event) {
+        if (event == null) return "?";
+        String params = event.paramString();
+        if (params.length() > MAX_DESCRIPTION_CHARS) params = params.substring(0, MAX_DESCRIPTION_CHARS) + "...";
+        return event.getClass().getSimpleName() + " " + params;
+    }
+
+    private static String format(StackTraceElement[] frames) {
+        StringBuilder stack = new StringBuilder();
+        int shown = Math.min(frames.length, MAX_STACK_FRAMES);
+        for (int i = 0; i < shown; i++) {
+            stack.append("    at ").append(frames[i]).append('\n');
+        }
+        if (frames.length > shown) stack.append("    ... ").append(frames.length - shown).append(" more\n");
+        return stack.toString();
+    }
+}
@@ -0,0 +1,27 @@
+package notepad.diagnostics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/** Where the event dispatch thread was when the watchdog found it stuck in one event. */
+@Name("notepad.EdtStall")
+@Label("EDT Stall")
+@Category("Notepad")
+@Description("The event dispatch thread ran one event for longer than the stall threshold")
+@StackTrace(false)
+class EdtStallEvent extends Event {
+    @Label("Event Type")
+    String eventType;
+
+    @Label("Running For")
+    @Timespan(Timespan.MILLISECONDS)
+    long runningMillis;
+
+    @Label("EDT Stack")
+    String stack;
+}
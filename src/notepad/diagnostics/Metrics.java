@@ -0,0 +1,124 @@
+package notepad.diagnostics;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * The application's latency histograms, by name, in the order they were first used. Operations
+ * are timed with {@link #start}, which also emits a {@code notepad.Operation} flight recorder
+ * event, so the same numbers show up in the diagnostics panel and in a JFR recording.
+ */
+public final class Metrics {
+    public static final String EDT_DISPATCH = "EDT event dispatch";
+    public static final String EDT_INPUT_DELAY = "EDT input queue delay";
+    public static final String KEYSTROKE_TO_PAINT = "Keystroke to repaint";
+    public static final String SAVE_ALL = "Save all notes";
+    public static final String LOAD_ALL = "Load all notes";
+    public static final String SEARCH = "Search index query";
+    public static final String FIND_IN_NOTE = "Find in note";
+    public static final String EXPORT_NOTE = "Export note";
+    public static final String EXPORT_ALL = "Export all notes";
+    public static final String STARTUP_FIRST_PAINT = "Startup to first paint";
+    public static final String STARTUP_INTERACTIVE = "Startup to interactive";
+
+    private static final Map<String, LatencyHistogram> HISTOGRAMS = new LinkedHashMap<>();
+    // The first flight recorder event class to load sets up the recorder, which takes a few hundred
+    // milliseconds; until that has happened off the event thread, operations are only counted.
+    private static volatile boolean eventsRegistered;
+
+    private Metrics() {}
+
+    /** The histogram called {@code name}, created on first use. */
+    public static LatencyHistogram histogram(String name) {
+        synchronized (HISTOGRAMS) {
+            return HISTOGRAMS.computeIfAbsent(name, LatencyHistogram::new);
+        }
+    }
+
+    public static List<LatencyHistogram.Snapshot> snapshots() {
+        List<LatencyHistogram> histograms;
+        synchronized (HISTOGRAMS) {
+            histograms = new ArrayList<>(HISTOGRAMS.values());
+        }
+        List<LatencyHistogram.Snapshot> snapshots = new ArrayList<>(histograms.size());
+        for (LatencyHistogram histogram : histograms) snapshots.add(histogram.snapshot());
+        return snapshots;
+    }
+
+    public static void reset() {
+        synchronized (HISTOGRAMS) {
+            for (LatencyHistogram histogram : HISTOGRAMS.values()) histogram.reset();
+        }
+    }
+
+    /** Loads the flight recorder event classes; call once, from a background thread. */
+    static void registerEvents() {
+        new OperationEvent();
+        new EdtDispatchEvent();
+        new EdtStallEvent();
+        eventsRegistered = true;
+    }
+
+    /** Starts timing one {@code name} operation; end it exactly once, normally in a finally block. */
+    public static Span start(String name) {
+        return new Span(histogram(name));
+    }
+
+    /** One timed operation in progress. */
+    public static final class Span {
+        private final LatencyHistogram histogram;
+        private final OperationEvent event = eventsRegistered ? new OperationEvent() : null;
+        private final long start = System.nanoTime();
+
+        private Span(LatencyHistogram histogram) {
+            this.histogram = histogram;
+            if (event != null) event.begin();
+        }
+
+        public void end() {
+            end(0);
+        }
+
+        public void end(long bytes) {
+            histogram.record(System.nanoTime() - start, bytes);
+            if (event == null) return;
+            event.end();
+            if (event.shouldCommit()) {
+                event.operation = histogram.getName();
+                event.bytes = bytes;
+                event.commit();
+            }
+        }
+    }
+
+    /** Writes the percentiles of every histogram, and the stalls caught, as a plain text table. */
+    public static void writeReport(Writer out) throws IOException {
+        out.write("Notepad diagnostics, " + LocalDateTime.now().withNano(0) + "\n");
+        out.write("Java " + System.getProperty("java.version") + ", " + System.getProperty("os.name")
+                + ", " + Runtime.getRuntime().availableProcessors() + " CPUs\n\n");
+        out.write(String.format(Locale.ROOT, "%-24s %9s %9s %9s %9s %9s %9s %9s %12s%n",
+                "Operation", "Count", "Mean ms", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "Max ms", "Bytes"));
+        for (LatencyHistogram.Snapshot s : snapshots()) {
+            out.write(String.format(Locale.ROOT, "%-24s %9d %9.2f %9.2f %9.2f %9.2f %9.2f %9.2f %12d%n",
+                    s.getName(), s.getCount(), s.getMeanMicros() / 1000, millis(s.getValueAtPercentile(50)),
+                    millis(s.getValueAtPercentile(90)), millis(s.getValueAtPercentile(99)),
+                    millis(s.getValueAtPercentile(99.9)), millis(s.getMaxMicros()), s.getBytes()));
+        }
+        List<EdtMonitor.Stall> stalls = EdtMonitor.recentStalls();
+        out.write("\nEDT stalls over " + EdtMonitor.STALL_MILLIS + " ms: " + stalls.size() + "\n");
+        for (EdtMonitor.Stall stall : stalls) {
+            out.write("\n" + stall + "\n" + stall.getStack());
+        }
+        out.flush();
+    }
+
+    static double millis(long micros) {
+        return micros / 1000.0;
+    }
+}
@@ -0,0 +1,22 @@
+package notepad.diagnostics;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/** A timed operation such as saving, loading, searching or exporting, for flight recordings. */
+@Name("notepad.Operation")
+@Label("Notepad Operation")
+@Category("Notepad")
+@Description("Saving, loading, searching or exporting notes")
+class OperationEvent extends Event {
+    @Label("Operation")
+    String operation;
+
+    @Label("Bytes")
+    @DataAmount
+    long bytes;
+}
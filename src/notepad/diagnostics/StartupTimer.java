@@ -0,0 +1,54 @@
+package notepad.diagnostics;
+
+import java.lang.management.ManagementFactory;
+import java.util.Locale;
+
+/**
+ * Startup milestones, measured from JVM start: the main window's first paint, and the moment it
+ * is interactive with every note in the list. Each is recorded once, into the {@link Metrics}
+ * histograms. With {@code -Dnotepad.startup.report=true} both are also printed to standard
+ * output, in one line a script can parse to track startup across builds, and with
+ * {@code -Dnotepad.startup.exit=true} the application closes once it is interactive. Call on the
+ * event thread.
+ */
+public final class StartupTimer {
+    public static final String REPORT_PROPERTY = "notepad.startup.report";
+    public static final String EXIT_PROPERTY = "notepad.startup.exit";
+
+    private static long firstPaintMillis = -1;
+    private static long interactiveMillis = -1;
+
+    private StartupTimer() {}
+
+    /** Records the first paint; later calls do nothing. */
+    public static void firstPaint() {
+        if (firstPaintMillis >= 0) return;
+        firstPaintMillis = sinceJvmStart();
+        Metrics.histogram(Metrics.STARTUP_FIRST_PAINT).record(firstPaintMillis * 1_000_000);
+    }
+
+    /** Records that the window is usable with {@code noteCount} notes loaded; later calls do nothing. */
+    public static void interactive(int noteCount) {
+        if (interactiveMillis >= 0) return;
+        interactiveMillis = sinceJvmStart();
+        Metrics.histogram(Metrics.STARTUP_INTERACTIVE).record(interactiveMillis * 1_000_000);
+        if (Boolean.getBoolean(REPORT_PROPERTY)) {
+            System.out.printf(Locale.ROOT, "startup first-paint-ms=%d interactive-ms=%d notes=%d%n",
+                    firstPaintMillis, interactiveMillis, noteCount);
+        }
+    }
+
+    public static long getFirstPaintMillis() {
+        return firstPaintMillis;
+    }
+
+    public static long getInteractiveMillis() {
+        return interactiveMillis;
+    }
+
+    // The clock is read before the management classes load, so loading them is not counted.
+    private static long sinceJvmStart() {
+        long now = System.currentTimeMillis();
+        return now - ManagementFactory.getRuntimeMXBean().getStartTime();
+    }
+}
@@ -0,0 +1,37 @@
+package notepad.export;
+
+import java.io.Writer;
+
+/** The formats a note can be exported to, with their file extensions. */
+public enum ExportFormat {
+    TXT("Plain text", "txt"),
+    HTML("HTML", "html"),
+    MARKDOWN("Markdown", "md"),
+    RTF("Rich Text Format", "rtf");
+
+    private final String label;
+    private final String extension;
+
+    ExportFormat(String label, String extension) {
+        this.label = label;
+        this.extension = extension;
+    }
+
+    public String getExtension() {
+        return extension;
+    }
+
+    public StyledTextWriter newWriter(Writer out) {
+        switch (this) {
+            case HTML: return new HtmlWriter(out);
+            case MARKDOWN: return new MarkdownWriter(out);
+            case RTF: return new RtfWriter(out);
+            default: return new PlainTextWriter(out);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return label;
+    }
+}
@@ -0,0 +1,114 @@
+package notepad.export;
+
+import javax.swing.text.AttributeSet;
+import javax.swing.text.StyleConstants;
+import java.awt.Color;
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Writes an HTML page with one paragraph per line and inline CSS for each style run. The CSS of
+ * each style is built once, from the note's style table.
+ */
+public class HtmlWriter extends StyledTextWriter {
+    private String[] css;
+    private boolean emptyParagraph;
+
+    public HtmlWriter(Writer out) {
+        super(out);
+    }
+
+    @Override
+    protected void begin(String title, AttributeSet[] styles) throws IOException {
+        css = new String[styles.length];
+        for (int i = 0; i < styles.length; i++) css[i] = css(styles[i]);
+        out.write("<!DOCTYPE html>\n<html>\n<head>\n<meta charset=\"utf-8\">\n<title>");
+        escape(title == null ? "" : title, 0, title == null ? 0 : title.length());
+        out.write("</title>\n<style>p{margin:0;white-space:pre-wrap}</style>\n</head>\n<body>\n");
+    }
+
+    @Override
+    protected void beginParagraph(AttributeSet style, int styleIndex) throws IOException {
+        emptyParagraph = true;
+        int alignment = StyleConstants.getAlignment(style);
+        if (alignment == StyleConstants.ALIGN_CENTER) out.write("<p style=\"text-align:center\">");
+        else if (alignment == StyleConstants.ALIGN_RIGHT) out.write("<p style=\"text-align:right\">");
+        else if (alignment == StyleConstants.ALIGN_JUSTIFIED) out.write("<p style=\"text-align:justify\">");
+        else out.write("<p>");
+    }
+
+    @Override
+    protected void text(String text, int from, int to, AttributeSet style, int styleIndex) throws IOException {
+        emptyParagraph = false;
+        String rule = css[styleIndex];
+        if (rule.isEmpty()) {
+            escape(text, from, to);
+            return;
+        }
+        out.write("<span style=\"");
+        out.write(rule);
+        out.write("\">");
+        escape(text, from, to);
+        out.write("</span>");
+    }
+
+    @Override
+    protected void endParagraph(boolean last) throws IOException {
+        // An empty paragraph would collapse to nothing.
+        out.write(emptyParagraph ? "<br></p>\n" : "</p>\n");
+    }
+
+    @Override
+    protected void end() throws IOException {
+        out.write("</body>\n</html>\n");
+    }
+
+    private static String css(AttributeSet style) {
+        StringBuilder rule = new StringBuilder();
+        if (StyleConstants.isBold(style)) rule.append("font-weight:bold;");
+        if (StyleConstants.isItalic(style)) rule.append("font-style:italic;");
+        if (StyleConstants.isUnderline(style) && StyleConstants.isStrikeThrough(style)) {
+            rule.append("text-decoration:underline line-through;");
+        } else if (StyleConstants.isUnderline(style)) {
+            rule.append("text-decoration:underline;");
+        } else if (StyleConstants.isStrikeThrough(style)) {
+            rule.append("text-decoration:line-through;");
+        }
+        if (StyleConstants.isSuperscript(style)) rule.append("vertical-align:super;");
+        if (StyleConstants.isSubscript(style)) rule.append("vertical-align:sub;");
+        if (style.isDefined(StyleConstants.FontFamily)) {
+            rule.append("font-family:'").append(StyleConstants.getFontFamily(style).replaceAll("[^\\w \\-]", "")).append("';");
+        }
+        if (style.isDefined(StyleConstants.FontSize)) rule.append("font-size:").append(StyleConstants.getFontSize(style)).append("pt;");
+        if (style.isDefined(StyleConstants.Foreground)) rule.append("color:").append(hex(StyleConstants.getForeground(style))).append(';');
+        if (style.isDefined(StyleConstants.Background)) {
+            rule.append("background-color:").append(hex(StyleConstants.getBackground(style))).append(';');
+        }
+        return rule.toString();
+    }
+
+    private static String hex(Color color) {
+        return String.format("#%06x", color.getRGB() & 0xFFFFFF);
+    }
+
+    // Writes unescaped stretches in one call instead of char by char.
+    private void escape(String text, int from, int to) throws IOException {
+        int plain = from;
+        for (int i = from; i < to; i++) {
+            String entity;
+            switch (text.charAt(i)) {
+                case '&': entity = "&amp;"; break;
+                case '<': entity = "&lt;"; break;
+                case '>': entity = "&gt;"; break;
+                case '"': entity = "&quot;"; break;
+                case '\'': entity = "&#39;"; break;
+                case '\r': entity = ""; break;
+                default: continue;
+            }
+            out.write(text, plain, i - plain);
+            out.write(entity);
+            plain = i + 1;
+        }
+        out.write(text, plain, to - plain);
+    }
+}
@@ -0,0 +1,104 @@
+package notepad.export;
+
+import javax.swing.text.AttributeSet;
+import javax.swing.text.StyleConstants;
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Writes Markdown. Bold, italic and strikethrough runs get their markers, underline becomes
+ * {@code <u>}, monospaced runs become code spans and a line whose first run is set in a large
+ * font becomes a heading. Lines end in hard breaks, so the note keeps its line structure.
+ */
+public class MarkdownWriter extends StyledTextWriter {
+    private static final String SPECIAL = "\\`*_[]<>~|";
+
+    private boolean lineStart;
+    private boolean heading;
+    private int lineOffset;
+
+    public MarkdownWriter(Writer out) {
+        super(out);
+    }
+
+    @Override
+    protected void beginParagraph(AttributeSet style, int styleIndex) {
+        lineStart = true;
+        heading = false;
+    }
+
+    @Override
+    protected void text(String text, int from, int to, AttributeSet style, int styleIndex) throws IOException {
+        if (lineStart) {
+            lineOffset = from;
+            heading = startLine(style);
+            lineStart = false;
+        }
+        // Markers must touch the text they enclose, so surrounding spaces stay outside.
+        int start = from;
+        int end = to;
+        while (start < end && Character.isWhitespace(text.charAt(start))) start++;
+        while (end > start && Character.isWhitespace(text.charAt(end - 1))) end--;
+        out.write(text, from, start - from);
+        if (start < end) {
+            if (isMonospaced(style)) {
+                String fence = text.substring(start, end).indexOf('`') >= 0 ? "`` " : "`";
+                out.write(fence);
+                out.write(text, start, end - start);
+                out.write(fence.length() > 1 ? " ``" : "`");
+            } else {
+                boolean bold = StyleConstants.isBold(style) && !heading;
+                boolean italic = StyleConstants.isItalic(style);
+                boolean strike = StyleConstants.isStrikeThrough(style);
+                boolean underline = StyleConstants.isUnderline(style);
+                if (underline) out.write("<u>");
+                if (strike) out.write("~~");
+                if (bold) out.write("**");
+                if (italic) out.write('*');
+                escape(text, start, end);
+                if (italic) out.write('*');
+                if (bold) out.write("**");
+                if (strike) out.write("~~");
+                if (underline) out.write("</u>");
+            }
+        }
+        out.write(text, end, to - end);
+    }
+
+    @Override
+    protected void endParagraph(boolean last) throws IOException {
+        if (!lineStart && !heading) out.write("  ");
+        if (!last) out.write('\n');
+    }
+
+    /** Writes a heading prefix if the line's first run is set large enough; returns whether it did. */
+    private boolean startLine(AttributeSet style) throws IOException {
+        if (!style.isDefined(StyleConstants.FontSize)) return false;
+        int size = StyleConstants.getFontSize(style);
+        String prefix = size >= 24 ? "# " : size >= 18 ? "## " : size >= 14 && StyleConstants.isBold(style) ? "### " : null;
+        if (prefix == null) return false;
+        out.write(prefix);
+        return true;
+    }
+
+    private static boolean isMonospaced(AttributeSet style) {
+        if (!style.isDefined(StyleConstants.FontFamily)) return false;
+        String family = StyleConstants.getFontFamily(style).toLowerCase();
+        return family.contains("mono") || family.contains("consolas") || family.contains("courier");
+    }
+
+    private void escape(String text, int from, int to) throws IOException {
+        int plain = from;
+        for (int i = from; i < to; i++) {
+            char c = text.charAt(i);
+            if (SPECIAL.indexOf(c) < 0 && !(c == '#' && i == lineOffset) && c != '\r') continue;
+            out.write(text, plain, i - plain);
+            if (c != '\r') {
+                out.write('\\');
+                out.write(c);
+            }
+            plain = i + 1;
+        }
+        out.write(text, plain, to - plain);
+    }
+}
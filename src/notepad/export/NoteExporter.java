@@ -0,0 +1,171 @@
+package notepad.export;
+
+import notepad.diagnostics.Metrics;
+import notepad.model.ContentSource;
+import notepad.model.Note;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Writes notes to files. A single note streams to its file through a buffered writer. Exporting
+ * many notes renders and deflates them in parallel on a worker pool while the calling thread
+ * appends the finished entries, in order, to one ZIP archive; only a few entries per worker are
+ * held in memory at a time. Notes must be detached copies, as the work happens off the event
+ * thread.
+ */
+public final class NoteExporter {
+    private static final int IN_FLIGHT_PER_THREAD = 4;
+    private static final int MAX_NAME_CHARS = 100;
+
+    /** Receives progress; returning false cancels the export. */
+    public interface Progress {
+        boolean update(int done, int total);
+    }
+
+    private NoteExporter() {}
+
+    public static void exportNote(Note note, ExportFormat format, Path file) throws IOException {
+        Metrics.Span span = Metrics.start(Metrics.EXPORT_NOTE);
+        try (Writer out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            format.newWriter(out).write(note.getTitle(), body(note), note.getStyles());
+        } finally {
+            span.end(fileSize(file));
+        }
+    }
+
+    /**
+     * Exports every note into one ZIP archive, one entry per note named after its title, and
+     * returns the number of entries. A cancelled or failed export deletes the archive.
+     */
+    public static int exportAll(List<Note> notes, ExportFormat format, Path archive, Progress progress)
+            throws IOException {
+        Metrics.Span span = Metrics.start(Metrics.EXPORT_ALL);
+        String[] names = entryNames(notes, format);
+        int threads = Runtime.getRuntime().availableProcessors();
+        ExecutorService pool = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "note-export");
+            t.setDaemon(true);
+            return t;
+        });
+        Deque<Future<Entry>> inFlight = new ArrayDeque<>();
+        try (ZipArchiveWriter zip = new ZipArchiveWriter(
+                new BufferedOutputStream(Files.newOutputStream(archive), 256 * 1024))) {
+            int next = 0;
+            for (int done = 0; done < notes.size(); ) {
+                while (next < notes.size() && inFlight.size() < threads * IN_FLIGHT_PER_THREAD) {
+                    Note note = notes.get(next);
+                    String name = names[next++];
+                    inFlight.add(pool.submit(() -> render(note, name, format)));
+                }
+                Entry entry = take(inFlight.removeFirst());
+                zip.addDeflated(entry.name, entry.data.array(), entry.data.size(), entry.crc, entry.size);
+                done++;
+                if (!progress.update(done, notes.size())) throw new InterruptedIOException("Export cancelled");
+            }
+            return zip.getEntryCount();
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(archive);
+            throw e;
+        } finally {
+            pool.shutdownNow();
+            span.end(fileSize(archive));
+        }
+    }
+
+    private static long fileSize(Path file) {
+        try {
+            return Files.exists(file) ? Files.size(file) : 0;
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    /** One rendered note: its deflated bytes, and the checksum and length of the original. */
+    private static final class Entry {
+        final String name;
+        final Buffer data;
+        final int crc;
+        final long size;
+
+        Entry(String name, Buffer data, int crc, long size) {
+            this.name = name;
+            this.data = data;
+            this.crc = crc;
+            this.size = size;
+        }
+    }
+
+    /** Exposes its array, so finished entries go to the archive without another copy. */
+    private static final class Buffer extends ByteArrayOutputStream {
+        Buffer(int size) {
+            super(size);
+        }
+
+        byte[] array() {
+            return buf;
+        }
+    }
+
+    private static Entry render(Note note, String name, ExportFormat format) throws IOException {
+        String text = body(note);
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        try {
+            Buffer data = new Buffer(Math.max(64, text.length() / 3));
+            CRC32 crc = new CRC32();
+            try (Writer out = new BufferedWriter(new OutputStreamWriter(
+                    new CheckedOutputStream(new DeflaterOutputStream(data, deflater, 16 * 1024), crc),
+                    StandardCharsets.UTF_8), 16 * 1024)) {
+                format.newWriter(out).write(note.getTitle(), text, note.getStyles());
+            }
+            return new Entry(name, data, (int) crc.getValue(), deflater.getBytesRead());
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static Entry take(Future<Entry> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Export interrupted");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) throw (IOException) e.getCause();
+            throw new IOException("Export failed", e.getCause());
+        }
+    }
+
+    // Reads a body still on disk without pushing the bodies of open notes out of the cache.
+    private static String body(Note note) {
+        ContentSource source = note.getContentSource();
+        String text = source != null ? source.loadUncached() : note.getContent();
+        return text == null ? "" : text;
+    }
+
+    /** File names from the titles, made safe and, ignoring case, unique. */
+    private static String[] entryNames(List<Note> notes, ExportFormat format) {
+        String[] names = new String[notes.size()];
+        Set<String> taken = new HashSet<>();
+        for (int i = 0; i < names.length; i++) {
+            String title = notes.get(i).getTitle();
+            String base = title == null ? "" : title.replaceAll("[\\\\/:*?\"<>|\\p{Cntrl}]", "_").trim();
+            if (base.isEmpty() || base.startsWith(".")) base = "Untitled" + base;
+            if (base.length() > MAX_NAME_CHARS) base = base.substring(0, MAX_NAME_CHARS);
+            String name = base + "." + format.getExtension();
+            for (int n = 2; !taken.add(name.toLowerCase(Locale.ROOT)); n++) {
+                name = base + " (" + n + ")." + format.getExtension();
+            }
+            names[i] = name;
+        }
+        return names;
+    }
+}
@@ -0,0 +1,22 @@
+package notepad.export;
+
+import javax.swing.text.AttributeSet;
+import java.io.IOException;
+import java.io.Writer;
+
+/** Writes the text alone, line for line. */
+public class PlainTextWriter extends StyledTextWriter {
+    public PlainTextWriter(Writer out) {
+        super(out);
+    }
+
+    @Override
+    protected void text(String text, int from, int to, AttributeSet style, int styleIndex) throws IOException {
+        out.write(text, from, to - from);
+    }
+
+    @Override
+    protected void endParagraph(boolean last) throws IOException {
+        if (!last) out.write('\n');
+    }
+}
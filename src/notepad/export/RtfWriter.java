@@ -0,0 +1,124 @@
+package notepad.export;
+
+import javax.swing.text.AttributeSet;
+import javax.swing.text.StyleConstants;
+import java.awt.Color;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Writes RTF. The font and color tables are collected from the note's style table, and the
+ * control words of each style are built once, so every run costs one group around its
+ * escaped text. Characters outside ASCII are written as RTF Unicode escapes.
+ */
+public class RtfWriter extends StyledTextWriter {
+    private String[] controls;
+
+    public RtfWriter(Writer out) {
+        super(out);
+    }
+
+    @Override
+    protected void begin(String title, AttributeSet[] styles) throws IOException {
+        List<String> fonts = new ArrayList<>();
+        fonts.add("Dialog");
+        List<Color> colors = new ArrayList<>();
+        controls = new String[styles.length];
+        for (int i = 0; i < styles.length; i++) controls[i] = controls(styles[i], fonts, colors);
+        out.write("{\\rtf1\\ansi\\deff0\n{\\fonttbl");
+        for (int i = 0; i < fonts.size(); i++) {
+            out.write("{\\f" + i + " ");
+            escape(fonts.get(i), 0, fonts.get(i).length());
+            out.write(";}");
+        }
+        out.write("}\n{\\colortbl;");
+        for (Color color : colors) {
+            out.write("\\red" + color.getRed() + "\\green" + color.getGreen() + "\\blue" + color.getBlue() + ";");
+        }
+        out.write("}\n");
+    }
+
+    @Override
+    protected void beginParagraph(AttributeSet style, int styleIndex) throws IOException {
+        out.write("\\pard");
+        int alignment = StyleConstants.getAlignment(style);
+        if (alignment == StyleConstants.ALIGN_CENTER) out.write("\\qc");
+        else if (alignment == StyleConstants.ALIGN_RIGHT) out.write("\\qr");
+        else if (alignment == StyleConstants.ALIGN_JUSTIFIED) out.write("\\qj");
+        out.write(' ');
+    }
+
+    @Override
+    protected void text(String text, int from, int to, AttributeSet style, int styleIndex) throws IOException {
+        String words = controls[styleIndex];
+        if (words.isEmpty()) {
+            escape(text, from, to);
+            return;
+        }
+        out.write('{');
+        out.write(words);
+        out.write(' ');
+        escape(text, from, to);
+        out.write('}');
+    }
+
+    @Override
+    protected void endParagraph(boolean last) throws IOException {
+        out.write("\\par\n");
+    }
+
+    @Override
+    protected void end() throws IOException {
+        out.write("}\n");
+    }
+
+    private static String controls(AttributeSet style, List<String> fonts, List<Color> colors) {
+        StringBuilder words = new StringBuilder();
+        if (StyleConstants.isBold(style)) words.append("\\b");
+        if (StyleConstants.isItalic(style)) words.append("\\i");
+        if (StyleConstants.isUnderline(style)) words.append("\\ul");
+        if (StyleConstants.isStrikeThrough(style)) words.append("\\strike");
+        if (StyleConstants.isSuperscript(style)) words.append("\\super");
+        if (StyleConstants.isSubscript(style)) words.append("\\sub");
+        if (style.isDefined(StyleConstants.FontFamily)) {
+            words.append("\\f").append(indexOf(fonts, StyleConstants.getFontFamily(style)));
+        }
+        if (style.isDefined(StyleConstants.FontSize)) words.append("\\fs").append(StyleConstants.getFontSize(style) * 2);
+        // Color table entries are numbered from 1; entry 0 is the default color.
+        if (style.isDefined(StyleConstants.Foreground)) {
+            words.append("\\cf").append(indexOf(colors, StyleConstants.getForeground(style)) + 1);
+        }
+        if (style.isDefined(StyleConstants.Background)) {
+            words.append("\\highlight").append(indexOf(colors, StyleConstants.getBackground(style)) + 1);
+        }
+        return words.toString();
+    }
+
+    private static <T> int indexOf(List<T> list, T value) {
+        int index = list.indexOf(value);
+        if (index >= 0) return index;
+        list.add(value);
+        return list.size() - 1;
+    }
+
+    private void escape(String text, int from, int to) throws IOException {
+        int plain = from;
+        for (int i = from; i < to; i++) {
+            char c = text.charAt(i);
+            if (c >= 0x20 && c < 0x80 && c != '\\' && c != '{' && c != '}') continue;
+            out.write(text, plain, i - plain);
+            if (c == '\\' || c == '{' || c == '}') {
+                out.write('\\');
+                out.write(c);
+            } else if (c == '\t') {
+                out.write("\\tab ");
+            } else if (c >= 0x80) {
+                out.write("\\u" + (short) c + "?");
+            }
+            plain = i + 1;
+        }
+        out.write(text, plain, to - plain);
+    }
+}
@@ -0,0 +1,81 @@
+package notepad.export;
+
+import notepad.model.StyleRuns;
+import notepad.ui.NoteDocument;
+
+import javax.swing.text.AttributeSet;
+import javax.swing.text.SimpleAttributeSet;
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Streams a note in some output format. The text is walked paragraph by paragraph, each cut
+ * into its style runs, and every piece is handed to the subclass, which writes it straight to
+ * the underlying writer; no rendering of the whole note is built in memory. Works on a detached
+ * copy of a note, so it is safe off the event thread.
+ */
+public abstract class StyledTextWriter {
+    private static final AttributeSet[] PLAIN = {SimpleAttributeSet.EMPTY};
+
+    protected final Writer out;
+
+    protected StyledTextWriter(Writer out) {
+        this.out = out;
+    }
+
+    /** Writes one note; {@code runs} that are null or do not match the text are ignored. */
+    public void write(String title, String text, StyleRuns runs) throws IOException {
+        if (text == null) text = "";
+        AttributeSet[] styles = PLAIN;
+        int[] charRuns = {0, text.length() + 1};
+        int[] paragraphRuns = charRuns;
+        if (runs != null && runs.getTextLength() == text.length()) {
+            styles = new AttributeSet[runs.getStyleCount()];
+            for (int i = 0; i < styles.length; i++) styles[i] = NoteDocument.decode(runs.getStyle(i));
+            charRuns = runs.getCharRuns();
+            paragraphRuns = runs.getParagraphRuns();
+        }
+        begin(title, styles);
+        int charRun = 0;
+        int charRunEnd = charRuns[1];
+        int paragraphRun = 0;
+        int paragraphRunEnd = paragraphRuns[1];
+        int start = 0;
+        while (true) {
+            int end = text.indexOf('\n', start);
+            if (end < 0) end = text.length();
+            while (paragraphRunEnd <= start && paragraphRun + 2 < paragraphRuns.length) {
+                paragraphRun += 2;
+                paragraphRunEnd += paragraphRuns[paragraphRun + 1];
+            }
+            beginParagraph(styles[paragraphRuns[paragraphRun]], paragraphRuns[paragraphRun]);
+            for (int at = start; at < end; ) {
+                while (charRunEnd <= at && charRun + 2 < charRuns.length) {
+                    charRun += 2;
+                    charRunEnd += charRuns[charRun + 1];
+                }
+                int to = charRunEnd > at ? Math.min(end, charRunEnd) : end;
+                text(text, at, to, styles[charRuns[charRun]], charRuns[charRun]);
+                at = to;
+            }
+            boolean last = end == text.length();
+            endParagraph(last);
+            if (last) break;
+            start = end + 1;
+        }
+        end();
+        out.flush();
+    }
+
+    /** Called once before the first paragraph with the note's style table. */
+    protected void begin(String title, AttributeSet[] styles) throws IOException {}
+
+    protected void beginParagraph(AttributeSet style, int styleIndex) throws IOException {}
+
+    /** Writes {@code text[from, to)}, which has one style and no line break. */
+    protected abstract void text(String text, int from, int to, AttributeSet style, int styleIndex) throws IOException;
+
+    protected void endParagraph(boolean last) throws IOException {}
+
+    protected void end() throws IOException {}
+}
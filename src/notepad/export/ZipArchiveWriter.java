@@ -0,0 +1,159 @@
+package notepad.export;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Writes a ZIP archive from entries that are already deflated, so compression can happen on
+ * other threads and the writer only copies bytes. Entry names are UTF-8. Archives past 65535
+ * entries or 4 GB get the ZIP64 end records; a single entry must stay below 4 GB.
+ */
+public class ZipArchiveWriter implements Closeable {
+    private static final long MAX_32 = 0xFFFFFFFFL;
+    private static final int MAX_16 = 0xFFFF;
+    private static final int UTF8_NAMES = 1 << 11;
+    private static final int DEFLATED = 8;
+
+    private final OutputStream out;
+    private final List<CentralEntry> entries = new ArrayList<>();
+    private final int dosTime;
+    private final int dosDate;
+    private final byte[] scratch = new byte[8];
+    private long position;
+
+    private static final class CentralEntry {
+        final byte[] name;
+        final int crc;
+        final long compressedSize;
+        final long size;
+        final long offset;
+
+        CentralEntry(byte[] name, int crc, long compressedSize, long size, long offset) {
+            this.name = name;
+            this.crc = crc;
+            this.compressedSize = compressedSize;
+            this.size = size;
+            this.offset = offset;
+        }
+    }
+
+    /** {@code out} should be buffered; it is closed with this writer. */
+    public ZipArchiveWriter(OutputStream out) {
+        this.out = out;
+        LocalDateTime now = LocalDateTime.now();
+        dosTime = now.getHour() << 11 | now.getMinute() << 5 | now.getSecond() / 2;
+        dosDate = Math.max(0, now.getYear() - 1980) << 9 | now.getMonthValue() << 5 | now.getDayOfMonth();
+    }
+
+    /** Appends an entry whose data is raw deflate output ({@code Deflater} with {@code nowrap}). */
+    public void addDeflated(String name, byte[] data, int dataLength, int crc, long size) throws IOException {
+        if (dataLength > MAX_32 || size > MAX_32) throw new IOException("Entry too large for the archive: " + name);
+        byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        entries.add(new CentralEntry(nameBytes, crc, dataLength, size, position));
+        writeInt(0x04034b50);
+        writeShort(20);
+        writeShort(UTF8_NAMES);
+        writeShort(DEFLATED);
+        writeShort(dosTime);
+        writeShort(dosDate);
+        writeInt(crc);
+        writeInt(dataLength);
+        writeInt(size);
+        writeShort(nameBytes.length);
+        writeShort(0);
+        write(nameBytes, nameBytes.length);
+        write(data, dataLength);
+    }
+
+    public int getEntryCount() {
+        return entries.size();
+    }
+
+    /** Writes the central directory and closes the stream. */
+    @Override
+    public void close() throws IOException {
+        try {
+            long directoryStart = position;
+            for (CentralEntry entry : entries) {
+                boolean farOffset = entry.offset >= MAX_32;
+                writeInt(0x02014b50);
+                writeShort(farOffset ? 45 : 20);
+                writeShort(farOffset ? 45 : 20);
+                writeShort(UTF8_NAMES);
+                writeShort(DEFLATED);
+                writeShort(dosTime);
+                writeShort(dosDate);
+                writeInt(entry.crc);
+                writeInt(entry.compressedSize);
+                writeInt(entry.size);
+                writeShort(entry.name.length);
+                writeShort(farOffset ? 12 : 0);
+                writeShort(0);
+                writeShort(0);
+                writeShort(0);
+                writeInt(0);
+                writeInt(farOffset ? MAX_32 : entry.offset);
+                write(entry.name, entry.name.length);
+                if (farOffset) {
+                    writeShort(0x0001);
+                    writeShort(8);
+                    writeLong(entry.offset);
+                }
+            }
+            long directorySize = position - directoryStart;
+            if (entries.size() >= MAX_16 || directoryStart >= MAX_32 || directorySize >= MAX_32) {
+                long zip64End = position;
+                writeInt(0x06064b50);
+                writeLong(44);
+                writeShort(45);
+                writeShort(45);
+                writeInt(0);
+                writeInt(0);
+                writeLong(entries.size());
+                writeLong(entries.size());
+                writeLong(directorySize);
+                writeLong(directoryStart);
+                writeInt(0x07064b50);
+                writeInt(0);
+                writeLong(zip64End);
+                writeInt(1);
+            }
+            writeInt(0x06054b50);
+            writeShort(0);
+            writeShort(0);
+            writeShort(Math.min(entries.size(), MAX_16));
+            writeShort(Math.min(entries.size(), MAX_16));
+            writeInt(Math.min(directorySize, MAX_32));
+            writeInt(Math.min(directoryStart, MAX_32));
+            writeShort(0);
+        } finally {
+            out.close();
+        }
+    }
+
+    private void write(byte[] bytes, int length) throws IOException {
+        out.write(bytes, 0, length);
+        position += length;
+    }
+
+    private void writeShort(int value) throws IOException {
+        scratch[0] = (byte) value;
+        scratch[1] = (byte) (value >>> 8);
+        write(scratch, 2);
+    }
+
+    private void writeInt(long value) throws IOException {
+        for (int i = 0; i < 4; i++) scratch[i] = (byte) (value >>> (8 * i));
+        write(scratch, 4);
+    }
+
+    private void writeLong(long value) throws IOException {
+        for (int i = 0; i < 8; i++) scratch[i] = (byte) (value >>> (8 * i));
+        write(scratch, 8);
+    }
+}
@@ -0,0 +1,11 @@
+package notepad.model;
+
+/** Supplies the body of a note that is not held in memory. */
+public interface ContentSource {
+    String load();
+
+    /** Loads the body for a one-off pass, such as indexing, without displacing cached bodies. */
+    default String loadUncached() {
+        return load();
+    }
+}
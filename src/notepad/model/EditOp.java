@@ -0,0 +1,73 @@
+package notepad.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/** A single insert or remove against a note body, as reported by the editor's document. */
+public final class EditOp {
+    public static final byte INSERT = 1;
+    public static final byte REMOVE = 2;
+
+    private final byte kind;
+    private final int offset;
+    private final String text;
+    private final int length;
+
+    private EditOp(byte kind, int offset, String text, int length) {
+        this.kind = kind;
+        this.offset = offset;
+        this.text = text;
+        this.length = length;
+    }
+
+    public static EditOp insert(int offset, String text) {
+        return new EditOp(INSERT, offset, text, text.length());
+    }
+
+    public static EditOp remove(int offset, int length) {
+        return new EditOp(REMOVE, offset, null, length);
+    }
+
+    public byte getKind() {
+        return kind;
+    }
+
+    public int getOffset() {
+        return offset;
+    }
+
+    /** The inserted text; null for a remove. */
+    public String getText() {
+        return text;
+    }
+
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * The edits turning {@code from} into {@code to}: the span between their common prefix and
+     * suffix is removed and the new one inserted. Empty if they are equal.
+     */
+    public static List<EditOp> between(String from, String to) {
+        int prefix = 0;
+        int max = Math.min(from.length(), to.length());
+        while (prefix < max && from.charAt(prefix) == to.charAt(prefix)) prefix++;
+        int suffix = 0;
+        while (suffix < max - prefix
+                && from.charAt(from.length() - 1 - suffix) == to.charAt(to.length() - 1 - suffix)) suffix++;
+        List<EditOp> ops = new ArrayList<>(2);
+        int removed = from.length() - prefix - suffix;
+        if (removed > 0) ops.add(remove(prefix, removed));
+        if (to.length() - prefix - suffix > 0) ops.add(insert(prefix, to.substring(prefix, to.length() - suffix)));
+        return ops;
+    }
+
+    public void applyTo(StringBuilder content) {
+        if (kind == INSERT) {
+            content.insert(offset, text);
+        } else {
+            content.delete(offset, offset + length);
+        }
+    }
+}
@@ -1,16 +1,41 @@
 package notepad.model;
 
 import java.io.Serializable;
+import java.util.UUID;
+import java.util.function.Supplier;
 
 public class Note implements Serializable {
+    // Pinned to the value the original class hashed to, so old notes.ser files stay readable.
+    private static final long serialVersionUID = -1987363211499981238L;
+
+    private final String id;
     private String title;
     private String content;
+    private transient ContentSource contentSource;
+    private transient boolean live;
+    private transient StyleRuns styles;
+    private transient Supplier<StyleRuns> liveStyles;
 
     public Note(String title, String content) {
+        this(UUID.randomUUID().toString(), title, content);
+    }
+
+    public Note(String id, String title, String content) {
+        this.id = id;
         this.title = title;
         this.content = content;
     }
 
+    /** Creates a note whose body stays on disk until {@link #getContent()} is first called. */
+    public Note(String id, String title, ContentSource contentSource) {
+        this(id, title, (String) null);
+        this.contentSource = contentSource;
+    }
+
+    public String getId() {
+        return id;
+    }
+
     public String getTitle() {
         return title;
     }
@@ -20,10 +45,55 @@ public class Note implements Serializable {
     }
 
     public String getContent() {
+        if (content == null && contentSource != null) return contentSource.load();
         return content;
     }
 
     public void setContent(String content) {
         this.content = content;
+        this.contentSource = null;
+        this.live = false;
+        this.liveStyles = null;
+    }
+
+    /** The body's formatting, or null for plain text. */
+    public StyleRuns getStyles() {
+        return live ? liveStyles.get() : styles;
+    }
+
+    public void setStyles(StyleRuns styles) {
+        this.styles = styles;
+    }
+
+    /**
+     * Makes an open editor document the source of the body and its formatting, so edits need
+     * not be copied into the note one keystroke at a time. Replaced by the next {@link #setContent}.
+     */
+    public void setLiveContent(ContentSource liveContent, Supplier<StyleRuns> liveStyles) {
+        this.content = null;
+        this.contentSource = liveContent;
+        this.live = true;
+        this.liveStyles = liveStyles;
+    }
+
+    /** The on-disk source of the body, or null once the body is in memory or live in an editor. */
+    public ContentSource getContentSource() {
+        return content == null && !live ? contentSource : null;
+    }
+
+    /**
+     * A detached copy. A body still on disk is shared without loading it; a live body and its
+     * formatting are read now, so the copy cannot change after it is taken.
+     */
+    public Note copy() {
+        if (live) {
+            Note copy = new Note(id, title, contentSource.load());
+            copy.styles = liveStyles.get();
+            return copy;
+        }
+        Note copy = new Note(id, title, content);
+        copy.contentSource = contentSource;
+        copy.styles = styles;
+        return copy;
     }
-} 
\ No newline at end of file
+}
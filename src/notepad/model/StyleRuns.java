@@ -0,0 +1,103 @@
+package notepad.model;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Formatting of a note body, run-length encoded. Each distinct attribute set is stored once in
+ * a style table, in the editor's text form; character runs and paragraph runs are pairs of a
+ * style index and a length. Both kinds of runs cover the text plus the one position the editor
+ * keeps after its end. Instances are immutable.
+ */
+public final class StyleRuns {
+    private final String[] styles;
+    private final int[] charRuns;
+    private final int[] paragraphRuns;
+
+    public StyleRuns(String[] styles, int[] charRuns, int[] paragraphRuns) {
+        this.styles = styles;
+        this.charRuns = charRuns;
+        this.paragraphRuns = paragraphRuns;
+    }
+
+    public int getStyleCount() {
+        return styles.length;
+    }
+
+    public String getStyle(int index) {
+        return styles[index];
+    }
+
+    /** Style index and length pairs; the array is shared and must not be modified. */
+    public int[] getCharRuns() {
+        return charRuns;
+    }
+
+    /** Style index and length pairs, one or more paragraphs each; shared like {@link #getCharRuns}. */
+    public int[] getParagraphRuns() {
+        return paragraphRuns;
+    }
+
+    /** The length of the text these runs were taken from. */
+    public int getTextLength() {
+        int length = -1;
+        for (int i = 1; i < charRuns.length; i += 2) length += charRuns[i];
+        return length;
+    }
+
+    /**
+     * The runs after edits of the text, applied in order as the editor applies them: inserted
+     * text takes the character style before it and the paragraph style of the text after it,
+     * and removed text shortens the runs it overlapped. The runs are copied once for all edits.
+     */
+    public StyleRuns adjust(List<EditOp> ops) {
+        if (ops.isEmpty()) return this;
+        int[] chars = charRuns.clone();
+        int[] paragraphs = paragraphRuns.clone();
+        int charCount = chars.length;
+        int paragraphCount = paragraphs.length;
+        for (EditOp op : ops) {
+            if (op.getKind() == EditOp.INSERT) {
+                grow(chars, charCount, op.getOffset() - 1, op.getLength());
+                grow(paragraphs, paragraphCount, op.getOffset(), op.getLength());
+            } else {
+                charCount = shrink(chars, charCount, op.getOffset(), op.getLength());
+                paragraphCount = shrink(paragraphs, paragraphCount, op.getOffset(), op.getLength());
+            }
+        }
+        return new StyleRuns(styles, Arrays.copyOf(chars, charCount), Arrays.copyOf(paragraphs, paragraphCount));
+    }
+
+    private static void grow(int[] runs, int count, int at, int length) {
+        int start = 0;
+        for (int i = 0; i < count; i += 2) {
+            if (at < start + runs[i + 1] || i == count - 2) {
+                runs[i + 1] += length;
+                return;
+            }
+            start += runs[i + 1];
+        }
+    }
+
+    // Shortens the first count entries of runs in place and returns how many are left.
+    private static int shrink(int[] runs, int count, int from, int length) {
+        int n = 0;
+        int start = 0;
+        int to = from + length;
+        for (int i = 0; i < count; i += 2) {
+            int style = runs[i];
+            int end = start + runs[i + 1];
+            int left = runs[i + 1] - Math.max(0, Math.min(end, to) - Math.max(start, from));
+            if (left > 0) {
+                if (n > 0 && runs[n - 2] == style) {
+                    runs[n - 1] += left;
+                } else {
+                    runs[n++] = style;
+                    runs[n++] = left;
+                }
+            }
+            start = end;
+        }
+        return n;
+    }
+}
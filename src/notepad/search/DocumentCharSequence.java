@@ -0,0 +1,73 @@
+package notepad.search;
+
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Document;
+import javax.swing.text.Segment;
+
+/**
+ * Read-only {@link CharSequence} view of a range of a {@link Document}. Characters are read
+ * through a {@link Segment} with partial returns, which points straight into the document's
+ * storage, so scanning even a large note copies nothing. The document must not change while
+ * the view is in use.
+ */
+public class DocumentCharSequence implements CharSequence {
+    private final Document doc;
+    private final int start;
+    private final int end;
+    private final Segment segment = new Segment();
+    private int segmentStart;
+    private int segmentEnd;
+
+    public DocumentCharSequence(Document doc) {
+        this(doc, 0, doc.getLength());
+    }
+
+    private DocumentCharSequence(Document doc, int start, int end) {
+        this.doc = doc;
+        this.start = start;
+        this.end = end;
+        segment.setPartialReturn(true);
+    }
+
+    @Override
+    public int length() {
+        return end - start;
+    }
+
+    @Override
+    public char charAt(int index) {
+        int pos = start + index;
+        if (pos < segmentStart || pos >= segmentEnd) {
+            if (index < 0 || pos >= end) throw new IndexOutOfBoundsException("Index " + index + ", length " + length());
+            load(pos);
+        }
+        return segment.array[segment.offset + pos - segmentStart];
+    }
+
+    @Override
+    public CharSequence subSequence(int from, int to) {
+        if (from < 0 || to > length() || from > to) throw new IndexOutOfBoundsException(from + ".." + to);
+        return new DocumentCharSequence(doc, start + from, start + to);
+    }
+
+    @Override
+    public String toString() {
+        try {
+            return doc.getText(start, end - start);
+        } catch (BadLocationException e) {
+            throw new IndexOutOfBoundsException(e.getMessage());
+        }
+    }
+
+    // A partial return hands back one piece of the document's piece table at a time, so a forward
+    // scan costs one load per piece it crosses, without copying.
+    private void load(int pos) {
+        try {
+            doc.getText(pos, end - pos, segment);
+        } catch (BadLocationException e) {
+            throw new IndexOutOfBoundsException(e.getMessage());
+        }
+        segmentStart = pos;
+        segmentEnd = pos + segment.count;
+    }
+}
@@ -0,0 +1,39 @@
+package notepad.search;
+
+/** One ranked search result: the note, its score and where the first match starts in its body. */
+public class SearchHit {
+    private final String noteId;
+    private final double score;
+    private final int offset;
+    private final int length;
+    private final int matches;
+
+    public SearchHit(String noteId, double score, int offset, int length, int matches) {
+        this.noteId = noteId;
+        this.score = score;
+        this.offset = offset;
+        this.length = length;
+        this.matches = matches;
+    }
+
+    public String getNoteId() {
+        return noteId;
+    }
+
+    public double getScore() {
+        return score;
+    }
+
+    /** Char offset of the first match in the indexed body, or -1 if unknown. */
+    public int getOffset() {
+        return offset;
+    }
+
+    public int getLength() {
+        return length;
+    }
+
+    public int getMatches() {
+        return matches;
+    }
+}
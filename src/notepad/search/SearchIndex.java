@@ -0,0 +1,470 @@
+package notepad.search;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * In-memory inverted index over note bodies. Each term maps to its postings: for every note
+ * that contains it, the (position, char offset) pairs of its occurrences. A note is re-indexed
+ * as a whole when it changes, which only touches that note's own postings.
+ * <p>
+ * Queries are a list of clauses that must all match: plain words, {@code prefix*} and
+ * {@code "quoted phrases"}. Hits are ranked with BM25. Readers and the single indexing
+ * thread are separated by a read/write lock.
+ */
+public class SearchIndex {
+    private static final int MAGIC = 0x4E534958; // "NSIX"
+    private static final short VERSION = 1;
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+    private static final int MAX_PREFIX_TERMS = 256;
+    private static final Pattern CLAUSE = Pattern.compile("\"([^\"]*)\"?|(\\S+)");
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final TreeMap<String, Map<Integer, int[]>> postings = new TreeMap<>();
+    private final Map<String, Integer> docIds = new HashMap<>();
+    private final List<Doc> docs = new ArrayList<>();
+    private final Deque<Integer> freeIds = new ArrayDeque<>();
+    private long totalLength;
+
+    private static final class Doc {
+        final String noteId;
+        final int length;
+        final String[] terms;
+
+        Doc(String noteId, int length, String[] terms) {
+            this.noteId = noteId;
+            this.length = length;
+            this.terms = terms;
+        }
+    }
+
+    private static final class Match {
+        double score;
+        int offset = Integer.MAX_VALUE;
+        int length;
+        int count;
+
+        void add(double score, int count, int offset, int length) {
+            this.score += score;
+            this.count += count;
+            if (offset < this.offset) {
+                this.offset = offset;
+                this.length = length;
+            }
+        }
+    }
+
+    private static final class Clause {
+        final List<String> terms;
+        final boolean prefix;
+
+        Clause(List<String> terms, boolean prefix) {
+            this.terms = terms;
+            this.prefix = prefix;
+        }
+    }
+
+    /** Replaces whatever was indexed for the note with the terms of {@code content}. */
+    public void update(String noteId, CharSequence content) {
+        Map<String, IntList> occurrences = new HashMap<>();
+        int length = Tokenizer.tokenize(content == null ? "" : content, (term, position, offset) -> {
+            IntList list = occurrences.get(term);
+            if (list == null) {
+                list = new IntList();
+                occurrences.put(term, list);
+            }
+            list.add(position);
+            list.add(offset);
+        });
+        lock.writeLock().lock();
+        try {
+            removeLocked(noteId);
+            int docId = freeIds.isEmpty() ? docs.size() : freeIds.pop();
+            Doc doc = new Doc(noteId, length, occurrences.keySet().toArray(new String[0]));
+            if (docId == docs.size()) docs.add(doc); else docs.set(docId, doc);
+            docIds.put(noteId, docId);
+            totalLength += length;
+            for (Map.Entry<String, IntList> entry : occurrences.entrySet()) {
+                postings.computeIfAbsent(entry.getKey(), k -> new HashMap<>()).put(docId, entry.getValue().toArray());
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(String noteId) {
+        lock.writeLock().lock();
+        try {
+            removeLocked(noteId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            postings.clear();
+            docIds.clear();
+            docs.clear();
+            freeIds.clear();
+            totalLength = 0;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return docIds.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** Returns up to {@code limit} notes matching every clause of the query, best first. */
+    public List<SearchHit> search(String query, int limit) {
+        List<Clause> clauses = parse(query);
+        if (clauses.isEmpty()) return Collections.emptyList();
+        lock.readLock().lock();
+        try {
+            clauses.sort(Comparator.comparingLong(this::estimate));
+            Map<Integer, Match> matches = null;
+            for (Clause clause : clauses) {
+                Map<Integer, Match> next = evaluate(clause, matches == null ? null : matches.keySet());
+                if (matches != null) {
+                    for (Map.Entry<Integer, Match> entry : next.entrySet()) {
+                        Match m = entry.getValue();
+                        matches.get(entry.getKey()).add(m.score, m.count, m.offset, m.length);
+                    }
+                    matches.keySet().retainAll(next.keySet());
+                } else {
+                    matches = next;
+                }
+                if (matches.isEmpty()) return Collections.emptyList();
+            }
+            return topHits(matches, limit);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private List<SearchHit> topHits(Map<Integer, Match> matches, int limit) {
+        PriorityQueue<Map.Entry<Integer, Match>> best =
+                new PriorityQueue<>(Comparator.comparingDouble(e -> e.getValue().score));
+        for (Map.Entry<Integer, Match> entry : matches.entrySet()) {
+            best.add(entry);
+            if (best.size() > limit) best.poll();
+        }
+        List<SearchHit> hits = new ArrayList<>(best.size());
+        while (!best.isEmpty()) {
+            Map.Entry<Integer, Match> entry = best.poll();
+            Match m = entry.getValue();
+            hits.add(new SearchHit(docs.get(entry.getKey()).noteId, m.score, m.offset, m.length, m.count));
+        }
+        Collections.reverse(hits);
+        return hits;
+    }
+
+    private static List<Clause> parse(String query) {
+        List<Clause> clauses = new ArrayList<>();
+        Matcher m = CLAUSE.matcher(query == null ? "" : query);
+        while (m.find()) {
+            if (m.group(1) != null) {
+                List<String> terms = new ArrayList<>();
+                Tokenizer.tokenize(m.group(1), (term, position, offset) -> terms.add(term));
+                if (!terms.isEmpty()) clauses.add(new Clause(terms, false));
+            } else {
+                String word = m.group(2);
+                boolean prefix = word.endsWith("*");
+                List<String> terms = new ArrayList<>();
+                Tokenizer.tokenize(word, (term, position, offset) -> terms.add(term));
+                if (terms.isEmpty()) continue;
+                // "foo-bar" tokenizes into a phrase; a trailing * only applies to a single word.
+                clauses.add(new Clause(terms, prefix && terms.size() == 1));
+            }
+        }
+        return clauses;
+    }
+
+    private long estimate(Clause clause) {
+        if (clause.prefix) return Long.MAX_VALUE / 2;
+        long min = Long.MAX_VALUE;
+        for (String term : clause.terms) {
+            Map<Integer, int[]> p = postings.get(term);
+            min = Math.min(min, p == null ? 0 : p.size());
+        }
+        return min;
+    }
+
+    private Map<Integer, Match> evaluate(Clause clause, Set<Integer> candidates) {
+        if (clause.prefix) {
+            Map<Integer, Match> result = new HashMap<>();
+            String prefix = clause.terms.get(0);
+            int expanded = 0;
+            for (Map.Entry<String, Map<Integer, int[]>> entry
+                    : postings.subMap(prefix, true, prefix + Character.MAX_VALUE, true).entrySet()) {
+                if (expanded++ >= MAX_PREFIX_TERMS) break;
+                addTerm(entry.getKey(), entry.getValue(), candidates, result);
+            }
+            return result;
+        }
+        if (clause.terms.size() == 1) {
+            Map<Integer, Match> result = new HashMap<>();
+            Map<Integer, int[]> p = postings.get(clause.terms.get(0));
+            if (p != null) addTerm(clause.terms.get(0), p, candidates, result);
+            return result;
+        }
+        return evaluatePhrase(clause.terms, candidates);
+    }
+
+    private void addTerm(String term, Map<Integer, int[]> p, Set<Integer> candidates, Map<Integer, Match> result) {
+        double idf = idf(p.size());
+        for (Integer docId : candidates == null || candidates.size() > p.size() ? p.keySet() : candidates) {
+            int[] occ = p.get(docId);
+            if (occ == null || candidates != null && !candidates.contains(docId)) continue;
+            int tf = occ.length / 2;
+            result.computeIfAbsent(docId, k -> new Match()).add(bm25(idf, tf, docId), tf, occ[1], term.length());
+        }
+    }
+
+    private Map<Integer, Match> evaluatePhrase(List<String> terms, Set<Integer> candidates) {
+        List<Map<Integer, int[]>> lists = new ArrayList<>();
+        double idf = 0;
+        for (String term : terms) {
+            Map<Integer, int[]> p = postings.get(term);
+            if (p == null) return Collections.emptyMap();
+            lists.add(p);
+            idf += idf(p.size());
+        }
+        Map<Integer, int[]> first = lists.get(0);
+        Map<Integer, Match> result = new HashMap<>();
+        String last = terms.get(terms.size() - 1);
+        for (Integer docId : candidates == null || candidates.size() > first.size() ? first.keySet() : candidates) {
+            int[] head = first.get(docId);
+            if (head == null || candidates != null && !candidates.contains(docId)) continue;
+            int count = 0;
+            int offset = -1;
+            int end = -1;
+            for (int i = 0; i < head.length; i += 2) {
+                int endOffset = phraseEnd(lists, docId, head[i]);
+                if (endOffset < 0) continue;
+                if (count++ == 0) {
+                    offset = head[i + 1];
+                    end = endOffset + last.length();
+                }
+            }
+            if (count > 0) {
+                result.computeIfAbsent(docId, k -> new Match()).add(bm25(idf, count, docId), count, offset, end - offset);
+            }
+        }
+        return result;
+    }
+
+    /** Char offset of the last word if the phrase starts at {@code position}, else -1. */
+    private static int phraseEnd(List<Map<Integer, int[]>> lists, Integer docId, int position) {
+        int offset = -1;
+        for (int t = 1; t < lists.size(); t++) {
+            int[] occ = lists.get(t).get(docId);
+            if (occ == null) return -1;
+            int at = findPosition(occ, position + t);
+            if (at < 0) return -1;
+            offset = occ[at + 1];
+        }
+        return offset;
+    }
+
+    // Binary search over the even (position) slots of a (position, offset) array.
+    private static int findPosition(int[] occ, int position) {
+        int lo = 0;
+        int hi = occ.length / 2 - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int value = occ[mid * 2];
+            if (value < position) lo = mid + 1;
+            else if (value > position) hi = mid - 1;
+            else return mid * 2;
+        }
+        return -1;
+    }
+
+    private double idf(int docFrequency) {
+        int n = docIds.size();
+        return Math.log(1 + (n - docFrequency + 0.5) / (docFrequency + 0.5));
+    }
+
+    private double bm25(double idf, int tf, int docId) {
+        double avg = docIds.isEmpty() ? 1 : Math.max(1, (double) totalLength / docIds.size());
+        double norm = K1 * (1 - B + B * docs.get(docId).length / avg);
+        return idf * tf * (K1 + 1) / (tf + norm);
+    }
+
+    private void removeLocked(String noteId) {
+        Integer docId = docIds.remove(noteId);
+        if (docId == null) return;
+        Doc doc = docs.get(docId);
+        for (String term : doc.terms) {
+            Map<Integer, int[]> p = postings.get(term);
+            if (p != null) {
+                p.remove(docId);
+                if (p.isEmpty()) postings.remove(term);
+            }
+        }
+        totalLength -= doc.length;
+        docs.set(docId, null);
+        freeIds.push(docId);
+    }
+
+    /**
+     * Writes the index, tagged with the store position it reflects. Positions and offsets are
+     * delta-encoded varints.
+     */
+    public void save(Path file, long generation, long journalBytes) throws IOException {
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        lock.readLock().lock();
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+            out.writeInt(MAGIC);
+            out.writeShort(VERSION);
+            out.writeLong(generation);
+            out.writeLong(journalBytes);
+            writeVarint(out, docIds.size());
+            for (Map.Entry<String, Integer> entry : docIds.entrySet()) {
+                writeVarint(out, entry.getValue());
+                out.writeUTF(entry.getKey());
+                writeVarint(out, docs.get(entry.getValue()).length);
+            }
+            writeVarint(out, postings.size());
+            for (Map.Entry<String, Map<Integer, int[]>> term : postings.entrySet()) {
+                out.writeUTF(term.getKey());
+                writeVarint(out, term.getValue().size());
+                for (Map.Entry<Integer, int[]> posting : term.getValue().entrySet()) {
+                    int[] occ = posting.getValue();
+                    writeVarint(out, posting.getKey());
+                    writeVarint(out, occ.length / 2);
+                    int position = 0;
+                    int offset = 0;
+                    for (int i = 0; i < occ.length; i += 2) {
+                        writeVarint(out, occ[i] - position);
+                        writeVarint(out, occ[i + 1] - offset);
+                        position = occ[i];
+                        offset = occ[i + 1];
+                    }
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Replaces the contents with an index saved by {@link #save}. Returns false, leaving the index
+     * untouched, if the file is missing, unreadable or was saved at a different store position.
+     */
+    public boolean load(Path file, long generation, long journalBytes) {
+        if (!Files.exists(file)) return false;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readShort() != VERSION) return false;
+            if (in.readLong() != generation || in.readLong() != journalBytes) return false;
+            SearchIndex index = new SearchIndex();
+            int docCount = readVarint(in);
+            Map<Integer, List<String>> termsByDoc = new HashMap<>();
+            Map<Integer, String> noteIds = new HashMap<>();
+            Map<Integer, Integer> lengths = new HashMap<>();
+            int maxId = -1;
+            for (int i = 0; i < docCount; i++) {
+                int docId = readVarint(in);
+                noteIds.put(docId, in.readUTF());
+                lengths.put(docId, readVarint(in));
+                termsByDoc.put(docId, new ArrayList<>());
+                maxId = Math.max(maxId, docId);
+            }
+            int termCount = readVarint(in);
+            for (int t = 0; t < termCount; t++) {
+                String term = in.readUTF();
+                int postingCount = readVarint(in);
+                Map<Integer, int[]> p = new HashMap<>(postingCount * 2);
+                for (int i = 0; i < postingCount; i++) {
+                    int docId = readVarint(in);
+                    int[] occ = new int[readVarint(in) * 2];
+                    int position = 0;
+                    int offset = 0;
+                    for (int j = 0; j < occ.length; j += 2) {
+                        position += readVarint(in);
+                        offset += readVarint(in);
+                        occ[j] = position;
+                        occ[j + 1] = offset;
+                    }
+                    p.put(docId, occ);
+                    termsByDoc.get(docId).add(term);
+                }
+                index.postings.put(term, p);
+            }
+            for (int docId = 0; docId <= maxId; docId++) {
+                String noteId = noteIds.get(docId);
+                if (noteId == null) {
+                    index.docs.add(null);
+                    index.freeIds.push(docId);
+                } else {
+                    index.docs.add(new Doc(noteId, lengths.get(docId), termsByDoc.get(docId).toArray(new String[0])));
+                    index.docIds.put(noteId, docId);
+                    index.totalLength += lengths.get(docId);
+                }
+            }
+            lock.writeLock().lock();
+            try {
+                clear();
+                postings.putAll(index.postings);
+                docIds.putAll(index.docIds);
+                docs.addAll(index.docs);
+                freeIds.addAll(index.freeIds);
+                totalLength = index.totalLength;
+            } finally {
+                lock.writeLock().unlock();
+            }
+            return true;
+        } catch (IOException | RuntimeException e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    private static void writeVarint(DataOutput out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    private static int readVarint(DataInput in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            byte b = in.readByte();
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) return value;
+        }
+        throw new IOException("Malformed varint");
+    }
+
+    private static final class IntList {
+        private int[] values = new int[4];
+        private int size;
+
+        void add(int value) {
+            if (size == values.length) values = Arrays.copyOf(values, size * 2);
+            values[size++] = value;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+}
@@ -0,0 +1,180 @@
+package notepad.search;
+
+import java.util.Arrays;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Finds occurrences of a query in a {@link CharSequence}, in the manner of a {@link Matcher}:
+ * {@link #reset} onto the text, then call {@link #find} and read {@link #start}/{@link #end}.
+ * <p>
+ * Literal queries use Boyer-Moore-Horspool, comparing case-folded chars when case is ignored;
+ * regex queries use {@link Pattern}. Whole-word mode rejects matches that touch a letter, digit
+ * or underscore on either side.
+ */
+public final class TextFinder {
+    private final String query;
+    private final boolean matchCase;
+    private final boolean wholeWord;
+    private final Pattern pattern;
+    private final char[] folded;
+    private final int[] shift = new int[256];
+    private CharSequence text;
+    private Matcher matcher;
+    private int start = -1;
+    private int end = -1;
+
+    /** @throws java.util.regex.PatternSyntaxException if {@code regex} is set and the query is not a valid pattern */
+    public TextFinder(String query, boolean matchCase, boolean wholeWord, boolean regex) {
+        if (query.isEmpty()) throw new IllegalArgumentException("Empty query");
+        this.query = query;
+        this.matchCase = matchCase;
+        this.wholeWord = wholeWord;
+        if (regex) {
+            pattern = Pattern.compile(query, matchCase ? Pattern.MULTILINE
+                    : Pattern.MULTILINE | Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE);
+            folded = null;
+        } else {
+            pattern = null;
+            folded = new char[query.length()];
+            for (int i = 0; i < folded.length; i++) folded[i] = fold(query.charAt(i));
+            int m = folded.length;
+            Arrays.fill(shift, m);
+            // Chars sharing a bucket keep the smallest shift, which is always safe.
+            for (int i = 0; i < m - 1; i++) shift[folded[i] & 0xFF] = m - 1 - i;
+        }
+    }
+
+    public String getQuery() {
+        return query;
+    }
+
+    public boolean isRegex() {
+        return pattern != null;
+    }
+
+    public TextFinder reset(CharSequence text) {
+        this.text = text;
+        this.matcher = pattern == null ? null : pattern.matcher(text);
+        start = end = -1;
+        return this;
+    }
+
+    /** Finds the next match at or after {@code from}. */
+    public boolean find(int from) {
+        if (from < 0 || from > text.length()) return fail();
+        if (pattern != null) {
+            if (!matcher.find(from)) return fail();
+            while (wholeWord && !isWordBounded(matcher.start(), matcher.end())) {
+                int next = matcher.start() + 1;
+                if (next > text.length() || !matcher.find(next)) return fail();
+            }
+            start = matcher.start();
+            end = matcher.end();
+            return true;
+        }
+        int at = from;
+        while ((at = scan(at)) >= 0) {
+            if (!wholeWord || isWordBounded(at, at + folded.length)) {
+                start = at;
+                end = at + folded.length;
+                return true;
+            }
+            at++;
+        }
+        return fail();
+    }
+
+    /** Finds the match following the current one; an empty regex match advances by one char. */
+    public boolean findNext() {
+        if (start < 0) return find(0);
+        return find(end > start ? end : end + 1);
+    }
+
+    public int start() {
+        return start;
+    }
+
+    public int end() {
+        return end;
+    }
+
+    /**
+     * The replacement text for the current match. Regex templates may refer to groups as
+     * {@code $n} or {@code ${name}} and escape with a backslash, as in
+     * {@link Matcher#appendReplacement}; literal templates are used as they are.
+     */
+    public String replacement(String template) {
+        if (pattern == null || (template.indexOf('$') < 0 && template.indexOf('\\') < 0)) return template;
+        StringBuilder out = new StringBuilder(template.length());
+        for (int i = 0; i < template.length(); i++) {
+            char c = template.charAt(i);
+            if (c == '\\' && i + 1 < template.length()) {
+                out.append(template.charAt(++i));
+            } else if (c == '$' && i + 1 < template.length()) {
+                char next = template.charAt(i + 1);
+                if (next == '{') {
+                    int close = template.indexOf('}', i + 2);
+                    if (close < 0) throw new IllegalArgumentException("Unclosed group name in replacement");
+                    appendGroup(out, matcher.group(template.substring(i + 2, close)));
+                    i = close;
+                } else if (Character.isDigit(next)) {
+                    int group = next - '0';
+                    i++;
+                    // Like Matcher, take further digits only while they still name a group.
+                    while (i + 1 < template.length() && Character.isDigit(template.charAt(i + 1))) {
+                        int wider = group * 10 + template.charAt(i + 1) - '0';
+                        if (wider > matcher.groupCount()) break;
+                        group = wider;
+                        i++;
+                    }
+                    appendGroup(out, matcher.group(group));
+                } else {
+                    out.append(c);
+                }
+            } else {
+                out.append(c);
+            }
+        }
+        return out.toString();
+    }
+
+    private static void appendGroup(StringBuilder out, String group) {
+        if (group != null) out.append(group);
+    }
+
+    // Boyer-Moore-Horspool: compare right to left, then skip by the last char of the window.
+    private int scan(int from) {
+        int m = folded.length;
+        int last = text.length() - m;
+        int at = from;
+        while (at <= last) {
+            char tail = fold(text.charAt(at + m - 1));
+            if (tail == folded[m - 1]) {
+                int i = m - 2;
+                while (i >= 0 && fold(text.charAt(at + i)) == folded[i]) i--;
+                if (i < 0) return at;
+            }
+            at += shift[tail & 0xFF];
+        }
+        return -1;
+    }
+
+    private char fold(char c) {
+        return matchCase ? c : Character.toLowerCase(Character.toUpperCase(c));
+    }
+
+    private boolean isWordBounded(int from, int to) {
+        return (from == 0 || !isWordChar(text.charAt(from - 1)))
+                && (to >= text.length() || !isWordChar(text.charAt(to)));
+    }
+
+    private static boolean isWordChar(char c) {
+        return Character.isLetterOrDigit(c) || c == '_';
+    }
+
+    private boolean fail() {
+        start = end = -1;
+        return false;
+    }
+}
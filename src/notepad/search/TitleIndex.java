@@ -0,0 +1,209 @@
+package notepad.search;
+
+import notepad.model.Note;
+
+import java.util.*;
+
+/**
+ * N-gram index over note titles for the quick switcher. Every distinct 1-, 2- and 3-char
+ * substring of a lower-cased title maps to a sorted array of note slots, so a query only
+ * touches the postings of its own grams, never the full list of titles.
+ * <p>
+ * A query matches titles that contain it; when it is three or more chars long, titles sharing
+ * at least a third of its trigrams are added after those, which tolerates a typo or two.
+ */
+public class TitleIndex {
+    private static final int MAX_GRAM = 3;
+    private static final int MAX_FUZZY_RESULTS = 200;
+
+    private final Map<String, Postings> grams = new HashMap<>();
+    private final Map<Note, Integer> slots = new HashMap<>();
+    private final List<Note> notes = new ArrayList<>();
+    private final List<String> titles = new ArrayList<>();
+    private final Deque<Integer> freeSlots = new ArrayDeque<>();
+
+    /** Adds a note, or re-indexes it after its title changed. */
+    public void put(Note note) {
+        String title = normalize(note.getTitle());
+        Integer slot = slots.get(note);
+        if (slot != null) {
+            if (title.equals(titles.get(slot))) return;
+            unindex(slot);
+        } else {
+            slot = freeSlots.isEmpty() ? notes.size() : freeSlots.pop();
+            if (slot == notes.size()) {
+                notes.add(note);
+                titles.add(title);
+            } else {
+                notes.set(slot, note);
+            }
+            slots.put(note, slot);
+        }
+        titles.set(slot, title);
+        for (String gram : indexGrams(title)) {
+            grams.computeIfAbsent(gram, k -> new Postings()).add(slot);
+        }
+    }
+
+    public void remove(Note note) {
+        Integer slot = slots.remove(note);
+        if (slot == null) return;
+        unindex(slot);
+        notes.set(slot, null);
+        titles.set(slot, null);
+        freeSlots.push(slot);
+    }
+
+    public void clear() {
+        grams.clear();
+        slots.clear();
+        notes.clear();
+        titles.clear();
+        freeSlots.clear();
+    }
+
+    /**
+     * Notes whose title contains {@code query}, ignoring case: titles starting with it first,
+     * then titles with a word starting with it, then the rest, each group in the order the
+     * notes were added. Near misses follow for queries of three or more chars.
+     */
+    public List<Note> search(String query) {
+        String q = normalize(query);
+        if (q.isEmpty()) return Collections.emptyList();
+        // Sort keys pack (rank, slot) into a long, so ordering needs no comparator calls.
+        long[] keys = new long[16];
+        int count = 0;
+        Postings[] lists = postingsOf(grams(q));
+        if (lists != null) {
+            Postings shortest = lists[0];
+            for (int i = 0; i < shortest.size; i++) {
+                int slot = shortest.ids[i];
+                if (containsAll(lists, slot) && (q.length() <= MAX_GRAM || titles.get(slot).contains(q))) {
+                    if (count == keys.length) keys = Arrays.copyOf(keys, count * 2);
+                    keys[count++] = (long) rank(titles.get(slot), q) << 32 | slot;
+                }
+            }
+        }
+        Arrays.sort(keys, 0, count);
+        List<Note> result = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) result.add(notes.get((int) keys[i]));
+        if (q.length() >= MAX_GRAM && count < MAX_FUZZY_RESULTS) addNearMisses(q, result);
+        return result;
+    }
+
+    private void addNearMisses(String q, List<Note> result) {
+        Set<String> trigrams = new LinkedHashSet<>();
+        for (int i = 0; i + MAX_GRAM <= q.length(); i++) trigrams.add(q.substring(i, i + MAX_GRAM));
+        if (trigrams.size() < 2) return;
+        int needed = (trigrams.size() + 2) / 3;
+        Map<Integer, Integer> shared = new HashMap<>();
+        for (String trigram : trigrams) {
+            Postings p = grams.get(trigram);
+            if (p == null) continue;
+            for (int i = 0; i < p.size; i++) shared.merge(p.ids[i], 1, Integer::sum);
+        }
+        for (Note note : result) shared.remove(slots.get(note));
+        List<Integer> near = new ArrayList<>();
+        for (Map.Entry<Integer, Integer> entry : shared.entrySet()) {
+            if (entry.getValue() >= needed) near.add(entry.getKey());
+        }
+        near.sort(Comparator.comparingInt((Integer slot) -> -shared.get(slot)).thenComparingInt(slot -> slot));
+        for (int i = 0; i < near.size() && i < MAX_FUZZY_RESULTS; i++) result.add(notes.get(near.get(i)));
+    }
+
+    /** 0 if the title starts with the query, 1 if a word in it does, 2 otherwise. */
+    private static int rank(String title, String q) {
+        int at = title.indexOf(q);
+        if (at == 0) return 0;
+        if (at > 0 && !Character.isLetterOrDigit(title.charAt(at - 1))) return 1;
+        return 2;
+    }
+
+    /** The postings of every gram, shortest first, or null if any gram is unknown. */
+    private Postings[] postingsOf(Set<String> queryGrams) {
+        Postings[] lists = new Postings[queryGrams.size()];
+        int n = 0;
+        for (String gram : queryGrams) {
+            Postings p = grams.get(gram);
+            if (p == null) return null;
+            lists[n++] = p;
+        }
+        Arrays.sort(lists, Comparator.comparingInt(p -> p.size));
+        return lists;
+    }
+
+    private static boolean containsAll(Postings[] lists, int slot) {
+        for (int i = 1; i < lists.length; i++) {
+            if (!lists[i].contains(slot)) return false;
+        }
+        return true;
+    }
+
+    /**
+     * The distinct grams of {@code text}: the text itself if it is at most three chars,
+     * otherwise its trigrams. Indexed titles also store their shorter grams.
+     */
+    private static Set<String> grams(String text) {
+        Set<String> out = new HashSet<>();
+        if (text.length() <= MAX_GRAM) {
+            out.add(text);
+            return out;
+        }
+        for (int i = 0; i + MAX_GRAM <= text.length(); i++) out.add(text.substring(i, i + MAX_GRAM));
+        return out;
+    }
+
+    /** Every 1- to 3-char substring of {@code title}; repeats are left to {@link Postings} to ignore. */
+    private static List<String> indexGrams(String title) {
+        List<String> out = new ArrayList<>(title.length() * MAX_GRAM);
+        for (int n = 1; n <= MAX_GRAM; n++) {
+            for (int i = 0; i + n <= title.length(); i++) out.add(title.substring(i, i + n));
+        }
+        return out;
+    }
+
+    private void unindex(int slot) {
+        for (String gram : indexGrams(titles.get(slot))) {
+            Postings p = grams.get(gram);
+            if (p != null && p.remove(slot) && p.size == 0) grams.remove(gram);
+        }
+    }
+
+    private static String normalize(String s) {
+        return s == null ? "" : s.toLowerCase(Locale.ROOT);
+    }
+
+    /** A sorted set of slots. Slots are mostly handed out in increasing order, so adds append. */
+    private static final class Postings {
+        int[] ids = new int[4];
+        int size;
+
+        void add(int id) {
+            if (size > 0 && ids[size - 1] == id) return;
+            if (size == 0 || ids[size - 1] < id) {
+                if (size == ids.length) ids = Arrays.copyOf(ids, size * 2);
+                ids[size++] = id;
+                return;
+            }
+            int at = Arrays.binarySearch(ids, 0, size, id);
+            if (at >= 0) return;
+            at = -at - 1;
+            if (size == ids.length) ids = Arrays.copyOf(ids, size * 2);
+            System.arraycopy(ids, at, ids, at + 1, size - at);
+            ids[at] = id;
+            size++;
+        }
+
+        boolean remove(int id) {
+            int at = Arrays.binarySearch(ids, 0, size, id);
+            if (at < 0) return false;
+            System.arraycopy(ids, at + 1, ids, at, size - at - 1);
+            size--;
+            return true;
+        }
+
+        boolean contains(int id) {
+            return Arrays.binarySearch(ids, 0, size, id) >= 0;
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package notepad.search;
+
+/**
+ * Splits text into lower-case runs of letters and digits. Each token reports its ordinal
+ * position (used for phrase queries) and its char offset in the text (used to jump to a hit).
+ */
+public final class Tokenizer {
+    public static final int MAX_TOKEN_LENGTH = 64;
+
+    public interface Sink {
+        void token(String term, int position, int offset);
+    }
+
+    private Tokenizer() {}
+
+    public static int tokenize(CharSequence text, Sink sink) {
+        int position = 0;
+        int length = text.length();
+        StringBuilder term = new StringBuilder();
+        int i = 0;
+        while (i < length) {
+            while (i < length && !Character.isLetterOrDigit(text.charAt(i))) i++;
+            int start = i;
+            term.setLength(0);
+            while (i < length && Character.isLetterOrDigit(text.charAt(i))) {
+                if (term.length() < MAX_TOKEN_LENGTH) term.append(Character.toLowerCase(text.charAt(i)));
+                i++;
+            }
+            if (term.length() > 0) {
+                sink.token(term.toString(), position++, start);
+            }
+        }
+        return position;
+    }
+}
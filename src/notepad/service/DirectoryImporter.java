@@ -0,0 +1,221 @@
+package notepad.service;
+
+import notepad.model.Note;
+import notepad.store.TextDecoder;
+
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Document;
+import javax.swing.text.MutableAttributeSet;
+import javax.swing.text.html.HTML;
+import javax.swing.text.html.HTMLEditorKit;
+import javax.swing.text.html.parser.ParserDelegator;
+import javax.swing.text.rtf.RTFEditorKit;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.StringReader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Reads every text, RTF and HTML file under a directory into new notes. Directories are listed
+ * and files parsed in parallel on a fork-join pool; the notes come back in path order and are
+ * not added anywhere, so the caller can hand them to {@link NoteService#addNotes} in one batch.
+ * Files that cannot be read are skipped and counted.
+ */
+public class DirectoryImporter {
+    private static final int FILES_PER_TASK = 16;
+    private static final int CHARSET_SNIFF_BYTES = 1024;
+    private static final Pattern META_CHARSET = Pattern.compile("charset\\s*=\\s*[\"']?([\\w.:-]+)", Pattern.CASE_INSENSITIVE);
+    private static final Set<String> TEXT_EXTENSIONS = new HashSet<>(Arrays.asList("txt", "text", "md", "markdown", "log"));
+    private static final Set<HTML.Tag> SKIPPED_TAGS = new HashSet<>(Arrays.asList(
+            HTML.Tag.HEAD, HTML.Tag.TITLE, HTML.Tag.SCRIPT, HTML.Tag.STYLE));
+
+    /** Receives progress from the pool threads; returning false cancels the import. */
+    public interface Progress {
+        boolean update(int filesRead, int filesFound);
+    }
+
+    private final AtomicInteger filesFound = new AtomicInteger();
+    private final AtomicInteger filesRead = new AtomicInteger();
+    private final AtomicInteger failures = new AtomicInteger();
+    private volatile boolean cancelled;
+
+    /** Whether {@code file} has an extension this importer reads. */
+    public static boolean isImportable(Path file) {
+        String ext = extension(file);
+        return TEXT_EXTENSIONS.contains(ext) || ext.equals("rtf") || ext.equals("html") || ext.equals("htm");
+    }
+
+    /** Reads all importable files below {@code dir}; throws {@link InterruptedIOException} if cancelled. */
+    public List<Note> importDirectory(Path dir, Progress progress) throws IOException {
+        // The build targets Java 11, which has no virtual threads; a pool sized to the CPUs it is.
+        ForkJoinPool pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+        try {
+            List<Note> notes = pool.invoke(new DirectoryTask(dir, progress));
+            if (cancelled) throw new InterruptedIOException("Import cancelled");
+            return notes;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /** Files skipped because they could not be read or parsed. */
+    public int getFailureCount() {
+        return failures.get();
+    }
+
+    private final class DirectoryTask extends RecursiveTask<List<Note>> {
+        private final Path dir;
+        private final Progress progress;
+
+        DirectoryTask(Path dir, Progress progress) {
+            this.dir = dir;
+            this.progress = progress;
+        }
+
+        @Override
+        protected List<Note> compute() {
+            if (cancelled) return Collections.emptyList();
+            List<Path> files = new ArrayList<>();
+            List<Path> dirs = new ArrayList<>();
+            try (DirectoryStream<Path> entries = Files.newDirectoryStream(dir)) {
+                for (Path entry : entries) {
+                    if (Files.isDirectory(entry, LinkOption.NOFOLLOW_LINKS)) dirs.add(entry);
+                    else if (isImportable(entry)) files.add(entry);
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+                failures.incrementAndGet();
+                return Collections.emptyList();
+            }
+            Collections.sort(files);
+            Collections.sort(dirs);
+            filesFound.addAndGet(files.size());
+            List<RecursiveTask<List<Note>>> tasks = new ArrayList<>();
+            for (int from = 0; from < files.size(); from += FILES_PER_TASK) {
+                tasks.add(new FilesTask(files.subList(from, Math.min(files.size(), from + FILES_PER_TASK)), progress));
+            }
+            for (Path sub : dirs) {
+                tasks.add(new DirectoryTask(sub, progress));
+            }
+            invokeAll(tasks);
+            List<Note> notes = new ArrayList<>(files.size());
+            for (RecursiveTask<List<Note>> task : tasks) {
+                notes.addAll(task.join());
+            }
+            return notes;
+        }
+    }
+
+    private final class FilesTask extends RecursiveTask<List<Note>> {
+        private final List<Path> files;
+        private final Progress progress;
+
+        FilesTask(List<Path> files, Progress progress) {
+            this.files = files;
+            this.progress = progress;
+        }
+
+        @Override
+        protected List<Note> compute() {
+            List<Note> notes = new ArrayList<>(files.size());
+            for (Path file : files) {
+                if (cancelled) break;
+                try {
+                    notes.add(new Note(file.getFileName().toString(), read(file)));
+                } catch (IOException | BadLocationException | RuntimeException e) {
+                    e.printStackTrace();
+                    failures.incrementAndGet();
+                }
+                if (!progress.update(filesRead.incrementAndGet(), filesFound.get())) cancelled = true;
+            }
+            return notes;
+        }
+    }
+
+    private static String read(Path file) throws IOException, BadLocationException {
+        byte[] bytes = Files.readAllBytes(file);
+        switch (extension(file)) {
+            case "rtf":
+                return readRtf(bytes);
+            case "html":
+            case "htm":
+                return readHtml(TextDecoder.decode(bytes, declaredCharset(bytes)));
+            default:
+                return TextDecoder.decode(bytes);
+        }
+    }
+
+    private static String readRtf(byte[] bytes) throws IOException, BadLocationException {
+        RTFEditorKit kit = new RTFEditorKit();
+        Document doc = kit.createDefaultDocument();
+        kit.read(new ByteArrayInputStream(bytes), doc, 0);
+        return doc.getText(0, doc.getLength());
+    }
+
+    // Keeps the text and turns block boundaries into line breaks; no document is built.
+    private static String readHtml(String html) throws IOException {
+        StringBuilder text = new StringBuilder(html.length() / 2);
+        new ParserDelegator().parse(new StringReader(html), new HTMLEditorKit.ParserCallback() {
+            private int skipped;
+
+            @Override
+            public void handleText(char[] data, int pos) {
+                if (skipped == 0) text.append(data);
+            }
+
+            @Override
+            public void handleStartTag(HTML.Tag tag, MutableAttributeSet a, int pos) {
+                if (SKIPPED_TAGS.contains(tag)) skipped++;
+                else if (tag.breaksFlow()) lineBreak();
+            }
+
+            @Override
+            public void handleEndTag(HTML.Tag tag, int pos) {
+                if (SKIPPED_TAGS.contains(tag)) skipped = Math.max(0, skipped - 1);
+                else if (tag.breaksFlow()) lineBreak();
+            }
+
+            @Override
+            public void handleSimpleTag(HTML.Tag tag, MutableAttributeSet a, int pos) {
+                if (tag == HTML.Tag.BR) text.append('\n');
+                else if (tag.breaksFlow() && !SKIPPED_TAGS.contains(tag)) lineBreak();
+            }
+
+            private void lineBreak() {
+                if (text.length() > 0 && text.charAt(text.length() - 1) != '\n') text.append('\n');
+            }
+        }, true);
+        int end = text.length();
+        while (end > 0 && text.charAt(end - 1) == '\n') end--;
+        return text.substring(0, end);
+    }
+
+    private static Charset declaredCharset(byte[] bytes) {
+        String head = new String(bytes, 0, Math.min(bytes.length, CHARSET_SNIFF_BYTES), StandardCharsets.ISO_8859_1);
+        Matcher m = META_CHARSET.matcher(head);
+        if (!m.find()) return null;
+        try {
+            return Charset.forName(m.group(1));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static String extension(Path file) {
+        String name = file.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        return dot < 0 ? "" : name.substring(dot + 1).toLowerCase(Locale.ROOT);
+    }
+}
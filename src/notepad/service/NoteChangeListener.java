@@ -0,0 +1,16 @@
+package notepad.service;
+
+/**
+ * Notified by {@link NoteService} after its list of notes changes. Ranges are inclusive list
+ * indexes, as in {@link javax.swing.event.ListDataListener}, and refer to the list as it is
+ * after the change (for removals: as it was before). Listeners are called on the thread that
+ * made the change.
+ */
+public interface NoteChangeListener {
+    default void notesAdded(int fromIndex, int toIndex) {}
+
+    default void notesRemoved(int fromIndex, int toIndex) {}
+
+    /** Notes in the range were renamed or replaced. */
+    default void notesChanged(int fromIndex, int toIndex) {}
+}
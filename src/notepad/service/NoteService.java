@@ -1,28 +1,236 @@
 package notepad.service;
 
+import notepad.diagnostics.Metrics;
+import notepad.model.ContentSource;
+import notepad.model.EditOp;
 import notepad.model.Note;
+import notepad.search.SearchHit;
+import notepad.search.SearchIndex;
+import notepad.search.TitleIndex;
+import notepad.store.ImageStore;
+import notepad.store.LegacyNoteMigrator;
+import notepad.store.NoteJournal;
+import notepad.store.RevisionStore;
+import notepad.store.UndoSpillFile;
+
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.io.*;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 
+/**
+ * Owns the notes and their storage. Notes are changed from one thread, the event thread in the
+ * application; listeners hear of each change on that thread. Other threads read the notes
+ * through a {@link NoteSnapshot}, which no later change affects, so exporting or indexing all
+ * notes never waits for typing and never copies the list.
+ */
 public class NoteService {
+    private static final String STORE_DIR = "notes-store";
+    private static final String LEGACY_SAVE_FILE = "notes.ser";
+    private static final long SHUTDOWN_FLUSH_MILLIS = 2000;
+    private static final long MIN_CHECKPOINT_CHARS = 64 * 1024;
+    private static final int MAX_LOGGED_OPS = 1024;
+    private static final String SEARCH_INDEX_FILE = "search.idx";
+    private static final String IMAGE_DIR = "images";
+    private static final String HISTORY_DIR = "history";
+
     private final List<Note> notes = new ArrayList<>();
-    private static final String SAVE_FILE = "notes.ser";
+    private final Map<String, Note> notesById = new HashMap<>();
+    // Each note's position in notes; positions from staleFrom on are refreshed on the next lookup.
+    private final Map<Note, Integer> noteIndexes = new IdentityHashMap<>();
+    private int staleFrom = Integer.MAX_VALUE;
+    private final Path storeDir;
+    private final Path legacySaveFile;
+    private final NoteJournal journal;
+    private final SaveScheduler saveScheduler;
+    private final ImageStore imageStore;
+    private final RevisionStore history;
+    private final Map<String, EditLog> editLogs = new HashMap<>();
+    private final SearchIndex searchIndex = new SearchIndex();
+    private final TitleIndex titleIndex = new TitleIndex();
+    private boolean titleIndexBuilt;
+    private final List<NoteChangeListener> listeners = new CopyOnWriteArrayList<>();
+    private final Map<String, Note> unindexed = new LinkedHashMap<>();
+    // Notes edited since their version in the snapshot was taken.
+    private final Map<String, Note> unversioned = new LinkedHashMap<>();
+    private volatile NoteSnapshot snapshot = NoteSnapshot.EMPTY;
+    private Future<LoadedStore> pendingLoad;
+    private boolean loading;
+    private final ExecutorService indexer = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "note-indexer");
+        t.setDaemon(true);
+        return t;
+    });
+
+    /** What a load read from disk, with the journal position the saved search index must match. */
+    private static final class LoadedStore {
+        final List<Note> notes = new ArrayList<>();
+        final List<Note> copies = new ArrayList<>();
+        long generation;
+        long journalBytes;
+        boolean migrated;
+    }
 
+    /** Size and number of the edits logged for a note since its last full checkpoint. */
+    private static final class EditLog {
+        long length;
+        long loggedChars;
+        int loggedOps;
+    }
+
+    /** Keeps notes in {@code notes-store/} under the working directory. */
+    public NoteService() {
+        this(Paths.get(STORE_DIR));
+    }
+
+    /** Keeps notes in {@code storeDir}; a legacy {@code notes.ser} is looked for next to it. */
+    public NoteService(Path storeDir) {
+        this.storeDir = storeDir;
+        this.legacySaveFile = storeDir.resolveSibling(LEGACY_SAVE_FILE);
+        this.journal = new NoteJournal(storeDir);
+        this.history = new RevisionStore(storeDir.resolve(HISTORY_DIR));
+        this.saveScheduler = new SaveScheduler(journal, history);
+        this.imageStore = new ImageStore(storeDir.resolve(IMAGE_DIR));
+    }
+
+    /**
+     * A read-only view of the live notes, for the thread that changes them; changes go through
+     * this service so listeners hear of them. Other threads use {@link #lastSnapshot}.
+     */
     public List<Note> getNotes() {
-        return notes;
+        return Collections.unmodifiableList(notes);
+    }
+
+    /**
+     * The notes as they are now, including edits not yet checkpointed, whose versions are taken
+     * first. Call on the thread that changes notes; the snapshot may then be handed to any thread.
+     */
+    public NoteSnapshot snapshot() {
+        if (!unversioned.isEmpty()) {
+            NoteSnapshot updated = snapshot;
+            for (Note note : unversioned.values()) {
+                int index = indexOf(note);
+                if (index >= 0) updated = updated.with(index, note.copy());
+            }
+            unversioned.clear();
+            snapshot = updated;
+        }
+        return snapshot;
+    }
+
+    /**
+     * The latest snapshot, from any thread, without waiting. A note edited since its last
+     * checkpoint appears as it was then.
+     */
+    public NoteSnapshot lastSnapshot() {
+        return snapshot;
+    }
+
+    /** Where the images inserted into notes are kept, each distinct image once. */
+    public ImageStore getImageStore() {
+        return imageStore;
+    }
+
+    /**
+     * The revision history of every note, written as edits are saved. It may be read from any
+     * thread, but reads do file I/O, so not from the event thread.
+     */
+    public RevisionStore getHistory() {
+        return history;
+    }
+
+    public void addNoteChangeListener(NoteChangeListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeNoteChangeListener(NoteChangeListener listener) {
+        listeners.remove(listener);
     }
 
     public void addNote(Note note) {
         notes.add(note);
+        notesById.put(note.getId(), note);
+        noteIndexes.put(note, notes.size() - 1);
+        if (titleIndexBuilt) titleIndex.put(note);
+        snapshot = snapshot.plus(Collections.singletonList(checkpoint(note)));
+        compactIfNeeded();
+        int index = notes.size() - 1;
+        for (NoteChangeListener listener : listeners) listener.notesAdded(index, index);
+    }
+
+    /**
+     * Adds many notes at once, as an import does: listeners hear of them in one event, and their
+     * checkpoints are queued together and indexed in one task, so the store writes them in one flush.
+     */
+    public void addNotes(List<Note> added) {
+        if (added.isEmpty()) return;
+        int from = notes.size();
+        notes.addAll(added);
+        for (int i = from; i < notes.size(); i++) {
+            notesById.put(notes.get(i).getId(), notes.get(i));
+            noteIndexes.put(notes.get(i), i);
+        }
+        List<Note> copies = new ArrayList<>(added.size());
+        for (Note note : added) {
+            if (titleIndexBuilt) titleIndex.put(note);
+            copies.add(note.copy());
+        }
+        saveScheduler.scheduleCheckpoints(copies);
+        snapshot = snapshot.plus(copies);
+        indexer.execute(() -> {
+            for (Note copy : copies) {
+                indexNow(copy);
+            }
+        });
+        compactIfNeeded();
+        for (NoteChangeListener listener : listeners) listener.notesAdded(from, notes.size() - 1);
     }
 
     public void removeNote(Note note) {
-        notes.remove(note);
+        int index = indexOf(note);
+        if (index >= 0) {
+            notes.remove(index);
+            notesById.remove(note.getId());
+            noteIndexes.remove(note);
+            staleFrom = Math.min(staleFrom, index);
+            if (titleIndexBuilt) titleIndex.remove(note);
+            editLogs.remove(note.getId());
+            unindexed.remove(note.getId());
+            unversioned.remove(note.getId());
+            snapshot = snapshot.without(index);
+            saveScheduler.markRemoved(note);
+            indexer.execute(() -> searchIndex.remove(note.getId()));
+            for (NoteChangeListener listener : listeners) listener.notesRemoved(index, index);
+        }
     }
 
     public void updateNote(int index, Note note) {
-        notes.set(index, note);
+        Note replaced = notes.set(index, note);
+        notesById.remove(replaced.getId());
+        notesById.put(note.getId(), note);
+        noteIndexes.remove(replaced);
+        noteIndexes.put(note, index);
+        if (titleIndexBuilt) {
+            titleIndex.remove(replaced);
+            titleIndex.put(note);
+        }
+        unversioned.remove(replaced.getId());
+        snapshot = snapshot.with(index, checkpoint(note));
+        compactIfNeeded();
+        for (NoteChangeListener listener : listeners) listener.notesChanged(index, index);
     }
 
     public Note getNote(int index) {
@@ -33,22 +241,311 @@ public class NoteService {
         return notes.size();
     }
 
+    /**
+     * Notes whose title contains {@code query} or nearly does, best matches first; see
+     * {@link TitleIndex}. The index is built on first use, so startup does not pay for it.
+     */
+    public List<Note> findNotesByTitle(String query) {
+        if (!titleIndexBuilt) {
+            for (Note note : notes) {
+                titleIndex.put(note);
+            }
+            titleIndexBuilt = true;
+        }
+        return titleIndex.search(query);
+    }
+
+    public Note findNote(String id) {
+        return notesById.get(id);
+    }
+
+    // A removal shifts the notes after it, which are renumbered here rather than on every removal.
+    private int indexOf(Note note) {
+        for (int i = staleFrom; i < notes.size(); i++) noteIndexes.put(notes.get(i), i);
+        staleFrom = Integer.MAX_VALUE;
+        Integer index = noteIndexes.get(note);
+        return index == null ? -1 : index;
+    }
+
+    /** Queues a full checkpoint of a note; the background scheduler writes it to the journal. */
+    public void saveNote(Note note) {
+        if (note == null) return;
+        Note version = checkpoint(note);
+        int index = indexOf(note);
+        if (index >= 0) snapshot = snapshot.with(index, version);
+        compactIfNeeded();
+    }
+
+    // The copy that is written and indexed also becomes the note's version in the snapshot.
+    private Note checkpoint(Note note) {
+        Note copy = note.copy();
+        EditLog log = editLogs.get(note.getId());
+        if (log != null) {
+            log.length = copy.getContent() == null ? 0 : copy.getContent().length();
+            log.loggedChars = 0;
+            log.loggedOps = 0;
+        }
+        saveScheduler.scheduleCheckpoint(copy);
+        unindexed.remove(note.getId());
+        unversioned.remove(note.getId());
+        index(copy);
+        return copy;
+    }
+
+    /**
+     * Searches the bodies of all notes. Notes edited since their last checkpoint are re-indexed
+     * first, and the query runs on the indexing thread after every earlier index update.
+     */
+    public Future<List<SearchHit>> search(String query, int limit) {
+        reindexEdited();
+        return indexer.submit(() -> {
+            Metrics.Span span = Metrics.start(Metrics.SEARCH);
+            try {
+                return searchIndex.search(query, limit);
+            } finally {
+                span.end();
+            }
+        });
+    }
+
+    /** Logs text inserted into a note's open document; costs O(inserted text), not O(note). */
+    public void recordInsert(Note note, int offset, String text) {
+        recordEdit(note, EditOp.insert(offset, text));
+    }
+
+    public void recordRemove(Note note, int offset, int length) {
+        recordEdit(note, EditOp.remove(offset, length));
+    }
+
+    /** Logs a formatting change; the note's current formatting is queued as a whole. */
+    public void recordStyles(Note note) {
+        saveScheduler.scheduleStyles(note.getId(), note.getStyles());
+        unversioned.put(note.getId(), note);
+    }
+
+    public void renameNote(Note note, String title) {
+        note.setTitle(title);
+        if (titleIndexBuilt) titleIndex.put(note);
+        int index = indexOf(note);
+        if (index >= 0) {
+            Note version = snapshot.get(index).copy();
+            version.setTitle(title);
+            snapshot = snapshot.with(index, version);
+            for (NoteChangeListener listener : listeners) listener.notesChanged(index, index);
+        }
+        saveScheduler.scheduleRename(note.getId(), title);
+    }
+
+    /** Writes pending edits and folds the journal into a fresh snapshot, waiting until done. */
     public void saveAllNotes() {
-        try (ObjectOutputStream out = new ObjectOutputStream(new FileOutputStream(SAVE_FILE))) {
-            out.writeObject(new ArrayList<>(notes));
+        Metrics.Span span = Metrics.start(Metrics.SAVE_ALL);
+        try {
+            saveScheduler.compact(snapshot()).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            e.printStackTrace();
+        } finally {
+            span.end(journal.getStoreBytes());
+        }
+    }
+
+    /**
+     * Queues the edit, and once the edits logged since the last checkpoint outweigh half the
+     * note, queues a fresh checkpoint so replay stays short. The checkpoint copies the note,
+     * but because the threshold grows with its length that copy costs O(1) per edited char.
+     * Replaying each op moves the rest of the body, so a checkpoint is also taken after
+     * {@link #MAX_LOGGED_OPS} ops; runs of typing are joined into one op and count once.
+     */
+    private void recordEdit(Note note, EditOp op) {
+        boolean separate = saveScheduler.scheduleEdit(note.getId(), op);
+        unindexed.put(note.getId(), note);
+        unversioned.put(note.getId(), note);
+        EditLog log = editLogs.get(note.getId());
+        if (log == null) {
+            log = new EditLog();
+            editLogs.put(note.getId(), log);
+            // The history may not have seen the note's text as loaded, so it is given that first.
+            saveScheduler.scheduleHistoryBase(note.copy());
+        }
+        log.loggedChars += op.getLength();
+        if (separate) log.loggedOps++;
+        log.length += op.getKind() == EditOp.INSERT ? op.getLength() : -op.getLength();
+        if (log.loggedChars > Math.max(MIN_CHECKPOINT_CHARS, log.length / 2) || log.loggedOps > MAX_LOGGED_OPS) {
+            saveNote(note);
+        } else {
+            compactIfNeeded();
+        }
+    }
+
+    private void index(Note detached) {
+        indexer.execute(() -> indexNow(detached));
+    }
+
+    private void indexNow(Note detached) {
+        ContentSource source = detached.getContentSource();
+        searchIndex.update(detached.getId(), source != null ? source.loadUncached() : detached.getContent());
+    }
+
+    private void reindexEdited() {
+        for (Note note : unindexed.values()) {
+            index(note.copy());
+        }
+        unindexed.clear();
+    }
+
+    // A snapshot taken while loading would leave out the notes not added yet.
+    private void compactIfNeeded() {
+        if (!loading && saveScheduler.needsCompaction()) {
+            saveScheduler.compact(snapshot());
+        }
+    }
+
+    public void setAutoSaveInterval(int seconds) {
+        saveScheduler.setInterval(seconds);
+    }
+
+    public int getAutoSaveInterval() {
+        return saveScheduler.getInterval();
+    }
+
+    /**
+     * Flushes pending edits with a bounded wait and releases the store; call when the window closes.
+     * The search index is saved with the journal position it matches, so the next start can reuse it.
+     */
+    public void shutdown() {
+        reindexEdited();
+        indexer.shutdown();
+        try {
+            if (indexer.awaitTermination(SHUTDOWN_FLUSH_MILLIS, TimeUnit.MILLISECONDS)
+                    && saveScheduler.flush(SHUTDOWN_FLUSH_MILLIS)) {
+                searchIndex.save(searchIndexFile(), journal.getGeneration(), journal.getJournalBytes());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         } catch (IOException e) {
             e.printStackTrace();
         }
+        if (!saveScheduler.shutdown(SHUTDOWN_FLUSH_MILLIS)) {
+            System.err.println("Pending notes were not saved within " + SHUTDOWN_FLUSH_MILLIS + " ms");
+        }
     }
 
+    /** Reads the whole store and adds its notes, waiting until done; see {@link #beginLoading}. */
     public void loadAllNotes() {
-        File file = new File(SAVE_FILE);
-        if (!file.exists()) return;
-        try (ObjectInputStream in = new ObjectInputStream(new FileInputStream(file))) {
-            notes.clear();
-            notes.addAll((ArrayList<Note>) in.readObject());
-        } catch (IOException | ClassNotFoundException e) {
+        beginLoading();
+        addLoadedNotes(awaitLoaded());
+        finishLoading();
+    }
+
+    /**
+     * Clears the notes and starts reading the store on the journal thread, so the window can show
+     * before the notes are in. Fetch them with {@link #awaitLoaded} off the event thread, add them
+     * with {@link #addLoadedNotes}, in batches if need be, and end with {@link #finishLoading}.
+     * Notes may be added, edited and removed meanwhile: their writes are queued behind the read,
+     * searches wait for the index, and compaction waits until loading is finished.
+     */
+    public void beginLoading() {
+        int oldSize = notes.size();
+        notes.clear();
+        notesById.clear();
+        noteIndexes.clear();
+        staleFrom = Integer.MAX_VALUE;
+        if (oldSize > 0) {
+            for (NoteChangeListener listener : listeners) listener.notesRemoved(0, oldSize - 1);
+        }
+        titleIndex.clear();
+        titleIndexBuilt = false;
+        unversioned.clear();
+        snapshot = snapshot.cleared();
+        loading = true;
+        Future<LoadedStore> load = saveScheduler.submit(this::readStore);
+        pendingLoad = load;
+        saveScheduler.submit(() -> {
+            UndoSpillFile.deleteStale();
+            return null;
+        });
+        // A saved index is reused only if nothing was appended since it was written; otherwise the
+        // notes are indexed again. Index updates queued after this wait for it.
+        indexer.execute(() -> {
+            LoadedStore loaded = get(load);
+            if (searchIndex.load(searchIndexFile(), loaded.generation, loaded.journalBytes)) return;
+            searchIndex.clear();
+            for (Note copy : loaded.copies) {
+                indexNow(copy);
+            }
+        });
+    }
+
+    /** Waits for the read started by {@link #beginLoading} and returns its notes; call off the event thread. */
+    public List<Note> awaitLoaded() {
+        return get(pendingLoad).notes;
+    }
+
+    /** Appends notes read by the current load; they are already stored, so nothing is written. */
+    public void addLoadedNotes(List<Note> loaded) {
+        if (loaded.isEmpty()) return;
+        int from = notes.size();
+        notes.addAll(loaded);
+        for (int i = from; i < notes.size(); i++) {
+            notesById.put(notes.get(i).getId(), notes.get(i));
+            noteIndexes.put(notes.get(i), i);
+        }
+        List<Note> versions = new ArrayList<>(loaded.size());
+        for (Note note : loaded) {
+            if (titleIndexBuilt) titleIndex.put(note);
+            versions.add(note.copy());
+        }
+        snapshot = snapshot.plus(versions);
+        for (NoteChangeListener listener : listeners) listener.notesAdded(from, notes.size() - 1);
+    }
+
+    /** Ends a load once every loaded note has been added; a migrated legacy file is folded into a snapshot. */
+    public void finishLoading() {
+        loading = false;
+        if (get(pendingLoad).migrated) saveScheduler.compact(snapshot());
+        else compactIfNeeded();
+        pendingLoad = null;
+    }
+
+    public boolean isLoading() {
+        return loading;
+    }
+
+    // Runs on the journal thread.
+    private LoadedStore readStore() {
+        Metrics.Span span = Metrics.start(Metrics.LOAD_ALL);
+        LoadedStore loaded = new LoadedStore();
+        try {
+            loaded.notes.addAll(journal.load());
+            if (Files.exists(legacySaveFile)) {
+                loaded.notes.addAll(LegacyNoteMigrator.migrate(legacySaveFile, journal));
+                loaded.migrated = true;
+            }
+        } catch (IOException e) {
             e.printStackTrace();
         }
+        loaded.generation = journal.getGeneration();
+        loaded.journalBytes = journal.getJournalBytes();
+        for (Note note : loaded.notes) {
+            loaded.copies.add(note.copy());
+        }
+        span.end(journal.getStoreBytes());
+        return loaded;
+    }
+
+    private static LoadedStore get(Future<LoadedStore> load) {
+        try {
+            return load.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            e.getCause().printStackTrace();
+        }
+        return new LoadedStore();
+    }
+
+    private Path searchIndexFile() {
+        return storeDir.resolve(SEARCH_INDEX_FILE);
     }
-} 
\ No newline at end of file
+}
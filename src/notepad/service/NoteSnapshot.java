@@ -0,0 +1,97 @@
+package notepad.service;
+
+import notepad.model.Note;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * The notes at one moment, as an immutable list that any thread may read. Its notes are detached
+ * versions, copied when a note was added, replaced, renamed or checkpointed, and never changed
+ * afterwards. The list is kept in chunks: a change copies only the chunk it falls in and the
+ * small array of chunks, so a new snapshot per change costs O(n / 1024) and old snapshots stay
+ * valid for as long as a reader holds them. Removing a note shifts the chunks after it.
+ */
+public final class NoteSnapshot extends AbstractList<Note> implements RandomAccess {
+    private static final int CHUNK_BITS = 10;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+    static final NoteSnapshot EMPTY = new NoteSnapshot(new Note[0][], 0, 0);
+
+    private final Note[][] chunks;
+    private final int size;
+    private final long version;
+
+    private NoteSnapshot(Note[][] chunks, int size, long version) {
+        this.chunks = chunks;
+        this.size = size;
+        this.version = version;
+    }
+
+    @Override
+    public Note get(int index) {
+        if (index < 0 || index >= size) throw new IndexOutOfBoundsException("Index " + index + ", size " + size);
+        return chunks[index >>> CHUNK_BITS][index & CHUNK_MASK];
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /** Grows by one with every change, so a reader can tell whether its snapshot is still the latest. */
+    public long getVersion() {
+        return version;
+    }
+
+    /** An empty snapshot that follows this one. */
+    NoteSnapshot cleared() {
+        return new NoteSnapshot(new Note[0][], 0, version + 1);
+    }
+
+    NoteSnapshot with(int index, Note note) {
+        if (index < 0 || index >= size) throw new IndexOutOfBoundsException("Index " + index + ", size " + size);
+        Note[][] copy = chunks.clone();
+        int c = index >>> CHUNK_BITS;
+        copy[c] = copy[c].clone();
+        copy[c][index & CHUNK_MASK] = note;
+        return new NoteSnapshot(copy, size, version + 1);
+    }
+
+    NoteSnapshot plus(List<Note> added) {
+        if (added.isEmpty()) return this;
+        int newSize = size + added.size();
+        Note[][] copy = Arrays.copyOf(chunks, (newSize + CHUNK_MASK) >>> CHUNK_BITS);
+        // The last chunk is shared with older snapshots, so it is copied before it is filled up.
+        int last = size >>> CHUNK_BITS;
+        if ((size & CHUNK_MASK) != 0) copy[last] = Arrays.copyOf(copy[last], CHUNK_SIZE);
+        int i = size;
+        for (Note note : added) {
+            int c = i >>> CHUNK_BITS;
+            if (copy[c] == null) copy[c] = new Note[CHUNK_SIZE];
+            copy[c][i & CHUNK_MASK] = note;
+            i++;
+        }
+        return new NoteSnapshot(copy, newSize, version + 1);
+    }
+
+    NoteSnapshot without(int index) {
+        if (index < 0 || index >= size) throw new IndexOutOfBoundsException("Index " + index + ", size " + size);
+        int newSize = size - 1;
+        Note[][] copy = Arrays.copyOf(chunks, (newSize + CHUNK_MASK) >>> CHUNK_BITS);
+        // Chunks before the removed note are shared; from its chunk on, every note moves down one.
+        int first = index >>> CHUNK_BITS;
+        for (int c = first; c < copy.length; c++) {
+            Note[] chunk = new Note[CHUNK_SIZE];
+            int from = c << CHUNK_BITS;
+            for (int i = from; i < Math.min(newSize, from + CHUNK_SIZE); i++) {
+                chunk[i & CHUNK_MASK] = get(i < index ? i : i + 1);
+            }
+            copy[c] = chunk;
+        }
+        return new NoteSnapshot(copy, newSize, version + 1);
+    }
+}
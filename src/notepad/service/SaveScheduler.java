@@ -0,0 +1,394 @@
+package notepad.service;
+
+import notepad.model.EditOp;
+import notepad.model.Note;
+import notepad.model.StyleRuns;
+import notepad.store.NoteJournal;
+import notepad.store.RevisionStore;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Collects pending note changes and writes them to the journal on a dedicated background thread.
+ * Per note it keeps at most one full copy (a checkpoint), the edit ops made after it, the latest
+ * formatting and the latest title, so a burst of keystrokes becomes one EDIT record. A flush happens once the
+ * editor has been idle for {@link #IDLE_DELAY_MILLIS}, or at the latest after the auto-save
+ * interval while typing continues. All journal I/O, including compaction, runs on the same
+ * thread, so records always reach the disk in the order they were marked. After each flush, every
+ * edited note gets one revision in the {@link RevisionStore}, written on a thread of its own so the
+ * journal never waits on it.
+ */
+public class SaveScheduler {
+    private static final long IDLE_DELAY_MILLIS = 750;
+    private static final long COMPACTION_THRESHOLD_BYTES = 4L * 1024 * 1024;
+
+    private final NoteJournal journal;
+    private final RevisionStore history;
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "note-autosave");
+        t.setDaemon(true);
+        return t;
+    });
+    private final ExecutorService historyWriter = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "note-history-writer");
+        t.setDaemon(true);
+        return t;
+    });
+    private final Object lock = new Object();
+    private Map<String, Pending> pending = new LinkedHashMap<>();
+    private Set<String> removed = new LinkedHashSet<>();
+    private boolean flushScheduled;
+    private boolean compactionQueued;
+    private long firstDirtyNanos;
+    private long lastDirtyNanos;
+    private volatile long intervalMillis = 10_000;
+
+    public SaveScheduler(NoteJournal journal, RevisionStore history) {
+        this.journal = journal;
+        this.history = history;
+    }
+
+    public void setInterval(int seconds) {
+        intervalMillis = Math.max(1, seconds) * 1000L;
+    }
+
+    public int getInterval() {
+        return (int) (intervalMillis / 1000);
+    }
+
+    private static final class Pending {
+        Note checkpoint;
+        List<EditOp> ops = new ArrayList<>();
+        boolean restyled;
+        // Taken after the first stylesOps of ops; the rest are applied to it when it is written.
+        StyleRuns styles;
+        int stylesOps;
+        // Ops below this index are recorded as they are, so later ops are not joined onto them.
+        int sealedOps;
+        String title;
+        boolean edited;
+        // The note's text after the first ops.size() at the time it was given, for its history.
+        Note historyBase;
+        int historyBaseOps;
+    }
+
+    /** Queues a full copy of a note; it supersedes any edits queued for the note before it. */
+    public void scheduleCheckpoint(Note detached) {
+        synchronized (lock) {
+            removed.remove(detached.getId());
+            Pending p = pendingFor(detached.getId());
+            p.checkpoint = detached;
+            p.ops.clear();
+            p.restyled = false;
+            p.styles = null;
+            p.sealedOps = 0;
+            p.title = null;
+            p.historyBase = null;
+            touch();
+        }
+    }
+
+    /** Queues full copies of many notes at once, for a bulk import; they are written by one flush. */
+    public void scheduleCheckpoints(List<Note> detached) {
+        synchronized (lock) {
+            for (Note note : detached) {
+                removed.remove(note.getId());
+                Pending p = pendingFor(note.getId());
+                p.checkpoint = note;
+                p.ops.clear();
+                p.restyled = false;
+                p.styles = null;
+                p.sealedOps = 0;
+                p.title = null;
+                p.historyBase = null;
+            }
+            touch();
+        }
+    }
+
+    /**
+     * Queues one edit; cheap enough to call on every keystroke. An edit that continues the one
+     * queued before it, as typing or deleting a run of characters does, is joined onto it, so
+     * replaying the journal applies one op per run. Returns false if the edit was joined.
+     */
+    public boolean scheduleEdit(String noteId, EditOp op) {
+        synchronized (lock) {
+            Pending p = pendingFor(noteId);
+            boolean joined = p.ops.size() > p.sealedOps && join(p.ops, op);
+            if (!joined) p.ops.add(op);
+            p.edited = true;
+            touch();
+            return !joined;
+        }
+    }
+
+    // Joins op onto the last of ops where it continues it: typing on at its end, backspacing
+    // into what it typed, or deleting on forwards or backwards from where it deleted.
+    private static boolean join(List<EditOp> ops, EditOp op) {
+        if (ops.isEmpty()) return false;
+        int i = ops.size() - 1;
+        EditOp last = ops.get(i);
+        int end = last.getOffset() + last.getLength();
+        if (last.getKind() == EditOp.INSERT) {
+            if (op.getKind() == EditOp.INSERT && op.getOffset() == end) {
+                ops.set(i, EditOp.insert(last.getOffset(), last.getText() + op.getText()));
+                return true;
+            }
+            if (op.getKind() == EditOp.REMOVE && op.getOffset() >= last.getOffset() && op.getOffset() + op.getLength() == end) {
+                int kept = op.getOffset() - last.getOffset();
+                if (kept == 0) ops.remove(i);
+                else ops.set(i, EditOp.insert(last.getOffset(), last.getText().substring(0, kept)));
+                return true;
+            }
+        } else if (op.getKind() == EditOp.REMOVE) {
+            if (op.getOffset() == last.getOffset()) {
+                ops.set(i, EditOp.remove(last.getOffset(), last.getLength() + op.getLength()));
+                return true;
+            }
+            if (op.getOffset() + op.getLength() == last.getOffset()) {
+                ops.set(i, EditOp.remove(op.getOffset(), last.getLength() + op.getLength()));
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Gives the note's history its text after the edits queued so far, for when the history may
+     * not end where the journal does, such as on a note's first edit since launch. Only the text
+     * is recorded, and only if the note is edited; a queued checkpoint already serves as one.
+     */
+    public void scheduleHistoryBase(Note detached) {
+        synchronized (lock) {
+            Pending p = pendingFor(detached.getId());
+            if (p.checkpoint != null) return;
+            p.historyBase = detached;
+            p.historyBaseOps = p.ops.size();
+            p.sealedOps = p.ops.size();
+        }
+    }
+
+    /** Queues a note's formatting, taken after the edits queued so far; null clears it. */
+    public void scheduleStyles(String noteId, StyleRuns styles) {
+        synchronized (lock) {
+            Pending p = pendingFor(noteId);
+            p.restyled = true;
+            p.styles = styles;
+            p.stylesOps = p.ops.size();
+            p.sealedOps = p.ops.size();
+            touch();
+        }
+    }
+
+    public void scheduleRename(String noteId, String title) {
+        synchronized (lock) {
+            pendingFor(noteId).title = title;
+            touch();
+        }
+    }
+
+    public void markRemoved(Note note) {
+        synchronized (lock) {
+            pending.remove(note.getId());
+            removed.add(note.getId());
+            touch();
+        }
+    }
+
+    /**
+     * Writes {@code notes}, detached versions that nothing changes, as the new snapshot and folds
+     * the journal into it in the background. Must be called from the thread that mutates the
+     * notes, right after taking the versions, so they and the pending edits agree.
+     */
+    public Future<?> compact(List<Note> notes) {
+        Map<String, Pending> puts;
+        Set<String> deletes;
+        synchronized (lock) {
+            puts = takePending();
+            deletes = takeRemoved();
+            compactionQueued = true;
+        }
+        return executor.submit(() -> {
+            try {
+                write(puts, deletes);
+                journal.writeSnapshot(notes, journal.rotate());
+            } catch (IOException e) {
+                e.printStackTrace();
+            } finally {
+                synchronized (lock) {
+                    compactionQueued = false;
+                }
+            }
+        });
+    }
+
+    /** Runs {@code task} on the journal thread, ahead of every write queued after this call. */
+    public <T> Future<T> submit(Callable<T> task) {
+        return executor.submit(task);
+    }
+
+    /** True once the journal has grown enough that the owner should call {@link #compact}. */
+    public boolean needsCompaction() {
+        synchronized (lock) {
+            if (compactionQueued) return false;
+        }
+        return journal.getJournalBytes() > COMPACTION_THRESHOLD_BYTES;
+    }
+
+    /** Writes everything still pending, waiting at most {@code timeoutMillis}; returns false on timeout. */
+    public boolean flush(long timeoutMillis) {
+        try {
+            executor.submit(this::flushPending).get(timeoutMillis, TimeUnit.MILLISECONDS);
+            return true;
+        } catch (TimeoutException e) {
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (ExecutionException e) {
+            e.getCause().printStackTrace();
+            return false;
+        }
+    }
+
+    /**
+     * Flushes with a bounded wait, then stops the background threads and closes the journal.
+     * Revisions still being recorded get whatever is left of the wait after the journal is closed.
+     */
+    public boolean shutdown(long timeoutMillis) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        boolean flushed = flush(timeoutMillis);
+        executor.shutdown();
+        try {
+            if (flushed) journal.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        historyWriter.shutdown();
+        try {
+            historyWriter.awaitTermination(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return flushed;
+    }
+
+    private void touch() {
+        lastDirtyNanos = System.nanoTime();
+        if (!flushScheduled) {
+            flushScheduled = true;
+            firstDirtyNanos = lastDirtyNanos;
+            executor.schedule(this::onTimer, IDLE_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    // Re-arms itself instead of being rescheduled per keystroke, so marking stays allocation-light.
+    private void onTimer() {
+        synchronized (lock) {
+            long now = System.nanoTime();
+            long idleLeft = IDLE_DELAY_MILLIS - TimeUnit.NANOSECONDS.toMillis(now - lastDirtyNanos);
+            long deadlineLeft = intervalMillis - TimeUnit.NANOSECONDS.toMillis(now - firstDirtyNanos);
+            long wait = Math.min(idleLeft, deadlineLeft);
+            if (wait > 0) {
+                executor.schedule(this::onTimer, wait, TimeUnit.MILLISECONDS);
+                return;
+            }
+            flushScheduled = false;
+        }
+        flushPending();
+    }
+
+    private void flushPending() {
+        Map<String, Pending> puts;
+        Set<String> deletes;
+        synchronized (lock) {
+            puts = takePending();
+            deletes = takeRemoved();
+        }
+        try {
+            write(puts, deletes);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void write(Map<String, Pending> puts, Set<String> deletes) throws IOException {
+        for (Map.Entry<String, Pending> entry : puts.entrySet()) {
+            Pending p = entry.getValue();
+            if (p.checkpoint != null) journal.appendPut(p.checkpoint);
+            if (!p.ops.isEmpty()) journal.appendEdit(entry.getKey(), p.ops);
+            if (p.restyled) {
+                // Styles are written after all queued ops, so the ops queued after them move them on.
+                StyleRuns styles = p.styles == null ? null : p.styles.adjust(p.ops.subList(p.stylesOps, p.ops.size()));
+                journal.appendStyles(entry.getKey(), styles);
+            }
+            if (p.title != null) journal.appendRename(entry.getKey(), p.title);
+        }
+        for (String id : deletes) {
+            journal.appendDelete(id);
+        }
+        if (puts.isEmpty() && deletes.isEmpty()) return;
+        journal.flush();
+        // The taken changes are no longer modified, so the history writer can read them as they are.
+        long now = System.currentTimeMillis();
+        try {
+            historyWriter.execute(() -> recordHistory(puts, deletes, now));
+        } catch (RejectedExecutionException e) {
+            // Shut down while this flush outran its wait; the journal has the edits regardless.
+        }
+    }
+
+    // History is secondary to the journal, so its failures are reported and skipped.
+    private void recordHistory(Map<String, Pending> puts, Set<String> deletes, long now) {
+        for (Map.Entry<String, Pending> entry : puts.entrySet()) {
+            Pending p = entry.getValue();
+            try {
+                if (p.checkpoint != null) {
+                    // A note replaced without edits, such as by an import, starts no history.
+                    if (p.edited || history.hasHistory(entry.getKey())) {
+                        history.record(entry.getKey(), p.checkpoint.getContent(), p.ops, now);
+                    }
+                } else if (p.historyBase != null) {
+                    history.record(entry.getKey(), p.historyBase.getContent(),
+                            p.ops.subList(p.historyBaseOps, p.ops.size()), now);
+                } else if (!p.ops.isEmpty()) {
+                    history.record(entry.getKey(), null, p.ops, now);
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        for (String id : deletes) {
+            try {
+                history.delete(id);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private Pending pendingFor(String noteId) {
+        Pending p = pending.get(noteId);
+        if (p == null) {
+            p = new Pending();
+            pending.put(noteId, p);
+        }
+        return p;
+    }
+
+    private Map<String, Pending> takePending() {
+        if (pending.isEmpty()) return Collections.emptyMap();
+        Map<String, Pending> taken = pending;
+        pending = new LinkedHashMap<>();
+        return taken;
+    }
+
+    private Set<String> takeRemoved() {
+        if (removed.isEmpty()) return Collections.emptySet();
+        Set<String> taken = removed;
+        removed = new LinkedHashSet<>();
+        return taken;
+    }
+}
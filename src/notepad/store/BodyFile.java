@@ -0,0 +1,54 @@
+package notepad.store;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Read-only view of a snapshot's body file. Files up to 2 GB are memory-mapped, so reading a
+ * body touches only its own pages; larger files fall back to positional channel reads.
+ */
+public class BodyFile implements Closeable {
+    private final FileChannel channel;
+    private final MappedByteBuffer map;
+
+    public BodyFile(Path file) throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.READ);
+        long size = channel.size();
+        map = size <= Integer.MAX_VALUE ? channel.map(FileChannel.MapMode.READ_ONLY, 0, size) : null;
+    }
+
+    public String read(long offset, int length) throws IOException {
+        return StandardCharsets.UTF_8.decode(slice(offset, length)).toString();
+    }
+
+    /** Copies the raw bytes of a body into {@code target} without decoding them. */
+    public void copyTo(long offset, int length, FileChannel target) throws IOException {
+        ByteBuffer buf = slice(offset, length);
+        while (buf.hasRemaining()) target.write(buf);
+    }
+
+    private ByteBuffer slice(long offset, int length) throws IOException {
+        if (map != null) {
+            ByteBuffer buf = map.duplicate();
+            buf.position((int) offset).limit((int) offset + length);
+            return buf;
+        }
+        ByteBuffer buf = ByteBuffer.allocate(length);
+        while (buf.hasRemaining()) {
+            if (channel.read(buf, offset + buf.position()) < 0) throw new IOException("Truncated body file");
+        }
+        buf.flip();
+        return buf;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,39 @@
+package notepad.store;
+
+import notepad.model.ContentSource;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/** Location of one note body inside a {@link BodyFile}; loads go through the shared {@link ContentCache}. */
+public class BodyRef implements ContentSource {
+    final BodyFile file;
+    final long offset;
+    final int length;
+    private final ContentCache cache;
+
+    BodyRef(BodyFile file, long offset, int length, ContentCache cache) {
+        this.file = file;
+        this.offset = offset;
+        this.length = length;
+        this.cache = cache;
+    }
+
+    @Override
+    public String load() {
+        return cache.get(this);
+    }
+
+    @Override
+    public String loadUncached() {
+        return read();
+    }
+
+    String read() {
+        try {
+            return file.read(offset, length);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package notepad.store;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * LRU cache of decoded note bodies, bounded by the total number of resident characters. Bodies
+ * are read by the event thread and by background exporters and indexers at once, and every hit
+ * reorders the LRU, so the cache is split into stripes by body, each with its own lock, its own
+ * LRU order and an equal share of the budget.
+ */
+public class ContentCache {
+    private static final int STRIPES = 8;
+
+    private final Stripe[] stripes = new Stripe[STRIPES];
+
+    private static final class Stripe {
+        final long budgetChars;
+        final LinkedHashMap<BodyRef, String> bodies = new LinkedHashMap<>(64, 0.75f, true);
+        long residentChars;
+
+        Stripe(long budgetChars) {
+            this.budgetChars = budgetChars;
+        }
+    }
+
+    public ContentCache(long budgetChars) {
+        for (int i = 0; i < STRIPES; i++) stripes[i] = new Stripe(budgetChars / STRIPES);
+    }
+
+    public String get(BodyRef ref) {
+        Stripe stripe = stripes[(System.identityHashCode(ref) & 0x7FFFFFFF) % STRIPES];
+        synchronized (stripe) {
+            String body = stripe.bodies.get(ref);
+            if (body != null) return body;
+        }
+        String body = ref.read();
+        synchronized (stripe) {
+            if (stripe.bodies.put(ref, body) == null) stripe.residentChars += body.length();
+            evict(stripe, ref);
+        }
+        return body;
+    }
+
+    public long getResidentChars() {
+        long chars = 0;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                chars += stripe.residentChars;
+            }
+        }
+        return chars;
+    }
+
+    // The entry just loaded is kept even if it alone exceeds the budget.
+    private static void evict(Stripe stripe, BodyRef keep) {
+        Iterator<Map.Entry<BodyRef, String>> it = stripe.bodies.entrySet().iterator();
+        while (stripe.residentChars > stripe.budgetChars && it.hasNext()) {
+            Map.Entry<BodyRef, String> eldest = it.next();
+            if (eldest.getKey() == keep) continue;
+            stripe.residentChars -= eldest.getValue().length();
+            it.remove();
+        }
+    }
+}
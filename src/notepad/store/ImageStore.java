@@ -0,0 +1,76 @@
+package notepad.store;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.*;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Keeps inserted images by the SHA-256 of their bytes, one file per distinct image, so a picture
+ * inserted many times, or into many notes, is stored once. Notes refer to an image by its hash.
+ */
+public class ImageStore {
+    private static final int BUFFER_BYTES = 64 * 1024;
+
+    private final Path dir;
+
+    public ImageStore(Path dir) {
+        this.dir = dir;
+    }
+
+    /** Copies {@code file} into the store unless the same bytes are already there, and returns their hash. */
+    public String put(Path file) throws IOException {
+        Files.createDirectories(dir);
+        Path temp = Files.createTempFile(dir, "image", ".tmp");
+        try {
+            MessageDigest digest = newDigest();
+            try (InputStream in = new DigestInputStream(Files.newInputStream(file), digest);
+                 OutputStream out = Files.newOutputStream(temp)) {
+                byte[] buffer = new byte[BUFFER_BYTES];
+                for (int n; (n = in.read(buffer)) > 0; ) {
+                    out.write(buffer, 0, n);
+                }
+            }
+            String hash = toHex(digest.digest());
+            Path target = dir.resolve(hash);
+            if (!Files.exists(target)) {
+                try {
+                    Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+                } catch (FileAlreadyExistsException e) {
+                    // Stored meanwhile by another insert of the same image.
+                }
+            }
+            return hash;
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /** The file holding the image with {@code hash}; it may not exist. */
+    public Path path(String hash) {
+        if (hash.isEmpty()) throw new IllegalArgumentException("Not an image hash: " + hash);
+        for (int i = 0; i < hash.length(); i++) {
+            if (Character.digit(hash.charAt(i), 16) < 0) throw new IllegalArgumentException("Not an image hash: " + hash);
+        }
+        return dir.resolve(hash);
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+}
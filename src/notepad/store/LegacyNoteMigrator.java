@@ -0,0 +1,44 @@
+package notepad.store;
+
+import notepad.model.Note;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * One-time import of the old {@code notes.ser} file written with Java serialization. The file
+ * is read through a filter that only admits the classes the old format used. Only once it has
+ * been read completely are its notes written to the journal, and the file is then renamed so
+ * the migration never runs twice.
+ */
+public final class LegacyNoteMigrator {
+    private static final String FILTER = "maxdepth=8;maxrefs=10000000;maxarray=10000000;"
+            + "java.util.ArrayList;notepad.model.Note;java.lang.String;java.lang.Object;!*";
+
+    private LegacyNoteMigrator() {}
+
+    public static List<Note> migrate(Path legacyFile, NoteJournal journal) throws IOException {
+        List<Note> migrated = new ArrayList<>();
+        try (ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(Files.newInputStream(legacyFile)))) {
+            in.setObjectInputFilter(ObjectInputFilter.Config.createFilter(FILTER));
+            Object list = in.readObject();
+            if (!(list instanceof List)) throw new InvalidObjectException("Unexpected notes.ser content");
+            for (Object element : (List<?>) list) {
+                if (!(element instanceof Note)) throw new InvalidObjectException("Unexpected notes.ser element");
+                Note legacy = (Note) element;
+                migrated.add(new Note(legacy.getTitle(), legacy.getContent()));
+            }
+        } catch (ClassNotFoundException e) {
+            throw new InvalidClassException(e.getMessage());
+        }
+        for (Note note : migrated) {
+            journal.appendPut(note);
+        }
+        journal.flush();
+        Files.move(legacyFile, legacyFile.resolveSibling(legacyFile.getFileName() + ".migrated"),
+                StandardCopyOption.REPLACE_EXISTING);
+        return migrated;
+    }
+}
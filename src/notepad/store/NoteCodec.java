@@ -0,0 +1,399 @@
+package notepad.store;
+
+import notepad.model.EditOp;
+import notepad.model.Note;
+import notepad.model.StyleRuns;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Binary format of every file in the note store.
+ * <p>
+ * A file starts with an 8-byte header {@code [int magic "NOTB"][short version][byte fileType][byte 0]}
+ * followed by records {@code [int payloadLength][int crc32(payload)][payload]}. A payload is a
+ * record type byte followed by its fields; strings are a varint byte count plus UTF-8 bytes.
+ * <pre>
+ *   PUT       id, title, content, styles
+ *   DELETE    id
+ *   BODY_REF  id, title, varint body offset, varint body length, styles
+ *   EDIT      id, varint op count, ops: byte kind, varint offset, then the text (insert) or
+ *             varint length (remove)
+ *   RENAME    id, title
+ *   STYLES    id, styles
+ *   KEYFRAME  id, varint time, content
+ *   DELTA     id, varint time, ops as in EDIT
+ * </pre>
+ * KEYFRAME and DELTA records make up a note's revision history, in a file of its own; times
+ * are milliseconds since the epoch.
+ * Styles are a varint style count and that many strings, then the character runs and the
+ * paragraph runs, each a varint run count and varint style index and length pairs. A count of
+ * zero styles means plain text and ends the field. Version 2 files have no styles.
+ */
+public final class NoteCodec {
+    public static final int MAGIC = 0x4E4F5442; // "NOTB"
+    public static final short VERSION = 3;
+    public static final short STYLES_VERSION = 3;
+    public static final int HEADER_BYTES = 8;
+
+    public static final byte FILE_SNAPSHOT = 1;
+    public static final byte FILE_JOURNAL = 2;
+    public static final byte FILE_NOTES = 3;
+    public static final byte FILE_HISTORY = 4;
+
+    public static final byte PUT = 1;
+    public static final byte DELETE = 2;
+    public static final byte BODY_REF = 3;
+    public static final byte EDIT = 4;
+    public static final byte RENAME = 5;
+    public static final byte STYLES = 6;
+    public static final byte KEYFRAME = 7;
+    public static final byte DELTA = 8;
+
+    private NoteCodec() {}
+
+    /** A decoded record; fields not carried by the record type are null or zero. */
+    public static final class Record {
+        public final byte type;
+        public final String id;
+        public final String title;
+        public final String content;
+        public final long offset;
+        public final int length;
+        public final List<EditOp> ops;
+        public final StyleRuns styles;
+        public final long time;
+
+        Record(byte type, String id, String title, String content, long offset, int length, List<EditOp> ops,
+               StyleRuns styles) {
+            this(type, id, title, content, offset, length, ops, styles, 0);
+        }
+
+        Record(byte type, String id, String title, String content, long offset, int length, List<EditOp> ops,
+               StyleRuns styles, long time) {
+            this.type = type;
+            this.id = id;
+            this.title = title;
+            this.content = content;
+            this.offset = offset;
+            this.length = length;
+            this.ops = ops;
+            this.styles = styles;
+            this.time = time;
+        }
+
+        public Note toNote() {
+            Note note = new Note(id, title, content);
+            note.setStyles(styles);
+            return note;
+        }
+    }
+
+    public static ByteBuffer header(byte fileType) {
+        ByteBuffer buf = ByteBuffer.allocate(HEADER_BYTES);
+        buf.putInt(MAGIC).putShort(VERSION).put(fileType).put((byte) 0).flip();
+        return buf;
+    }
+
+    /** Reads the file header and returns the format version; a file too short for one throws EOFException. */
+    public static short readHeader(DataInputStream in, byte expectedType) throws IOException {
+        if (in.readInt() != MAGIC) throw new IOException("Not a note store file");
+        short version = in.readShort();
+        byte type = in.readByte();
+        in.readByte();
+        if (version > VERSION) throw new IOException("Note store format " + version + " is newer than this application");
+        if (type != expectedType) throw new IOException("Unexpected note store file type " + type);
+        return version;
+    }
+
+    public static ByteBuffer put(Note note) {
+        byte[] id = utf8(note.getId());
+        byte[] title = utf8(note.getTitle());
+        byte[] content = utf8(note.getContent());
+        byte[] styles = styleBytes(note.getStyles());
+        ByteBuffer buf = newRecord(1 + stringSize(id) + stringSize(title) + stringSize(content) + styles.length);
+        buf.put(PUT);
+        putString(buf, id);
+        putString(buf, title);
+        putString(buf, content);
+        buf.put(styles);
+        return seal(buf);
+    }
+
+    public static ByteBuffer delete(String noteId) {
+        byte[] id = utf8(noteId);
+        ByteBuffer buf = newRecord(1 + stringSize(id));
+        buf.put(DELETE);
+        putString(buf, id);
+        return seal(buf);
+    }
+
+    public static ByteBuffer bodyRef(Note note, long offset, int length) {
+        byte[] id = utf8(note.getId());
+        byte[] title = utf8(note.getTitle());
+        byte[] styles = styleBytes(note.getStyles());
+        ByteBuffer buf = newRecord(1 + stringSize(id) + stringSize(title) + varintSize(offset) + varintSize(length)
+                + styles.length);
+        buf.put(BODY_REF);
+        putString(buf, id);
+        putString(buf, title);
+        putVarint(buf, offset);
+        putVarint(buf, length);
+        buf.put(styles);
+        return seal(buf);
+    }
+
+    public static ByteBuffer edit(String noteId, List<EditOp> ops) {
+        byte[] id = utf8(noteId);
+        List<byte[]> texts = new ArrayList<>(ops.size());
+        ByteBuffer buf = newRecord(1 + stringSize(id) + opsSize(ops, texts));
+        buf.put(EDIT);
+        putString(buf, id);
+        putOps(buf, ops, texts);
+        return seal(buf);
+    }
+
+    public static ByteBuffer keyframe(String noteId, long time, String text) {
+        byte[] id = utf8(noteId);
+        byte[] content = utf8(text);
+        ByteBuffer buf = newRecord(1 + stringSize(id) + varintSize(time) + stringSize(content));
+        buf.put(KEYFRAME);
+        putString(buf, id);
+        putVarint(buf, time);
+        putString(buf, content);
+        return seal(buf);
+    }
+
+    public static ByteBuffer delta(String noteId, long time, List<EditOp> ops) {
+        byte[] id = utf8(noteId);
+        List<byte[]> texts = new ArrayList<>(ops.size());
+        ByteBuffer buf = newRecord(1 + stringSize(id) + varintSize(time) + opsSize(ops, texts));
+        buf.put(DELTA);
+        putString(buf, id);
+        putVarint(buf, time);
+        putOps(buf, ops, texts);
+        return seal(buf);
+    }
+
+    public static ByteBuffer rename(String noteId, String newTitle) {
+        byte[] id = utf8(noteId);
+        byte[] title = utf8(newTitle);
+        ByteBuffer buf = newRecord(1 + stringSize(id) + stringSize(title));
+        buf.put(RENAME);
+        putString(buf, id);
+        putString(buf, title);
+        return seal(buf);
+    }
+
+    public static ByteBuffer styles(String noteId, StyleRuns runs) {
+        byte[] id = utf8(noteId);
+        byte[] styles = styleBytes(runs);
+        ByteBuffer buf = newRecord(1 + stringSize(id) + styles.length);
+        buf.put(STYLES);
+        putString(buf, id);
+        buf.put(styles);
+        return seal(buf);
+    }
+
+    /** Reads one record payload, or returns null at end of input or on a torn or corrupt record. */
+    public static byte[] readRecord(DataInputStream in, long remaining) throws IOException {
+        if (remaining < 8) return null;
+        try {
+            int length = in.readInt();
+            int checksum = in.readInt();
+            if (length <= 0 || length > remaining - 8) return null;
+            byte[] payload = new byte[length];
+            in.readFully(payload);
+            CRC32 crc = new CRC32();
+            crc.update(payload);
+            return (int) crc.getValue() == checksum ? payload : null;
+        } catch (EOFException e) {
+            return null;
+        }
+    }
+
+    public static Record decode(byte[] payload, short version) throws IOException {
+        ByteBuffer buf = ByteBuffer.wrap(payload);
+        try {
+            byte type = buf.get();
+            String id = getString(buf);
+            switch (type) {
+                case PUT:
+                    String putTitle = getString(buf);
+                    String content = getString(buf);
+                    return new Record(type, id, putTitle, content, 0, 0, null, getStyles(buf, version));
+                case DELETE:
+                    return new Record(type, id, null, null, 0, 0, null, null);
+                case BODY_REF:
+                    String title = getString(buf);
+                    long offset = getVarint(buf);
+                    int length = (int) getVarint(buf);
+                    return new Record(type, id, title, null, offset, length, null, getStyles(buf, version));
+                case EDIT:
+                    return new Record(type, id, null, null, 0, 0, getOps(buf), null);
+                case RENAME:
+                    return new Record(type, id, getString(buf), null, 0, 0, null, null);
+                case STYLES:
+                    return new Record(type, id, null, null, 0, 0, null, getStyles(buf, version));
+                case KEYFRAME:
+                    long keyframeTime = getVarint(buf);
+                    return new Record(type, id, null, getString(buf), 0, 0, null, null, keyframeTime);
+                case DELTA:
+                    long deltaTime = getVarint(buf);
+                    return new Record(type, id, null, null, 0, 0, getOps(buf), null, deltaTime);
+                default:
+                    throw new IOException("Unknown note record type " + type);
+            }
+        } catch (RuntimeException e) {
+            throw new IOException("Malformed note record", e);
+        }
+    }
+
+    private static ByteBuffer newRecord(int payloadLength) {
+        ByteBuffer buf = ByteBuffer.allocate(8 + payloadLength);
+        buf.putInt(payloadLength).putInt(0);
+        return buf;
+    }
+
+    private static ByteBuffer seal(ByteBuffer buf) {
+        CRC32 crc = new CRC32();
+        crc.update(buf.array(), 8, buf.capacity() - 8);
+        buf.putInt(4, (int) crc.getValue());
+        buf.flip();
+        return buf;
+    }
+
+    private static byte[] styleBytes(StyleRuns runs) {
+        if (runs == null) return new byte[1];
+        byte[][] styles = new byte[runs.getStyleCount()][];
+        int size = varintSize(styles.length) + runsSize(runs.getCharRuns()) + runsSize(runs.getParagraphRuns());
+        for (int i = 0; i < styles.length; i++) {
+            styles[i] = utf8(runs.getStyle(i));
+            size += stringSize(styles[i]);
+        }
+        ByteBuffer buf = ByteBuffer.allocate(size);
+        putVarint(buf, styles.length);
+        for (byte[] style : styles) putString(buf, style);
+        putRuns(buf, runs.getCharRuns());
+        putRuns(buf, runs.getParagraphRuns());
+        return buf.array();
+    }
+
+    private static StyleRuns getStyles(ByteBuffer buf, short version) {
+        if (version < STYLES_VERSION) return null;
+        int count = (int) getVarint(buf);
+        if (count == 0) return null;
+        String[] styles = new String[count];
+        for (int i = 0; i < count; i++) styles[i] = getString(buf);
+        return new StyleRuns(styles, getRuns(buf), getRuns(buf));
+    }
+
+    // The UTF-8 of each inserted text is added to texts, in order, for putOps.
+    private static int opsSize(List<EditOp> ops, List<byte[]> texts) {
+        int size = varintSize(ops.size());
+        for (EditOp op : ops) {
+            size += 1 + varintSize(op.getOffset());
+            if (op.getKind() == EditOp.INSERT) {
+                byte[] text = utf8(op.getText());
+                texts.add(text);
+                size += stringSize(text);
+            } else {
+                size += varintSize(op.getLength());
+            }
+        }
+        return size;
+    }
+
+    private static void putOps(ByteBuffer buf, List<EditOp> ops, List<byte[]> texts) {
+        putVarint(buf, ops.size());
+        int text = 0;
+        for (EditOp op : ops) {
+            buf.put(op.getKind());
+            putVarint(buf, op.getOffset());
+            if (op.getKind() == EditOp.INSERT) {
+                putString(buf, texts.get(text++));
+            } else {
+                putVarint(buf, op.getLength());
+            }
+        }
+    }
+
+    private static List<EditOp> getOps(ByteBuffer buf) {
+        int count = (int) getVarint(buf);
+        List<EditOp> ops = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            byte kind = buf.get();
+            int at = (int) getVarint(buf);
+            ops.add(kind == EditOp.INSERT ? EditOp.insert(at, getString(buf))
+                    : EditOp.remove(at, (int) getVarint(buf)));
+        }
+        return ops;
+    }
+
+    private static int runsSize(int[] runs) {
+        int size = varintSize(runs.length / 2);
+        for (int value : runs) size += varintSize(value);
+        return size;
+    }
+
+    private static void putRuns(ByteBuffer buf, int[] runs) {
+        putVarint(buf, runs.length / 2);
+        for (int value : runs) putVarint(buf, value);
+    }
+
+    private static int[] getRuns(ByteBuffer buf) {
+        int[] runs = new int[(int) getVarint(buf) * 2];
+        for (int i = 0; i < runs.length; i++) runs[i] = (int) getVarint(buf);
+        return runs;
+    }
+
+    private static int stringSize(byte[] bytes) {
+        return varintSize(bytes.length) + bytes.length;
+    }
+
+    private static void putString(ByteBuffer buf, byte[] bytes) {
+        putVarint(buf, bytes.length);
+        buf.put(bytes);
+    }
+
+    private static String getString(ByteBuffer buf) {
+        int length = (int) getVarint(buf);
+        String s = new String(buf.array(), buf.position(), length, StandardCharsets.UTF_8);
+        buf.position(buf.position() + length);
+        return s;
+    }
+
+    private static int varintSize(long value) {
+        int size = 1;
+        while ((value >>>= 7) != 0) size++;
+        return size;
+    }
+
+    private static void putVarint(ByteBuffer buf, long value) {
+        while ((value & ~0x7FL) != 0) {
+            buf.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buf.put((byte) value);
+    }
+
+    private static long getVarint(ByteBuffer buf) {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = buf.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) return value;
+        }
+        throw new IllegalArgumentException("Varint too long");
+    }
+
+    static byte[] utf8(String s) {
+        return s == null ? new byte[0] : s.getBytes(StandardCharsets.UTF_8);
+    }
+}
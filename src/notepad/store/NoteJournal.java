@@ -0,0 +1,365 @@
+package notepad.store;
+
+import notepad.model.EditOp;
+import notepad.model.Note;
+import notepad.model.StyleRuns;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * Append-only note store. Every change is appended to the current journal file as a
+ * checksummed record; compaction folds the journals into a snapshot in the background.
+ * <p>
+ * Layout inside the store directory:
+ * <pre>
+ *   notes.snapshot      index of all notes (id, title, body offset and length, formatting),
+ *                       tagged with the last journal generation N it covers
+ *   notes.bodies.N      the note bodies of that snapshot, memory-mapped and read on demand
+ *   notes.journal.N     records appended after the snapshot, replayed in generation order
+ * </pre>
+ * Only the index is read at startup; bodies are decoded when a note is opened and kept in a
+ * bounded {@link ContentCache}. Index and journals use the {@link NoteCodec} record format.
+ * A torn or corrupt record ends replay of its journal and is cut off, so a crash mid-append
+ * loses at most that one record.
+ */
+public class NoteJournal implements Closeable {
+    private static final String SNAPSHOT_FILE = "notes.snapshot";
+    private static final String JOURNAL_PREFIX = "notes.journal.";
+    private static final String BODIES_PREFIX = "notes.bodies.";
+    private static final long CACHE_BUDGET_CHARS = 32L * 1024 * 1024;
+
+    private final Path dir;
+    private final Object snapshotLock = new Object();
+    private final ContentCache contentCache = new ContentCache(CACHE_BUDGET_CHARS);
+    private final List<BodyFile> bodyFiles = new ArrayList<>();
+    private long snapshotGeneration;
+    private NoteRecordWriter journal;
+    private long generation;
+    private long journalBase;
+    // Written by the appending thread after each append, so readers need not take the lock.
+    private volatile long journalBytes;
+
+    public NoteJournal(Path dir) {
+        this.dir = dir;
+    }
+
+    /** Reads the snapshot, replays newer journals on top of it and opens the journal for appending. */
+    public synchronized List<Note> load() throws IOException {
+        Files.createDirectories(dir);
+        Map<String, Note> notes = new LinkedHashMap<>();
+        long covered = readSnapshot(notes);
+        synchronized (snapshotLock) {
+            snapshotGeneration = covered;
+        }
+        generation = covered + 1;
+        boolean appendable = false;
+        Map<String, StringBuilder> edited = new HashMap<>();
+        for (long gen : listJournals(covered)) {
+            Path file = journalFile(gen);
+            try (NoteRecordReader reader = new NoteRecordReader(file, NoteCodec.FILE_JOURNAL)) {
+                NoteCodec.Record record;
+                while ((record = reader.next()) != null) {
+                    replay(record, notes, edited);
+                }
+                if (reader.getValidBytes() < Files.size(file)) {
+                    try (FileChannel ch = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                        ch.truncate(reader.getValidBytes());
+                    }
+                }
+                generation = gen;
+                journalBase = reader.getValidBytes();
+                appendable = reader.getVersion() == NoteCodec.VERSION;
+            }
+        }
+        for (Map.Entry<String, StringBuilder> body : edited.entrySet()) {
+            notes.get(body.getKey()).setContent(body.getValue().toString());
+        }
+        // Journals from an older format are left as they are; new records go to a fresh generation.
+        if (!appendable && Files.exists(journalFile(generation))) {
+            generation++;
+        }
+        openJournal();
+        deleteStaleBodies(covered);
+        return new ArrayList<>(notes.values());
+    }
+
+    public synchronized void appendPut(Note note) throws IOException {
+        requireOpen().writePut(note);
+        updateJournalBytes();
+    }
+
+    public synchronized void appendDelete(String id) throws IOException {
+        requireOpen().writeDelete(id);
+        updateJournalBytes();
+    }
+
+    public synchronized void appendEdit(String id, List<EditOp> ops) throws IOException {
+        requireOpen().writeEdit(id, ops);
+        updateJournalBytes();
+    }
+
+    public synchronized void appendRename(String id, String title) throws IOException {
+        requireOpen().writeRename(id, title);
+        updateJournalBytes();
+    }
+
+    public synchronized void appendStyles(String id, StyleRuns styles) throws IOException {
+        requireOpen().writeStyles(id, styles);
+        updateJournalBytes();
+    }
+
+    /** Hands buffered records to the operating system; call after each batch of appends. */
+    public synchronized void flush() throws IOException {
+        requireOpen().flush();
+    }
+
+    public synchronized long getGeneration() {
+        return generation;
+    }
+
+    /** Bytes in the current journal; does not lock, so the event thread never waits behind an append. */
+    public long getJournalBytes() {
+        return journalBytes;
+    }
+
+    /** Total size of the snapshot, body and journal files; images are not counted. */
+    public long getStoreBytes() {
+        long bytes = 0;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "notes.*")) {
+            for (Path file : files) {
+                try {
+                    bytes += Files.size(file);
+                } catch (IOException ignored) {}
+            }
+        } catch (IOException ignored) {}
+        return bytes;
+    }
+
+    /**
+     * Closes the current journal and starts the next generation. Everything up to and including
+     * the returned generation can then be folded into a snapshot by {@link #writeSnapshot}.
+     */
+    public synchronized long rotate() throws IOException {
+        long sealed = generation;
+        closeJournal();
+        generation++;
+        openJournal();
+        return sealed;
+    }
+
+    /**
+     * Writes {@code notes} as the new snapshot covering journals up to {@code coveredGeneration}
+     * and deletes those journals. Safe to call from a background thread while appends continue;
+     * a snapshot older than the one already on disk is skipped.
+     */
+    public void writeSnapshot(List<Note> notes, long coveredGeneration) throws IOException {
+        synchronized (snapshotLock) {
+            if (coveredGeneration <= snapshotGeneration) return;
+            writeSnapshotFile(notes, coveredGeneration);
+            snapshotGeneration = coveredGeneration;
+        }
+    }
+
+    public ContentCache getContentCache() {
+        return contentCache;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        closeJournal();
+        synchronized (bodyFiles) {
+            for (BodyFile file : bodyFiles) file.close();
+            bodyFiles.clear();
+        }
+    }
+
+    private void writeSnapshotFile(List<Note> notes, long coveredGeneration) throws IOException {
+        Path bodies = bodiesFile(coveredGeneration);
+        Path tmp = dir.resolve(SNAPSHOT_FILE + ".tmp");
+        try (FileChannel bodyOut = FileChannel.open(bodies, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+             FileChannel indexChannel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            NoteRecordWriter index = new NoteRecordWriter(indexChannel, NoteCodec.FILE_SNAPSHOT);
+            index.writeLong(coveredGeneration);
+            index.writeInt(notes.size());
+            long offset = 0;
+            for (Note note : notes) {
+                int length = writeBody(note, bodyOut);
+                index.writeBodyRef(note, offset, length);
+                offset += length;
+            }
+            index.flush();
+            bodyOut.force(true);
+            indexChannel.force(true);
+        }
+        Files.move(tmp, dir.resolve(SNAPSHOT_FILE), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        for (long gen : listJournals(-1)) {
+            if (gen <= coveredGeneration) Files.deleteIfExists(journalFile(gen));
+        }
+        deleteStaleBodies(coveredGeneration);
+    }
+
+    // Bodies still on disk are copied byte for byte; only edited bodies are encoded.
+    private static int writeBody(Note note, FileChannel out) throws IOException {
+        if (note.getContentSource() instanceof BodyRef) {
+            BodyRef ref = (BodyRef) note.getContentSource();
+            ref.file.copyTo(ref.offset, ref.length, out);
+            return ref.length;
+        }
+        ByteBuffer body = ByteBuffer.wrap(NoteCodec.utf8(note.getContent()));
+        int length = body.remaining();
+        while (body.hasRemaining()) out.write(body);
+        return length;
+    }
+
+    private NoteRecordWriter requireOpen() throws IOException {
+        if (journal == null) throw new IOException("Journal is not open");
+        return journal;
+    }
+
+    private void openJournal() throws IOException {
+        Path file = journalFile(generation);
+        boolean fresh = !Files.exists(file) || Files.size(file) == 0;
+        FileChannel ch = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND);
+        if (fresh) {
+            journalBase = 0;
+            journal = new NoteRecordWriter(ch, NoteCodec.FILE_JOURNAL);
+        } else {
+            journal = new NoteRecordWriter(ch);
+        }
+        updateJournalBytes();
+    }
+
+    private void closeJournal() throws IOException {
+        if (journal != null) {
+            journal.close();
+            journal = null;
+            journalBase = 0;
+            journalBytes = 0;
+        }
+    }
+
+    private void updateJournalBytes() {
+        journalBytes = journalBase + journal.getBytesWritten();
+    }
+
+    private long readSnapshot(Map<String, Note> notes) throws IOException {
+        Path file = dir.resolve(SNAPSHOT_FILE);
+        if (!Files.exists(file)) return 0;
+        try (NoteRecordReader reader = new NoteRecordReader(file, NoteCodec.FILE_SNAPSHOT)) {
+            long covered = reader.readLong();
+            int count = reader.readInt();
+            BodyFile bodies = null;
+            if (Files.exists(bodiesFile(covered))) {
+                bodies = new BodyFile(bodiesFile(covered));
+                synchronized (bodyFiles) {
+                    bodyFiles.add(bodies);
+                }
+            }
+            for (int i = 0; i < count; i++) {
+                NoteCodec.Record record = reader.next();
+                if (record == null) throw new IOException("Corrupt note snapshot: " + file);
+                apply(record, notes, bodies);
+            }
+            return covered;
+        }
+    }
+
+    /**
+     * Applies a journal record. Edits accumulate in one builder per note, so a long run of
+     * EDIT records costs one copy of the body rather than one per record.
+     */
+    private void replay(NoteCodec.Record record, Map<String, Note> notes, Map<String, StringBuilder> edited)
+            throws IOException {
+        Note note = notes.get(record.id);
+        switch (record.type) {
+            case NoteCodec.EDIT:
+                if (note == null) return;
+                StringBuilder body = edited.get(record.id);
+                if (body == null) {
+                    body = new StringBuilder(note.getContent() == null ? "" : note.getContent());
+                    edited.put(record.id, body);
+                }
+                try {
+                    for (EditOp op : record.ops) {
+                        op.applyTo(body);
+                    }
+                    // Formatting recorded before these edits moves with the text.
+                    if (note.getStyles() != null) note.setStyles(note.getStyles().adjust(record.ops));
+                } catch (IndexOutOfBoundsException e) {
+                    // An edit that does not fit is skipped rather than failing the whole load.
+                    e.printStackTrace();
+                }
+                break;
+            case NoteCodec.RENAME:
+                if (note != null) note.setTitle(record.title);
+                break;
+            case NoteCodec.STYLES:
+                if (note != null) note.setStyles(record.styles);
+                break;
+            default:
+                edited.remove(record.id);
+                apply(record, notes, null);
+        }
+    }
+
+    private void apply(NoteCodec.Record record, Map<String, Note> notes, BodyFile bodies) throws IOException {
+        switch (record.type) {
+            case NoteCodec.PUT:
+                notes.put(record.id, record.toNote());
+                break;
+            case NoteCodec.DELETE:
+                notes.remove(record.id);
+                break;
+            case NoteCodec.BODY_REF:
+                if (bodies == null) throw new IOException("Missing body file for note " + record.id);
+                BodyRef ref = new BodyRef(bodies, record.offset, record.length, contentCache);
+                Note note = new Note(record.id, record.title, ref);
+                note.setStyles(record.styles);
+                notes.put(record.id, note);
+                break;
+        }
+    }
+
+    private Path journalFile(long gen) {
+        return dir.resolve(JOURNAL_PREFIX + gen);
+    }
+
+    private Path bodiesFile(long gen) {
+        return dir.resolve(BODIES_PREFIX + gen);
+    }
+
+    // Older body files may still be mapped by notes loaded from them; failing to delete is harmless.
+    private void deleteStaleBodies(long currentGeneration) {
+        String current = bodiesFile(currentGeneration).getFileName().toString();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, BODIES_PREFIX + "*")) {
+            for (Path file : files) {
+                if (!file.getFileName().toString().equals(current)) {
+                    try {
+                        Files.deleteIfExists(file);
+                    } catch (IOException ignored) {}
+                }
+            }
+        } catch (IOException ignored) {}
+    }
+
+    private List<Long> listJournals(long after) {
+        List<Long> gens = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, JOURNAL_PREFIX + "*")) {
+            for (Path file : files) {
+                try {
+                    long gen = Long.parseLong(file.getFileName().toString().substring(JOURNAL_PREFIX.length()));
+                    if (gen > after) gens.add(gen);
+                } catch (NumberFormatException ignored) {}
+            }
+        } catch (IOException ignored) {}
+        Collections.sort(gens);
+        return gens;
+    }
+}
@@ -0,0 +1,84 @@
+package notepad.store;
+
+import notepad.model.Note;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Reads {@link NoteCodec} records one at a time. {@link #next()} stops at the end of the file or
+ * at the first torn or corrupt record; {@link #getValidBytes()} then tells where the intact data ends.
+ */
+public class NoteRecordReader implements Closeable {
+    private final DataInputStream in;
+    private final long size;
+    private final short version;
+    private long position;
+
+    public NoteRecordReader(Path file, byte fileType) throws IOException {
+        this(new BufferedInputStream(Files.newInputStream(file)), Files.size(file), fileType);
+    }
+
+    public NoteRecordReader(InputStream in, long size, byte fileType) throws IOException {
+        this.in = new DataInputStream(in.markSupported() ? in : new BufferedInputStream(in));
+        this.size = size;
+        short version = NoteCodec.VERSION;
+        try {
+            version = NoteCodec.readHeader(this.in, fileType);
+            position = NoteCodec.HEADER_BYTES;
+        } catch (EOFException e) {
+            // Torn before its header was complete: no records, and nothing of it worth keeping.
+        }
+        this.version = version;
+    }
+
+    /**
+     * Continues a file whose header has already been read, from a record boundary; {@code size}
+     * is the number of bytes left. {@link #getValidBytes()} then counts from where it starts.
+     */
+    public NoteRecordReader(InputStream in, long size, short version) {
+        this.in = new DataInputStream(in.markSupported() ? in : new BufferedInputStream(in));
+        this.size = size;
+        this.version = version;
+    }
+
+    public short getVersion() {
+        return version;
+    }
+
+    public NoteCodec.Record next() throws IOException {
+        byte[] payload = NoteCodec.readRecord(in, size - position);
+        if (payload == null) return null;
+        position += 8 + payload.length;
+        return NoteCodec.decode(payload, version);
+    }
+
+    /** Returns the next note carried by a PUT record, skipping other record types. */
+    public Note nextNote() throws IOException {
+        NoteCodec.Record record;
+        while ((record = next()) != null) {
+            if (record.type == NoteCodec.PUT) return record.toNote();
+        }
+        return null;
+    }
+
+    public long readLong() throws IOException {
+        position += 8;
+        return in.readLong();
+    }
+
+    public int readInt() throws IOException {
+        position += 4;
+        return in.readInt();
+    }
+
+    public long getValidBytes() {
+        return position;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+}
@@ -0,0 +1,102 @@
+package notepad.store;
+
+import notepad.model.EditOp;
+import notepad.model.Note;
+import notepad.model.StyleRuns;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.List;
+
+/** Streams {@link NoteCodec} records to a channel through a fixed-size buffer, one note at a time. */
+public class NoteRecordWriter implements Closeable, Flushable {
+    private static final int BUFFER_BYTES = 64 * 1024;
+
+    private final WritableByteChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_BYTES);
+    private long bytesWritten;
+
+    /** Starts a new file with a header of the given type. */
+    public NoteRecordWriter(WritableByteChannel channel, byte fileType) throws IOException {
+        this(channel);
+        write(NoteCodec.header(fileType));
+    }
+
+    /** Continues a file whose header has already been written. */
+    public NoteRecordWriter(WritableByteChannel channel) {
+        this.channel = channel;
+    }
+
+    public void writePut(Note note) throws IOException {
+        write(NoteCodec.put(note));
+    }
+
+    public void writeDelete(String id) throws IOException {
+        write(NoteCodec.delete(id));
+    }
+
+    public void writeEdit(String id, List<EditOp> ops) throws IOException {
+        write(NoteCodec.edit(id, ops));
+    }
+
+    public void writeRename(String id, String title) throws IOException {
+        write(NoteCodec.rename(id, title));
+    }
+
+    public void writeStyles(String id, StyleRuns styles) throws IOException {
+        write(NoteCodec.styles(id, styles));
+    }
+
+    public void writeKeyframe(String id, long time, String text) throws IOException {
+        write(NoteCodec.keyframe(id, time, text));
+    }
+
+    public void writeDelta(String id, long time, List<EditOp> ops) throws IOException {
+        write(NoteCodec.delta(id, time, ops));
+    }
+
+    public void writeBodyRef(Note note, long offset, int length) throws IOException {
+        write(NoteCodec.bodyRef(note, offset, length));
+    }
+
+    /** Writes file-specific fields that follow the header, such as a snapshot's generation. */
+    public void writeLong(long value) throws IOException {
+        write(ByteBuffer.allocate(8).putLong(value).flip());
+    }
+
+    public void writeInt(int value) throws IOException {
+        write(ByteBuffer.allocate(4).putInt(value).flip());
+    }
+
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) channel.write(buffer);
+        buffer.clear();
+    }
+
+    @Override
+    public void close() throws IOException {
+        flush();
+        channel.close();
+    }
+
+    private void write(ByteBuffer bytes) throws IOException {
+        bytesWritten += bytes.remaining();
+        if (bytes.remaining() > buffer.remaining()) {
+            flush();
+            if (bytes.remaining() > buffer.capacity()) {
+                while (bytes.hasRemaining()) channel.write(bytes);
+                return;
+            }
+        }
+        buffer.put(bytes);
+    }
+}
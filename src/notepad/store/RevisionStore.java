@@ -0,0 +1,365 @@
+package notepad.store;
+
+import notepad.model.EditOp;
+
+import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * Revision history of each note, one file per note in the history directory. A revision is
+ * stored as the edits since the revision before it (a DELTA record), or now and then as the
+ * whole text (a KEYFRAME), so the history grows with the size of the edits, not with the number
+ * of revisions or the size of the note. A keyframe is written once the deltas since the last
+ * one outweigh the note or number {@link #MAX_CHAIN}, so rebuilding any revision reads one
+ * keyframe and at most that much after it.
+ * <p>
+ * When a note's history outgrows {@link #HISTORY_FACTOR} times the note, plus
+ * {@link #MIN_KEYFRAME_BYTES} of slack, it is thinned: revisions from the last hour are all kept,
+ * older ones down to one per ten minutes, per day and per week as they age, and the oldest are
+ * dropped until the history is back within half its budget. Thread-safe; every method may do file I/O.
+ */
+public class RevisionStore {
+    static final int MAX_CHAIN = 100;
+    static final long MIN_KEYFRAME_BYTES = 4 * 1024;
+    static final int HISTORY_FACTOR = 4;
+    private static final String SUFFIX = ".rev";
+    private static final int MAX_INDEXES = 16;
+    private static final long MINUTE = 60_000;
+    private static final long HOUR = 60 * MINUTE;
+    private static final long DAY = 24 * HOUR;
+    // Age limit and bucket size of each thinning tier; a bucket keeps only its newest revision.
+    private static final long[][] TIERS = {{HOUR, 1}, {DAY, 10 * MINUTE}, {30 * DAY, DAY}, {Long.MAX_VALUE, 7 * DAY}};
+
+    private final Path dir;
+    // Indexes of recently used histories, built by scanning their files.
+    private final LinkedHashMap<String, History> indexes = new LinkedHashMap<>(16, 0.75f, true);
+
+    /** One stored revision of a note. */
+    public static final class Revision {
+        private final long time;
+        private final int length;
+
+        Revision(long time, int length) {
+            this.time = time;
+            this.length = length;
+        }
+
+        /** When the revision was recorded, in milliseconds since the epoch. */
+        public long getTime() {
+            return time;
+        }
+
+        /** The length of its text in chars. */
+        public int getLength() {
+            return length;
+        }
+    }
+
+    private static final class Entry {
+        final long time;
+        final long offset;
+        final int recordBytes;
+        final int length;
+        final boolean keyframe;
+
+        Entry(long time, long offset, int recordBytes, int length, boolean keyframe) {
+            this.time = time;
+            this.offset = offset;
+            this.recordBytes = recordBytes;
+            this.length = length;
+            this.keyframe = keyframe;
+        }
+    }
+
+    private static final class History {
+        final List<Entry> entries = new ArrayList<>();
+        long fileBytes;
+        long chainBytes;
+        int chainCount;
+
+        Entry last() {
+            return entries.isEmpty() ? null : entries.get(entries.size() - 1);
+        }
+
+        void add(Entry entry) {
+            entries.add(entry);
+            fileBytes = entry.offset + entry.recordBytes;
+            if (entry.keyframe) {
+                chainBytes = 0;
+                chainCount = 0;
+            } else {
+                chainBytes += entry.recordBytes;
+                chainCount++;
+            }
+        }
+    }
+
+    public RevisionStore(Path dir) {
+        this.dir = dir;
+    }
+
+    /**
+     * Records a revision of a note. {@code ops} are the edits since {@code base}, the note's text
+     * at some point after its latest revision, or, if {@code base} is null, since the latest
+     * revision itself. A note without history starts one only from a base.
+     */
+    public synchronized void record(String noteId, String base, List<EditOp> ops, long time) throws IOException {
+        History history = index(noteId);
+        Entry last = history.last();
+        if (last == null && base == null) return;
+        List<EditOp> delta = new ArrayList<>();
+        String text = null;
+        if (base != null) {
+            if (last != null) delta.addAll(EditOp.between(rebuild(noteId, history, history.entries.size() - 1), base));
+            text = base;
+        }
+        delta.addAll(ops);
+        if (last != null && delta.isEmpty()) return;
+        int length = last == null ? 0 : last.length;
+        for (EditOp op : delta) length += op.getKind() == EditOp.INSERT ? op.getLength() : -op.getLength();
+        if (last != null) time = Math.max(time, last.time + 1);
+        long deltaBytes = NoteCodec.delta(noteId, time, delta).remaining();
+        boolean keyframe = last == null || history.chainCount >= MAX_CHAIN
+                || history.chainBytes + deltaBytes > Math.max(MIN_KEYFRAME_BYTES, length);
+        if (keyframe) {
+            if (text == null) text = rebuild(noteId, history, history.entries.size() - 1);
+            StringBuilder body = new StringBuilder(text);
+            for (EditOp op : ops) op.applyTo(body);
+            text = body.toString();
+        }
+        Path file = file(noteId);
+        Files.createDirectories(dir);
+        boolean fresh = history.fileBytes == 0;
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                fresh ? StandardOpenOption.TRUNCATE_EXISTING : StandardOpenOption.APPEND)) {
+            NoteRecordWriter writer = fresh ? new NoteRecordWriter(ch, NoteCodec.FILE_HISTORY) : new NoteRecordWriter(ch);
+            long offset = fresh ? NoteCodec.HEADER_BYTES : history.fileBytes;
+            if (keyframe) writer.writeKeyframe(noteId, time, text);
+            else writer.writeDelta(noteId, time, delta);
+            writer.flush();
+            int recordBytes = (int) (writer.getBytesWritten() - (fresh ? NoteCodec.HEADER_BYTES : 0));
+            history.add(new Entry(time, offset, recordBytes, keyframe ? text.length() : length, keyframe));
+        }
+        long budget = (long) HISTORY_FACTOR * history.last().length + MIN_KEYFRAME_BYTES;
+        if (history.fileBytes > budget) thin(noteId, history, budget / 2);
+    }
+
+    public synchronized boolean hasHistory(String noteId) throws IOException {
+        return !index(noteId).entries.isEmpty();
+    }
+
+    /** The note's revisions, oldest first. */
+    public synchronized List<Revision> list(String noteId) throws IOException {
+        List<Revision> revisions = new ArrayList<>();
+        for (Entry entry : index(noteId).entries) revisions.add(new Revision(entry.time, entry.length));
+        return revisions;
+    }
+
+    /**
+     * The text of the note's latest revision recorded at or before {@code time}, or null if
+     * there is none, such as when it was thinned out of the history.
+     */
+    public synchronized String read(String noteId, long time) throws IOException {
+        History history = index(noteId);
+        int found = -1;
+        for (int i = history.entries.size() - 1; i >= 0; i--) {
+            if (history.entries.get(i).time <= time) {
+                found = i;
+                break;
+            }
+        }
+        return found < 0 ? null : rebuild(noteId, history, found);
+    }
+
+    public synchronized void delete(String noteId) throws IOException {
+        indexes.remove(noteId);
+        Files.deleteIfExists(file(noteId));
+    }
+
+    /** Total size of all history files. */
+    public long getStoreBytes() {
+        long bytes = 0;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "*" + SUFFIX)) {
+            for (Path file : files) {
+                try {
+                    bytes += Files.size(file);
+                } catch (IOException ignored) {}
+            }
+        } catch (IOException ignored) {}
+        return bytes;
+    }
+
+    // Reads the keyframe at or before revision i and applies the deltas after it.
+    private String rebuild(String noteId, History history, int i) throws IOException {
+        int from = i;
+        while (!history.entries.get(from).keyframe) from--;
+        Entry start = history.entries.get(from);
+        Entry end = history.entries.get(i);
+        try (FileChannel ch = FileChannel.open(file(noteId), StandardOpenOption.READ)) {
+            ch.position(start.offset);
+            NoteRecordReader reader = new NoteRecordReader(new BufferedInputStream(Channels.newInputStream(ch)),
+                    end.offset + end.recordBytes - start.offset, NoteCodec.VERSION);
+            StringBuilder text = new StringBuilder();
+            for (int k = from; k <= i; k++) {
+                NoteCodec.Record record = reader.next();
+                if (record == null) throw new IOException("Corrupt revision history of note " + noteId);
+                apply(record, text);
+            }
+            return text.toString();
+        }
+    }
+
+    /**
+     * Rewrites the history keeping one revision per thinning bucket, then, while the rewrite is
+     * over {@code target}, the newer half of those. Each pass reads the history once.
+     */
+    private void thin(String noteId, History history, long target) throws IOException {
+        List<Entry> entries = history.entries;
+        int n = entries.size();
+        boolean[] keep = new boolean[n];
+        long now = entries.get(n - 1).time;
+        long previousBucket = Long.MIN_VALUE;
+        int kept = 0;
+        for (int i = n - 1; i >= 0; i--) {
+            long age = now - entries.get(i).time;
+            long bucketMillis = 1;
+            for (long[] tier : TIERS) {
+                if (age <= tier[0]) {
+                    bucketMillis = tier[1];
+                    break;
+                }
+            }
+            long bucket = Math.floorDiv(entries.get(i).time, bucketMillis) * bucketMillis;
+            keep[i] = bucket != previousBucket;
+            if (keep[i]) kept++;
+            previousBucket = bucket;
+        }
+        Path file = file(noteId);
+        Path tmp = dir.resolve(file.getFileName() + ".tmp");
+        while (rewrite(noteId, file, tmp, keep) > target && kept > 1) {
+            for (int i = 0, drop = kept / 2; drop > 0; i++) {
+                if (keep[i]) {
+                    keep[i] = false;
+                    drop--;
+                    kept--;
+                }
+            }
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        indexes.remove(noteId);
+    }
+
+    /**
+     * Writes the kept revisions of {@code file} to {@code out} and returns its size. A kept
+     * revision is stored as the edits since the one kept before it, joined together, where a
+     * keyframe in between counts as the edit between the texts on either side; once the joined
+     * edits outweigh the text, the revision is written whole.
+     */
+    private long rewrite(String noteId, Path file, Path out, boolean[] keep) throws IOException {
+        try (NoteRecordReader reader = new NoteRecordReader(file, NoteCodec.FILE_HISTORY);
+             FileChannel ch = FileChannel.open(out, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                     StandardOpenOption.TRUNCATE_EXISTING)) {
+            NoteRecordWriter writer = new NoteRecordWriter(ch, NoteCodec.FILE_HISTORY);
+            StringBuilder text = new StringBuilder();
+            // Null before the first kept revision and once the edits since the last one outweigh the text.
+            List<EditOp> joined = null;
+            long joinedChars = 0;
+            long chainBytes = 0;
+            int chainCount = 0;
+            for (int i = 0; i < keep.length; i++) {
+                NoteCodec.Record record = reader.next();
+                if (record == null) throw new IOException("Corrupt revision history of note " + noteId);
+                List<EditOp> ops = joined == null ? null
+                        : record.type == NoteCodec.KEYFRAME ? EditOp.between(text.toString(), record.content) : record.ops;
+                apply(record, text);
+                if (ops != null) {
+                    joined.addAll(ops);
+                    for (EditOp op : ops) joinedChars += op.getKind() == EditOp.INSERT ? op.getLength() : 1;
+                    if (joinedChars > text.length()) joined = null;
+                }
+                if (!keep[i]) continue;
+                long deltaBytes = joined == null ? 0 : NoteCodec.delta(noteId, record.time, joined).remaining();
+                if (joined == null || chainCount >= MAX_CHAIN
+                        || chainBytes + deltaBytes > Math.max(MIN_KEYFRAME_BYTES, text.length())) {
+                    writer.writeKeyframe(noteId, record.time, text.toString());
+                    chainBytes = 0;
+                    chainCount = 0;
+                } else {
+                    writer.writeDelta(noteId, record.time, joined);
+                    chainBytes += deltaBytes;
+                    chainCount++;
+                }
+                joined = new ArrayList<>();
+                joinedChars = 0;
+            }
+            writer.flush();
+            ch.force(true);
+            return writer.getBytesWritten();
+        }
+    }
+
+    private static void apply(NoteCodec.Record record, StringBuilder text) throws IOException {
+        if (record.type == NoteCodec.KEYFRAME) {
+            text.setLength(0);
+            text.append(record.content);
+        } else if (record.type == NoteCodec.DELTA) {
+            try {
+                for (EditOp op : record.ops) op.applyTo(text);
+            } catch (IndexOutOfBoundsException e) {
+                throw new IOException("Revision does not fit the text before it", e);
+            }
+        } else {
+            throw new IOException("Unexpected record type " + record.type + " in revision history");
+        }
+    }
+
+    // Scans the note's file once; a torn record at its end is cut off, as in the journal.
+    private History index(String noteId) throws IOException {
+        History history = indexes.get(noteId);
+        if (history != null) return history;
+        history = new History();
+        Path file = file(noteId);
+        if (Files.exists(file)) {
+            try (NoteRecordReader reader = new NoteRecordReader(file, NoteCodec.FILE_HISTORY)) {
+                int length = 0;
+                long offset = reader.getValidBytes();
+                NoteCodec.Record record;
+                while ((record = reader.next()) != null) {
+                    boolean keyframe = record.type == NoteCodec.KEYFRAME;
+                    if (keyframe) {
+                        length = record.content.length();
+                    } else {
+                        for (EditOp op : record.ops) length += op.getKind() == EditOp.INSERT ? op.getLength() : -op.getLength();
+                    }
+                    history.add(new Entry(record.time, offset, (int) (reader.getValidBytes() - offset), length, keyframe));
+                    offset = reader.getValidBytes();
+                }
+                if (history.entries.isEmpty()) history.fileBytes = 0;
+                else if (offset < Files.size(file)) {
+                    try (FileChannel ch = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                        ch.truncate(offset);
+                    }
+                }
+            }
+        }
+        indexes.put(noteId, history);
+        if (indexes.size() > MAX_INDEXES) {
+            Iterator<String> it = indexes.keySet().iterator();
+            it.next();
+            it.remove();
+        }
+        return history;
+    }
+
+    // Note ids are UUIDs; anything else is hex-encoded so it is always a valid file name.
+    private Path file(String noteId) {
+        if (noteId.matches("[A-Za-z0-9_-]+")) return dir.resolve(noteId + SUFFIX);
+        StringBuilder name = new StringBuilder("x");
+        for (byte b : noteId.getBytes(StandardCharsets.UTF_8)) name.append(String.format("%02x", b));
+        return dir.resolve(name + SUFFIX);
+    }
+}
@@ -0,0 +1,87 @@
+package notepad.store;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Turns the bytes of a whole text file into note text when its charset is not known. A byte
+ * order mark decides it; failing that, UTF-16 is recognised by its zero bytes, valid UTF-8 is
+ * taken as UTF-8, and anything else as Windows-1252, which accepts every byte. Line breaks
+ * become LF, as with {@link TextFileReader}.
+ */
+public final class TextDecoder {
+    private static final int SNIFF_BYTES = 4096;
+    private static final Charset FALLBACK = Charset.isSupported("windows-1252")
+            ? Charset.forName("windows-1252") : StandardCharsets.ISO_8859_1;
+
+    private TextDecoder() {}
+
+    public static String decode(byte[] bytes) {
+        return decode(bytes, null);
+    }
+
+    /** Like {@link #decode(byte[])}, but a charset the file declares wins over guessing; a BOM still wins over both. */
+    public static String decode(byte[] bytes, Charset declared) {
+        int bom = 0;
+        Charset charset;
+        if (startsWith(bytes, 0xEF, 0xBB, 0xBF)) {
+            charset = StandardCharsets.UTF_8;
+            bom = 3;
+        } else if (startsWith(bytes, 0xFE, 0xFF)) {
+            charset = StandardCharsets.UTF_16BE;
+            bom = 2;
+        } else if (startsWith(bytes, 0xFF, 0xFE)) {
+            charset = StandardCharsets.UTF_16LE;
+            bom = 2;
+        } else {
+            charset = declared != null ? declared : sniffUtf16(bytes);
+        }
+        String text;
+        if (charset != null) {
+            text = new String(bytes, bom, bytes.length - bom, charset);
+        } else {
+            try {
+                text = StandardCharsets.UTF_8.newDecoder()
+                        .onMalformedInput(CodingErrorAction.REPORT)
+                        .onUnmappableCharacter(CodingErrorAction.REPORT)
+                        .decode(ByteBuffer.wrap(bytes)).toString();
+            } catch (CharacterCodingException e) {
+                text = new String(bytes, FALLBACK);
+            }
+        }
+        return normalizeLineBreaks(text);
+    }
+
+    /** CRLF and lone CR become LF; returns {@code text} itself when it has no CR. */
+    public static String normalizeLineBreaks(String text) {
+        if (text.indexOf('\r') < 0) return text;
+        return text.replace("\r\n", "\n").replace('\r', '\n');
+    }
+
+    // Text without a byte order mark is taken as UTF-16 when most of one column of bytes is zero.
+    private static Charset sniffUtf16(byte[] bytes) {
+        int n = Math.min(bytes.length, SNIFF_BYTES) & ~1;
+        if (n < 4) return null;
+        int evenZeros = 0;
+        int oddZeros = 0;
+        for (int i = 0; i < n; i += 2) {
+            if (bytes[i] == 0) evenZeros++;
+            if (bytes[i + 1] == 0) oddZeros++;
+        }
+        int pairs = n / 2;
+        if (evenZeros * 10 > pairs * 7 && oddZeros * 10 < pairs) return StandardCharsets.UTF_16BE;
+        if (oddZeros * 10 > pairs * 7 && evenZeros * 10 < pairs) return StandardCharsets.UTF_16LE;
+        return null;
+    }
+
+    private static boolean startsWith(byte[] bytes, int... prefix) {
+        if (bytes.length < prefix.length) return false;
+        for (int i = 0; i < prefix.length; i++) {
+            if ((bytes[i] & 0xFF) != prefix[i]) return false;
+        }
+        return true;
+    }
+}
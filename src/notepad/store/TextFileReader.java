@@ -0,0 +1,97 @@
+package notepad.store;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Streams a UTF-8 text file through a channel in fixed-size chunks, so the caller can show the
+ * start of a large file long before the end has been read. Malformed bytes become U+FFFD, a
+ * leading byte order mark is dropped, and CRLF or lone CR line breaks become LF, which is what
+ * Swing documents use; the text is otherwise kept as it is, including a missing final newline.
+ */
+public class TextFileReader implements Closeable {
+    private static final int CHUNK_BYTES = 256 * 1024;
+
+    /** Receives the text in order; returning false stops the read. */
+    public interface ChunkSink {
+        boolean chunk(String text, long bytesRead);
+    }
+
+    private final FileChannel channel;
+    private final long size;
+    private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    private boolean started;
+    private boolean afterCr;
+
+    public TextFileReader(Path file) throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.READ);
+        size = channel.size();
+    }
+
+    public long size() {
+        return size;
+    }
+
+    /**
+     * Reads the whole file, passing each decoded chunk to {@code sink}. Returns the full text,
+     * or null if the sink stopped the read early.
+     */
+    public String read(ChunkSink sink) throws IOException {
+        StringBuilder all = new StringBuilder((int) Math.min(size, Integer.MAX_VALUE - 8));
+        ByteBuffer bytes = ByteBuffer.allocateDirect(CHUNK_BYTES);
+        CharBuffer chars = CharBuffer.allocate(CHUNK_BYTES);
+        long bytesRead = 0;
+        boolean eof = false;
+        while (!eof) {
+            int n = channel.read(bytes);
+            if (n < 0) eof = true;
+            else bytesRead += n;
+            bytes.flip();
+            CoderResult result = decoder.decode(bytes, chars, eof);
+            if (result.isError()) result.throwException();
+            if (eof) decoder.flush(chars);
+            bytes.compact();
+            chars.flip();
+            String text = normalize(chars);
+            chars.clear();
+            if (text.isEmpty()) continue;
+            all.append(text);
+            if (!sink.chunk(text, bytesRead)) return null;
+        }
+        return all.toString();
+    }
+
+    private String normalize(CharBuffer chars) {
+        StringBuilder out = new StringBuilder(chars.remaining());
+        if (!started && chars.hasRemaining()) {
+            started = true;
+            if (chars.get(chars.position()) == '\uFEFF') chars.get();
+        }
+        while (chars.hasRemaining()) {
+            char c = chars.get();
+            if (c == '\n' && afterCr) {
+                afterCr = false;
+                continue;
+            }
+            afterCr = c == '\r';
+            out.append(afterCr ? '\n' : c);
+        }
+        return out.toString();
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,90 @@
+package notepad.store;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A stack of opaque records in a temporary file, for undo history that no longer fits in memory.
+ * Each record is followed by its length, so the newest one can be read and cut off without
+ * scanning the file. The file is created on the first push, locked while open and deleted by
+ * {@link #close}; files left behind by a session that did not close them are removed by
+ * {@link #deleteStale}.
+ */
+public class UndoSpillFile implements Closeable {
+    private static final String PREFIX = "notepad-undo-";
+    private static final String SUFFIX = ".log";
+
+    private FileChannel channel;
+    private Path file;
+    private long size;
+    private int count;
+
+    public boolean isEmpty() {
+        return count == 0;
+    }
+
+    public void push(byte[] record) throws IOException {
+        if (channel == null) {
+            file = Files.createTempFile(PREFIX, SUFFIX);
+            channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            channel.lock();
+        }
+        ByteBuffer buf = ByteBuffer.allocate(record.length + 4);
+        buf.put(record).putInt(record.length).flip();
+        while (buf.hasRemaining()) size += channel.write(buf, size);
+        count++;
+    }
+
+    /** Removes and returns the newest record, or null if there is none. */
+    public byte[] pop() throws IOException {
+        if (count == 0) return null;
+        ByteBuffer trailer = ByteBuffer.allocate(4);
+        readFully(trailer, size - 4);
+        int length = trailer.getInt(0);
+        ByteBuffer record = ByteBuffer.allocate(length);
+        readFully(record, size - 4 - length);
+        size -= 4 + length;
+        channel.truncate(size);
+        count--;
+        return record.array();
+    }
+
+    private void readFully(ByteBuffer buf, long position) throws IOException {
+        while (buf.hasRemaining()) {
+            if (channel.read(buf, position + buf.position()) < 0) throw new IOException("Truncated undo log");
+        }
+    }
+
+    /** Deletes spill files in the temporary directory that no running session holds locked. */
+    public static void deleteStale() {
+        Path dir = Paths.get(System.getProperty("java.io.tmpdir"));
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, PREFIX + "*" + SUFFIX)) {
+            for (Path file : files) {
+                try {
+                    try (FileChannel ch = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                        if (ch.tryLock() == null) continue;
+                    }
+                    Files.deleteIfExists(file);
+                } catch (IOException | OverlappingFileLockException ignored) {}
+            }
+        } catch (IOException ignored) {}
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (channel == null) return;
+        channel.close();
+        Files.deleteIfExists(file);
+        channel = null;
+        size = 0;
+        count = 0;
+    }
+}
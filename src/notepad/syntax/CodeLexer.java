@@ -0,0 +1,119 @@
+package notepad.syntax;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * A small lexer for C-family code (Java, C, C#, JavaScript and the like), with Python's keywords
+ * and {@code #} comments thrown in. It works one line at a time and carries only an int of state
+ * between lines, so a highlighter can resume at any line whose start state it kept. Stateless
+ * itself and safe to share between threads.
+ */
+public final class CodeLexer {
+    public static final int PLAIN = 0;
+    public static final int KEYWORD = 1;
+    public static final int STRING = 2;
+    public static final int COMMENT = 3;
+    public static final int NUMBER = 4;
+    public static final int TYPE = 5;
+
+    /** Line state: not inside anything that spans lines. */
+    public static final int NORMAL = 0;
+    /** Line state: inside a block comment. */
+    public static final int IN_COMMENT = 1;
+
+    private static final Set<String> KEYWORDS = new HashSet<>(Arrays.asList(
+            "abstract", "and", "as", "assert", "async", "auto", "await", "boolean", "break", "byte", "case",
+            "catch", "char", "class", "const", "continue", "def", "default", "del", "delete", "do", "double",
+            "elif", "else", "enum", "except", "export", "extends", "extern", "false", "final", "finally",
+            "float", "fn", "for", "from", "func", "function", "global", "goto", "if", "implements", "import",
+            "in", "instanceof", "int", "interface", "is", "lambda", "let", "long", "match", "namespace",
+            "new", "nil", "none", "None", "nonlocal", "not", "null", "or", "override", "package", "pass",
+            "private", "protected", "pub", "public", "raise", "record", "return", "sealed", "self", "short",
+            "signed", "sizeof", "static", "struct", "super", "switch", "synchronized", "template", "this",
+            "throw", "throws", "trait", "transient", "True", "False", "true", "try", "type", "typedef",
+            "typeof", "union", "unsigned", "use", "using", "val", "var", "virtual", "void", "volatile",
+            "where", "while", "with", "yield"));
+
+    /** Receives the tokens of a line; plain text between them is not reported. */
+    public interface TokenSink {
+        void token(int start, int end, int kind);
+    }
+
+    private CodeLexer() {}
+
+    /**
+     * Lexes {@code text[from, to)}, which holds no line break, starting in {@code state}, and
+     * returns the state at its end. Several calls may cover one line, each resuming the last.
+     */
+    public static int lex(CharSequence text, int from, int to, int state, TokenSink sink) {
+        int i = from;
+        if (state == IN_COMMENT) {
+            int end = indexOf(text, "*/", i, to);
+            if (end < 0) {
+                if (to > i) sink.token(i, to, COMMENT);
+                return IN_COMMENT;
+            }
+            sink.token(i, end + 2, COMMENT);
+            i = end + 2;
+        }
+        boolean lineStart = isBlank(text, from, i);
+        while (i < to) {
+            char c = text.charAt(i);
+            if (c == '/' && i + 1 < to && text.charAt(i + 1) == '/' || c == '#' && lineStart) {
+                sink.token(i, to, COMMENT);
+                return NORMAL;
+            }
+            if (c == '/' && i + 1 < to && text.charAt(i + 1) == '*') {
+                int end = indexOf(text, "*/", i + 2, to);
+                if (end < 0) {
+                    sink.token(i, to, COMMENT);
+                    return IN_COMMENT;
+                }
+                sink.token(i, end + 2, COMMENT);
+                i = end + 2;
+            } else if (c == '"' || c == '\'' || c == '`') {
+                int end = i + 1;
+                while (end < to && text.charAt(end) != c) {
+                    end += text.charAt(end) == '\\' ? 2 : 1;
+                }
+                end = Math.min(to, end + 1);
+                sink.token(i, end, STRING);
+                i = end;
+            } else if (Character.isDigit(c) || c == '.' && i + 1 < to && Character.isDigit(text.charAt(i + 1))) {
+                int end = i + 1;
+                while (end < to && (Character.isLetterOrDigit(text.charAt(end)) || text.charAt(end) == '.' || text.charAt(end) == '_')) {
+                    end++;
+                }
+                sink.token(i, end, NUMBER);
+                i = end;
+            } else if (Character.isJavaIdentifierStart(c)) {
+                int end = i + 1;
+                while (end < to && Character.isJavaIdentifierPart(text.charAt(end))) end++;
+                String word = text.subSequence(i, end).toString();
+                if (KEYWORDS.contains(word)) sink.token(i, end, KEYWORD);
+                else if (Character.isUpperCase(c) && end - i > 1) sink.token(i, end, TYPE);
+                i = end;
+            } else {
+                i++;
+            }
+            if (!Character.isWhitespace(c)) lineStart = false;
+        }
+        return NORMAL;
+    }
+
+    private static boolean isBlank(CharSequence text, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (!Character.isWhitespace(text.charAt(i))) return false;
+        }
+        return true;
+    }
+
+    private static int indexOf(CharSequence text, String s, int from, int to) {
+        for (int i = from; i + s.length() <= to; i++) {
+            if (text.charAt(i) == s.charAt(0) && text.charAt(i + 1) == s.charAt(1)) return i;
+        }
+        return -1;
+    }
+}
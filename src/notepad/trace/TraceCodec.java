@@ -0,0 +1,196 @@
+package notepad.trace;
+
+import notepad.model.StyleRuns;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Binary format of trace files.
+ * <p>
+ * A trace is gzip-compressed. It starts with {@code [int magic "NTRC"][short version]} followed
+ * by events {@code [byte type][varint delay in microseconds][fields]}. Strings are a varint byte
+ * count plus UTF-8 bytes; a style is a string as {@code NoteDocument.encode} writes it.
+ * <pre>
+ *   SEED, ADD          id, title, text, styles
+ *   SELECT, DELETE     id
+ *   RENAME             id, title
+ *   INSERT             varint offset, text, style of the inserted text
+ *   REMOVE             varint offset, varint length
+ *   CHARACTER_STYLE,
+ *   PARAGRAPH_STYLE    varint offset, varint length, style that replaces the range's style
+ * </pre>
+ * Styles are laid out as in the note store: a varint style count and that many strings, then
+ * the character and paragraph runs, each a varint run count and varint index and length pairs.
+ * Zero styles means plain text and ends the field.
+ */
+public final class TraceCodec {
+    public static final int MAGIC = 0x4E545243; // "NTRC"
+    public static final short VERSION = 1;
+
+    private TraceCodec() {}
+
+    /** Creates {@code file} and writes the header. */
+    public static DataOutputStream create(Path file) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new GZIPOutputStream(Files.newOutputStream(file), 64 * 1024, true)));
+        out.writeInt(MAGIC);
+        out.writeShort(VERSION);
+        return out;
+    }
+
+    /** Reads every event of the trace in {@code file}. */
+    public static List<TraceEvent> readAll(Path file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new GZIPInputStream(Files.newInputStream(file), 64 * 1024)))) {
+            if (in.readInt() != MAGIC) throw new IOException("Not a trace file: " + file);
+            short version = in.readShort();
+            if (version > VERSION) throw new IOException("Trace format " + version + " is newer than this application");
+            List<TraceEvent> events = new ArrayList<>();
+            for (TraceEvent event; (event = read(in)) != null; ) {
+                events.add(event);
+            }
+            return events;
+        }
+    }
+
+    public static void write(DataOutputStream out, TraceEvent event) throws IOException {
+        out.writeByte(event.type);
+        writeVarint(out, event.delayMicros);
+        switch (event.type) {
+            case TraceEvent.SEED:
+            case TraceEvent.ADD:
+                writeString(out, event.noteId);
+                writeString(out, event.title);
+                writeString(out, event.text);
+                writeStyles(out, event.styles);
+                break;
+            case TraceEvent.SELECT:
+            case TraceEvent.DELETE:
+                writeString(out, event.noteId);
+                break;
+            case TraceEvent.RENAME:
+                writeString(out, event.noteId);
+                writeString(out, event.title);
+                break;
+            case TraceEvent.INSERT:
+                writeVarint(out, event.offset);
+                writeString(out, event.text);
+                writeString(out, event.style);
+                break;
+            case TraceEvent.REMOVE:
+                writeVarint(out, event.offset);
+                writeVarint(out, event.length);
+                break;
+            case TraceEvent.CHARACTER_STYLE:
+            case TraceEvent.PARAGRAPH_STYLE:
+                writeVarint(out, event.offset);
+                writeVarint(out, event.length);
+                writeString(out, event.style);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown trace event type " + event.type);
+        }
+    }
+
+    /** Reads one event, or returns null at the end of the trace, including one cut off mid-event. */
+    static TraceEvent read(DataInputStream in) throws IOException {
+        int type = in.read();
+        if (type < 0) return null;
+        try {
+            long delay = readVarint(in);
+            switch (type) {
+                case TraceEvent.SEED:
+                case TraceEvent.ADD:
+                    return TraceEvent.note((byte) type, delay, readString(in), readString(in), readString(in), readStyles(in));
+                case TraceEvent.SELECT:
+                case TraceEvent.DELETE:
+                    return TraceEvent.note((byte) type, delay, readString(in), null, null, null);
+                case TraceEvent.RENAME:
+                    return TraceEvent.note((byte) type, delay, readString(in), readString(in), null, null);
+                case TraceEvent.INSERT: {
+                    int offset = (int) readVarint(in);
+                    String text = readString(in);
+                    return TraceEvent.edit((byte) type, delay, offset, text.length(), text, readString(in));
+                }
+                case TraceEvent.REMOVE:
+                    return TraceEvent.edit((byte) type, delay, (int) readVarint(in), (int) readVarint(in), null, null);
+                case TraceEvent.CHARACTER_STYLE:
+                case TraceEvent.PARAGRAPH_STYLE:
+                    return TraceEvent.edit((byte) type, delay, (int) readVarint(in), (int) readVarint(in), null,
+                            readString(in));
+                default:
+                    throw new IOException("Unknown trace event type " + type);
+            }
+        } catch (EOFException e) {
+            // Written by a recorder that did not get to close the file.
+            return null;
+        }
+    }
+
+    private static void writeStyles(DataOutputStream out, StyleRuns runs) throws IOException {
+        if (runs == null) {
+            writeVarint(out, 0);
+            return;
+        }
+        writeVarint(out, runs.getStyleCount());
+        for (int i = 0; i < runs.getStyleCount(); i++) writeString(out, runs.getStyle(i));
+        writeRuns(out, runs.getCharRuns());
+        writeRuns(out, runs.getParagraphRuns());
+    }
+
+    private static StyleRuns readStyles(DataInputStream in) throws IOException {
+        int count = (int) readVarint(in);
+        if (count == 0) return null;
+        String[] styles = new String[count];
+        for (int i = 0; i < count; i++) styles[i] = readString(in);
+        return new StyleRuns(styles, readRuns(in), readRuns(in));
+    }
+
+    private static void writeRuns(DataOutputStream out, int[] runs) throws IOException {
+        writeVarint(out, runs.length / 2);
+        for (int value : runs) writeVarint(out, value);
+    }
+
+    private static int[] readRuns(DataInputStream in) throws IOException {
+        int[] runs = new int[(int) readVarint(in) * 2];
+        for (int i = 0; i < runs.length; i++) runs[i] = (int) readVarint(in);
+        return runs;
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        byte[] bytes = (s == null ? "" : s).getBytes(StandardCharsets.UTF_8);
+        writeVarint(out, bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[(int) readVarint(in)];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeVarint(DataOutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    private static long readVarint(DataInputStream in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return value;
+        }
+        throw new IOException("Malformed varint in trace");
+    }
+}
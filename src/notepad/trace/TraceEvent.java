@@ -0,0 +1,61 @@
+package notepad.trace;
+
+import notepad.model.StyleRuns;
+
+/**
+ * One recorded editing step. Which fields are set depends on the type; {@link TraceCodec}
+ * lists them. {@code delayMicros} is the time since the previous event was recorded.
+ */
+public final class TraceEvent {
+    /** A note as it was when the trace first touched it; replay adds it to the store before starting. */
+    public static final byte SEED = 1;
+    public static final byte SELECT = 2;
+    public static final byte INSERT = 3;
+    public static final byte REMOVE = 4;
+    public static final byte CHARACTER_STYLE = 5;
+    public static final byte PARAGRAPH_STYLE = 6;
+    public static final byte ADD = 7;
+    public static final byte DELETE = 8;
+    public static final byte RENAME = 9;
+
+    private static final String[] NAMES = {
+            null, "seed", "select note", "insert", "remove", "character style", "paragraph style",
+            "add note", "delete note", "rename note"
+    };
+
+    public final byte type;
+    public final long delayMicros;
+    public final String noteId;
+    public final String title;
+    public final String text;
+    public final int offset;
+    public final int length;
+    public final String style;
+    public final StyleRuns styles;
+
+    TraceEvent(byte type, long delayMicros, String noteId, String title, String text, int offset, int length,
+               String style, StyleRuns styles) {
+        this.type = type;
+        this.delayMicros = delayMicros;
+        this.noteId = noteId;
+        this.title = title;
+        this.text = text;
+        this.offset = offset;
+        this.length = length;
+        this.style = style;
+        this.styles = styles;
+    }
+
+    static TraceEvent note(byte type, long delayMicros, String noteId, String title, String text, StyleRuns styles) {
+        return new TraceEvent(type, delayMicros, noteId, title, text, 0, 0, null, styles);
+    }
+
+    static TraceEvent edit(byte type, long delayMicros, int offset, int length, String text, String style) {
+        return new TraceEvent(type, delayMicros, null, null, text, offset, length, style, null);
+    }
+
+    /** The name the replay report uses for events of {@code type}. */
+    public static String name(byte type) {
+        return type > 0 && type < NAMES.length ? NAMES[type] : "type " + type;
+    }
+}
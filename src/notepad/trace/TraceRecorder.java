@@ -0,0 +1,233 @@
+package notepad.trace;
+
+import notepad.model.Note;
+import notepad.service.NoteChangeListener;
+import notepad.service.NoteService;
+import notepad.ui.NoteDocument;
+import notepad.ui.TextEditorPanel;
+
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Element;
+import java.beans.PropertyChangeListener;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Records an editing session into a trace file: the note shown in the editor, every insert,
+ * remove and formatting change in its document, including those made by undo, and notes added,
+ * removed or renamed in the note service. A note's text and formatting are written the first
+ * time the trace touches it, so a replay can start from the same notes. Runs on the event
+ * thread; events are encoded and written on a background thread.
+ */
+public class TraceRecorder {
+    private static final TraceEvent END = TraceEvent.note((byte) 0, 0, null, null, null, null);
+
+    private final TextEditorPanel editor;
+    private final NoteService noteService;
+    private final DataOutputStream out;
+    private final BlockingQueue<TraceEvent> queue = new LinkedBlockingQueue<>();
+    private final Thread writer;
+    private volatile IOException writeError;
+    private final Set<String> seeded = new HashSet<>();
+    private final Map<String, String> titles = new HashMap<>();
+    private final List<String> noteIds = new ArrayList<>();
+    // Paragraph styles last seen, so a formatting change records a paragraph only when its style changed.
+    private final Map<Element, String> paragraphStyles = new WeakHashMap<>();
+    private final PropertyChangeListener documentSwitch = e -> documentShown();
+    private final DocumentListener edits = new EditListener();
+    private final NoteChangeListener notes = new NoteListener();
+    private NoteDocument document;
+    private long lastNanos = System.nanoTime();
+    private int eventCount;
+
+    private TraceRecorder(TextEditorPanel editor, NoteService noteService, DataOutputStream out) {
+        this.editor = editor;
+        this.noteService = noteService;
+        this.out = out;
+        this.writer = new Thread(this::write, "trace-writer");
+        writer.setDaemon(true);
+    }
+
+    /** Starts recording into {@code file}, beginning with the note the editor shows. Call on the event thread. */
+    public static TraceRecorder start(Path file, TextEditorPanel editor, NoteService noteService) throws IOException {
+        TraceRecorder recorder = new TraceRecorder(editor, noteService, TraceCodec.create(file));
+        recorder.writer.start();
+        for (Note note : noteService.getNotes()) recorder.noteIds.add(note.getId());
+        noteService.addNoteChangeListener(recorder.notes);
+        editor.getTextPane().addPropertyChangeListener("document", recorder.documentSwitch);
+        recorder.documentShown();
+        return recorder;
+    }
+
+    /** Stops recording and closes the file, waiting for pending events to be written. */
+    public void stop() throws IOException {
+        editor.getTextPane().removePropertyChangeListener("document", documentSwitch);
+        noteService.removeNoteChangeListener(notes);
+        if (document != null) document.removeDocumentListener(edits);
+        document = null;
+        queue.add(END);
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        out.close();
+        if (writeError != null) throw writeError;
+    }
+
+    public int getEventCount() {
+        return eventCount;
+    }
+
+    // Replace All swaps in a scratch document while it edits; edits keep going to the note's document.
+    private void documentShown() {
+        Note note = editor.getCurrentNote();
+        if (!(editor.getTextPane().getDocument() instanceof NoteDocument) || note == null) return;
+        NoteDocument shown = (NoteDocument) editor.getTextPane().getDocument();
+        if (shown == document) return;
+        if (document != null) document.removeDocumentListener(edits);
+        document = shown;
+        document.addDocumentListener(edits);
+        if (seeded.add(note.getId())) {
+            try {
+                emit(TraceEvent.note(TraceEvent.SEED, 0, note.getId(), note.getTitle(),
+                        shown.getText(0, shown.getLength()), shown.captureStyles()));
+            } catch (BadLocationException e) {
+                e.printStackTrace();
+            }
+            titles.put(note.getId(), note.getTitle());
+        }
+        emit(TraceEvent.note(TraceEvent.SELECT, delay(), note.getId(), null, null, null));
+    }
+
+    private long delay() {
+        long now = System.nanoTime();
+        long micros = (now - lastNanos) / 1000;
+        lastNanos = now;
+        return micros;
+    }
+
+    private void emit(TraceEvent event) {
+        eventCount++;
+        queue.add(event);
+    }
+
+    private void write() {
+        try {
+            while (true) {
+                TraceEvent event = queue.take();
+                do {
+                    if (event == END) return;
+                    if (writeError == null) TraceCodec.write(out, event);
+                } while ((event = queue.poll()) != null);
+                // Flushed whenever the queue runs dry, so a session cut short still leaves a usable trace.
+                out.flush();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            writeError = e;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private class EditListener implements DocumentListener {
+        @Override
+        public void insertUpdate(DocumentEvent e) {
+            int offset = e.getOffset();
+            int end = offset + e.getLength();
+            try {
+                Element first = document.getCharacterElement(offset);
+                emit(TraceEvent.edit(TraceEvent.INSERT, delay(), offset, e.getLength(),
+                        document.getText(offset, e.getLength()), NoteDocument.encode(first.getAttributes())));
+                // Pasted text may carry more than one style.
+                if (first.getEndOffset() < end) characterStyles(first.getEndOffset(), end, 0);
+            } catch (BadLocationException ex) {
+                ex.printStackTrace();
+            }
+        }
+
+        @Override
+        public void removeUpdate(DocumentEvent e) {
+            emit(TraceEvent.edit(TraceEvent.REMOVE, delay(), e.getOffset(), e.getLength(), null, null));
+        }
+
+        @Override
+        public void changedUpdate(DocumentEvent e) {
+            int offset = e.getOffset();
+            int end = offset + e.getLength();
+            long delay = delay();
+            for (int at = offset; at <= end && at <= document.getLength(); ) {
+                Element paragraph = document.getParagraphElement(at);
+                String style = NoteDocument.encode(paragraph.getAttributes());
+                String previous = paragraphStyles.put(paragraph, style);
+                if (previous == null ? !style.isEmpty() : !previous.equals(style)) {
+                    emit(TraceEvent.edit(TraceEvent.PARAGRAPH_STYLE, delay, paragraph.getStartOffset(),
+                            paragraph.getEndOffset() - paragraph.getStartOffset(), null, style));
+                    delay = 0;
+                }
+                at = paragraph.getEndOffset();
+            }
+            if (e.getLength() > 0) characterStyles(offset, end, delay);
+        }
+
+        // One event per run of equally styled text in the range; the first one carries the delay.
+        private void characterStyles(int offset, int end, long delay) {
+            int runStart = offset;
+            String runStyle = null;
+            for (int at = offset; at < end; ) {
+                Element leaf = document.getCharacterElement(at);
+                String style = NoteDocument.encode(leaf.getAttributes());
+                if (runStyle != null && !style.equals(runStyle)) {
+                    emit(TraceEvent.edit(TraceEvent.CHARACTER_STYLE, delay, runStart, at - runStart, null, runStyle));
+                    delay = 0;
+                    runStart = at;
+                }
+                runStyle = style;
+                at = Math.min(end, leaf.getEndOffset());
+            }
+            if (runStyle != null) emit(TraceEvent.edit(TraceEvent.CHARACTER_STYLE, delay, runStart, end - runStart, null, runStyle));
+        }
+    }
+
+    private class NoteListener implements NoteChangeListener {
+        @Override
+        public void notesAdded(int fromIndex, int toIndex) {
+            for (int i = fromIndex; i <= toIndex; i++) {
+                Note note = noteService.getNote(i);
+                noteIds.add(i, note.getId());
+                seeded.add(note.getId());
+                titles.put(note.getId(), note.getTitle());
+                emit(TraceEvent.note(TraceEvent.ADD, delay(), note.getId(), note.getTitle(), note.getContent(), note.getStyles()));
+            }
+        }
+
+        @Override
+        public void notesRemoved(int fromIndex, int toIndex) {
+            List<String> removed = noteIds.subList(fromIndex, toIndex + 1);
+            // A note the trace never touched is not in the replay's store either.
+            for (String id : removed) {
+                if (seeded.remove(id)) emit(TraceEvent.note(TraceEvent.DELETE, delay(), id, null, null, null));
+            }
+            removed.clear();
+        }
+
+        @Override
+        public void notesChanged(int fromIndex, int toIndex) {
+            for (int i = fromIndex; i <= toIndex; i++) {
+                Note note = noteService.getNote(i);
+                noteIds.set(i, note.getId());
+                if (seeded.contains(note.getId()) && !note.getTitle().equals(titles.get(note.getId()))) {
+                    titles.put(note.getId(), note.getTitle());
+                    emit(TraceEvent.note(TraceEvent.RENAME, delay(), note.getId(), note.getTitle(), null, null));
+                }
+            }
+        }
+    }
+}
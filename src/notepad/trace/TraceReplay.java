@@ -0,0 +1,250 @@
+package notepad.trace;
+
+import notepad.diagnostics.LatencyHistogram;
+import notepad.model.Note;
+import notepad.service.NoteService;
+import notepad.ui.NoteDocument;
+import notepad.ui.TextEditorPanel;
+
+import javax.swing.*;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.StyledDocument;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.InvocationTargetException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.stream.Stream;
+
+/**
+ * Replays a trace recorded by {@link TraceRecorder} against a headless editor panel backed by a
+ * note service in a scratch directory, so each event goes through the same document, undo,
+ * highlighting and journaling code as in the application. Events run on the event thread one at
+ * a time, either back to back or with the pauses they were recorded with, and the time and
+ * event-thread allocation of each is counted per event type.
+ * <pre>
+ *   java -cp notepad.jar notepad.trace.TraceReplay session.ntrace [--realtime] [--warmup N]
+ * </pre>
+ */
+public final class TraceReplay {
+    private static final String EDT_WAIT = "EDT wait";
+
+    private final List<TraceEvent> events;
+    private final boolean realTime;
+    private final Map<String, LatencyHistogram> histograms = new LinkedHashMap<>();
+    private final com.sun.management.ThreadMXBean threads = threadBean();
+    private Path dir;
+    private NoteService service;
+    private TextEditorPanel editor;
+    private int failures;
+    private long wallNanos;
+    private long edtAllocatedBytes;
+    private long allocatedBytes;
+    private long gcCount;
+    private long gcMillis;
+
+    public TraceReplay(List<TraceEvent> events, boolean realTime) {
+        this.events = events;
+        this.realTime = realTime;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Path trace = null;
+        boolean realTime = false;
+        int warmup = 0;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--realtime")) realTime = true;
+            else if (args[i].equals("--warmup") && i + 1 < args.length) warmup = Integer.parseInt(args[++i]);
+            else if (trace == null && !args[i].startsWith("--")) trace = Paths.get(args[i]);
+            else trace = null;
+        }
+        if (trace == null) {
+            System.err.println("Usage: TraceReplay <trace file> [--realtime] [--warmup N]");
+            System.exit(2);
+        }
+        System.setProperty("java.awt.headless", "true");
+        List<TraceEvent> events = TraceCodec.readAll(trace);
+        // Warm-up passes let the JIT compile the editing paths before the measured pass; they
+        // are always run at full speed.
+        for (int i = 0; i < warmup; i++) {
+            new TraceReplay(events, false).run();
+        }
+        TraceReplay replay = new TraceReplay(events, realTime);
+        replay.run();
+        replay.printReport(System.out);
+        System.exit(0);
+    }
+
+    /** Replays the trace once from a fresh store. */
+    public void run() throws IOException, InterruptedException, InvocationTargetException {
+        dir = Files.createTempDirectory("notepad-replay");
+        try {
+            seed();
+            SwingUtilities.invokeAndWait(() -> {
+                editor = new TextEditorPanel();
+                editor.setNoteService(service);
+            });
+            replay();
+            service.shutdown();
+        } finally {
+            delete(dir);
+        }
+    }
+
+    private void seed() {
+        service = new NoteService(dir.resolve("notes-store"));
+        service.loadAllNotes();
+        List<Note> notes = new ArrayList<>();
+        for (TraceEvent event : events) {
+            if (event.type == TraceEvent.SEED) notes.add(note(event));
+        }
+        service.addNotes(notes);
+        // Writing the seeded notes is not part of the workload.
+        service.saveAllNotes();
+    }
+
+    private void replay() throws InterruptedException, InvocationTargetException {
+        long[] threadIds = threads.getAllThreadIds();
+        long allocatedBefore = sum(threads.getThreadAllocatedBytes(threadIds));
+        long gcCountBefore = gcCount();
+        long gcMillisBefore = gcMillis();
+        long start = System.nanoTime();
+        long due = start;
+        for (TraceEvent event : events) {
+            if (event.type == TraceEvent.SEED) continue;
+            if (realTime) {
+                due += event.delayMicros * 1000;
+                long wait = due - System.nanoTime();
+                if (wait > 0) Thread.sleep(wait / 1_000_000, (int) (wait % 1_000_000));
+            }
+            long posted = System.nanoTime();
+            SwingUtilities.invokeAndWait(() -> {
+                long begin = System.nanoTime();
+                histogram(EDT_WAIT).record(begin - posted);
+                long allocated = threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+                apply(event);
+                long bytes = threads.getThreadAllocatedBytes(Thread.currentThread().getId()) - allocated;
+                histogram(TraceEvent.name(event.type)).record(System.nanoTime() - begin, bytes);
+                edtAllocatedBytes += bytes;
+            });
+        }
+        // Work the events queued on the event thread, such as highlighting, belongs to the replay.
+        SwingUtilities.invokeAndWait(() -> {});
+        wallNanos = System.nanoTime() - start;
+        threadIds = threads.getAllThreadIds();
+        allocatedBytes = sum(threads.getThreadAllocatedBytes(threadIds)) - allocatedBefore;
+        gcCount = gcCount() - gcCountBefore;
+        gcMillis = gcMillis() - gcMillisBefore;
+    }
+
+    private void apply(TraceEvent event) {
+        try {
+            StyledDocument doc = (StyledDocument) editor.getTextPane().getDocument();
+            switch (event.type) {
+                case TraceEvent.SELECT:
+                    editor.displayNote(service.findNote(event.noteId));
+                    break;
+                case TraceEvent.ADD:
+                    service.addNote(note(event));
+                    break;
+                case TraceEvent.DELETE: {
+                    Note note = service.findNote(event.noteId);
+                    if (note == editor.getCurrentNote()) editor.displayNote(null);
+                    if (note != null) service.removeNote(note);
+                    break;
+                }
+                case TraceEvent.RENAME: {
+                    Note note = service.findNote(event.noteId);
+                    if (note != null) service.renameNote(note, event.title);
+                    break;
+                }
+                case TraceEvent.INSERT:
+                    doc.insertString(event.offset, event.text, NoteDocument.decode(event.style));
+                    break;
+                case TraceEvent.REMOVE:
+                    doc.remove(event.offset, event.length);
+                    break;
+                case TraceEvent.CHARACTER_STYLE:
+                    doc.setCharacterAttributes(event.offset, event.length, NoteDocument.decode(event.style), true);
+                    break;
+                case TraceEvent.PARAGRAPH_STYLE:
+                    doc.setParagraphAttributes(event.offset, event.length, NoteDocument.decode(event.style), true);
+                    break;
+                default:
+                    failures++;
+            }
+        } catch (BadLocationException | RuntimeException e) {
+            // The document no longer matches the trace, e.g. a note the trace never saw was selected.
+            failures++;
+        }
+    }
+
+    /** Prints the latency percentiles and allocation of each event type, and totals for the run. */
+    public void printReport(PrintStream out) {
+        int replayed = 0;
+        for (TraceEvent event : events) {
+            if (event.type != TraceEvent.SEED) replayed++;
+        }
+        double seconds = wallNanos / 1e9;
+        out.printf(Locale.ROOT, "Replayed %d events in %.2f s (%s), %d failed%n%n", replayed, seconds,
+                realTime ? "real time" : "full speed", failures);
+        out.printf(Locale.ROOT, "%-18s %8s %9s %9s %9s %9s %9s %12s%n",
+                "Event", "Count", "Mean ms", "p50 ms", "p99 ms", "p99.9 ms", "Max ms", "Alloc/op KB");
+        for (LatencyHistogram histogram : histograms.values()) {
+            LatencyHistogram.Snapshot s = histogram.snapshot();
+            out.printf(Locale.ROOT, "%-18s %8d %9.3f %9.3f %9.3f %9.3f %9.3f %12s%n", s.getName(), s.getCount(),
+                    s.getMeanMicros() / 1000, s.getValueAtPercentile(50) / 1000.0, s.getValueAtPercentile(99) / 1000.0,
+                    s.getValueAtPercentile(99.9) / 1000.0, s.getMaxMicros() / 1000.0,
+                    s.getName().equals(EDT_WAIT) ? "" : String.format(Locale.ROOT, "%.1f", s.getBytes() / 1024.0 / s.getCount()));
+        }
+        out.printf(Locale.ROOT, "%nAllocation: %.1f MB/s on the event thread, %.1f MB/s in all threads (%.1f MB)%n",
+                edtAllocatedBytes / 1e6 / seconds, allocatedBytes / 1e6 / seconds, allocatedBytes / 1e6);
+        out.printf(Locale.ROOT, "GC: %d collections, %d ms%n", gcCount, gcMillis);
+    }
+
+    private LatencyHistogram histogram(String name) {
+        return histograms.computeIfAbsent(name, LatencyHistogram::new);
+    }
+
+    private static Note note(TraceEvent event) {
+        Note note = new Note(event.noteId, event.title, event.text);
+        note.setStyles(event.styles);
+        return note;
+    }
+
+    private static com.sun.management.ThreadMXBean threadBean() {
+        com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        bean.setThreadAllocatedMemoryEnabled(true);
+        return bean;
+    }
+
+    private static long sum(long[] values) {
+        long sum = 0;
+        for (long value : values) {
+            if (value > 0) sum += value;
+        }
+        return sum;
+    }
+
+    private static long gcCount() {
+        long count = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) count += Math.max(0, gc.getCollectionCount());
+        return count;
+    }
+
+    private static long gcMillis() {
+        long millis = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) millis += Math.max(0, gc.getCollectionTime());
+        return millis;
+    }
+
+    private static void delete(Path dir) throws IOException {
+        try (Stream<Path> files = Files.walk(dir)) {
+            files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+        }
+    }
+}
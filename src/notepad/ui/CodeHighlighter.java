@@ -0,0 +1,286 @@
+package notepad.ui;
+
+import notepad.syntax.CodeLexer;
+
+import javax.swing.*;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.text.*;
+import java.awt.*;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Syntax highlighting for the text of a document marked {@link NoteDocument#CODE}. Each edit
+ * marks its lines damaged; the damaged lines are copied on the event thread and lexed on a
+ * background thread, continuing past them only until a line ends in the state it ended in
+ * before, and at most {@link #CHUNK_LINES} lines per pass. The tokens are kept per line,
+ * outside the document, and painted by {@link CodeView}: attributes written into the document
+ * would split its elements behind the undo history's back and be saved as formatting.
+ */
+public class CodeHighlighter implements DocumentListener {
+    static final int CHUNK_LINES = 1000;
+    private static final int LOOKAHEAD_LINES = 100;
+    private static final Color[] COLORS = {
+            null, new Color(0x0033B3), new Color(0x067D17), new Color(0x8C8C8C), new Color(0x1750EB), new Color(0x00627A)
+    };
+    private static final ExecutorService LEXER = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "code-highlighter");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final StyledDocument doc;
+    private final Runnable repaint;
+    // Keyed by paragraph element: a line's tokens live as long as its element does. A line
+    // without an entry has no tokens and ends in the normal state.
+    private final Map<Element, LineTokens> lines = new WeakHashMap<>();
+    private Position dirtyStart;
+    private Position dirtyEnd;
+    private boolean scheduled;
+    private boolean lexing;
+    private int version;
+
+    /** Tokens of one line: start, end and kind triples relative to the line start, and the state after it. */
+    static final class LineTokens {
+        final int[] tokens;
+        final int endState;
+
+        LineTokens(int[] tokens, int endState) {
+            this.tokens = tokens;
+            this.endState = endState;
+        }
+    }
+
+    /** One pass: a copy of some lines, taken on the event thread, and what the lexer made of them. */
+    private static final class Job {
+        int version;
+        int firstLine;
+        int damagedLines;
+        int startOffset;
+        Position start;
+        Position end;
+        Position damageEnd;
+        String text;
+        int[] lineStarts;
+        int[] codeRanges;
+        int startState;
+        int[] oldEndStates;
+        // Results
+        int lexedLines;
+        int[][] tokens;
+        int[] endStates;
+    }
+
+    /**
+     * Highlights {@code doc} and lets its views find this highlighter; {@code repaint} is run
+     * after new tokens are in.
+     */
+    public CodeHighlighter(StyledDocument doc, Runnable repaint) {
+        this.doc = doc;
+        this.repaint = repaint;
+        doc.putProperty(CodeHighlighter.class, this);
+        doc.addDocumentListener(this);
+        markDirty(0, doc.getLength());
+    }
+
+    /** The highlighter of {@code doc}, or null. */
+    static CodeHighlighter of(Document doc) {
+        Object h = doc.getProperty(CodeHighlighter.class);
+        return h instanceof CodeHighlighter ? (CodeHighlighter) h : null;
+    }
+
+    static Color color(int kind) {
+        return COLORS[kind];
+    }
+
+    /** The tokens last computed for a paragraph, or null. */
+    LineTokens tokens(Element paragraph) {
+        return lines.get(paragraph);
+    }
+
+    /** True while edits are waiting to be lexed. */
+    boolean isPending() {
+        return scheduled || lexing || dirtyStart != null;
+    }
+
+    @Override
+    public void insertUpdate(DocumentEvent e) {
+        version++;
+        markDirty(e.getOffset(), e.getOffset() + e.getLength());
+    }
+
+    @Override
+    public void removeUpdate(DocumentEvent e) {
+        version++;
+        markDirty(e.getOffset(), e.getOffset());
+    }
+
+    @Override
+    public void changedUpdate(DocumentEvent e) {
+        // Code formatting may have been set or cleared.
+        version++;
+        markDirty(e.getOffset(), e.getOffset() + e.getLength());
+    }
+
+    private void markDirty(int start, int end) {
+        try {
+            if (dirtyStart == null || start < dirtyStart.getOffset()) dirtyStart = doc.createPosition(start);
+            if (dirtyEnd == null || end > dirtyEnd.getOffset()) dirtyEnd = doc.createPosition(end);
+        } catch (BadLocationException e) {
+            e.printStackTrace();
+            return;
+        }
+        schedule();
+    }
+
+    private void schedule() {
+        if (!scheduled && !lexing && dirtyStart != null) {
+            scheduled = true;
+            SwingUtilities.invokeLater(this::submit);
+        }
+    }
+
+    // Runs once per burst of edits, after they are all in. One pass is lexed at a time, so each
+    // starts from the line states the previous one left.
+    private void submit() {
+        scheduled = false;
+        if (dirtyStart == null) return;
+        Element root = doc.getDefaultRootElement();
+        int firstLine = root.getElementIndex(dirtyStart.getOffset());
+        int lastDamaged = root.getElementIndex(dirtyEnd.getOffset());
+        int lastLine = Math.min(root.getElementCount() - 1,
+                Math.min(firstLine + CHUNK_LINES - 1, lastDamaged + LOOKAHEAD_LINES));
+        Position damageEnd = dirtyEnd;
+        dirtyStart = null;
+        dirtyEnd = null;
+        Job job = new Job();
+        // Damage beyond this pass is marked again once its results are in, as it starts where they end.
+        if (lastDamaged > lastLine) job.damageEnd = damageEnd;
+        job.version = version;
+        job.firstLine = firstLine;
+        job.damagedLines = Math.min(lastDamaged, lastLine) - firstLine + 1;
+        int lineCount = lastLine - firstLine + 1;
+        job.lineStarts = new int[lineCount + 1];
+        job.oldEndStates = new int[lineCount];
+        int[] codeRanges = new int[16];
+        int ranges = 0;
+        job.startOffset = root.getElement(firstLine).getStartOffset();
+        int endOffset = Math.min(doc.getLength(), root.getElement(lastLine).getEndOffset());
+        for (int i = 0; i < lineCount; i++) {
+            Element line = root.getElement(firstLine + i);
+            job.lineStarts[i] = line.getStartOffset() - job.startOffset;
+            LineTokens old = lines.get(line);
+            job.oldEndStates[i] = old == null ? CodeLexer.NORMAL : old.endState;
+            for (int c = 0; c < line.getElementCount(); c++) {
+                Element leaf = line.getElement(c);
+                if (!isCode(leaf)) continue;
+                if (ranges + 2 > codeRanges.length) codeRanges = Arrays.copyOf(codeRanges, ranges * 2);
+                int from = leaf.getStartOffset() - job.startOffset;
+                if (ranges > 0 && codeRanges[ranges - 1] == from) {
+                    codeRanges[ranges - 1] = leaf.getEndOffset() - job.startOffset;
+                } else {
+                    codeRanges[ranges++] = from;
+                    codeRanges[ranges++] = leaf.getEndOffset() - job.startOffset;
+                }
+            }
+        }
+        job.lineStarts[lineCount] = endOffset - job.startOffset;
+        job.codeRanges = Arrays.copyOf(codeRanges, ranges);
+        LineTokens before = firstLine > 0 ? lines.get(root.getElement(firstLine - 1)) : null;
+        job.startState = before == null ? CodeLexer.NORMAL : before.endState;
+        if (ranges == 0 && !hasTokens(firstLine, lastLine)) {
+            if (job.damageEnd != null) markDirty(root.getElement(lastLine + 1).getStartOffset(), job.damageEnd.getOffset());
+            return;
+        }
+        try {
+            job.text = doc.getText(job.startOffset, endOffset - job.startOffset);
+            job.start = doc.createPosition(job.startOffset);
+            job.end = doc.createPosition(endOffset);
+        } catch (BadLocationException e) {
+            e.printStackTrace();
+            return;
+        }
+        lexing = true;
+        LEXER.execute(() -> {
+            lex(job);
+            SwingUtilities.invokeLater(() -> apply(job));
+        });
+    }
+
+    private boolean hasTokens(int firstLine, int lastLine) {
+        Element root = doc.getDefaultRootElement();
+        for (int i = firstLine; i <= lastLine; i++) {
+            if (lines.containsKey(root.getElement(i))) return true;
+        }
+        return false;
+    }
+
+    private static boolean isCode(Element leaf) {
+        return Boolean.TRUE.equals(leaf.getAttributes().getAttribute(NoteDocument.CODE));
+    }
+
+    // Background thread: touches only the job.
+    private static void lex(Job job) {
+        int lineCount = job.lineStarts.length - 1;
+        job.tokens = new int[lineCount][];
+        job.endStates = new int[lineCount];
+        int state = job.startState;
+        int range = 0;
+        int[] buffer = new int[48];
+        for (int i = 0; i < lineCount; i++) {
+            if (i >= job.damagedLines && job.oldEndStates[i - 1] == state) break;
+            int lineStart = job.lineStarts[i];
+            int lineEnd = job.lineStarts[i + 1];
+            if (lineEnd > lineStart && job.text.charAt(lineEnd - 1) == '\n') lineEnd--;
+            int[] count = {0};
+            int[][] out = {buffer};
+            boolean code = false;
+            while (range < job.codeRanges.length && job.codeRanges[range + 1] <= lineStart) range += 2;
+            // A code range starting at lineEnd holds just the line break: the line is still code.
+            for (int r = range; r < job.codeRanges.length && job.codeRanges[r] <= lineEnd; r += 2) {
+                code = true;
+                int from = Math.max(lineStart, job.codeRanges[r]);
+                int to = Math.min(lineEnd, job.codeRanges[r + 1]);
+                state = CodeLexer.lex(job.text, from, to, state, (start, end, kind) -> {
+                    if (count[0] + 3 > out[0].length) out[0] = Arrays.copyOf(out[0], out[0].length * 2);
+                    out[0][count[0]++] = start - lineStart;
+                    out[0][count[0]++] = end - lineStart;
+                    out[0][count[0]++] = kind;
+                });
+            }
+            // Prose between code blocks ends any comment left open.
+            if (!code) state = CodeLexer.NORMAL;
+            buffer = out[0];
+            job.tokens[i] = Arrays.copyOf(buffer, count[0]);
+            job.endStates[i] = state;
+            job.lexedLines = i + 1;
+        }
+    }
+
+    private void apply(Job job) {
+        lexing = false;
+        if (job.version != version) {
+            // Edited meanwhile: offsets no longer match, so lex these lines again.
+            markDirty(job.start.getOffset(), Math.max(job.end.getOffset(), job.damageEnd == null ? 0 : job.damageEnd.getOffset()));
+            return;
+        }
+        Element root = doc.getDefaultRootElement();
+        for (int i = 0; i < job.lexedLines; i++) {
+            Element line = root.getElement(job.firstLine + i);
+            if (job.tokens[i].length == 0 && job.endStates[i] == CodeLexer.NORMAL) lines.remove(line);
+            else lines.put(line, new LineTokens(job.tokens[i], job.endStates[i]));
+        }
+        int next = job.firstLine + job.lexedLines;
+        // The pass ran out of lines before the damage or the states settled: continue with the next line.
+        if (next < root.getElementCount() && (job.damageEnd != null || job.lexedLines == job.lineStarts.length - 1)) {
+            int offset = root.getElement(next).getStartOffset();
+            markDirty(offset, job.damageEnd == null ? offset : Math.max(offset, job.damageEnd.getOffset()));
+        }
+        schedule();
+        repaint.run();
+    }
+}
@@ -0,0 +1,62 @@
+package notepad.ui;
+
+import javax.swing.text.*;
+import java.awt.*;
+
+/**
+ * Shows text marked as code in the colors of the tokens {@link CodeHighlighter} found for its
+ * line. Each colored stretch is painted as a fragment of this view, so selection, highlights
+ * and underlines still paint as in any other text.
+ */
+public class CodeView extends LabelView {
+    private Color tokenColor;
+
+    public CodeView(Element elem) {
+        super(elem);
+    }
+
+    @Override
+    public Color getForeground() {
+        return tokenColor != null ? tokenColor : super.getForeground();
+    }
+
+    @Override
+    public void paint(Graphics g, Shape a) {
+        CodeHighlighter highlighter = CodeHighlighter.of(getDocument());
+        int p0 = getStartOffset();
+        int p1 = getEndOffset();
+        Element line = getDocument().getDefaultRootElement();
+        line = line.getElement(line.getElementIndex(p0));
+        CodeHighlighter.LineTokens tokens = highlighter == null ? null : highlighter.tokens(line);
+        if (tokens == null || tokenColor != null) {
+            super.paint(g, a);
+            return;
+        }
+        int lineStart = line.getStartOffset();
+        int[] t = tokens.tokens;
+        int at = p0;
+        for (int i = 0; i < t.length && at < p1; i += 3) {
+            // Tokens may be a keystroke behind the text until the line is lexed again.
+            int start = Math.max(at, lineStart + t[i]);
+            int end = Math.min(p1, lineStart + t[i + 1]);
+            if (end <= start) continue;
+            if (start > at) paintRange(g, a, at, start, null);
+            paintRange(g, a, start, end, CodeHighlighter.color(t[i + 2]));
+            at = end;
+        }
+        if (at < p1) paintRange(g, a, at, p1, null);
+    }
+
+    private void paintRange(Graphics g, Shape a, int start, int end, Color color) {
+        try {
+            Rectangle from = modelToView(start, a, Position.Bias.Forward).getBounds();
+            Rectangle to = modelToView(end, a, Position.Bias.Backward).getBounds();
+            Rectangle alloc = a.getBounds();
+            CodeView part = (CodeView) createFragment(start, end);
+            part.tokenColor = color != null ? color : super.getForeground();
+            part.paint(g, new Rectangle(from.x, alloc.y, Math.max(0, to.x - from.x), alloc.height));
+        } catch (BadLocationException e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,220 @@
+package notepad.ui;
+
+import notepad.diagnostics.EdtMonitor;
+import notepad.diagnostics.LatencyHistogram;
+import notepad.diagnostics.Metrics;
+import notepad.service.NoteService;
+import notepad.trace.TraceRecorder;
+
+import javax.swing.*;
+import javax.swing.table.AbstractTableModel;
+import java.awt.*;
+import java.awt.event.ComponentAdapter;
+import java.awt.event.ComponentEvent;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Non-modal window showing the live percentiles of every {@link Metrics} histogram and the EDT
+ * stalls caught so far, refreshed every second while it is open. The same numbers can be saved
+ * as a text report, and the editing session can be recorded as a trace for {@code TraceReplay}.
+ */
+public class DiagnosticsDialog extends JDialog {
+    private static final int REFRESH_MILLIS = 1000;
+    private static final String[] COLUMNS = {
+            "Operation", "Count", "Mean ms", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "Max ms", "Bytes"
+    };
+
+    private static DiagnosticsDialog open;
+
+    private final SnapshotTableModel model = new SnapshotTableModel();
+    private final JTextArea stallArea = new JTextArea(8, 80);
+    private final Timer refreshTimer = new Timer(REFRESH_MILLIS, e -> refresh());
+    private final TextEditorPanel editorPanel;
+    private final NoteService noteService;
+    private final JButton record = new JButton("Record Trace...");
+    private TraceRecorder recorder;
+    private int shownStalls = -1;
+
+    /** Shows the diagnostics window, reusing it if it is already open. */
+    public static void showDialog(Window owner, TextEditorPanel editorPanel, NoteService noteService) {
+        if (open == null) open = new DiagnosticsDialog(owner, editorPanel, noteService);
+        open.setVisible(true);
+        open.toFront();
+    }
+
+    private DiagnosticsDialog(Window owner, TextEditorPanel editorPanel, NoteService noteService) {
+        super(owner, "Diagnostics", ModalityType.MODELESS);
+        this.editorPanel = editorPanel;
+        this.noteService = noteService;
+        JTable table = new JTable(model);
+        table.setFillsViewportHeight(true);
+        table.setPreferredScrollableViewportSize(new Dimension(760, 200));
+        table.getColumnModel().getColumn(0).setPreferredWidth(180);
+        stallArea.setEditable(false);
+        stallArea.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 12));
+
+        JButton dump = new JButton("Save Report...");
+        JButton reset = new JButton("Reset");
+        JButton close = new JButton("Close");
+        JPanel buttons = new JPanel(new FlowLayout(FlowLayout.RIGHT));
+        buttons.add(record);
+        buttons.add(dump);
+        buttons.add(reset);
+        buttons.add(close);
+
+        JPanel stalls = new JPanel(new BorderLayout(4, 4));
+        stalls.add(new JLabel("EDT stalls over " + EdtMonitor.STALL_MILLIS + " ms"), BorderLayout.NORTH);
+        stalls.add(new JScrollPane(stallArea), BorderLayout.CENTER);
+        JSplitPane split = new JSplitPane(JSplitPane.VERTICAL_SPLIT, new JScrollPane(table), stalls);
+        split.setResizeWeight(0.5);
+
+        JPanel content = new JPanel(new BorderLayout(8, 8));
+        content.setBorder(BorderFactory.createEmptyBorder(8, 8, 8, 8));
+        content.add(split, BorderLayout.CENTER);
+        content.add(buttons, BorderLayout.SOUTH);
+        setContentPane(content);
+        pack();
+        setLocationRelativeTo(owner);
+
+        record.addActionListener(e -> toggleRecording());
+        dump.addActionListener(e -> saveReport());
+        reset.addActionListener(e -> {
+            Metrics.reset();
+            EdtMonitor.clearStalls();
+            refresh();
+        });
+        close.addActionListener(e -> setVisible(false));
+        // Refreshes only while shown.
+        addComponentListener(new ComponentAdapter() {
+            @Override
+            public void componentHidden(ComponentEvent e) {
+                refreshTimer.stop();
+            }
+
+            @Override
+            public void componentShown(ComponentEvent e) {
+                refresh();
+                refreshTimer.start();
+            }
+        });
+    }
+
+    private void refresh() {
+        model.setSnapshots(Metrics.snapshots());
+        List<EdtMonitor.Stall> stalls = EdtMonitor.recentStalls();
+        // The text area keeps its scroll position unless there is something new to show.
+        if (stalls.size() == shownStalls) return;
+        shownStalls = stalls.size();
+        StringBuilder text = new StringBuilder();
+        for (int i = stalls.size() - 1; i >= 0; i--) {
+            text.append(stalls.get(i)).append('\n').append(stalls.get(i).getStack()).append('\n');
+        }
+        stallArea.setText(text.length() == 0 ? "None" : text.toString());
+        stallArea.setCaretPosition(0);
+    }
+
+    // Recording goes on while the window is closed. A trace cut off by exiting still replays up to its last flush.
+    private void toggleRecording() {
+        if (recorder != null) {
+            try {
+                recorder.stop();
+                JOptionPane.showMessageDialog(this, "Recorded " + recorder.getEventCount() + " events.",
+                        "Trace", JOptionPane.INFORMATION_MESSAGE);
+            } catch (IOException ex) {
+                ex.printStackTrace();
+                JOptionPane.showMessageDialog(this, "The trace could not be written: " + ex.getMessage(),
+                        "Error", JOptionPane.ERROR_MESSAGE);
+            }
+            recorder = null;
+            record.setText("Record Trace...");
+            return;
+        }
+        JFileChooser chooser = new JFileChooser();
+        chooser.setSelectedFile(new File("notepad-"
+                + LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss")) + ".ntrace"));
+        if (chooser.showSaveDialog(this) != JFileChooser.APPROVE_OPTION) return;
+        try {
+            recorder = TraceRecorder.start(chooser.getSelectedFile().toPath(), editorPanel, noteService);
+            record.setText("Stop Recording");
+        } catch (IOException ex) {
+            ex.printStackTrace();
+            JOptionPane.showMessageDialog(this, "The trace could not be created: " + ex.getMessage(),
+                    "Error", JOptionPane.ERROR_MESSAGE);
+        }
+    }
+
+    private void saveReport() {
+        JFileChooser chooser = new JFileChooser();
+        chooser.setSelectedFile(new File("notepad-diagnostics-"
+                + LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss")) + ".txt"));
+        if (chooser.showSaveDialog(this) != JFileChooser.APPROVE_OPTION) return;
+        try (Writer out = Files.newBufferedWriter(chooser.getSelectedFile().toPath(), StandardCharsets.UTF_8)) {
+            Metrics.writeReport(out);
+        } catch (IOException ex) {
+            ex.printStackTrace();
+            JOptionPane.showMessageDialog(this, "The report could not be saved: " + ex.getMessage(),
+                    "Error", JOptionPane.ERROR_MESSAGE);
+        }
+    }
+
+    private static final class SnapshotTableModel extends AbstractTableModel {
+        private List<LatencyHistogram.Snapshot> snapshots = new ArrayList<>();
+
+        void setSnapshots(List<LatencyHistogram.Snapshot> snapshots) {
+            boolean sameRows = snapshots.size() == this.snapshots.size();
+            this.snapshots = snapshots;
+            // Updating the rows in place keeps the selection while the numbers change.
+            if (sameRows && !snapshots.isEmpty()) fireTableRowsUpdated(0, snapshots.size() - 1);
+            else fireTableDataChanged();
+        }
+
+        @Override
+        public int getRowCount() {
+            return snapshots.size();
+        }
+
+        @Override
+        public int getColumnCount() {
+            return COLUMNS.length;
+        }
+
+        @Override
+        public String getColumnName(int column) {
+            return COLUMNS[column];
+        }
+
+        @Override
+        public Class<?> getColumnClass(int column) {
+            return column == 0 ? String.class : Object.class;
+        }
+
+        @Override
+        public Object getValueAt(int row, int column) {
+            LatencyHistogram.Snapshot s = snapshots.get(row);
+            switch (column) {
+                case 0: return s.getName();
+                case 1: return s.getCount();
+                case 2: return millis(s.getMeanMicros());
+                case 3: return millis(s.getValueAtPercentile(50));
+                case 4: return millis(s.getValueAtPercentile(90));
+                case 5: return millis(s.getValueAtPercentile(99));
+                case 6: return millis(s.getValueAtPercentile(99.9));
+                case 7: return millis(s.getMaxMicros());
+                default: return s.getBytes();
+            }
+        }
+
+        private static String millis(double micros) {
+            return String.format(Locale.ROOT, "%.2f", micros / 1000);
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package notepad.ui;
+
+import notepad.model.Note;
+import notepad.service.DirectoryImporter;
+import notepad.service.NoteService;
+
+import javax.swing.*;
+import java.awt.*;
+import java.io.File;
+import java.io.InterruptedIOException;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Imports a whole directory tree off the event thread; see {@link DirectoryImporter}. The notes
+ * join the list together once every file has been read, and cancelling imports none of them.
+ */
+public class DirectoryImportWorker extends SwingWorker<List<Note>, Void> {
+    private final File dir;
+    private final NoteService noteService;
+    private final Component parent;
+    private final DirectoryImporter importer = new DirectoryImporter();
+    private final ProgressMonitor monitor;
+
+    private DirectoryImportWorker(File dir, NoteService noteService, Component parent) {
+        this.dir = dir;
+        this.noteService = noteService;
+        this.parent = parent;
+        this.monitor = new ProgressMonitor(parent, "Importing " + dir.getName(), null, 0, 100);
+        addPropertyChangeListener(e -> {
+            if ("progress".equals(e.getPropertyName())) monitor.setProgress((Integer) e.getNewValue());
+        });
+    }
+
+    /** Asks for a directory and imports it; must be called on the event thread. */
+    public static void start(NoteService noteService, Component parent) {
+        JFileChooser chooser = new JFileChooser();
+        chooser.setFileSelectionMode(JFileChooser.DIRECTORIES_ONLY);
+        if (chooser.showOpenDialog(parent) != JFileChooser.APPROVE_OPTION) return;
+        new DirectoryImportWorker(chooser.getSelectedFile(), noteService, parent).execute();
+    }
+
+    @Override
+    protected List<Note> doInBackground() throws Exception {
+        return importer.importDirectory(dir.toPath(), (read, found) -> {
+            // More files may still be found, so the bar can step back a little as directories open.
+            setProgress(Math.min(99, read * 100 / Math.max(1, found)));
+            return !monitor.isCanceled();
+        });
+    }
+
+    @Override
+    protected void done() {
+        monitor.close();
+        try {
+            List<Note> notes = get();
+            noteService.addNotes(notes);
+            int failed = importer.getFailureCount();
+            JOptionPane.showMessageDialog(parent, notes.size() + " notes imported from " + dir.getName()
+                    + (failed > 0 ? "; " + failed + " files could not be read." : "."));
+        } catch (CancellationException | InterruptedException e) {
+            // Nothing was imported.
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof InterruptedIOException) return;
+            e.getCause().printStackTrace();
+            JOptionPane.showMessageDialog(parent, "Directory could not be imported: " + dir.getName(),
+                    "Error", JOptionPane.ERROR_MESSAGE);
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package notepad.ui;
+
+import notepad.model.Note;
+
+import javax.swing.text.StyleContext;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * The documents of recently displayed notes, least recently used first out, so switching back
+ * to a note swaps in its document instead of parsing its text again. Each document keeps its
+ * own undo history and caret; an entry leaving the cache takes its history, and spill file, along. The cache holds at most {@link #MAX_DOCUMENTS} documents and,
+ * beyond the newest one, about {@link #MAX_CHARS} chars; evicted entries go to the handler.
+ */
+public class DocumentCache {
+    static final int MAX_DOCUMENTS = 32;
+    static final long MAX_CHARS = 8_000_000;
+
+    /** A note's live document and the editing state that goes with it. */
+    static final class Entry {
+        final Note note;
+        final NoteDocument document;
+        final NoteUndoManager undoManager;
+        boolean edited;
+        int caret;
+
+        Entry(Note note, NoteDocument document, NoteUndoManager undoManager) {
+            this.note = note;
+            this.document = document;
+            this.undoManager = undoManager;
+        }
+    }
+
+    // Keyed by identity: a reload creates new Note objects, and stale entries just age out.
+    private final LinkedHashMap<Note, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final StyleContext styles = new StyleContext();
+    private final Consumer<Entry> evictionHandler;
+
+    public DocumentCache(Consumer<Entry> evictionHandler) {
+        this.evictionHandler = evictionHandler;
+    }
+
+    /** Shared by all cached documents, so equal attribute sets are stored once. */
+    StyleContext getStyles() {
+        return styles;
+    }
+
+    /** The cached entry for {@code note}, now the most recently used, or null. */
+    Entry get(Note note) {
+        return entries.get(note);
+    }
+
+    /** Caches an entry, then evicts the least recently used ones while over budget. */
+    void put(Entry entry) {
+        entries.put(entry.note, entry);
+        long chars = 0;
+        for (Entry e : entries.values()) chars += e.document.getLength();
+        List<Entry> evicted = new ArrayList<>();
+        Iterator<Map.Entry<Note, Entry>> it = entries.entrySet().iterator();
+        while (entries.size() > 1 && (entries.size() > MAX_DOCUMENTS || chars > MAX_CHARS)) {
+            Entry oldest = it.next().getValue();
+            if (oldest == entry) break;
+            it.remove();
+            oldest.undoManager.discardAllEdits();
+            chars -= oldest.document.getLength();
+            evicted.add(oldest);
+        }
+        for (Entry e : evicted) evictionHandler.accept(e);
+    }
+
+    /** Drops a note's document without handing it to the eviction handler. */
+    void remove(Note note) {
+        Entry entry = entries.remove(note);
+        if (entry != null) entry.undoManager.discardAllEdits();
+    }
+
+    /** The cached entries, least recently used first; iterating does not change their order. */
+    Iterable<Entry> entries() {
+        return entries.values();
+    }
+}
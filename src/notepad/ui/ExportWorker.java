@@ -0,0 +1,96 @@
+package notepad.ui;
+
+import notepad.export.ExportFormat;
+import notepad.export.NoteExporter;
+import notepad.model.Note;
+import notepad.service.NoteService;
+
+import javax.swing.*;
+import java.awt.*;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Exports the open note, or all notes into a ZIP archive, off the event thread. The notes are
+ * copied on the event thread first, so editing can go on while the files are written.
+ */
+public class ExportWorker extends SwingWorker<Integer, Void> {
+    private final List<Note> notes;
+    private final ExportFormat format;
+    private final File file;
+    private final boolean archive;
+    private final Component parent;
+    private final ProgressMonitor monitor;
+
+    private ExportWorker(List<Note> notes, ExportFormat format, File file, boolean archive, Component parent) {
+        this.notes = notes;
+        this.format = format;
+        this.file = file;
+        this.archive = archive;
+        this.parent = parent;
+        this.monitor = archive ? new ProgressMonitor(parent, "Exporting " + notes.size() + " notes", null, 0, 100) : null;
+        if (monitor != null) {
+            addPropertyChangeListener(e -> {
+                if ("progress".equals(e.getPropertyName())) monitor.setProgress((Integer) e.getNewValue());
+            });
+        }
+    }
+
+    /** Asks for a file and exports the open note to it. */
+    public static void exportCurrent(TextEditorPanel editorPanel, ExportFormat format, Component parent) {
+        Note note = editorPanel.getCurrentNote();
+        if (note == null) return;
+        JFileChooser chooser = new JFileChooser();
+        chooser.setSelectedFile(new File(note.getTitle() + "." + format.getExtension()));
+        if (chooser.showSaveDialog(parent) != JFileChooser.APPROVE_OPTION) return;
+        List<Note> notes = new ArrayList<>(1);
+        notes.add(note.copy());
+        new ExportWorker(notes, format, chooser.getSelectedFile(), false, parent).execute();
+    }
+
+    /** Asks for a format and an archive, then exports every note into it. */
+    public static void exportAll(NoteService noteService, Component parent) {
+        if (noteService.getNoteCount() == 0) return;
+        ExportFormat format = (ExportFormat) JOptionPane.showInputDialog(parent, "Export every note as:",
+                "Export All Notes", JOptionPane.PLAIN_MESSAGE, null, ExportFormat.values(), ExportFormat.TXT);
+        if (format == null) return;
+        JFileChooser chooser = new JFileChooser();
+        chooser.setSelectedFile(new File("notes.zip"));
+        if (chooser.showSaveDialog(parent) != JFileChooser.APPROVE_OPTION) return;
+        // The snapshot's notes are versions nothing changes, so they can be read off the event thread as they are.
+        new ExportWorker(noteService.snapshot(), format, chooser.getSelectedFile(), true, parent).execute();
+    }
+
+    @Override
+    protected Integer doInBackground() throws Exception {
+        if (!archive) {
+            NoteExporter.exportNote(notes.get(0), format, file.toPath());
+            return 1;
+        }
+        return NoteExporter.exportAll(notes, format, file.toPath(), (done, total) -> {
+            setProgress(done * 100 / total);
+            return !monitor.isCanceled();
+        });
+    }
+
+    @Override
+    protected void done() {
+        if (monitor != null) monitor.close();
+        try {
+            int count = get();
+            JOptionPane.showMessageDialog(parent, archive
+                    ? count + " notes exported to: " + file.getName()
+                    : "Note exported as: " + file.getName());
+        } catch (CancellationException | InterruptedException e) {
+            // Nothing was left behind to report.
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof java.io.InterruptedIOException) return;
+            e.getCause().printStackTrace();
+            JOptionPane.showMessageDialog(parent, "Export failed.", "Error", JOptionPane.ERROR_MESSAGE);
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package notepad.ui;
+
+import notepad.model.Note;
+import notepad.service.NoteService;
+import notepad.store.TextFileReader;
+
+import javax.swing.*;
+import javax.swing.text.Document;
+import javax.swing.text.rtf.RTFEditorKit;
+import java.awt.*;
+import java.io.*;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Reads a file into a new note off the event thread. Plain text is shown in the editor chunk by
+ * chunk as it is decoded; RTF is parsed into a detached document and shown when done. A progress
+ * dialog appears for slow reads, and cancelling it drops the note. The note joins the list only
+ * once the whole file has been read.
+ */
+public class FileImportWorker extends SwingWorker<String, String> {
+    private final File file;
+    private final Note note;
+    private final TextEditorPanel editorPanel;
+    private final NoteService noteService;
+    private final NoteListPanel noteListPanel;
+    private final Component parent;
+    private final ProgressMonitor monitor;
+
+    private FileImportWorker(File file, TextEditorPanel editorPanel, NoteService noteService,
+                             NoteListPanel noteListPanel, Component parent) {
+        this.file = file;
+        this.note = new Note(file.getName(), "");
+        this.editorPanel = editorPanel;
+        this.noteService = noteService;
+        this.noteListPanel = noteListPanel;
+        this.parent = parent;
+        this.monitor = new ProgressMonitor(parent, "Reading " + file.getName(), null, 0, 100);
+        addPropertyChangeListener(e -> {
+            if (!"progress".equals(e.getPropertyName())) return;
+            if (monitor.isCanceled()) cancel(false);
+            else monitor.setProgress((Integer) e.getNewValue());
+        });
+    }
+
+    /** Starts importing {@code file}; must be called on the event thread. */
+    public static void start(File file, TextEditorPanel editorPanel, NoteService noteService,
+                             NoteListPanel noteListPanel, Component parent) {
+        FileImportWorker worker = new FileImportWorker(file, editorPanel, noteService, noteListPanel, parent);
+        noteListPanel.getNoteJList().clearSelection();
+        editorPanel.beginStreaming(worker.note);
+        worker.execute();
+    }
+
+    @Override
+    protected String doInBackground() throws Exception {
+        if (file.getName().toLowerCase().endsWith(".rtf")) return readRtf();
+        try (TextFileReader reader = new TextFileReader(file.toPath())) {
+            long size = Math.max(1, reader.size());
+            return reader.read((text, bytesRead) -> {
+                publish(text);
+                setProgress((int) Math.min(100, bytesRead * 100 / size));
+                return !isCancelled();
+            });
+        }
+    }
+
+    private String readRtf() throws Exception {
+        long size = Math.max(1, Files.size(file.toPath()));
+        RTFEditorKit rtfKit = new RTFEditorKit();
+        Document doc = rtfKit.createDefaultDocument();
+        try (InputStream in = new BufferedInputStream(new FilterInputStream(Files.newInputStream(file.toPath())) {
+            private long count;
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                if (isCancelled()) throw new InterruptedIOException("Import cancelled");
+                int n = super.read(b, off, len);
+                if (n > 0) setProgress((int) Math.min(100, (count += n) * 100 / size));
+                return n;
+            }
+        })) {
+            rtfKit.read(in, doc, 0);
+        }
+        return doc.getText(0, doc.getLength());
+    }
+
+    @Override
+    protected void process(List<String> chunks) {
+        if (monitor.isCanceled()) cancel(false);
+        editorPanel.appendStreamed(note, chunks);
+    }
+
+    @Override
+    protected void done() {
+        monitor.close();
+        String text = null;
+        try {
+            text = get();
+        } catch (CancellationException | InterruptedException e) {
+            // Cancelled from the progress dialog: nothing to report.
+        } catch (ExecutionException e) {
+            e.getCause().printStackTrace();
+            JOptionPane.showMessageDialog(parent, "File could not be opened: " + file.getName(),
+                    "Error", JOptionPane.ERROR_MESSAGE);
+        }
+        boolean shown = editorPanel.getCurrentNote() == note;
+        editorPanel.endStreaming(note, text);
+        if (text == null) return;
+        note.setContent(text);
+        if (shown) noteListPanel.addNote(note);
+        else noteService.addNote(note);
+    }
+}
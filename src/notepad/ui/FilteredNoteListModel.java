@@ -0,0 +1,92 @@
+package notepad.ui;
+
+import notepad.model.Note;
+import notepad.service.NoteService;
+
+import javax.swing.*;
+import javax.swing.event.ListDataEvent;
+import javax.swing.event.ListDataListener;
+import java.util.List;
+
+/**
+ * A view of the note list narrowed to the notes matching a title query. With no query it
+ * passes the underlying model and its events straight through; with one, it shows the
+ * results of {@link NoteService#findNotesByTitle}, and re-runs the query once after the
+ * underlying list changes rather than after every single event.
+ */
+public class FilteredNoteListModel extends AbstractListModel<Note> {
+    private final ListModel<Note> source;
+    private final NoteService noteService;
+    private String query = "";
+    private List<Note> matches;
+    private boolean refilterQueued;
+    private Runnable refilterHandler = () -> setQuery(query);
+
+    public FilteredNoteListModel(ListModel<Note> source, NoteService noteService) {
+        this.source = source;
+        this.noteService = noteService;
+        source.addListDataListener(new ListDataListener() {
+            public void intervalAdded(ListDataEvent e) {
+                if (matches == null) fireIntervalAdded(FilteredNoteListModel.this, e.getIndex0(), e.getIndex1());
+                else queueRefilter();
+            }
+
+            public void intervalRemoved(ListDataEvent e) {
+                if (matches == null) fireIntervalRemoved(FilteredNoteListModel.this, e.getIndex0(), e.getIndex1());
+                else queueRefilter();
+            }
+
+            public void contentsChanged(ListDataEvent e) {
+                if (matches == null) fireContentsChanged(FilteredNoteListModel.this, e.getIndex0(), e.getIndex1());
+                else queueRefilter();
+            }
+        });
+    }
+
+    @Override
+    public int getSize() {
+        return matches == null ? source.getSize() : matches.size();
+    }
+
+    @Override
+    public Note getElementAt(int index) {
+        return matches == null ? source.getElementAt(index) : matches.get(index);
+    }
+
+    public boolean isFiltered() {
+        return matches != null;
+    }
+
+    /** Narrows the list to titles matching {@code query}; an empty query shows every note. */
+    public void setQuery(String query) {
+        this.query = query == null ? "" : query.trim();
+        refilter();
+    }
+
+    /**
+     * Sets what runs when the underlying list changed while filtered; it should end up calling
+     * {@link #setQuery}. Lets the owner of the JList keep its selection across the update.
+     */
+    public void setRefilterHandler(Runnable refilterHandler) {
+        this.refilterHandler = refilterHandler;
+    }
+
+    private void queueRefilter() {
+        if (refilterQueued) return;
+        refilterQueued = true;
+        SwingUtilities.invokeLater(() -> {
+            refilterQueued = false;
+            if (matches != null) refilterHandler.run();
+        });
+    }
+
+    // One event pair for the whole change: the rows that still exist changed, the rest came or went.
+    private void refilter() {
+        int oldSize = getSize();
+        matches = query.isEmpty() ? null : noteService.findNotesByTitle(query);
+        int newSize = getSize();
+        if (newSize < oldSize) fireIntervalRemoved(this, newSize, oldSize - 1);
+        if (newSize > oldSize) fireIntervalAdded(this, oldSize, newSize - 1);
+        if (Math.min(oldSize, newSize) > 0) fireContentsChanged(this, 0, Math.min(oldSize, newSize) - 1);
+    }
+}
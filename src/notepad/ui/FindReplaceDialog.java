@@ -0,0 +1,147 @@
+package notepad.ui;
+
+import notepad.search.TextFinder;
+
+import javax.swing.*;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import java.awt.*;
+import java.awt.event.ComponentAdapter;
+import java.awt.event.ComponentEvent;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Non-modal find/replace window for the editor. Matches are highlighted as the query is typed;
+ * the searching and replacing itself is done by {@link TextEditorPanel}.
+ */
+public class FindReplaceDialog extends JDialog {
+    private static final int TYPING_DELAY_MILLIS = 250;
+
+    private final TextEditorPanel editorPanel;
+    private final JTextField findField = new JTextField(24);
+    private final JTextField replaceField = new JTextField(24);
+    private final JCheckBox matchCase = new JCheckBox("Match case");
+    private final JCheckBox wholeWord = new JCheckBox("Whole word");
+    private final JCheckBox regex = new JCheckBox("Regex");
+    private final JLabel statusLabel = new JLabel(" ");
+    private final Timer typingTimer = new Timer(TYPING_DELAY_MILLIS, e -> highlight());
+
+    public FindReplaceDialog(Window owner, TextEditorPanel editorPanel) {
+        super(owner, "Find/Replace", ModalityType.MODELESS);
+        this.editorPanel = editorPanel;
+
+        JPanel fields = new JPanel(new GridLayout(2, 2, 4, 4));
+        fields.add(new JLabel("Find:"));
+        fields.add(findField);
+        fields.add(new JLabel("Replace with:"));
+        fields.add(replaceField);
+
+        JPanel options = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        options.add(matchCase);
+        options.add(wholeWord);
+        options.add(regex);
+
+        JPanel buttons = new JPanel(new GridLayout(4, 1, 4, 4));
+        JButton findNext = new JButton("Find Next");
+        JButton findPrevious = new JButton("Find Previous");
+        JButton replace = new JButton("Replace");
+        JButton replaceAll = new JButton("Replace All");
+        buttons.add(findNext);
+        buttons.add(findPrevious);
+        buttons.add(replace);
+        buttons.add(replaceAll);
+
+        JPanel center = new JPanel(new BorderLayout());
+        center.add(fields, BorderLayout.NORTH);
+        center.add(options, BorderLayout.CENTER);
+        center.add(statusLabel, BorderLayout.SOUTH);
+        JPanel content = new JPanel(new BorderLayout(8, 8));
+        content.setBorder(BorderFactory.createEmptyBorder(8, 8, 8, 8));
+        content.add(center, BorderLayout.CENTER);
+        content.add(buttons, BorderLayout.EAST);
+        setContentPane(content);
+        pack();
+        setLocationRelativeTo(owner);
+        getRootPane().setDefaultButton(findNext);
+
+        findNext.addActionListener(e -> find(true));
+        findPrevious.addActionListener(e -> find(false));
+        replace.addActionListener(e -> {
+            TextFinder finder = createFinder();
+            if (finder == null) return;
+            try {
+                editorPanel.replace(finder, replaceField.getText());
+            } catch (IllegalArgumentException | IndexOutOfBoundsException ex) {
+                statusLabel.setText("Invalid replacement: " + ex.getMessage());
+            }
+        });
+        replaceAll.addActionListener(e -> {
+            TextFinder finder = createFinder();
+            if (finder == null) return;
+            try {
+                int count = editorPanel.replaceAll(finder, replaceField.getText());
+                statusLabel.setText(count == 1 ? "Replaced 1 match" : "Replaced " + count + " matches");
+            } catch (IllegalArgumentException | IndexOutOfBoundsException ex) {
+                statusLabel.setText("Invalid replacement: " + ex.getMessage());
+            }
+        });
+
+        typingTimer.setRepeats(false);
+        findField.getDocument().addDocumentListener(new DocumentListener() {
+            public void insertUpdate(DocumentEvent e) { typingTimer.restart(); }
+            public void removeUpdate(DocumentEvent e) { typingTimer.restart(); }
+            public void changedUpdate(DocumentEvent e) {}
+        });
+        matchCase.addActionListener(e -> highlight());
+        wholeWord.addActionListener(e -> highlight());
+        regex.addActionListener(e -> highlight());
+        addComponentListener(new ComponentAdapter() {
+            @Override
+            public void componentHidden(ComponentEvent e) {
+                editorPanel.clearHighlights();
+            }
+        });
+        getRootPane().registerKeyboardAction(e -> setVisible(false),
+                KeyStroke.getKeyStroke(java.awt.event.KeyEvent.VK_ESCAPE, 0), JComponent.WHEN_IN_FOCUSED_WINDOW);
+    }
+
+    /** Shows the dialog, starting from {@code selection} if it is a short single-line selection. */
+    public void open(String selection) {
+        if (selection != null && !selection.isEmpty() && selection.length() < 200 && selection.indexOf('\n') < 0) {
+            findField.setText(selection);
+        }
+        setVisible(true);
+        findField.requestFocusInWindow();
+        findField.selectAll();
+        highlight();
+    }
+
+    private void find(boolean forward) {
+        TextFinder finder = createFinder();
+        if (finder != null && !editorPanel.find(finder, forward)) statusLabel.setText("Not found.");
+    }
+
+    private void highlight() {
+        typingTimer.stop();
+        if (findField.getText().isEmpty()) {
+            editorPanel.clearHighlights();
+            statusLabel.setText(" ");
+            return;
+        }
+        TextFinder finder = createFinder();
+        if (finder == null) return;
+        int count = editorPanel.highlightAll(finder);
+        statusLabel.setText(count == 0 ? "Not found." : count == 1 ? "1 match" : count + " matches");
+    }
+
+    private TextFinder createFinder() {
+        if (findField.getText().isEmpty()) return null;
+        try {
+            return new TextFinder(findField.getText(), matchCase.isSelected(), wholeWord.isSelected(), regex.isSelected());
+        } catch (PatternSyntaxException e) {
+            editorPanel.clearHighlights();
+            statusLabel.setText("Invalid pattern: " + e.getDescription());
+            return null;
+        }
+    }
+}
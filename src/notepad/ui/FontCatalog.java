@@ -0,0 +1,73 @@
+package notepad.ui;
+
+import javax.swing.*;
+import java.awt.*;
+import java.util.*;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+/**
+ * The font families installed on this machine. Listing them can take seconds where thousands of
+ * fonts are installed, so it is done once, on a background thread started at launch, and the
+ * result is kept for the life of the application.
+ */
+public final class FontCatalog {
+    private static final CompletableFuture<Catalog> CATALOG = new CompletableFuture<>();
+    private static boolean started;
+
+    private static final class Catalog {
+        final List<String> families;
+        final Map<String, String> byLowerCase = new HashMap<>();
+
+        Catalog(String[] names) {
+            families = Collections.unmodifiableList(Arrays.asList(names));
+            for (String name : names) byLowerCase.putIfAbsent(name.toLowerCase(Locale.ROOT), name);
+        }
+    }
+
+    private FontCatalog() {}
+
+    /** Starts listing the fonts in the background; later calls do nothing. */
+    public static synchronized void prewarm() {
+        if (started) return;
+        started = true;
+        Thread t = new Thread(() -> {
+            try {
+                CATALOG.complete(new Catalog(GraphicsEnvironment.getLocalGraphicsEnvironment().getAvailableFontFamilyNames()));
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+                CATALOG.complete(new Catalog(new String[]{
+                        Font.DIALOG, Font.DIALOG_INPUT, Font.MONOSPACED, Font.SANS_SERIF, Font.SERIF}));
+            }
+        }, "font-catalog");
+        t.setDaemon(true);
+        t.start();
+    }
+
+    public static boolean isReady() {
+        return CATALOG.isDone();
+    }
+
+    /** Runs {@code action} on the event thread with the sorted family names, once they are known. */
+    public static void whenReady(Consumer<List<String>> action) {
+        prewarm();
+        CATALOG.thenAccept(catalog -> SwingUtilities.invokeLater(() -> action.accept(catalog.families)));
+    }
+
+    /**
+     * The first of {@code families} that is installed, ignoring case. The last one should be a
+     * logical font such as {@link Font#MONOSPACED}, which always exists; it is also the answer
+     * until the catalog is ready, so this never waits.
+     */
+    public static String firstAvailable(String... families) {
+        Catalog catalog = CATALOG.getNow(null);
+        if (catalog != null) {
+            for (String family : families) {
+                String installed = catalog.byLowerCase.get(family.toLowerCase(Locale.ROOT));
+                if (installed != null) return installed;
+            }
+        }
+        return families[families.length - 1];
+    }
+}
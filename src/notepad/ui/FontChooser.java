@@ -0,0 +1,186 @@
+package notepad.ui;
+
+import javax.swing.*;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import java.awt.*;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Picks a font family and size. The families come from {@link FontCatalog} and can be narrowed
+ * by typing part of a name. Rows have a fixed size, so the list only ever renders the rows in
+ * view, and each shows a sample drawn in its font by a {@link FontPreviewCache} shared by every
+ * chooser.
+ */
+public class FontChooser extends JPanel {
+    private static final String SAMPLE = "AaBbCc 123";
+    private static final int PREVIEW_WIDTH = 160;
+    private static final int PREVIEW_HEIGHT = 24;
+    private static final Integer[] SIZES = {8, 10, 12, 14, 16, 18, 20, 24, 28, 32, 36, 40, 48, 72};
+
+    private static FontPreviewCache previews;
+
+    private final FamilyListModel model = new FamilyListModel();
+    private final JList<String> familyList = new JList<>(model);
+    private final JTextField filterField = new JTextField();
+    private final JComboBox<Integer> sizeBox = new JComboBox<>(SIZES);
+    private final JLabel sampleLabel = new JLabel("The quick brown fox jumps over the lazy dog", SwingConstants.CENTER);
+    private final Font initialFont;
+
+    public FontChooser(Font initialFont) {
+        super(new BorderLayout(6, 6));
+        this.initialFont = initialFont;
+        if (previews == null) {
+            previews = new FontPreviewCache(SAMPLE, PREVIEW_WIDTH, PREVIEW_HEIGHT, UIManager.getColor("List.foreground"));
+        }
+        sizeBox.setEditable(true);
+        sizeBox.setSelectedItem(initialFont != null ? initialFont.getSize() : 12);
+        familyList.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        familyList.setFixedCellHeight(PREVIEW_HEIGHT + 4);
+        familyList.setFixedCellWidth(PREVIEW_WIDTH + 240);
+        familyList.setVisibleRowCount(12);
+        familyList.setCellRenderer(new FamilyRenderer());
+        sampleLabel.setPreferredSize(new Dimension(PREVIEW_WIDTH + 240, 60));
+        sampleLabel.setBorder(BorderFactory.createEtchedBorder());
+
+        JPanel top = new JPanel(new BorderLayout(6, 6));
+        top.add(new JLabel("Font:"), BorderLayout.WEST);
+        top.add(filterField, BorderLayout.CENTER);
+        JPanel size = new JPanel(new FlowLayout(FlowLayout.RIGHT, 0, 0));
+        size.add(new JLabel("Size: "));
+        size.add(sizeBox);
+        top.add(size, BorderLayout.EAST);
+        add(top, BorderLayout.NORTH);
+        add(new JScrollPane(familyList), BorderLayout.CENTER);
+        add(sampleLabel, BorderLayout.SOUTH);
+
+        filterField.getDocument().addDocumentListener(new DocumentListener() {
+            public void insertUpdate(DocumentEvent e) { applyFilter(); }
+            public void removeUpdate(DocumentEvent e) { applyFilter(); }
+            public void changedUpdate(DocumentEvent e) {}
+        });
+        filterField.addActionListener(e -> {
+            if (familyList.isSelectionEmpty() && model.getSize() > 0) familyList.setSelectedIndex(0);
+        });
+        familyList.addListSelectionListener(e -> updateSample());
+        sizeBox.addActionListener(e -> updateSample());
+
+        FontCatalog.whenReady(families -> {
+            model.setFamilies(families);
+            if (initialFont != null) familyList.setSelectedValue(initialFont.getFamily(), true);
+        });
+    }
+
+    /** The chosen font, or the initial one if no family was picked. */
+    public Font getSelectedFont() {
+        String family = familyList.getSelectedValue();
+        if (family == null) family = initialFont != null ? initialFont.getFamily() : Font.DIALOG;
+        return new Font(family, Font.PLAIN, selectedSize());
+    }
+
+    private int selectedSize() {
+        Object size = sizeBox.getSelectedItem();
+        try {
+            int value = size instanceof Integer ? (Integer) size : Integer.parseInt(String.valueOf(size).trim());
+            if (value > 0) return value;
+        } catch (NumberFormatException ignored) {
+        }
+        return initialFont != null ? initialFont.getSize() : 12;
+    }
+
+    // The selected family stays selected if it still matches.
+    private void applyFilter() {
+        String selected = familyList.getSelectedValue();
+        model.setQuery(filterField.getText());
+        if (selected != null) familyList.setSelectedValue(selected, true);
+    }
+
+    private void updateSample() {
+        Font font = getSelectedFont();
+        sampleLabel.setFont(font.deriveFont((float) Math.min(font.getSize(), 40)));
+    }
+
+    /** The families matching the filter; a single null row stands for "loading" until the catalog is ready. */
+    private static final class FamilyListModel extends AbstractListModel<String> {
+        private List<String> families;
+        private List<String> shown = Collections.emptyList();
+        private String query = "";
+
+        void setFamilies(List<String> families) {
+            this.families = families;
+            refilter();
+        }
+
+        void setQuery(String query) {
+            this.query = query.trim().toLowerCase(Locale.ROOT);
+            if (families != null) refilter();
+        }
+
+        private void refilter() {
+            int oldSize = getSize();
+            if (query.isEmpty()) {
+                shown = families;
+            } else {
+                List<String> matches = new ArrayList<>();
+                for (String family : families) {
+                    if (family.toLowerCase(Locale.ROOT).contains(query)) matches.add(family);
+                }
+                shown = matches;
+            }
+            if (oldSize > 0) fireIntervalRemoved(this, 0, oldSize - 1);
+            if (!shown.isEmpty()) fireIntervalAdded(this, 0, shown.size() - 1);
+        }
+
+        @Override
+        public int getSize() {
+            return families == null ? 1 : shown.size();
+        }
+
+        @Override
+        public String getElementAt(int index) {
+            return families == null ? null : shown.get(index);
+        }
+    }
+
+    private final class FamilyRenderer extends DefaultListCellRenderer {
+        private final Runnable repaintList = familyList::repaint;
+        private final PreviewIcon icon = new PreviewIcon();
+
+        @Override
+        public Component getListCellRendererComponent(JList<?> list, Object value, int index, boolean isSelected, boolean cellHasFocus) {
+            JLabel label = (JLabel) super.getListCellRendererComponent(list, value, index, isSelected, cellHasFocus);
+            if (value == null) {
+                label.setText("Loading fonts...");
+                label.setIcon(null);
+                return label;
+            }
+            // Blank until drawn, so the names line up either way.
+            icon.image = previews.get((String) value, repaintList);
+            label.setIcon(icon);
+            label.setIconTextGap(12);
+            return label;
+        }
+    }
+
+    private static final class PreviewIcon implements Icon {
+        Image image;
+
+        @Override
+        public void paintIcon(Component c, Graphics g, int x, int y) {
+            if (image != null) g.drawImage(image, x, y, null);
+        }
+
+        @Override
+        public int getIconWidth() {
+            return PREVIEW_WIDTH;
+        }
+
+        @Override
+        public int getIconHeight() {
+            return PREVIEW_HEIGHT;
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package notepad.ui;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.*;
+import java.util.List;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.LinkedBlockingDeque;
+
+/**
+ * Sample text drawn in each font family, for the font chooser's rows. Drawing text in a font
+ * the first time loads the font file, so previews are drawn on a background thread and kept in
+ * least-recently-used order within a memory budget. The newest requests are drawn first and only
+ * the latest few are kept, so rows scrolled past quickly are skipped. Used only on the event
+ * thread, which is also where requesters are told that a preview is ready.
+ */
+public class FontPreviewCache {
+    public static final long DEFAULT_BUDGET_BYTES = 8L * 1024 * 1024;
+    private static final int MAX_QUEUED = 64;
+
+    private final String sample;
+    private final int width;
+    private final int height;
+    private final Color color;
+    private final LinkedHashMap<String, BufferedImage> previews = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<String, List<Runnable>> pending = new HashMap<>();
+    // Families whose fonts cannot show the sample, such as symbol fonts.
+    private final Set<String> unrenderable = new HashSet<>();
+    private final BlockingDeque<String> queue = new LinkedBlockingDeque<>();
+    private final Thread renderer = new Thread(this::renderLoop, "font-preview");
+    private long budgetBytes = DEFAULT_BUDGET_BYTES;
+    private long usedBytes;
+
+    public FontPreviewCache(String sample, int width, int height, Color color) {
+        this.sample = sample;
+        this.width = width;
+        this.height = height;
+        this.color = color;
+        renderer.setDaemon(true);
+        renderer.start();
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public long getUsedBytes() {
+        return usedBytes;
+    }
+
+    /**
+     * The preview of {@code family}, or null if it is not drawn yet or the font cannot show the
+     * sample. A missing preview is drawn and {@code onReady} run once it is in.
+     */
+    public Image get(String family, Runnable onReady) {
+        BufferedImage preview = previews.get(family);
+        if (preview != null || unrenderable.contains(family)) return preview;
+        List<Runnable> waiting = pending.get(family);
+        if (waiting != null) {
+            if (!waiting.contains(onReady)) waiting.add(onReady);
+            return null;
+        }
+        waiting = new ArrayList<>(2);
+        waiting.add(onReady);
+        pending.put(family, waiting);
+        queue.addFirst(family);
+        // Requests that have waited longest are for rows most likely scrolled away; a row that
+        // is painted again asks again.
+        while (queue.size() > MAX_QUEUED) {
+            String dropped = queue.pollLast();
+            if (dropped != null) pending.remove(dropped);
+        }
+        return null;
+    }
+
+    /** Stops the drawing thread; cached previews stay usable. */
+    public void shutdown() {
+        renderer.interrupt();
+    }
+
+    private void renderLoop() {
+        try {
+            while (true) {
+                String family = queue.takeFirst();
+                BufferedImage preview = null;
+                try {
+                    preview = render(family);
+                } catch (RuntimeException e) {
+                    e.printStackTrace();
+                }
+                BufferedImage rendered = preview;
+                SwingUtilities.invokeLater(() -> finish(family, rendered));
+            }
+        } catch (InterruptedException e) {
+            // Shut down.
+        }
+    }
+
+    private void finish(String family, BufferedImage preview) {
+        List<Runnable> waiting = pending.remove(family);
+        if (preview == null) {
+            unrenderable.add(family);
+        } else {
+            BufferedImage replaced = previews.put(family, preview);
+            if (replaced != null) usedBytes -= bytes(replaced);
+            usedBytes += bytes(preview);
+            evict();
+        }
+        if (waiting != null) {
+            for (Runnable r : waiting) r.run();
+        }
+    }
+
+    private void evict() {
+        Iterator<BufferedImage> it = previews.values().iterator();
+        while (usedBytes > budgetBytes && previews.size() > 1 && it.hasNext()) {
+            usedBytes -= bytes(it.next());
+            it.remove();
+        }
+    }
+
+    private BufferedImage render(String family) {
+        Font font = new Font(family, Font.PLAIN, height * 2 / 3);
+        if (font.canDisplayUpTo(sample) != -1) return null;
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = image.createGraphics();
+        try {
+            g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+            g.setFont(font);
+            g.setColor(color);
+            FontMetrics metrics = g.getFontMetrics();
+            g.drawString(sample, 0, (height - metrics.getHeight()) / 2 + metrics.getAscent());
+        } finally {
+            g.dispose();
+        }
+        return image;
+    }
+
+    private static long bytes(BufferedImage image) {
+        return 4L * image.getWidth() * image.getHeight();
+    }
+}
@@ -0,0 +1,168 @@
+package notepad.ui;
+
+import notepad.model.Note;
+import notepad.store.RevisionStore;
+
+import javax.swing.*;
+import java.awt.*;
+import java.io.IOException;
+import java.text.NumberFormat;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * A timeline of the open note's saved revisions, below the editor. Moving the slider shows that
+ * revision read-only in place of the editor; its right end is the note as it is now. Revisions
+ * are rebuilt on a background thread, and while the slider is dragged only the latest position
+ * asked for is rebuilt.
+ */
+public class HistoryBar extends JPanel {
+    private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("MMM d, yyyy HH:mm:ss")
+            .withZone(ZoneId.systemDefault());
+
+    private final TextEditorPanel editor;
+    private final RevisionStore history;
+    private final JSlider slider = new JSlider(0, 0, 0);
+    private final JLabel infoLabel = new JLabel(" ");
+    private final JButton restoreButton = new JButton("Restore");
+    private final JTextArea preview = new JTextArea();
+    private final ExecutorService reader = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "note-history");
+        t.setDaemon(true);
+        return t;
+    });
+    private Note note;
+    private List<RevisionStore.Revision> revisions = Collections.emptyList();
+    private String shownText;
+    // Bumped by every request, so answers to requests overtaken meanwhile are dropped.
+    private volatile int requestSeq;
+
+    public HistoryBar(TextEditorPanel editor, RevisionStore history) {
+        super(new BorderLayout(6, 0));
+        this.editor = editor;
+        this.history = history;
+        setBorder(BorderFactory.createEmptyBorder(4, 6, 4, 6));
+        preview.setEditable(false);
+        preview.setLineWrap(true);
+        preview.setWrapStyleWord(true);
+
+        JPanel buttons = new JPanel(new FlowLayout(FlowLayout.RIGHT, 4, 0));
+        JButton closeButton = new JButton("Close");
+        buttons.add(restoreButton);
+        buttons.add(closeButton);
+        JPanel center = new JPanel(new BorderLayout());
+        center.add(slider, BorderLayout.CENTER);
+        center.add(infoLabel, BorderLayout.SOUTH);
+        add(new JLabel("History"), BorderLayout.WEST);
+        add(center, BorderLayout.CENTER);
+        add(buttons, BorderLayout.EAST);
+
+        slider.addChangeListener(e -> showPosition());
+        restoreButton.addActionListener(e -> restore());
+        closeButton.addActionListener(e -> close());
+        setVisible(false);
+    }
+
+    /** Shows the timeline of {@code note}, positioned at now, once its revisions are listed. */
+    public void open(Note note) {
+        this.note = note;
+        revisions = Collections.emptyList();
+        shownText = null;
+        editor.showInEditor(null);
+        slider.setEnabled(false);
+        restoreButton.setEnabled(false);
+        infoLabel.setText("Loading history...");
+        setVisible(true);
+        String id = note.getId();
+        int seq = ++requestSeq;
+        reader.execute(() -> {
+            List<RevisionStore.Revision> listed;
+            try {
+                listed = history.list(id);
+            } catch (IOException e) {
+                e.printStackTrace();
+                listed = Collections.emptyList();
+            }
+            List<RevisionStore.Revision> result = listed;
+            SwingUtilities.invokeLater(() -> {
+                if (seq != requestSeq) return;
+                revisions = result;
+                slider.setMaximum(result.size());
+                slider.setValue(result.size());
+                slider.setEnabled(!result.isEmpty());
+                showPosition();
+            });
+        });
+    }
+
+    /** Hides the timeline and gives the editor back; does nothing if it is not open. */
+    public void close() {
+        if (note == null) return;
+        note = null;
+        requestSeq++;
+        revisions = Collections.emptyList();
+        shownText = null;
+        editor.showInEditor(null);
+        setVisible(false);
+    }
+
+    public boolean isOpen() {
+        return note != null;
+    }
+
+    private void showPosition() {
+        if (note == null) return;
+        int position = slider.getValue();
+        int seq = ++requestSeq;
+        shownText = null;
+        restoreButton.setEnabled(false);
+        if (position >= revisions.size()) {
+            editor.showInEditor(null);
+            infoLabel.setText(revisions.isEmpty() ? "No saved revisions yet" : "Now (" + revisions.size() + " saved revisions)");
+            return;
+        }
+        RevisionStore.Revision revision = revisions.get(position);
+        String label = "Revision " + (position + 1) + " of " + revisions.size() + ", "
+                + TIME_FORMAT.format(Instant.ofEpochMilli(revision.getTime())) + ", "
+                + NumberFormat.getIntegerInstance().format(revision.getLength()) + " chars";
+        infoLabel.setText(label + " (loading...)");
+        String id = note.getId();
+        reader.execute(() -> {
+            if (seq != requestSeq) return;
+            String text;
+            try {
+                text = history.read(id, revision.getTime());
+            } catch (IOException e) {
+                e.printStackTrace();
+                text = null;
+            }
+            String result = text;
+            SwingUtilities.invokeLater(() -> {
+                if (seq != requestSeq) return;
+                if (result == null) {
+                    infoLabel.setText(label + " (no longer available)");
+                    return;
+                }
+                shownText = result;
+                preview.setFont(editor.getTextPane().getFont());
+                preview.setText(result);
+                preview.setCaretPosition(0);
+                editor.showInEditor(preview);
+                infoLabel.setText(label);
+                restoreButton.setEnabled(true);
+            });
+        });
+    }
+
+    private void restore() {
+        String text = shownText;
+        if (text == null) return;
+        close();
+        editor.restoreText(text);
+    }
+}
@@ -0,0 +1,203 @@
+package notepad.ui;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import javax.swing.*;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Function;
+
+/**
+ * Decoded images, downsampled to the width they are shown at, kept in least-recently-used order
+ * within a memory budget. Decoding happens on a background thread; large files are subsampled
+ * while they are read, so a photo never exists at full resolution in memory. Used only on the
+ * event thread, which is also where requesters are told that an image is ready.
+ */
+public class ImageCache {
+    public static final long DEFAULT_BUDGET_BYTES = 64L * 1024 * 1024;
+
+    private final Function<String, Path> files;
+    private final LinkedHashMap<Key, BufferedImage> images = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<String, Key> latest = new HashMap<>();
+    private final Map<Key, List<Runnable>> pending = new HashMap<>();
+    private final Set<String> broken = new HashSet<>();
+    private final ExecutorService decoder = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "image-decoder");
+        t.setDaemon(true);
+        return t;
+    });
+    private long budgetBytes = DEFAULT_BUDGET_BYTES;
+    private long usedBytes;
+
+    private static final class Key {
+        final String hash;
+        final int width;
+
+        Key(String hash, int width) {
+            this.hash = hash;
+            this.width = width;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Key && ((Key) o).hash.equals(hash) && ((Key) o).width == width;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash.hashCode() * 31 + width;
+        }
+    }
+
+    /** {@code files} maps an image hash to the file holding its bytes. */
+    public ImageCache(Function<String, Path> files) {
+        this.files = files;
+    }
+
+    public long getBudgetBytes() {
+        return budgetBytes;
+    }
+
+    public void setBudgetBytes(long budgetBytes) {
+        this.budgetBytes = budgetBytes;
+        evict();
+    }
+
+    public long getUsedBytes() {
+        return usedBytes;
+    }
+
+    /**
+     * The image scaled to {@code width}, or if that is not decoded yet, the last size decoded of it
+     * to stretch meanwhile, or null. A missing size is decoded and {@code onReady} run once it is in.
+     */
+    public Image get(String hash, int width, Runnable onReady) {
+        Key key = new Key(hash, width);
+        BufferedImage image = images.get(key);
+        if (image != null || broken.contains(hash)) return image;
+        request(key, onReady);
+        Key other = latest.get(hash);
+        return other == null ? null : images.get(other);
+    }
+
+    /** Whether the image could not be decoded. */
+    public boolean isBroken(String hash) {
+        return broken.contains(hash);
+    }
+
+    /** Stops the decoding thread; cached images stay usable. */
+    public void shutdown() {
+        decoder.shutdownNow();
+    }
+
+    private void request(Key key, Runnable onReady) {
+        List<Runnable> waiting = pending.get(key);
+        if (waiting != null) {
+            if (!waiting.contains(onReady)) waiting.add(onReady);
+            return;
+        }
+        waiting = new ArrayList<>(2);
+        waiting.add(onReady);
+        pending.put(key, waiting);
+        decoder.execute(() -> {
+            BufferedImage image = null;
+            try {
+                image = decode(files.apply(key.hash), key.width);
+            } catch (IOException | RuntimeException e) {
+                e.printStackTrace();
+            }
+            BufferedImage decoded = image;
+            SwingUtilities.invokeLater(() -> finish(key, decoded));
+        });
+    }
+
+    private void finish(Key key, BufferedImage image) {
+        List<Runnable> waiting = pending.remove(key);
+        if (image == null) {
+            broken.add(key.hash);
+        } else {
+            BufferedImage replaced = images.put(key, image);
+            if (replaced != null) usedBytes -= bytes(replaced);
+            usedBytes += bytes(image);
+            latest.put(key.hash, key);
+            evict();
+        }
+        if (waiting != null) {
+            for (Runnable r : waiting) r.run();
+        }
+    }
+
+    // Drops least recently used images until within budget, always keeping the newest one.
+    private void evict() {
+        Iterator<Map.Entry<Key, BufferedImage>> it = images.entrySet().iterator();
+        while (usedBytes > budgetBytes && images.size() > 1 && it.hasNext()) {
+            Map.Entry<Key, BufferedImage> eldest = it.next();
+            usedBytes -= bytes(eldest.getValue());
+            if (eldest.getKey().equals(latest.get(eldest.getKey().hash))) latest.remove(eldest.getKey().hash);
+            it.remove();
+        }
+    }
+
+    private static long bytes(BufferedImage image) {
+        return 4L * image.getWidth() * image.getHeight();
+    }
+
+    /** The natural size of the image at {@code file}, from its header, or null if no reader knows its format. */
+    static Dimension readSize(Path file) throws IOException {
+        return withReader(file, reader -> new Dimension(reader.getWidth(0), reader.getHeight(0)));
+    }
+
+    /** Reads the image at {@code file} no wider than {@code width}, or null if no reader knows its format. */
+    static BufferedImage decode(Path file, int width) throws IOException {
+        return withReader(file, reader -> {
+            ImageReadParam param = reader.getDefaultReadParam();
+            // Reading every n-th pixel keeps the decoded image small; scaling then smooths it.
+            int step = Math.max(1, reader.getWidth(0) / Math.max(1, width));
+            param.setSourceSubsampling(step, step, 0, 0);
+            return scale(reader.read(0, param), width);
+        });
+    }
+
+    private interface ReaderTask<T> {
+        T run(ImageReader reader) throws IOException;
+    }
+
+    private static <T> T withReader(Path file, ReaderTask<T> task) throws IOException {
+        try (ImageInputStream in = ImageIO.createImageInputStream(file.toFile())) {
+            if (in == null) return null;
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+            if (!readers.hasNext()) return null;
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(in, true, true);
+                return task.run(reader);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    private static BufferedImage scale(BufferedImage image, int width) {
+        if (image.getWidth() <= width) return image;
+        int height = Math.max(1, (int) Math.round((double) image.getHeight() * width / image.getWidth()));
+        BufferedImage scaled = new BufferedImage(width, height,
+                image.getColorModel().hasAlpha() ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = scaled.createGraphics();
+        try {
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            g.drawImage(image, 0, 0, width, height, null);
+        } finally {
+            g.dispose();
+        }
+        return scaled;
+    }
+}
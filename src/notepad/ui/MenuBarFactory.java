@@ -1,34 +1,40 @@
 package notepad.ui;
 
 import javax.swing.*;
+import javax.swing.event.MenuEvent;
+import javax.swing.event.MenuListener;
 import notepad.service.NoteService;
 import notepad.ui.TextEditorPanel;
 import notepad.ui.NoteListPanel;
 import notepad.model.Note;
-import javax.swing.text.Document;
-import javax.swing.text.rtf.RTFEditorKit;
+import notepad.export.ExportFormat;
 import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.io.*;
+import java.util.function.Consumer;
 
 public class MenuBarFactory {
     public static JMenuBar createMenuBar(TextEditorPanel editorPanel, NoteService noteService, NoteListPanel noteListPanel, JFrame parentFrame) {
         JMenuBar menuBar = new JMenuBar();
 
         // File
-        JMenu fileMenu = new JMenu("File");
-        fileMenu.add(createMenuItem("New Note", e -> noteListPanel.onAddNote(null)));
-        fileMenu.add(createMenuItem("Open...", e -> openNote(editorPanel, noteService, parentFrame)));
-        fileMenu.add(createMenuItem("Save", e -> saveNote(editorPanel, noteService, parentFrame, false)));
-        fileMenu.add(createMenuItem("Save As...", e -> saveNote(editorPanel, noteService, parentFrame, true)));
-        fileMenu.addSeparator();
-        fileMenu.add(createMenuItem("Export as TXT", e -> exportNote(editorPanel, parentFrame, "txt")));
-        fileMenu.add(createMenuItem("Export as RTF", e -> exportNote(editorPanel, parentFrame, "rtf")));
-        fileMenu.add(createMenuItem("Export as HTML", e -> exportNote(editorPanel, parentFrame, "html")));
-        fileMenu.add(createMenuItem("Import Note", e -> importNote(noteService, noteListPanel, parentFrame)));
-        fileMenu.addSeparator();
-        fileMenu.add(createMenuItem("Exit", e -> System.exit(0)));
-        menuBar.add(fileMenu);
+        menuBar.add(lazyMenu("File", fileMenu -> {
+            fileMenu.add(createMenuItem("New Note", e -> noteListPanel.onAddNote(null)));
+            fileMenu.add(createMenuItem("Open...", e -> openNote(editorPanel, noteService, noteListPanel, parentFrame)));
+            fileMenu.add(createMenuItem("Save", e -> saveNote(editorPanel, noteService, parentFrame, false)));
+            fileMenu.add(createMenuItem("Save As...", e -> saveNote(editorPanel, noteService, parentFrame, true)));
+            fileMenu.addSeparator();
+            fileMenu.add(createMenuItem("Export as TXT", e -> ExportWorker.exportCurrent(editorPanel, ExportFormat.TXT, parentFrame)));
+            fileMenu.add(createMenuItem("Export as RTF", e -> ExportWorker.exportCurrent(editorPanel, ExportFormat.RTF, parentFrame)));
+            fileMenu.add(createMenuItem("Export as HTML", e -> ExportWorker.exportCurrent(editorPanel, ExportFormat.HTML, parentFrame)));
+            fileMenu.add(createMenuItem("Export as Markdown", e -> ExportWorker.exportCurrent(editorPanel, ExportFormat.MARKDOWN, parentFrame)));
+            fileMenu.add(createMenuItem("Export All Notes...", e -> ExportWorker.exportAll(noteService, parentFrame)));
+            fileMenu.add(createMenuItem("Import Note", e -> importNote(editorPanel, noteService, noteListPanel, parentFrame)));
+            fileMenu.add(createMenuItem("Import Folder...", e -> DirectoryImportWorker.start(noteService, parentFrame)));
+            fileMenu.addSeparator();
+            fileMenu.add(createMenuItem("Exit", e -> parentFrame.dispatchEvent(
+                    new java.awt.event.WindowEvent(parentFrame, java.awt.event.WindowEvent.WINDOW_CLOSING))));
+        }));
 
         // Edit
         JMenu editMenu = new JMenu("Edit");
@@ -41,53 +47,95 @@ public class MenuBarFactory {
         editMenu.add(createMenuItem("Select All", e -> editorPanel.selectAll()));
         editMenu.addSeparator();
         editMenu.add(createMenuItem("Find/Replace", e -> editorPanel.findReplace()));
+        JMenuItem searchAll = createMenuItem("Search All Notes...",
+                e -> SearchPanel.showDialog(parentFrame, noteService, noteListPanel, editorPanel));
+        searchAll.setAccelerator(KeyStroke.getKeyStroke(java.awt.event.KeyEvent.VK_F,
+                java.awt.event.InputEvent.CTRL_DOWN_MASK | java.awt.event.InputEvent.SHIFT_DOWN_MASK));
+        editMenu.add(searchAll);
+        JMenuItem history = createMenuItem("Note History", e -> editorPanel.showHistory());
+        history.setAccelerator(KeyStroke.getKeyStroke(java.awt.event.KeyEvent.VK_H,
+                java.awt.event.InputEvent.CTRL_DOWN_MASK | java.awt.event.InputEvent.SHIFT_DOWN_MASK));
+        editMenu.add(history);
         menuBar.add(editMenu);
 
         // View
-        JMenu viewMenu = new JMenu("View");
-        JCheckBoxMenuItem showToolbar = new JCheckBoxMenuItem("Show Toolbar", true);
-        showToolbar.addActionListener(e -> editorPanel.setToolbarVisible(showToolbar.isSelected()));
-        viewMenu.add(showToolbar);
-        viewMenu.add(createMenuItem("Zoom In", e -> editorPanel.zoomIn()));
-        viewMenu.add(createMenuItem("Zoom Out", e -> editorPanel.zoomOut()));
-        viewMenu.add(createMenuItem("Font Size", e -> editorPanel.chooseFontSize()));
-        viewMenu.add(createMenuItem("Full Screen", e -> parentFrame.setExtendedState(JFrame.MAXIMIZED_BOTH)));
-        menuBar.add(viewMenu);
+        menuBar.add(lazyMenu("View", viewMenu -> {
+            JCheckBoxMenuItem showToolbar = new JCheckBoxMenuItem("Show Toolbar", true);
+            showToolbar.addActionListener(e -> editorPanel.setToolbarVisible(showToolbar.isSelected()));
+            viewMenu.add(showToolbar);
+            viewMenu.add(createMenuItem("Zoom In", e -> editorPanel.zoomIn()));
+            viewMenu.add(createMenuItem("Zoom Out", e -> editorPanel.zoomOut()));
+            viewMenu.add(createMenuItem("Font Size", e -> editorPanel.chooseFontSize()));
+            viewMenu.add(createMenuItem("Full Screen", e -> parentFrame.setExtendedState(JFrame.MAXIMIZED_BOTH)));
+        }));
 
         // Settings
-        JMenu settingsMenu = new JMenu("Settings");
-        settingsMenu.add(createMenuItem("Auto-save Interval", e -> {
-            String input = JOptionPane.showInputDialog(parentFrame, "Auto-save interval (seconds):", "Settings", JOptionPane.PLAIN_MESSAGE);
-            try {
-                int seconds = Integer.parseInt(input);
-                // You can implement a timer in NotepadFrame to use this value
-                JOptionPane.showMessageDialog(parentFrame, "Auto-save interval set to " + seconds + " seconds.");
-            } catch (Exception ignored) {}
+        menuBar.add(lazyMenu("Settings", settingsMenu -> {
+            settingsMenu.add(createMenuItem("Auto-save Interval", e -> {
+                Object input = JOptionPane.showInputDialog(parentFrame, "Auto-save interval (seconds):", "Settings",
+                        JOptionPane.PLAIN_MESSAGE, null, null, noteService.getAutoSaveInterval());
+                try {
+                    int seconds = Integer.parseInt(String.valueOf(input).trim());
+                    if (seconds <= 0) throw new NumberFormatException();
+                    noteService.setAutoSaveInterval(seconds);
+                    JOptionPane.showMessageDialog(parentFrame, "Auto-save interval set to " + seconds + " seconds.");
+                } catch (NumberFormatException ex) {
+                    if (input != null) showError(parentFrame, "Please enter a positive number of seconds.");
+                }
+            }));
+            settingsMenu.add(createMenuItem("Undo Memory per Note", e -> {
+                Object input = JOptionPane.showInputDialog(parentFrame, "Undo history kept in memory per note (MB):", "Settings",
+                        JOptionPane.PLAIN_MESSAGE, null, null, editorPanel.getUndoMemoryLimit() / (1024 * 1024));
+                try {
+                    int megabytes = Integer.parseInt(String.valueOf(input).trim());
+                    if (megabytes <= 0) throw new NumberFormatException();
+                    editorPanel.setUndoMemoryLimit(megabytes * 1024L * 1024);
+                    JOptionPane.showMessageDialog(parentFrame, "Older undo history now moves to disk beyond " + megabytes + " MB per note.");
+                } catch (NumberFormatException ex) {
+                    if (input != null) showError(parentFrame, "Please enter a positive number of megabytes.");
+                }
+            }));
+            settingsMenu.add(createMenuItem("Font", e -> editorPanel.chooseFont()));
+            settingsMenu.add(createMenuItem("Theme", e -> JOptionPane.showMessageDialog(parentFrame, "Change theme from the Theme menu.")));
+            settingsMenu.add(createMenuItem("Default Save Path", e -> JOptionPane.showMessageDialog(parentFrame, "Not implemented yet.")));
         }));
-        settingsMenu.add(createMenuItem("Font", e -> editorPanel.chooseFont()));
-        settingsMenu.add(createMenuItem("Theme", e -> JOptionPane.showMessageDialog(parentFrame, "Change theme from the Theme menu.")));
-        settingsMenu.add(createMenuItem("Default Save Path", e -> JOptionPane.showMessageDialog(parentFrame, "Not implemented yet.")));
-        menuBar.add(settingsMenu);
 
         // Theme
-        JMenu themeMenu = new JMenu("Theme");
-        themeMenu.add(createMenuItem("Light", e -> setTheme("light", parentFrame)));
-        themeMenu.add(createMenuItem("Dark", e -> setTheme("dark", parentFrame)));
-        themeMenu.add(createMenuItem("System Default", e -> setTheme("system", parentFrame)));
-        themeMenu.add(createMenuItem("High Contrast", e -> setTheme("high-contrast", parentFrame)));
-        menuBar.add(themeMenu);
+        menuBar.add(lazyMenu("Theme", themeMenu -> {
+            themeMenu.add(createMenuItem("Light", e -> setTheme("light", parentFrame)));
+            themeMenu.add(createMenuItem("Dark", e -> setTheme("dark", parentFrame)));
+            themeMenu.add(createMenuItem("System Default", e -> setTheme("system", parentFrame)));
+            themeMenu.add(createMenuItem("High Contrast", e -> setTheme("high-contrast", parentFrame)));
+        }));
 
         // Help
-        JMenu helpMenu = new JMenu("Help");
-        helpMenu.add(createMenuItem("About", e -> showAboutDialog(parentFrame)));
-        helpMenu.add(createMenuItem("Keyboard Shortcuts", e -> showShortcutsDialog(parentFrame)));
-        helpMenu.add(createMenuItem("Help Contents", e -> showHelpDialog(parentFrame)));
-        helpMenu.add(createMenuItem("Feedback", e -> showFeedbackDialog(parentFrame)));
-        menuBar.add(helpMenu);
+        menuBar.add(lazyMenu("Help", helpMenu -> {
+            helpMenu.add(createMenuItem("About", e -> showAboutDialog(parentFrame)));
+            helpMenu.add(createMenuItem("Keyboard Shortcuts", e -> showShortcutsDialog(parentFrame)));
+            helpMenu.add(createMenuItem("Help Contents", e -> showHelpDialog(parentFrame)));
+            helpMenu.add(createMenuItem("Feedback", e -> showFeedbackDialog(parentFrame)));
+            helpMenu.addSeparator();
+            helpMenu.add(createMenuItem("Diagnostics", e -> DiagnosticsDialog.showDialog(parentFrame, editorPanel, noteService)));
+        }));
 
         return menuBar;
     }
 
+    // The items are created when the menu first opens. Edit is built at once, as its accelerators
+    // must work before it has ever been opened.
+    private static JMenu lazyMenu(String title, Consumer<JMenu> items) {
+        JMenu menu = new JMenu(title);
+        menu.addMenuListener(new MenuListener() {
+            public void menuSelected(MenuEvent e) {
+                menu.removeMenuListener(this);
+                items.accept(menu);
+            }
+            public void menuDeselected(MenuEvent e) {}
+            public void menuCanceled(MenuEvent e) {}
+        });
+        return menu;
+    }
+
     private static JMenuItem createMenuItem(String text, java.awt.event.ActionListener action) {
         JMenuItem item = new JMenuItem(text);
         item.addActionListener(action);
@@ -95,21 +143,11 @@ public class MenuBarFactory {
     }
 
     // File actions
-    private static void openNote(TextEditorPanel editorPanel, NoteService noteService, JFrame parent) {
+    private static void openNote(TextEditorPanel editorPanel, NoteService noteService, NoteListPanel noteListPanel, JFrame parent) {
         JFileChooser fileChooser = new JFileChooser();
         int result = fileChooser.showOpenDialog(parent);
         if (result == JFileChooser.APPROVE_OPTION) {
-            File file = fileChooser.getSelectedFile();
-            try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
-                StringBuilder sb = new StringBuilder();
-                String line;
-                while ((line = reader.readLine()) != null) sb.append(line).append("\n");
-                Note note = new Note(file.getName(), sb.toString());
-                noteService.addNote(note);
-                JOptionPane.showMessageDialog(parent, "Note imported as: " + file.getName());
-            } catch (IOException ex) {
-                showError(parent, "File could not be opened.");
-            }
+            FileImportWorker.start(fileChooser.getSelectedFile(), editorPanel, noteService, noteListPanel, parent);
         }
     }
     private static void saveNote(TextEditorPanel editorPanel, NoteService noteService, JFrame parent, boolean saveAs) {
@@ -127,66 +165,11 @@ public class MenuBarFactory {
             }
         }
     }
-    private static void exportNote(TextEditorPanel editorPanel, JFrame parent, String type) {
-        Note note = editorPanel.getCurrentNote();
-        if (note == null) return;
-        JFileChooser fileChooser = new JFileChooser();
-        int result = fileChooser.showSaveDialog(parent);
-        if (result == JFileChooser.APPROVE_OPTION) {
-            File file = fileChooser.getSelectedFile();
-            try {
-                if (type.equals("txt")) {
-                    try (BufferedWriter writer = new BufferedWriter(new FileWriter(file))) {
-                        writer.write(editorPanel.getTextPane().getText());
-                    }
-                } else if (type.equals("rtf")) {
-                    try (FileOutputStream fos = new FileOutputStream(file)) {
-                        new RTFEditorKit().write(fos, editorPanel.getTextPane().getDocument(), 0, editorPanel.getTextPane().getDocument().getLength());
-                    }
-                } else if (type.equals("html")) {
-                    try (FileWriter writer = new FileWriter(file)) {
-                        writer.write("<html><body>" + editorPanel.getTextPane().getText().replace("\n", "<br>") + "</body></html>");
-                    }
-                }
-                JOptionPane.showMessageDialog(parent, "Note exported as: " + file.getName());
-            } catch (Exception ex) {
-                showError(parent, "Export failed.");
-            }
-        }
-    }
-    private static void importNote(NoteService noteService, NoteListPanel noteListPanel, JFrame parent) {
+    private static void importNote(TextEditorPanel editorPanel, NoteService noteService, NoteListPanel noteListPanel, JFrame parent) {
         JFileChooser fileChooser = new JFileChooser();
         int result = fileChooser.showOpenDialog(parent);
         if (result == JFileChooser.APPROVE_OPTION) {
-            File file = fileChooser.getSelectedFile();
-            String name = file.getName().toLowerCase();
-            try {
-                if (name.endsWith(".rtf")) {
-                    RTFEditorKit rtfKit = new RTFEditorKit();
-                    Document doc = rtfKit.createDefaultDocument();
-                    rtfKit.read(new FileInputStream(file), doc, 0);
-                    Note note = new Note(file.getName(), doc.getText(0, doc.getLength()));
-                    noteService.addNote(note);
-                } else if (name.endsWith(".html") || name.endsWith(".htm")) {
-                    BufferedReader reader = new BufferedReader(new FileReader(file));
-                    StringBuilder sb = new StringBuilder();
-                    String line;
-                    while ((line = reader.readLine()) != null) sb.append(line).append("\n");
-                    Note note = new Note(file.getName(), sb.toString());
-                    noteService.addNote(note);
-                } else {
-                    BufferedReader reader = new BufferedReader(new FileReader(file));
-                    StringBuilder sb = new StringBuilder();
-                    String line;
-                    while ((line = reader.readLine()) != null) sb.append(line).append("\n");
-                    Note note = new Note(file.getName(), sb.toString());
-                    noteService.addNote(note);
-                }
-                noteListPanel.refresh();
-                JOptionPane.showMessageDialog(parent, "Note imported as: " + file.getName());
-            } catch (Exception ex) {
-                showError(parent, "Import failed.");
-            }
+            FileImportWorker.start(fileChooser.getSelectedFile(), editorPanel, noteService, noteListPanel, parent);
         }
     }
     private static void setTheme(String theme, JFrame parent) {
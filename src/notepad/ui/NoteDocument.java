@@ -0,0 +1,277 @@
+package notepad.ui;
+
+import notepad.model.StyleRuns;
+
+import javax.swing.*;
+import javax.swing.event.DocumentEvent;
+import javax.swing.text.*;
+import java.awt.Color;
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ * A note's styled document, which converts its formatting to and from {@link StyleRuns}.
+ * Loading builds the whole element tree in one pass instead of styling the text run by run.
+ * Only the attributes the editor sets are kept; an inserted image is kept as a reference in
+ * {@link #IMAGE}, and other embedded icons and components are not kept.
+ */
+public class NoteDocument extends DefaultStyledDocument {
+    /** Marks a character shown as an image; the value is a {@link ThumbnailIcon} reference. */
+    public static final Object IMAGE = new AttributeKey("image");
+    /** Marks text styled as code, which {@link CodeHighlighter} colors. */
+    public static final Object CODE = new AttributeKey("code");
+
+    private static final Object[] KEYS = {
+            StyleConstants.Bold, StyleConstants.Italic, StyleConstants.Underline, StyleConstants.StrikeThrough,
+            StyleConstants.Subscript, StyleConstants.Superscript, StyleConstants.FontFamily, StyleConstants.FontSize,
+            StyleConstants.Foreground, StyleConstants.Background, StyleConstants.Alignment,
+            StyleConstants.FirstLineIndent, StyleConstants.LeftIndent, StyleConstants.RightIndent,
+            StyleConstants.SpaceAbove, StyleConstants.SpaceBelow, StyleConstants.LineSpacing, IMAGE, CODE
+    };
+    private static final Map<String, Object> KEYS_BY_NAME = new HashMap<>();
+
+    static {
+        for (Object key : KEYS) KEYS_BY_NAME.put(key.toString(), key);
+    }
+
+    private final Function<String, Icon> imageIcons;
+
+    public NoteDocument(Content content, StyleContext styles) {
+        this(content, styles, null);
+    }
+
+    /** {@code imageIcons} turns an {@link #IMAGE} reference into the icon to show, or null to show none. */
+    public NoteDocument(Content content, StyleContext styles, Function<String, Icon> imageIcons) {
+        super(content, styles);
+        this.imageIcons = imageIcons;
+    }
+
+    /** The attributes of an image character: the reference to store and the icon to show. */
+    public static MutableAttributeSet imageAttributes(String reference, Icon icon) {
+        SimpleAttributeSet attributes = new SimpleAttributeSet();
+        attributes.addAttribute(IMAGE, reference);
+        if (icon != null) StyleConstants.setIcon(attributes, icon);
+        return attributes;
+    }
+
+    /**
+     * Fills the empty document with {@code text} formatted by {@code runs}. Runs that do not
+     * match the text, or none at all, leave it plain.
+     */
+    public void load(String text, StyleRuns runs) throws BadLocationException {
+        if (text == null) text = "";
+        if (runs == null || runs.getTextLength() != text.length()) {
+            if (!text.isEmpty()) insertString(0, text, null);
+            return;
+        }
+        AttributeSet[] styles = new AttributeSet[runs.getStyleCount()];
+        for (int i = 0; i < styles.length; i++) {
+            styles[i] = decode(runs.getStyle(i));
+            Object image = styles[i].getAttribute(IMAGE);
+            if (image != null && imageIcons != null) {
+                MutableAttributeSet withIcon = new SimpleAttributeSet(styles[i]);
+                Icon icon = imageIcons.apply((String) image);
+                if (icon != null) StyleConstants.setIcon(withIcon, icon);
+                styles[i] = withIcon;
+            }
+        }
+        Style paragraphParent = getStyle(StyleContext.DEFAULT_STYLE);
+        // Every paragraph is closed by a newline, so one is added here and removed below; the
+        // last paragraph then joins the one the document was created with.
+        char[] chars = new char[text.length() + 1];
+        text.getChars(0, text.length(), chars, 0);
+        chars[text.length()] = '\n';
+        int[] charRuns = runs.getCharRuns();
+        int[] paragraphRuns = runs.getParagraphRuns();
+        List<ElementSpec> specs = new ArrayList<>();
+        specs.add(new ElementSpec(null, ElementSpec.StartTagType));
+        int charRun = 0;
+        int charRunEnd = charRuns[1];
+        int paragraphRun = 0;
+        int paragraphRunEnd = paragraphRuns[1];
+        int start = 0;
+        while (start < chars.length) {
+            int end = start;
+            while (chars[end] != '\n') end++;
+            end++;
+            while (paragraphRunEnd <= start && paragraphRun + 2 < paragraphRuns.length) {
+                paragraphRun += 2;
+                paragraphRunEnd += paragraphRuns[paragraphRun + 1];
+            }
+            MutableAttributeSet paragraph = new SimpleAttributeSet(styles[paragraphRuns[paragraphRun]]);
+            paragraph.setResolveParent(paragraphParent);
+            specs.add(new ElementSpec(paragraph, ElementSpec.StartTagType));
+            for (int at = start; at < end; ) {
+                while (charRunEnd <= at && charRun + 2 < charRuns.length) {
+                    charRun += 2;
+                    charRunEnd += charRuns[charRun + 1];
+                }
+                int to = charRunEnd > at ? Math.min(end, charRunEnd) : end;
+                // A spec copies the whole array it is given, so each gets just its slice.
+                char[] slice = Arrays.copyOfRange(chars, at, to);
+                specs.add(new ElementSpec(styles[charRuns[charRun]], ElementSpec.ContentType, slice, 0, slice.length));
+                at = to;
+            }
+            specs.add(new ElementSpec(null, ElementSpec.EndTagType));
+            start = end;
+        }
+        create(specs.toArray(new ElementSpec[0]));
+        remove(text.length(), 1);
+    }
+
+    /** The document's formatting, or null if it has none. */
+    public StyleRuns captureStyles() {
+        readLock();
+        try {
+            Map<String, Integer> indexes = new HashMap<>();
+            List<String> styles = new ArrayList<>();
+            // Elements of equal formatting share one interned attribute set, which copyAttributes
+            // returns, so most lookups hit here.
+            Map<AttributeSet, Integer> known = new IdentityHashMap<>();
+            RunBuilder charRuns = new RunBuilder();
+            RunBuilder paragraphRuns = new RunBuilder();
+            Element root = getDefaultRootElement();
+            for (int p = 0; p < root.getElementCount(); p++) {
+                Element paragraph = root.getElement(p);
+                paragraphRuns.add(styleIndex(paragraph.getAttributes(), indexes, styles, known), length(paragraph));
+                for (int c = 0; c < paragraph.getElementCount(); c++) {
+                    Element leaf = paragraph.getElement(c);
+                    charRuns.add(styleIndex(leaf.getAttributes(), indexes, styles, known), length(leaf));
+                }
+            }
+            if (styles.size() == 1 && styles.get(0).isEmpty()) return null;
+            return new StyleRuns(styles.toArray(new String[0]), charRuns.toArray(), paragraphRuns.toArray());
+        } finally {
+            readUnlock();
+        }
+    }
+
+    /**
+     * Whether the formatting after an insert or remove is still what {@link StyleRuns#adjust}
+     * derives from the formatting before it; if not, the whole formatting must be recorded again.
+     */
+    public boolean followsRuns(DocumentEvent e) {
+        int offset = e.getOffset();
+        if (e.getType() == DocumentEvent.EventType.INSERT) {
+            int end = offset + e.getLength();
+            AttributeSet expected = getCharacterElement(offset > 0 ? offset - 1 : end).getAttributes();
+            for (int at = offset; at < end; ) {
+                Element leaf = getCharacterElement(at);
+                if (!leaf.getAttributes().isEqual(expected)) return false;
+                at = leaf.getEndOffset();
+            }
+            AttributeSet paragraph = getParagraphElement(end).getAttributes();
+            for (int at = offset; at < end; ) {
+                Element element = getParagraphElement(at);
+                if (!element.getAttributes().isEqual(paragraph)) return false;
+                at = element.getEndOffset();
+            }
+            return true;
+        }
+        // Joined paragraphs keep the first one's formatting, which the runs give only to its part.
+        DocumentEvent.ElementChange change = e.getChange(getDefaultRootElement());
+        if (change == null) return true;
+        AttributeSet joined = getParagraphElement(offset).getAttributes();
+        for (Element removed : change.getChildrenRemoved()) {
+            if (!removed.getAttributes().isEqual(joined)) return false;
+        }
+        return true;
+    }
+
+    private static int length(Element element) {
+        return element.getEndOffset() - element.getStartOffset();
+    }
+
+    private static int styleIndex(AttributeSet attributes, Map<String, Integer> indexes, List<String> styles,
+                                  Map<AttributeSet, Integer> known) {
+        AttributeSet interned = attributes.copyAttributes();
+        Integer index = known.get(interned);
+        if (index != null) return index;
+        String style = encode(attributes);
+        index = indexes.get(style);
+        if (index == null) {
+            index = styles.size();
+            styles.add(style);
+            indexes.put(style, index);
+        }
+        known.put(interned, index);
+        return index;
+    }
+
+    /** One {@code name=value} line per kept attribute, sorted, so equal formatting gives equal text. */
+    public static String encode(AttributeSet attributes) {
+        List<String> lines = null;
+        for (Enumeration<?> names = attributes.getAttributeNames(); names.hasMoreElements(); ) {
+            Object key = names.nextElement();
+            if (KEYS_BY_NAME.get(key.toString()) != key) continue;
+            Object value = attributes.getAttribute(key);
+            if (value instanceof Color) value = String.format("#%08x", ((Color) value).getRGB());
+            if (lines == null) lines = new ArrayList<>(4);
+            lines.add(key + "=" + value);
+        }
+        if (lines == null) return "";
+        Collections.sort(lines);
+        return String.join("\n", lines);
+    }
+
+    /** The attribute set a style of {@link StyleRuns} stands for. */
+    public static AttributeSet decode(String style) {
+        SimpleAttributeSet attributes = new SimpleAttributeSet();
+        if (style.isEmpty()) return attributes;
+        for (String line : style.split("\n")) {
+            int eq = line.indexOf('=');
+            Object key = eq < 0 ? null : KEYS_BY_NAME.get(line.substring(0, eq));
+            if (key == null) continue;
+            String value = line.substring(eq + 1);
+            try {
+                if (key == StyleConstants.Foreground || key == StyleConstants.Background) {
+                    attributes.addAttribute(key, new Color((int) Long.parseLong(value.substring(1), 16), true));
+                } else if (key == StyleConstants.FontFamily || key == IMAGE) {
+                    attributes.addAttribute(key, value);
+                } else if (key == StyleConstants.FontSize || key == StyleConstants.Alignment) {
+                    attributes.addAttribute(key, Integer.valueOf(value));
+                } else if (value.equals("true") || value.equals("false")) {
+                    attributes.addAttribute(key, Boolean.valueOf(value));
+                } else {
+                    attributes.addAttribute(key, Float.valueOf(value));
+                }
+            } catch (NumberFormatException | IndexOutOfBoundsException e) {
+                e.printStackTrace();
+            }
+        }
+        return attributes;
+    }
+
+    private static final class AttributeKey {
+        private final String name;
+
+        AttributeKey(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+
+    /** Style index and length pairs, with neighbouring runs of one style merged. */
+    private static final class RunBuilder {
+        private int[] runs = new int[16];
+        private int size;
+
+        void add(int style, int length) {
+            if (size > 0 && runs[size - 2] == style) {
+                runs[size - 1] += length;
+                return;
+            }
+            if (size == runs.length) runs = Arrays.copyOf(runs, size * 2);
+            runs[size++] = style;
+            runs[size++] = length;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(runs, size);
+        }
+    }
+}
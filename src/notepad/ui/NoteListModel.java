@@ -0,0 +1,46 @@
+package notepad.ui;
+
+import notepad.model.Note;
+import notepad.service.NoteChangeListener;
+import notepad.service.NoteService;
+
+import javax.swing.*;
+
+/**
+ * List model that reads the notes straight from {@link NoteService} instead of holding a copy.
+ * The service reports each change, which is forwarded as one list event covering just the
+ * affected rows, so adding, removing or renaming a note costs the JList one row of work.
+ */
+public class NoteListModel extends AbstractListModel<Note> implements NoteChangeListener {
+    private final NoteService noteService;
+
+    public NoteListModel(NoteService noteService) {
+        this.noteService = noteService;
+        noteService.addNoteChangeListener(this);
+    }
+
+    @Override
+    public int getSize() {
+        return noteService.getNoteCount();
+    }
+
+    @Override
+    public Note getElementAt(int index) {
+        return noteService.getNote(index);
+    }
+
+    @Override
+    public void notesAdded(int fromIndex, int toIndex) {
+        fireIntervalAdded(this, fromIndex, toIndex);
+    }
+
+    @Override
+    public void notesRemoved(int fromIndex, int toIndex) {
+        fireIntervalRemoved(this, fromIndex, toIndex);
+    }
+
+    @Override
+    public void notesChanged(int fromIndex, int toIndex) {
+        fireContentsChanged(this, fromIndex, toIndex);
+    }
+}
@@ -4,20 +4,37 @@ import notepad.model.Note;
 import notepad.service.NoteService;
 
 import javax.swing.*;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
 import java.awt.*;
 import java.awt.event.ActionEvent;
+import java.awt.event.InputEvent;
+import java.awt.event.KeyEvent;
 import javax.swing.event.MouseInputAdapter;
 
 public class NoteListPanel extends JPanel {
-    private final DefaultListModel<Note> listModel = new DefaultListModel<>();
-    private final JList<Note> noteJList = new JList<>(listModel);
+    private static final Note PROTOTYPE_NOTE = new Note("", "A typical note title, for sizing", "");
+
+    private final NoteListModel listModel;
+    private final FilteredNoteListModel filteredModel;
+    private final JList<Note> noteJList;
+    private final JTextField filterField = new JTextField();
     private final NoteService noteService;
+    private boolean updatingFilter;
 
     public NoteListPanel(NoteService noteService) {
         this.noteService = noteService;
+        this.listModel = new NoteListModel(noteService);
+        this.filteredModel = new FilteredNoteListModel(listModel, noteService);
+        this.noteJList = new JList<>(filteredModel);
+        filteredModel.setRefilterHandler(this::applyFilter);
         setLayout(new BorderLayout());
-        noteJList.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        add(filterField, BorderLayout.NORTH);
+        installFilterKeys();
+        noteJList.setSelectionModel(new NoteSelectionModel());
         noteJList.setCellRenderer(new NoteCellRenderer());
+        // Every row is sized from the prototype, so the list never measures the real titles.
+        noteJList.setPrototypeCellValue(PROTOTYPE_NOTE);
         add(new JScrollPane(noteJList), BorderLayout.CENTER);
 
         JPanel buttonPanel = new JPanel();
@@ -35,13 +52,10 @@ public class NoteListPanel extends JPanel {
                 if (e.getClickCount() == 2) {
                     int index = noteJList.locationToIndex(e.getPoint());
                     if (index >= 0) {
-                        Note note = listModel.getElementAt(index);
+                        Note note = filteredModel.getElementAt(index);
                         String newTitle = JOptionPane.showInputDialog(NoteListPanel.this, "Edit note title:", note.getTitle());
                         if (newTitle != null && !newTitle.trim().isEmpty()) {
-                            note.setTitle(newTitle.trim());
-                            noteService.updateNote(index, note);
-                            refresh();
-                            noteJList.setSelectedIndex(index);
+                            noteService.renameNote(note, newTitle.trim());
                         }
                     }
                 }
@@ -50,29 +64,121 @@ public class NoteListPanel extends JPanel {
     }
 
     public void onAddNote(ActionEvent e) {
-        Note note = new Note("New Note", "");
+        addNote(new Note("New Note", ""));
+    }
+
+    /** Adds a note and selects it, clearing the quick-open filter if it is set. */
+    public void addNote(Note note) {
+        if (filteredModel.isFiltered()) filterField.setText("");
         noteService.addNote(note);
-        listModel.addElement(note);
+        int last = filteredModel.getSize() - 1;
+        noteJList.setSelectedIndex(last);
+        noteJList.ensureIndexIsVisible(last);
+    }
+
+    /**
+     * Selects a note, clearing the quick-open filter first if it hides the note. Returns false
+     * if the note is not in the list at all.
+     */
+    public boolean selectNote(Note note) {
         noteJList.setSelectedValue(note, true);
+        if (noteJList.getSelectedValue() != note && filteredModel.isFiltered()) {
+            filterField.setText("");
+            noteJList.setSelectedValue(note, true);
+        }
+        return noteJList.getSelectedValue() == note;
     }
 
     private void onRemoveNote(ActionEvent e) {
         Note selected = noteJList.getSelectedValue();
         if (selected != null) {
+            noteJList.clearSelection();
             noteService.removeNote(selected);
-            listModel.removeElement(selected);
         }
     }
 
-    public void refresh() {
-        listModel.clear();
-        for (Note note : noteService.getNotes()) {
-            listModel.addElement(note);
+    public JList<Note> getNoteJList() {
+        return noteJList;
+    }
+
+    /** True while the quick-open filter is swapping the visible rows; selection events then are not user choices. */
+    public boolean isUpdatingFilter() {
+        return updatingFilter;
+    }
+
+    /** Moves focus to the quick-open filter box. */
+    public void focusFilter() {
+        filterField.requestFocusInWindow();
+        filterField.selectAll();
+    }
+
+    // The selected note stays selected if it still matches; otherwise the editor keeps showing it.
+    private void applyFilter() {
+        Note selected = noteJList.getSelectedValue();
+        updatingFilter = true;
+        try {
+            filteredModel.setQuery(filterField.getText());
+            if (selected != null) noteJList.setSelectedValue(selected, true);
+            if (noteJList.getSelectedValue() != selected) noteJList.clearSelection();
+        } finally {
+            updatingFilter = false;
         }
     }
 
-    public JList<Note> getNoteJList() {
-        return noteJList;
+    private void installFilterKeys() {
+        filterField.setToolTipText("Quick open (Ctrl+P): type part of a note title");
+        filterField.getDocument().addDocumentListener(new DocumentListener() {
+            public void insertUpdate(DocumentEvent e) { applyFilter(); }
+            public void removeUpdate(DocumentEvent e) { applyFilter(); }
+            public void changedUpdate(DocumentEvent e) {}
+        });
+        filterField.addActionListener(e -> {
+            if (filteredModel.getSize() > 0) {
+                noteJList.setSelectedIndex(0);
+                noteJList.requestFocusInWindow();
+            }
+        });
+        filterField.getInputMap().put(KeyStroke.getKeyStroke(KeyEvent.VK_DOWN, 0), "toList");
+        filterField.getActionMap().put("toList", new AbstractAction() {
+            public void actionPerformed(ActionEvent e) {
+                if (filteredModel.getSize() == 0) return;
+                if (noteJList.isSelectionEmpty()) noteJList.setSelectedIndex(0);
+                noteJList.requestFocusInWindow();
+            }
+        });
+        filterField.getInputMap().put(KeyStroke.getKeyStroke(KeyEvent.VK_ESCAPE, 0), "clearFilter");
+        filterField.getActionMap().put("clearFilter", new AbstractAction() {
+            public void actionPerformed(ActionEvent e) { filterField.setText(""); }
+        });
+        getInputMap(WHEN_IN_FOCUSED_WINDOW).put(KeyStroke.getKeyStroke(KeyEvent.VK_P, InputEvent.CTRL_DOWN_MASK), "quickOpen");
+        getActionMap().put("quickOpen", new AbstractAction() {
+            public void actionPerformed(ActionEvent e) { focusFilter(); }
+        });
+    }
+
+    /**
+     * Single selection that shifts the selected row in O(1) when rows are inserted or removed;
+     * the default model walks every index up to the highest one ever selected.
+     */
+    private static class NoteSelectionModel extends DefaultListSelectionModel {
+        NoteSelectionModel() {
+            setSelectionMode(SINGLE_SELECTION);
+        }
+
+        @Override
+        public void insertIndexInterval(int index, int length, boolean before) {
+            int selected = getMinSelectionIndex();
+            if (selected >= (before ? index : index + 1)) setSelectionInterval(selected + length, selected + length);
+        }
+
+        @Override
+        public void removeIndexInterval(int index0, int index1) {
+            int selected = getMinSelectionIndex();
+            int from = Math.min(index0, index1);
+            int to = Math.max(index0, index1);
+            if (selected > to) setSelectionInterval(selected - (to - from + 1), selected - (to - from + 1));
+            else if (selected >= from) clearSelection();
+        }
     }
 
     private static class NoteCellRenderer extends DefaultListCellRenderer {
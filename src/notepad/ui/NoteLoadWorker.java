@@ -0,0 +1,55 @@
+package notepad.ui;
+
+import notepad.model.Note;
+import notepad.service.NoteService;
+
+import javax.swing.*;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Loads the note store after the window is up; see {@link NoteService#beginLoading}. The notes
+ * join the list in batches, each its own event, so the first rows paint while the rest are
+ * still being added and input is never held up for the whole store.
+ */
+public class NoteLoadWorker extends SwingWorker<Void, Void> {
+    private static final int BATCH_SIZE = 2000;
+
+    private final NoteService noteService;
+    private final Runnable onLoaded;
+
+    private NoteLoadWorker(NoteService noteService, Runnable onLoaded) {
+        this.noteService = noteService;
+        this.onLoaded = onLoaded;
+    }
+
+    /** Starts loading; {@code onLoaded} runs on the event thread once every note is in. Call on the event thread. */
+    public static void start(NoteService noteService, Runnable onLoaded) {
+        noteService.beginLoading();
+        new NoteLoadWorker(noteService, onLoaded).execute();
+    }
+
+    @Override
+    protected Void doInBackground() throws Exception {
+        List<Note> notes = noteService.awaitLoaded();
+        for (int from = 0; from < notes.size(); from += BATCH_SIZE) {
+            List<Note> batch = notes.subList(from, Math.min(notes.size(), from + BATCH_SIZE));
+            // Waiting for each batch lets the repaints and input queued meanwhile run in between.
+            SwingUtilities.invokeAndWait(() -> noteService.addLoadedNotes(batch));
+        }
+        return null;
+    }
+
+    @Override
+    protected void done() {
+        try {
+            get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            e.getCause().printStackTrace();
+        }
+        noteService.finishLoading();
+        onLoaded.run();
+    }
+}
@@ -0,0 +1,314 @@
+package notepad.ui;
+
+import notepad.store.UndoSpillFile;
+
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.UndoableEditEvent;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Document;
+import javax.swing.undo.AbstractUndoableEdit;
+import javax.swing.undo.CannotRedoException;
+import javax.swing.undo.CannotUndoException;
+import javax.swing.undo.UndoManager;
+import javax.swing.undo.UndoableEdit;
+import java.io.*;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Undo history for one note's document. Typing is merged into word-sized steps: consecutive
+ * single-char inserts, or backspaces, join the current step until a new word starts, the caret
+ * jumps or the typist pauses. The steps held in memory are capped at a byte budget; older steps
+ * are written to an {@link UndoSpillFile} as plain text changes and replayed from there when the
+ * in-memory history runs out. Spilled steps restore text only, not formatting, and steps that
+ * only changed formatting are dropped when spilled.
+ */
+public class NoteUndoManager extends UndoManager {
+    public static final long DEFAULT_MEMORY_LIMIT = 4L * 1024 * 1024;
+    private static final long TYPING_PAUSE_MILLIS = 1500;
+    private static final int EDIT_OVERHEAD_BYTES = 160;
+
+    private final Document document;
+    private final PieceTableContent content;
+    private final UndoSpillFile spill = new UndoSpillFile();
+    private final Deque<List<TextChange>> spilledRedo = new ArrayDeque<>();
+    private long memoryLimit = DEFAULT_MEMORY_LIMIT;
+    private long memoryUsed;
+    private Step compound;
+    private boolean replaying;
+
+    /** {@code content} must be the document's content; it supplies the text of removals. */
+    public NoteUndoManager(Document document, PieceTableContent content) {
+        this.document = document;
+        this.content = content;
+        setLimit(Integer.MAX_VALUE);
+    }
+
+    public void setMemoryLimit(long bytes) {
+        memoryLimit = bytes;
+        spillIfNeeded();
+    }
+
+    /** Groups every edit until {@link #endCompound} into one step, as Replace All does. */
+    public void beginCompound() {
+        compound = new Step(false);
+    }
+
+    public void endCompound() {
+        Step step = compound;
+        compound = null;
+        if (step != null && !step.edits.isEmpty()) addStep(step);
+    }
+
+    @Override
+    public synchronized void undoableEditHappened(UndoableEditEvent e) {
+        if (replaying) return;
+        UndoableEdit edit = e.getEdit();
+        TextChange change = changeOf(edit);
+        if (compound != null) {
+            compound.add(edit, change);
+            return;
+        }
+        Step last = editToBeRedone() == null ? (Step) editToBeUndone() : null;
+        if (last != null && last.absorbs(change)) {
+            last.add(edit, change);
+            memoryUsed += EDIT_OVERHEAD_BYTES + 2L * change.text.length();
+            spillIfNeeded();
+            return;
+        }
+        Step step = new Step(isTyping(change));
+        step.add(edit, change);
+        addStep(step);
+    }
+
+    private void addStep(Step step) {
+        spilledRedo.clear();
+        // Redo steps about to be trimmed no longer count.
+        UndoableEdit next = editToBeRedone();
+        for (int i = next == null ? edits.size() : edits.indexOf(next); i < edits.size(); i++) {
+            memoryUsed -= ((Step) edits.get(i)).bytes;
+        }
+        addEdit(step);
+        memoryUsed += step.bytes;
+        spillIfNeeded();
+    }
+
+    @Override
+    public synchronized boolean canUndo() {
+        return super.canUndo() || !spill.isEmpty();
+    }
+
+    @Override
+    public synchronized boolean canRedo() {
+        return !spilledRedo.isEmpty() || super.canRedo();
+    }
+
+    @Override
+    public synchronized void undo() throws CannotUndoException {
+        if (super.canUndo()) {
+            super.undo();
+            return;
+        }
+        try {
+            byte[] record = spill.pop();
+            if (record == null) throw new CannotUndoException();
+            List<TextChange> changes = decode(record);
+            for (int i = changes.size() - 1; i >= 0; i--) apply(changes.get(i), true);
+            spilledRedo.push(changes);
+        } catch (IOException | BadLocationException e) {
+            e.printStackTrace();
+            throw new CannotUndoException();
+        }
+    }
+
+    @Override
+    public synchronized void redo() throws CannotRedoException {
+        if (spilledRedo.isEmpty()) {
+            super.redo();
+            return;
+        }
+        try {
+            List<TextChange> changes = spilledRedo.pop();
+            for (TextChange change : changes) apply(change, false);
+            spill.push(encode(changes));
+        } catch (IOException | BadLocationException e) {
+            e.printStackTrace();
+            throw new CannotRedoException();
+        }
+    }
+
+    /** Forgets all history and deletes the spill file. */
+    @Override
+    public synchronized void discardAllEdits() {
+        super.discardAllEdits();
+        spilledRedo.clear();
+        memoryUsed = 0;
+        try {
+            spill.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /** Moves the oldest steps to disk until the rest fit the budget; the newest step always stays. */
+    private void spillIfNeeded() {
+        while (memoryUsed > memoryLimit && edits.indexOf(editToBeUndone()) > 0) {
+            Step oldest = (Step) edits.get(0);
+            try {
+                if (!oldest.changes.isEmpty()) spill.push(encode(oldest.changes));
+            } catch (IOException e) {
+                e.printStackTrace();
+                return;
+            }
+            memoryUsed -= oldest.bytes;
+            trimEdits(0, 0);
+        }
+    }
+
+    private void apply(TextChange change, boolean inverse) throws BadLocationException {
+        replaying = true;
+        try {
+            if (change.insert != inverse) document.insertString(change.offset, change.text, null);
+            else document.remove(change.offset, change.text.length());
+        } finally {
+            replaying = false;
+        }
+    }
+
+    private TextChange changeOf(UndoableEdit edit) {
+        if (!(edit instanceof DocumentEvent)) return null;
+        DocumentEvent event = (DocumentEvent) edit;
+        try {
+            if (event.getType() == DocumentEvent.EventType.INSERT) {
+                return new TextChange(true, event.getOffset(), document.getText(event.getOffset(), event.getLength()));
+            }
+            if (event.getType() == DocumentEvent.EventType.REMOVE) {
+                return new TextChange(false, event.getOffset(), content.lastRemovedText());
+            }
+        } catch (BadLocationException e) {
+            e.printStackTrace();
+        }
+        return null;
+    }
+
+    private static boolean isTyping(TextChange change) {
+        return change != null && change.text.length() == 1;
+    }
+
+    private static byte[] encode(List<TextChange> changes) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(changes.size());
+        for (TextChange change : changes) {
+            out.writeBoolean(change.insert);
+            out.writeInt(change.offset);
+            byte[] text = change.text.getBytes(java.nio.charset.StandardCharsets.UTF_8);
+            out.writeInt(text.length);
+            out.write(text);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static List<TextChange> decode(byte[] record) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(record));
+        int count = in.readInt();
+        List<TextChange> changes = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            boolean insert = in.readBoolean();
+            int offset = in.readInt();
+            byte[] text = new byte[in.readInt()];
+            in.readFully(text);
+            changes.add(new TextChange(insert, offset, new String(text, java.nio.charset.StandardCharsets.UTF_8)));
+        }
+        return changes;
+    }
+
+    /** Text inserted or removed at an offset; enough to redo or undo the change without Swing's edit. */
+    private static final class TextChange {
+        final boolean insert;
+        int offset;
+        String text;
+
+        TextChange(boolean insert, int offset, String text) {
+            this.insert = insert;
+            this.offset = offset;
+            this.text = text;
+        }
+    }
+
+    /** One undo step: the document edits it merges and the text changes they made. */
+    private static final class Step extends AbstractUndoableEdit {
+        final List<UndoableEdit> edits = new ArrayList<>(1);
+        final List<TextChange> changes = new ArrayList<>(1);
+        final boolean typing;
+        boolean sealed;
+        long lastEditTime;
+        long bytes;
+
+        Step(boolean typing) {
+            this.typing = typing;
+        }
+
+        void add(UndoableEdit edit, TextChange change) {
+            edits.add(edit);
+            bytes += EDIT_OVERHEAD_BYTES;
+            lastEditTime = System.currentTimeMillis();
+            if (change == null) return;
+            bytes += 2L * change.text.length();
+            TextChange last = changes.isEmpty() ? null : changes.get(changes.size() - 1);
+            if (typing && last != null) {
+                if (change.insert) last.text += change.text;
+                else if (change.offset < last.offset) {
+                    last.text = change.text + last.text;
+                    last.offset = change.offset;
+                } else {
+                    last.text += change.text;
+                }
+            } else {
+                changes.add(change);
+            }
+        }
+
+        /** Whether a one-char change continues this typing run rather than starting a new step. */
+        boolean absorbs(TextChange change) {
+            if (!typing || sealed || !isTyping(change) || changes.isEmpty()) return false;
+            if (System.currentTimeMillis() - lastEditTime > TYPING_PAUSE_MILLIS) return false;
+            TextChange run = changes.get(0);
+            if (run.insert != change.insert) return false;
+            if (run.insert) {
+                if (change.offset != run.offset + run.text.length()) return false;
+                // A word char after whitespace starts a new word, and so a new step.
+                char previous = run.text.charAt(run.text.length() - 1);
+                return !(Character.isWhitespace(previous) && !Character.isWhitespace(change.text.charAt(0)));
+            }
+            // Backspace removes the char before the run; Delete removes the one at its start.
+            return change.offset == run.offset - 1 || change.offset == run.offset;
+        }
+
+        @Override
+        public void undo() throws CannotUndoException {
+            super.undo();
+            sealed = true;
+            for (int i = edits.size() - 1; i >= 0; i--) edits.get(i).undo();
+        }
+
+        @Override
+        public void redo() throws CannotRedoException {
+            super.redo();
+            for (UndoableEdit edit : edits) edit.redo();
+        }
+
+        @Override
+        public void die() {
+            super.die();
+            for (UndoableEdit edit : edits) edit.die();
+        }
+
+        @Override
+        public String getPresentationName() {
+            return edits.isEmpty() ? "" : edits.get(0).getPresentationName();
+        }
+    }
+}
@@ -0,0 +1,599 @@
+package notepad.ui;
+
+import javax.swing.text.AbstractDocument;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Position;
+import javax.swing.text.Segment;
+import javax.swing.undo.AbstractUndoableEdit;
+import javax.swing.undo.CannotRedoException;
+import javax.swing.undo.CannotUndoException;
+import javax.swing.undo.UndoableEdit;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Document storage for very large notes, as a drop-in for {@code GapContent}. The text is a
+ * piece table: inserted text is appended to shared 64K char blocks, or kept in its own array
+ * when it is large, and the document is a sequence of pieces of those arrays held in a treap
+ * ordered by offset. Insert and remove cost O(log pieces) wherever they happen, typing at one
+ * spot grows a single piece, and a {@link Segment} points straight into a piece without copying.
+ * <p>
+ * Positions are kept in offset order in blocks of up to 512 marks, each mark holding its offset
+ * relative to its block. An edit adjusts the marks of one block; the blocks after it share a
+ * pending shift, as the marks after the gap do in {@code GapContent}, so repeated edits at one
+ * spot touch a single block.
+ */
+public class PieceTableContent implements AbstractDocument.Content {
+    private static final int BLOCK_CHARS = 64 * 1024;
+    private static final int OWN_ARRAY_CHARS = 4 * 1024;
+    private static final char[] NO_CHARS = new char[0];
+    private static final int MARKS_PER_BLOCK = 512;
+
+    private Node root;
+    private char[] block = new char[BLOCK_CHARS];
+    private int blockUsed;
+    private int seed = 0x2545F491;
+    private Node splitLeft;
+    private Node splitRight;
+    private Node[] path = new Node[64];
+
+    private final List<MarkBlock> blocks = new ArrayList<>();
+    private final ReferenceQueue<Pos> deadMarks = new ReferenceQueue<>();
+    private int gapBlock;
+    private int shift;
+    private String lastRemoved;
+
+    public PieceTableContent() {
+        insertText(0, "\n");
+    }
+
+    @Override
+    public int length() {
+        return total(root);
+    }
+
+    @Override
+    public UndoableEdit insertString(int where, String str) throws BadLocationException {
+        if (where < 0 || where > length()) throw new BadLocationException("Invalid insert", where);
+        if (str.isEmpty()) return null;
+        insertText(where, str);
+        return new InsertUndo(where, str.length());
+    }
+
+    @Override
+    public UndoableEdit remove(int where, int nitems) throws BadLocationException {
+        if (where < 0 || nitems < 0 || where + nitems >= length()) throw new BadLocationException("Invalid remove", where + nitems);
+        if (nitems == 0) return null;
+        lastRemoved = getString(where, nitems);
+        UndoableEdit edit = new RemoveUndo(where, lastRemoved);
+        removeText(where, nitems);
+        return edit;
+    }
+
+    /** The text taken out by the latest {@link #remove}, which the document's events don't carry. */
+    String lastRemovedText() {
+        return lastRemoved;
+    }
+
+    @Override
+    public String getString(int where, int len) throws BadLocationException {
+        checkRange(where, len);
+        char[] chars = new char[len];
+        copy(root, where, where + len, chars, 0);
+        return new String(chars);
+    }
+
+    @Override
+    public void getChars(int where, int len, Segment txt) throws BadLocationException {
+        checkRange(where, len);
+        if (len == 0) {
+            txt.array = NO_CHARS;
+            txt.offset = 0;
+            txt.count = 0;
+            return;
+        }
+        Node t = root;
+        int k = where;
+        while (true) {
+            int l = total(t.left);
+            if (k < l) {
+                t = t.left;
+            } else if (k < l + t.length) {
+                k -= l;
+                break;
+            } else {
+                k -= l + t.length;
+                t = t.right;
+            }
+        }
+        int available = t.length - k;
+        if (available >= len || txt.isPartialReturn()) {
+            txt.array = t.buf;
+            txt.offset = t.start + k;
+            txt.count = Math.min(available, len);
+            return;
+        }
+        char[] chars = new char[len];
+        copy(root, where, where + len, chars, 0);
+        txt.array = chars;
+        txt.offset = 0;
+        txt.count = len;
+    }
+
+    /**
+     * A position that follows the text at {@code offset}. A live position already at the offset
+     * is shared. After a remove has collapsed several positions onto one offset, which of them
+     * is shared is unspecified, as in {@code GapContent}, which may choose a different one. Undo
+     * puts each collapsed position back where it was, so the position returned may come back at
+     * any of their former offsets.
+     */
+    @Override
+    public Position createPosition(int offset) throws BadLocationException {
+        purgeMarks();
+        int b = blockAt(offset);
+        if (b >= 0) {
+            MarkBlock block = blocks.get(b);
+            Mark m = block.marks[indexAt(block, offset)];
+            Pos existing = m.get();
+            if (existing != null && m.offset() == offset) return existing;
+        }
+        Pos pos = new Pos();
+        pos.mark = new Mark(pos, deadMarks);
+        insertMark(pos.mark, offset);
+        return pos;
+    }
+
+    private void checkRange(int where, int len) throws BadLocationException {
+        if (where < 0 || len < 0 || where + len > length()) throw new BadLocationException("Invalid range", where + len);
+    }
+
+    // Text
+
+    private void insertText(int where, String str) {
+        int n = str.length();
+        if (n >= OWN_ARRAY_CHARS || !appendToPieceEndingAt(where, str)) {
+            Node piece;
+            if (n >= OWN_ARRAY_CHARS) {
+                piece = newNode(str.toCharArray(), 0, n);
+            } else {
+                if (blockUsed + n > block.length) {
+                    block = new char[BLOCK_CHARS];
+                    blockUsed = 0;
+                }
+                str.getChars(0, n, block, blockUsed);
+                piece = newNode(block, blockUsed, n);
+                blockUsed += n;
+            }
+            split(root, where);
+            Node before = splitLeft;
+            Node after = splitRight;
+            root = merge(merge(before, piece), after);
+        }
+        // Marks at the insert point move with the text, except at offset 0.
+        shiftMarks(where == 0 ? 1 : where, n);
+    }
+
+    /** Typing at the end of the newest piece just extends it; no new piece is made. */
+    private boolean appendToPieceEndingAt(int where, String str) {
+        int n = str.length();
+        if (where == 0 || blockUsed + n > block.length) return false;
+        int depth = 0;
+        int k = where - 1;
+        Node t = root;
+        while (t != null) {
+            if (depth == path.length) path = Arrays.copyOf(path, depth * 2);
+            path[depth++] = t;
+            int l = total(t.left);
+            if (k < l) {
+                t = t.left;
+            } else if (k < l + t.length) {
+                k -= l;
+                break;
+            } else {
+                k -= l + t.length;
+                t = t.right;
+            }
+        }
+        if (t == null || k != t.length - 1 || t.buf != block || t.start + t.length != blockUsed) return false;
+        str.getChars(0, n, block, blockUsed);
+        blockUsed += n;
+        t.length += n;
+        for (int i = 0; i < depth; i++) path[i].total += n;
+        return true;
+    }
+
+    private void removeText(int where, int n) {
+        split(root, where);
+        Node before = splitLeft;
+        split(splitRight, n);
+        root = merge(before, splitRight);
+        collapseMarks(where, n);
+        shiftMarks(where + n + 1, -n);
+    }
+
+    /** Copies chars [from, to) of the subtree {@code t} into {@code dst} at {@code dstPos}. */
+    private static void copy(Node t, int from, int to, char[] dst, int dstPos) {
+        while (t != null && from < to) {
+            int l = total(t.left);
+            if (from < l) copy(t.left, from, Math.min(to, l), dst, dstPos);
+            int s = Math.max(from, l);
+            int e = Math.min(to, l + t.length);
+            if (s < e) System.arraycopy(t.buf, t.start + s - l, dst, dstPos + s - from, e - s);
+            int skip = l + t.length;
+            if (to <= skip) return;
+            int rightFrom = Math.max(from, skip);
+            dstPos += rightFrom - from;
+            from = rightFrom - skip;
+            to -= skip;
+            t = t.right;
+        }
+    }
+
+    // Treap
+
+    private static final class Node {
+        final char[] buf;
+        final int start;
+        final int priority;
+        int length;
+        int total;
+        Node left;
+        Node right;
+
+        Node(char[] buf, int start, int length, int priority) {
+            this.buf = buf;
+            this.start = start;
+            this.length = length;
+            this.total = length;
+            this.priority = priority;
+        }
+    }
+
+    private Node newNode(char[] buf, int start, int length) {
+        seed ^= seed << 13;
+        seed ^= seed >>> 17;
+        seed ^= seed << 5;
+        return new Node(buf, start, length, seed);
+    }
+
+    private static int total(Node t) {
+        return t == null ? 0 : t.total;
+    }
+
+    private static void update(Node t) {
+        t.total = total(t.left) + t.length + total(t.right);
+    }
+
+    /** Splits {@code t} into {@link #splitLeft}, holding its first {@code k} chars, and {@link #splitRight}. */
+    private void split(Node t, int k) {
+        if (t == null) {
+            splitLeft = splitRight = null;
+            return;
+        }
+        int l = total(t.left);
+        if (k <= l) {
+            split(t.left, k);
+            t.left = splitRight;
+            update(t);
+            splitRight = t;
+        } else if (k >= l + t.length) {
+            split(t.right, k - l - t.length);
+            t.right = splitLeft;
+            update(t);
+            splitLeft = t;
+        } else {
+            int cut = k - l;
+            Node tail = newNode(t.buf, t.start + cut, t.length - cut);
+            Node right = t.right;
+            t.length = cut;
+            t.right = null;
+            update(t);
+            splitLeft = t;
+            splitRight = merge(tail, right);
+        }
+    }
+
+    private static Node merge(Node a, Node b) {
+        if (a == null) return b;
+        if (b == null) return a;
+        if (a.priority > b.priority) {
+            a.right = merge(a.right, b);
+            update(a);
+            return a;
+        }
+        b.left = merge(a, b.left);
+        update(b);
+        return b;
+    }
+
+    // Positions
+
+    private static final class Mark extends WeakReference<Pos> {
+        MarkBlock block;
+        int raw;
+
+        Mark(Pos pos, ReferenceQueue<Pos> queue) {
+            super(pos, queue);
+        }
+
+        int offset() {
+            return raw + block.start();
+        }
+    }
+
+    /**
+     * A run of marks in offset order; each mark stores its offset relative to the block's start.
+     * Blocks from {@link #gapBlock} on also add the pending {@link #shift} to their start.
+     */
+    private final class MarkBlock {
+        final Mark[] marks = new Mark[MARKS_PER_BLOCK];
+        int size;
+        int base;
+        boolean afterGap;
+
+        int start() {
+            return afterGap ? base + shift : base;
+        }
+
+        int lastOffset() {
+            return marks[size - 1].offset();
+        }
+    }
+
+    private final class Pos implements Position {
+        Mark mark;
+
+        @Override
+        public int getOffset() {
+            return mark.offset();
+        }
+
+        @Override
+        public String toString() {
+            return Integer.toString(getOffset());
+        }
+    }
+
+    /** The block holding the first mark at or after {@code offset}, or -1 if there is none. */
+    private int blockAt(int offset) {
+        int lo = 0;
+        int hi = blocks.size() - 1;
+        int found = -1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            if (blocks.get(mid).lastOffset() >= offset) {
+                found = mid;
+                hi = mid - 1;
+            } else {
+                lo = mid + 1;
+            }
+        }
+        return found;
+    }
+
+    /** Index of the first mark at or after {@code offset} in {@code block}. */
+    private static int indexAt(MarkBlock block, int offset) {
+        int lo = 0;
+        int hi = block.size;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (block.marks[mid].offset() < offset) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    /** Moves every mark at or after {@code offset} by {@code delta}. */
+    private void shiftMarks(int offset, int delta) {
+        int b = blockAt(offset);
+        if (b < 0) return;
+        MarkBlock block = blocks.get(b);
+        for (int i = indexAt(block, offset); i < block.size; i++) block.marks[i].raw += delta;
+        moveBlockGap(b + 1);
+        shift += delta;
+    }
+
+    /** Makes {@code gap} the first block that takes the pending shift; costs the blocks it passes. */
+    private void moveBlockGap(int gap) {
+        while (gapBlock < gap) {
+            MarkBlock block = blocks.get(gapBlock++);
+            block.base += shift;
+            block.afterGap = false;
+        }
+        while (gapBlock > gap) {
+            MarkBlock block = blocks.get(--gapBlock);
+            block.base -= shift;
+            block.afterGap = true;
+        }
+    }
+
+    /** Moves the marks in [where, where + n] to {@code where}, ahead of removing those chars. */
+    private void collapseMarks(int where, int n) {
+        for (int b = blockAt(where); b >= 0 && b < blocks.size(); b++) {
+            MarkBlock block = blocks.get(b);
+            for (int i = indexAt(block, where); i < block.size; i++) {
+                Mark m = block.marks[i];
+                if (m.offset() > where + n) return;
+                m.raw = where - block.start();
+            }
+        }
+    }
+
+    private void insertMark(Mark mark, int offset) {
+        int b = blockAt(offset);
+        if (b < 0) {
+            if (blocks.isEmpty()) {
+                blocks.add(new MarkBlock());
+                gapBlock = 1;
+            }
+            b = blocks.size() - 1;
+        }
+        MarkBlock block = blocks.get(b);
+        if (block.size == block.marks.length) {
+            // Settle the shift first, so blocks can be added without tracking the gap.
+            moveBlockGap(blocks.size());
+            MarkBlock tail = new MarkBlock();
+            int half = block.size / 2;
+            tail.base = block.base;
+            tail.size = block.size - half;
+            System.arraycopy(block.marks, half, tail.marks, 0, tail.size);
+            Arrays.fill(block.marks, half, block.size, null);
+            block.size = half;
+            for (int i = 0; i < tail.size; i++) tail.marks[i].block = tail;
+            blocks.add(b + 1, tail);
+            gapBlock++;
+            if (offset > block.lastOffset()) block = tail;
+        }
+        int at = indexAt(block, offset);
+        System.arraycopy(block.marks, at, block.marks, at + 1, block.size - at);
+        block.marks[at] = mark;
+        block.size++;
+        mark.block = block;
+        mark.raw = offset - block.start();
+    }
+
+    /** Drops the marks whose positions are no longer referenced. */
+    private void purgeMarks() {
+        Reference<? extends Pos> ref;
+        while ((ref = deadMarks.poll()) != null) {
+            Mark mark = (Mark) ref;
+            MarkBlock block = mark.block;
+            int at = indexAt(block, mark.offset());
+            while (block.marks[at] != mark) at++;
+            System.arraycopy(block.marks, at + 1, block.marks, at, block.size - at - 1);
+            block.marks[--block.size] = null;
+            if (block.size == 0) {
+                int index = blocks.indexOf(block);
+                blocks.remove(index);
+                if (index < gapBlock) gapBlock--;
+            }
+        }
+    }
+
+    /** A position inside an edited range and where it sat relative to the start of the range. */
+    private static final class UndoPosRef {
+        final Pos pos;
+        final int relative;
+
+        UndoPosRef(Pos pos, int relative) {
+            this.pos = pos;
+            this.relative = relative;
+        }
+    }
+
+    private List<UndoPosRef> positionsInRange(int offset, int length) {
+        List<UndoPosRef> refs = new ArrayList<>();
+        for (int b = blockAt(offset); b >= 0 && b < blocks.size(); b++) {
+            MarkBlock block = blocks.get(b);
+            for (int i = indexAt(block, offset); i < block.size; i++) {
+                int at = block.marks[i].offset();
+                if (at > offset + length) return refs;
+                Pos pos = block.marks[i].get();
+                if (pos != null) refs.add(new UndoPosRef(pos, at - offset));
+            }
+        }
+        return refs;
+    }
+
+    /** Puts positions back where they were before an undone or redone edit collapsed them. */
+    private void restorePositions(List<UndoPosRef> refs, int offset, int length) {
+        List<MarkBlock> slotBlocks = new ArrayList<>();
+        List<Integer> slotIndexes = new ArrayList<>();
+        List<Mark> run = new ArrayList<>();
+        for (int b = blockAt(offset); b >= 0 && b < blocks.size(); b++) {
+            MarkBlock block = blocks.get(b);
+            int i = indexAt(block, offset);
+            for (; i < block.size && block.marks[i].offset() <= offset + length; i++) {
+                slotBlocks.add(block);
+                slotIndexes.add(i);
+                run.add(block.marks[i]);
+            }
+            if (i < block.size) break;
+        }
+        for (UndoPosRef ref : refs) ref.pos.mark.raw = offset + ref.relative - ref.pos.mark.block.start();
+        // The moved marks are out of order now; sort the run and put it back in the same slots.
+        int[] offsets = new int[run.size()];
+        run.sort(Comparator.comparingInt(Mark::offset));
+        for (int i = 0; i < offsets.length; i++) offsets[i] = run.get(i).offset();
+        for (int i = 0; i < offsets.length; i++) {
+            Mark m = run.get(i);
+            MarkBlock block = slotBlocks.get(i);
+            block.marks[slotIndexes.get(i)] = m;
+            m.block = block;
+            m.raw = offsets[i] - block.start();
+        }
+    }
+
+    private final class InsertUndo extends AbstractUndoableEdit {
+        private final int offset;
+        private final int length;
+        private String string;
+        private List<UndoPosRef> posRefs;
+
+        InsertUndo(int offset, int length) {
+            this.offset = offset;
+            this.length = length;
+        }
+
+        @Override
+        public void undo() throws CannotUndoException {
+            super.undo();
+            try {
+                posRefs = positionsInRange(offset, length);
+                string = getString(offset, length);
+                removeText(offset, length);
+            } catch (BadLocationException e) {
+                throw new CannotUndoException();
+            }
+        }
+
+        @Override
+        public void redo() throws CannotRedoException {
+            super.redo();
+            insertText(offset, string);
+            string = null;
+            restorePositions(posRefs, offset, length);
+            posRefs = null;
+        }
+    }
+
+    private final class RemoveUndo extends AbstractUndoableEdit {
+        private final int offset;
+        private final int length;
+        private String string;
+        private List<UndoPosRef> posRefs;
+
+        RemoveUndo(int offset, String string) {
+            this.offset = offset;
+            this.length = string.length();
+            this.string = string;
+            this.posRefs = positionsInRange(offset, length);
+        }
+
+        @Override
+        public void undo() throws CannotUndoException {
+            super.undo();
+            insertText(offset, string);
+            restorePositions(posRefs, offset, length);
+            posRefs = null;
+            string = null;
+        }
+
+        @Override
+        public void redo() throws CannotRedoException {
+            super.redo();
+            try {
+                string = getString(offset, length);
+                posRefs = positionsInRange(offset, length);
+                removeText(offset, length);
+            } catch (BadLocationException e) {
+                throw new CannotRedoException();
+            }
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package notepad.ui;
+
+import notepad.model.Note;
+import notepad.search.SearchHit;
+import notepad.service.NoteService;
+
+import javax.swing.*;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import java.awt.*;
+import java.awt.event.KeyEvent;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * Search across all notes. Typing re-runs the query after a short pause; picking a hit opens
+ * the note and selects the first match.
+ */
+public class SearchPanel extends JPanel {
+    private static final int MAX_HITS = 200;
+    private static final int TYPING_DELAY_MILLIS = 200;
+
+    private final NoteService noteService;
+    private final NoteListPanel noteListPanel;
+    private final TextEditorPanel editorPanel;
+    private final JTextField queryField = new JTextField(30);
+    private final DefaultListModel<SearchHit> hitModel = new DefaultListModel<>();
+    private final JList<SearchHit> hitList = new JList<>(hitModel);
+    private final JLabel statusLabel = new JLabel(" ");
+    private final Timer typingTimer = new Timer(TYPING_DELAY_MILLIS, e -> runSearch());
+    private int searchSeq;
+
+    public SearchPanel(NoteService noteService, NoteListPanel noteListPanel, TextEditorPanel editorPanel) {
+        this.noteService = noteService;
+        this.noteListPanel = noteListPanel;
+        this.editorPanel = editorPanel;
+        setLayout(new BorderLayout(4, 4));
+        setBorder(BorderFactory.createEmptyBorder(6, 6, 6, 6));
+        queryField.setToolTipText("Words must all match; use \"quoted phrases\" and prefix*");
+        add(queryField, BorderLayout.NORTH);
+        hitList.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        hitList.setCellRenderer(new HitRenderer());
+        add(new JScrollPane(hitList), BorderLayout.CENTER);
+        add(statusLabel, BorderLayout.SOUTH);
+
+        typingTimer.setRepeats(false);
+        queryField.getDocument().addDocumentListener(new DocumentListener() {
+            public void insertUpdate(DocumentEvent e) { typingTimer.restart(); }
+            public void removeUpdate(DocumentEvent e) { typingTimer.restart(); }
+            public void changedUpdate(DocumentEvent e) {}
+        });
+        queryField.addActionListener(e -> {
+            if (!hitModel.isEmpty()) {
+                hitList.setSelectedIndex(0);
+                openHit(hitModel.getElementAt(0));
+            }
+        });
+        queryField.getInputMap().put(KeyStroke.getKeyStroke(KeyEvent.VK_DOWN, 0), "toHits");
+        queryField.getActionMap().put("toHits", new AbstractAction() {
+            public void actionPerformed(java.awt.event.ActionEvent e) {
+                if (!hitModel.isEmpty()) {
+                    hitList.requestFocusInWindow();
+                    hitList.setSelectedIndex(0);
+                }
+            }
+        });
+        hitList.getInputMap().put(KeyStroke.getKeyStroke(KeyEvent.VK_ENTER, 0), "open");
+        hitList.getActionMap().put("open", new AbstractAction() {
+            public void actionPerformed(java.awt.event.ActionEvent e) {
+                SearchHit hit = hitList.getSelectedValue();
+                if (hit != null) openHit(hit);
+            }
+        });
+        hitList.addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                if (e.getClickCount() == 2) {
+                    SearchHit hit = hitList.getSelectedValue();
+                    if (hit != null) openHit(hit);
+                }
+            }
+        });
+    }
+
+    /** Shows the search window for {@code parent}, reusing it if it is already open. */
+    public static void showDialog(JFrame parent, NoteService noteService, NoteListPanel noteListPanel,
+                                  TextEditorPanel editorPanel) {
+        JDialog dialog = (JDialog) parent.getRootPane().getClientProperty(SearchPanel.class);
+        if (dialog == null) {
+            dialog = new JDialog(parent, "Search All Notes", false);
+            dialog.setContentPane(new SearchPanel(noteService, noteListPanel, editorPanel));
+            dialog.setSize(420, 480);
+            dialog.setLocationRelativeTo(parent);
+            parent.getRootPane().putClientProperty(SearchPanel.class, dialog);
+        }
+        dialog.setVisible(true);
+        SearchPanel panel = (SearchPanel) dialog.getContentPane();
+        panel.queryField.requestFocusInWindow();
+        panel.queryField.selectAll();
+    }
+
+    // The query runs on the indexing thread; results of a superseded query are dropped.
+    private void runSearch() {
+        String query = queryField.getText().trim();
+        int seq = ++searchSeq;
+        if (query.isEmpty()) {
+            hitModel.clear();
+            statusLabel.setText(" ");
+            return;
+        }
+        statusLabel.setText("Searching...");
+        Future<List<SearchHit>> result = noteService.search(query, MAX_HITS);
+        new SwingWorker<List<SearchHit>, Void>() {
+            @Override
+            protected List<SearchHit> doInBackground() throws Exception {
+                return result.get();
+            }
+
+            @Override
+            protected void done() {
+                if (seq != searchSeq) return;
+                try {
+                    List<SearchHit> hits = get();
+                    hitModel.clear();
+                    for (SearchHit hit : hits) {
+                        if (noteService.findNote(hit.getNoteId()) != null) hitModel.addElement(hit);
+                    }
+                    statusLabel.setText(hitModel.size() == 1 ? "1 note" : hitModel.size() + " notes");
+                } catch (InterruptedException | ExecutionException e) {
+                    e.printStackTrace();
+                    statusLabel.setText("Search failed");
+                }
+            }
+        }.execute();
+    }
+
+    private void openHit(SearchHit hit) {
+        Note note = noteService.findNote(hit.getNoteId());
+        if (note == null) return;
+        // The range belongs to this note, so it is only selected once the note is open.
+        if (!noteListPanel.selectNote(note)) return;
+        if (hit.getOffset() >= 0) editorPanel.selectRange(hit.getOffset(), hit.getLength());
+    }
+
+    private class HitRenderer extends DefaultListCellRenderer {
+        @Override
+        public Component getListCellRendererComponent(JList<?> list, Object value, int index, boolean isSelected, boolean cellHasFocus) {
+            super.getListCellRendererComponent(list, value, index, isSelected, cellHasFocus);
+            SearchHit hit = (SearchHit) value;
+            Note note = noteService.findNote(hit.getNoteId());
+            String title = note == null ? "(deleted)" : note.getTitle();
+            setText(title + "  (" + hit.getMatches() + (hit.getMatches() == 1 ? " match)" : " matches)"));
+            return this;
+        }
+    }
+}
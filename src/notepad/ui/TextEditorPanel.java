@@ -1,24 +1,65 @@
 package notepad.ui;
 
+import notepad.diagnostics.EdtMonitor;
+import notepad.diagnostics.Metrics;
+import notepad.model.EditOp;
 import notepad.model.Note;
+import notepad.model.StyleRuns;
+import notepad.search.DocumentCharSequence;
+import notepad.search.TextFinder;
 import notepad.service.NoteService;
+import notepad.store.ImageStore;
 
+import javax.imageio.ImageIO;
 import javax.swing.*;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.filechooser.FileNameExtensionFilter;
 import javax.swing.text.*;
 import javax.swing.undo.CannotRedoException;
 import javax.swing.undo.CannotUndoException;
-import javax.swing.undo.UndoManager;
 import java.awt.*;
 import java.awt.event.*;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
 
 public class TextEditorPanel extends JPanel {
+    private static final int MAX_FIND_HIGHLIGHTS = 10_000;
+    private static final String SYSTEM_DEFAULT_FONT = "System Default";
+
     private final JTextField titleField = new JTextField();
-    private final JTextPane textPane = new JTextPane();
-    private final UndoManager undoManager = new UndoManager();
+    private final JTextPane textPane = new JTextPane() {
+        @Override
+        protected void paintComponent(Graphics g) {
+            super.paintComponent(g);
+            EdtMonitor.painted(this);
+        }
+    };
+    private final JScrollPane editorScroll = new JScrollPane(textPane);
+    private final DocumentCache documentCache = new DocumentCache(this::writeBack);
+    private final PieceTableContent emptyContent = new PieceTableContent();
+    private final StyledDocument emptyDocument = new DefaultStyledDocument(emptyContent, documentCache.getStyles());
+    private DocumentCache.Entry currentEntry;
+    private ImageCache imageCache;
+    private final float baseFontSize;
+    private NoteUndoManager undoManager = new NoteUndoManager(emptyDocument, emptyContent);
+    private long undoMemoryLimit = NoteUndoManager.DEFAULT_MEMORY_LIMIT;
     private Note currentNote;
     private NoteService noteService;
     private Runnable documentChangeListener;
     private JToolBar toolBar;
+    private boolean toolBarVisible = true;
+    private boolean loadingNote;
+    private Note streamingNote;
+    private final List<Object> findHighlights = new ArrayList<>();
+    private final Highlighter.HighlightPainter findPainter =
+            new DefaultHighlighter.DefaultHighlightPainter(new Color(255, 220, 90));
+    private FindReplaceDialog findDialog;
+    private HistoryBar historyBar;
 
     public TextEditorPanel() {
         setLayout(new BorderLayout());
@@ -26,15 +67,93 @@ public class TextEditorPanel extends JPanel {
         add(titleField, BorderLayout.NORTH);
         titleField.setEnabled(false);
 
-        // Toolbar
-        toolBar = new JToolBar();
+        textPane.setEditorKit(new StyledEditorKit() {
+            private final ViewFactory views = elem ->
+                    AbstractDocument.ContentElementName.equals(elem.getName())
+                            && Boolean.TRUE.equals(elem.getAttributes().getAttribute(NoteDocument.CODE))
+                            ? new CodeView(elem) : super.getViewFactory().create(elem);
+
+            @Override
+            public ViewFactory getViewFactory() {
+                return views;
+            }
+
+            // Text typed after an image must not become another copy of it.
+            @Override
+            protected void createInputAttributes(Element element, MutableAttributeSet set) {
+                super.createInputAttributes(element, set);
+                set.removeAttribute(NoteDocument.IMAGE);
+            }
+        });
+        textPane.setStyledDocument(emptyDocument);
+        baseFontSize = textPane.getFont().getSize2D();
+        add(editorScroll, BorderLayout.CENTER);
+        textPane.setEnabled(false);
+
+        // Keyboard shortcuts
+        InputMap im = textPane.getInputMap();
+        ActionMap am = textPane.getActionMap();
+        im.put(KeyStroke.getKeyStroke(KeyEvent.VK_B, InputEvent.CTRL_DOWN_MASK), "bold");
+        am.put("bold", new AbstractAction() { public void actionPerformed(ActionEvent e) { setStyle(StyleConstants.CharacterConstants.Bold); }});
+        im.put(KeyStroke.getKeyStroke(KeyEvent.VK_I, InputEvent.CTRL_DOWN_MASK), "italic");
+        am.put("italic", new AbstractAction() { public void actionPerformed(ActionEvent e) { setStyle(StyleConstants.CharacterConstants.Italic); }});
+        im.put(KeyStroke.getKeyStroke(KeyEvent.VK_U, InputEvent.CTRL_DOWN_MASK), "underline");
+        am.put("underline", new AbstractAction() { public void actionPerformed(ActionEvent e) { setStyle(StyleConstants.CharacterConstants.Underline); }});
+        im.put(KeyStroke.getKeyStroke(KeyEvent.VK_Z, InputEvent.CTRL_DOWN_MASK), "undo");
+        am.put("undo", new AbstractAction() { public void actionPerformed(ActionEvent e) { undo(); }});
+        im.put(KeyStroke.getKeyStroke(KeyEvent.VK_Y, InputEvent.CTRL_DOWN_MASK), "redo");
+        am.put("redo", new AbstractAction() { public void actionPerformed(ActionEvent e) { redo(); }});
+        im.put(KeyStroke.getKeyStroke(KeyEvent.VK_L, InputEvent.CTRL_DOWN_MASK), "alignLeft");
+        am.put("alignLeft", new AbstractAction() { public void actionPerformed(ActionEvent e) { setAlignment(StyleConstants.ALIGN_LEFT); }});
+        im.put(KeyStroke.getKeyStroke(KeyEvent.VK_E, InputEvent.CTRL_DOWN_MASK), "alignCenter");
+        am.put("alignCenter", new AbstractAction() { public void actionPerformed(ActionEvent e) { setAlignment(StyleConstants.ALIGN_CENTER); }});
+        im.put(KeyStroke.getKeyStroke(KeyEvent.VK_R, InputEvent.CTRL_DOWN_MASK), "alignRight");
+        am.put("alignRight", new AbstractAction() { public void actionPerformed(ActionEvent e) { setAlignment(StyleConstants.ALIGN_RIGHT); }});
+        im.put(KeyStroke.getKeyStroke(KeyEvent.VK_B, InputEvent.CTRL_DOWN_MASK | InputEvent.SHIFT_DOWN_MASK), "bullet");
+        am.put("bullet", new AbstractAction() { public void actionPerformed(ActionEvent e) { insertBullet(); }});
+
+        titleField.addKeyListener(new KeyAdapter() {
+            @Override
+            public void keyReleased(KeyEvent e) {
+                if (currentNote != null && !titleField.getText().equals(currentNote.getTitle())) {
+                    if (noteService != null) {
+                        noteService.renameNote(currentNote, titleField.getText());
+                    } else {
+                        currentNote.setTitle(titleField.getText());
+                    }
+                    if (documentChangeListener != null) documentChangeListener.run();
+                }
+            }
+        });
+    }
+
+    /**
+     * Builds the formatting toolbar, unless it is already there. It is not part of the constructor,
+     * so the window can paint before the toolbar's combo boxes and buttons are created.
+     */
+    public void installToolBar() {
+        if (toolBar != null) return;
+        toolBar = createToolBar();
+        toolBar.setVisible(toolBarVisible);
+        add(toolBar, BorderLayout.PAGE_START);
+        revalidate();
+    }
+
+    private JToolBar createToolBar() {
+        JToolBar toolBar = new JToolBar();
         // Styles
         String[] styles = {"Normal", "Title", "Subtitle", "Heading 1", "Heading 2", "Heading 3", "Quote", "Code", "Highlight"};
         JComboBox<String> styleBox = new JComboBox<>(styles);
         toolBar.add(styleBox);
-        // Font families
-        String[] fontFamilies = {"System Default", "Arial", "Calibri", "Segoe UI", "Verdana", "Roboto", "Open Sans", "Times New Roman", "Georgia", "Courier New", "Consolas"};
-        JComboBox<String> fontFamilyBox = new JComboBox<>(fontFamilies);
+        // Font families: the installed ones, once the catalog has listed them
+        JComboBox<String> fontFamilyBox = new JComboBox<>(new String[]{SYSTEM_DEFAULT_FONT});
+        fontFamilyBox.setPrototypeDisplayValue("Times New Roman");
+        FontCatalog.whenReady(families -> {
+            DefaultComboBoxModel<String> model = new DefaultComboBoxModel<>();
+            model.addElement(SYSTEM_DEFAULT_FONT);
+            for (String family : families) model.addElement(family);
+            fontFamilyBox.setModel(model);
+        });
         toolBar.add(fontFamilyBox);
         // Font sizes
         Integer[] fontSizes = {10, 12, 14, 16, 18, 20, 24, 28, 32, 36, 48, 72};
@@ -91,13 +210,8 @@ public class TextEditorPanel extends JPanel {
         toolBar.add(tableBtn);
         toolBar.add(codeBtn);
         toolBar.add(quoteBtn);
-        add(toolBar, BorderLayout.PAGE_START);
-
-        add(new JScrollPane(textPane), BorderLayout.CENTER);
-        textPane.setEnabled(false);
 
         // Undo/Redo
-        textPane.getDocument().addUndoableEditListener(undoManager);
         undoBtn.addActionListener(e -> undo());
         redoBtn.addActionListener(e -> redo());
 
@@ -123,47 +237,63 @@ public class TextEditorPanel extends JPanel {
         styleBox.addActionListener(e -> applyStyle((String) styleBox.getSelectedItem()));
         fontFamilyBox.addActionListener(e -> setFontFamily((String) fontFamilyBox.getSelectedItem()));
         fontSizeBox.addActionListener(e -> setFontSize((Integer) fontSizeBox.getSelectedItem()));
+        return toolBar;
+    }
 
-        // Keyboard shortcuts
-        InputMap im = textPane.getInputMap();
-        ActionMap am = textPane.getActionMap();
-        im.put(KeyStroke.getKeyStroke(KeyEvent.VK_B, InputEvent.CTRL_DOWN_MASK), "bold");
-        am.put("bold", new AbstractAction() { public void actionPerformed(ActionEvent e) { setStyle(StyleConstants.CharacterConstants.Bold); }});
-        im.put(KeyStroke.getKeyStroke(KeyEvent.VK_I, InputEvent.CTRL_DOWN_MASK), "italic");
-        am.put("italic", new AbstractAction() { public void actionPerformed(ActionEvent e) { setStyle(StyleConstants.CharacterConstants.Italic); }});
-        im.put(KeyStroke.getKeyStroke(KeyEvent.VK_U, InputEvent.CTRL_DOWN_MASK), "underline");
-        am.put("underline", new AbstractAction() { public void actionPerformed(ActionEvent e) { setStyle(StyleConstants.CharacterConstants.Underline); }});
-        im.put(KeyStroke.getKeyStroke(KeyEvent.VK_Z, InputEvent.CTRL_DOWN_MASK), "undo");
-        am.put("undo", new AbstractAction() { public void actionPerformed(ActionEvent e) { undo(); }});
-        im.put(KeyStroke.getKeyStroke(KeyEvent.VK_Y, InputEvent.CTRL_DOWN_MASK), "redo");
-        am.put("redo", new AbstractAction() { public void actionPerformed(ActionEvent e) { redo(); }});
-        im.put(KeyStroke.getKeyStroke(KeyEvent.VK_L, InputEvent.CTRL_DOWN_MASK), "alignLeft");
-        am.put("alignLeft", new AbstractAction() { public void actionPerformed(ActionEvent e) { setAlignment(StyleConstants.ALIGN_LEFT); }});
-        im.put(KeyStroke.getKeyStroke(KeyEvent.VK_E, InputEvent.CTRL_DOWN_MASK), "alignCenter");
-        am.put("alignCenter", new AbstractAction() { public void actionPerformed(ActionEvent e) { setAlignment(StyleConstants.ALIGN_CENTER); }});
-        im.put(KeyStroke.getKeyStroke(KeyEvent.VK_R, InputEvent.CTRL_DOWN_MASK), "alignRight");
-        am.put("alignRight", new AbstractAction() { public void actionPerformed(ActionEvent e) { setAlignment(StyleConstants.ALIGN_RIGHT); }});
-        im.put(KeyStroke.getKeyStroke(KeyEvent.VK_B, InputEvent.CTRL_DOWN_MASK | InputEvent.SHIFT_DOWN_MASK), "bullet");
-        am.put("bullet", new AbstractAction() { public void actionPerformed(ActionEvent e) { insertBullet(); }});
+    /**
+     * Forwards each insert and remove in a note's document to the note service as a delta. The
+     * note's body is not copied per keystroke; on the first edit the note reads its content from
+     * the document, and the text is copied back once, when the document leaves the cache.
+     * Formatting is recorded whole, on a formatting change or an edit the runs cannot follow.
+     */
+    private class EditRecorder implements DocumentListener {
+        private final DocumentCache.Entry entry;
 
-        titleField.addKeyListener(new KeyAdapter() {
-            @Override
-            public void keyReleased(KeyEvent e) {
-                if (currentNote != null) {
-                    currentNote.setTitle(titleField.getText());
-                    if (documentChangeListener != null) documentChangeListener.run();
-                }
-            }
-        });
-        textPane.addKeyListener(new KeyAdapter() {
-            @Override
-            public void keyReleased(KeyEvent e) {
-                if (currentNote != null) {
-                    currentNote.setContent(textPane.getText());
-                    if (documentChangeListener != null) documentChangeListener.run();
-                }
+        EditRecorder(DocumentCache.Entry entry) {
+            this.entry = entry;
+        }
+
+        @Override
+        public void insertUpdate(DocumentEvent e) {
+            if (!startEdit()) return;
+            try {
+                String text = e.getDocument().getText(e.getOffset(), e.getLength());
+                if (noteService != null) noteService.recordInsert(entry.note, e.getOffset(), text);
+            } catch (BadLocationException ignored) {}
+            if (noteService != null && !entry.document.followsRuns(e)) noteService.recordStyles(entry.note);
+            if (documentChangeListener != null) documentChangeListener.run();
+        }
+
+        @Override
+        public void removeUpdate(DocumentEvent e) {
+            if (!startEdit()) return;
+            if (noteService != null) noteService.recordRemove(entry.note, e.getOffset(), e.getLength());
+            if (noteService != null && !entry.document.followsRuns(e)) noteService.recordStyles(entry.note);
+            if (documentChangeListener != null) documentChangeListener.run();
+        }
+
+        @Override
+        public void changedUpdate(DocumentEvent e) {
+            if (!startEdit()) return;
+            if (noteService != null) noteService.recordStyles(entry.note);
+            if (documentChangeListener != null) documentChangeListener.run();
+        }
+
+        private boolean startEdit() {
+            if (loadingNote) return false;
+            if (!entry.edited) {
+                NoteDocument doc = entry.document;
+                entry.note.setLiveContent(() -> {
+                    try {
+                        return doc.getText(0, doc.getLength());
+                    } catch (BadLocationException e) {
+                        throw new IllegalStateException(e);
+                    }
+                }, doc::captureStyles);
+                entry.edited = true;
             }
-        });
+            return true;
+        }
     }
 
     private void setStyle(Object style) {
@@ -186,7 +316,7 @@ public class TextEditorPanel extends JPanel {
     public void chooseFont() { chooseFontInternal(); }
     private void chooseFontInternal() {
         Font currentFont = textPane.getFont();
-        JFontChooser fontChooser = new JFontChooser(currentFont);
+        FontChooser fontChooser = new FontChooser(currentFont);
         int result = JOptionPane.showConfirmDialog(this, fontChooser, "Choose Font", JOptionPane.OK_CANCEL_OPTION);
         if (result == JOptionPane.OK_OPTION) {
             Font font = fontChooser.getSelectedFont();
@@ -234,15 +364,59 @@ public class TextEditorPanel extends JPanel {
             textPane.setCharacterAttributes(attr, false);
         }
     }
+    /**
+     * Stores the chosen image and inserts a reference to it at the caret. Copying the file and
+     * reading its size happen off the event thread, and the editor decodes only a thumbnail.
+     */
     private void insertImage() {
+        if (noteService == null || currentEntry == null) return;
         JFileChooser chooser = new JFileChooser();
-        int result = chooser.showOpenDialog(this);
-        if (result == JFileChooser.APPROVE_OPTION) {
-            try {
-                textPane.insertIcon(new ImageIcon(chooser.getSelectedFile().getAbsolutePath()));
-            } catch (Exception ignored) {}
+        chooser.setFileFilter(new FileNameExtensionFilter("Images", ImageIO.getReaderFileSuffixes()));
+        if (chooser.showOpenDialog(this) != JFileChooser.APPROVE_OPTION) return;
+        Path file = chooser.getSelectedFile().toPath();
+        ImageStore store = noteService.getImageStore();
+        StyledDocument doc = textPane.getStyledDocument();
+        Position at;
+        try {
+            at = doc.createPosition(textPane.getCaretPosition());
+        } catch (BadLocationException e) {
+            e.printStackTrace();
+            return;
         }
+        new SwingWorker<String, Void>() {
+            @Override
+            protected String doInBackground() throws Exception {
+                Dimension size = ImageCache.readSize(file);
+                if (size == null) throw new IOException("Not a readable image: " + file);
+                return ThumbnailIcon.reference(store.put(file), size.width, size.height);
+            }
+
+            @Override
+            protected void done() {
+                try {
+                    String reference = get();
+                    // Dropped if the note was closed meanwhile.
+                    if (textPane.getDocument() != doc) return;
+                    doc.insertString(at.getOffset(), " ", NoteDocument.imageAttributes(reference, imageIcon(reference)));
+                } catch (InterruptedException | BadLocationException e) {
+                    e.printStackTrace();
+                } catch (ExecutionException e) {
+                    e.getCause().printStackTrace();
+                    JOptionPane.showMessageDialog(TextEditorPanel.this, "Image could not be inserted: " + file.getFileName(),
+                            "Error", JOptionPane.ERROR_MESSAGE);
+                }
+            }
+        }.execute();
+    }
+
+    private Icon imageIcon(String reference) {
+        return imageCache == null ? null : ThumbnailIcon.parse(reference, imageCache, this::zoom);
     }
+
+    private double zoom() {
+        return textPane.getFont().getSize2D() / baseFontSize;
+    }
+
     private void insertTable() {
         try {
             textPane.getDocument().insertString(textPane.getCaretPosition(), "|   |   |   |\n|---|---|---|\n|   |   |   |\n", null);
@@ -277,7 +451,9 @@ public class TextEditorPanel extends JPanel {
                 StyleConstants.setForeground(attr, Color.GRAY);
                 break;
             case "Code":
-                StyleConstants.setFontFamily(attr, "Consolas");
+                attr.addAttribute(NoteDocument.CODE, Boolean.TRUE);
+                StyleConstants.setFontFamily(attr, FontCatalog.firstAvailable(
+                        "Consolas", "Menlo", "DejaVu Sans Mono", "Courier New", Font.MONOSPACED));
                 StyleConstants.setBackground(attr, new Color(230,230,230));
                 break;
             case "Highlight":
@@ -293,7 +469,7 @@ public class TextEditorPanel extends JPanel {
     }
     private void setFontFamily(String family) {
         if (family == null) return;
-        if (family.equals("System Default")) family = "Dialog";
+        if (family.equals(SYSTEM_DEFAULT_FONT)) family = Font.DIALOG;
         SimpleAttributeSet attr = new SimpleAttributeSet();
         StyleConstants.setFontFamily(attr, family);
         textPane.setCharacterAttributes(attr, false);
@@ -307,23 +483,153 @@ public class TextEditorPanel extends JPanel {
 
     public void setNoteService(NoteService noteService) {
         this.noteService = noteService;
+        if (imageCache != null) imageCache.shutdown();
+        imageCache = new ImageCache(noteService.getImageStore()::path);
     }
 
+    public ImageCache getImageCache() {
+        return imageCache;
+    }
+
+    /**
+     * Shows a note. A recently shown note gets its cached document back, with its formatting,
+     * undo history and caret; any other note's text is loaded into a new document.
+     */
     public void displayNote(Note note) {
+        if (historyBar != null) historyBar.close();
+        if (currentEntry != null) currentEntry.caret = textPane.getCaretPosition();
+        clearHighlights();
         this.currentNote = note;
+        streamingNote = null;
+        textPane.setEditable(true);
         if (note != null) {
+            DocumentCache.Entry entry = documentCache.get(note);
+            if (entry == null) {
+                entry = createEntry(note);
+                documentCache.put(entry);
+            }
+            currentEntry = entry;
+            undoManager = entry.undoManager;
+            textPane.setDocument(entry.document);
+            textPane.setCaretPosition(Math.min(entry.caret, entry.document.getLength()));
             titleField.setText(note.getTitle());
-            textPane.setText(note.getContent());
             titleField.setEnabled(true);
             textPane.setEnabled(true);
         } else {
+            currentEntry = null;
+            undoManager = new NoteUndoManager(emptyDocument, emptyContent);
+            textPane.setDocument(emptyDocument);
             titleField.setText("");
-            textPane.setText("");
             titleField.setEnabled(false);
             textPane.setEnabled(false);
         }
     }
 
+    private DocumentCache.Entry createEntry(Note note) {
+        PieceTableContent chars = new PieceTableContent();
+        NoteDocument doc = new NoteDocument(chars, documentCache.getStyles(), this::imageIcon);
+        try {
+            doc.load(note.getContent(), note.getStyles());
+        } catch (BadLocationException e) {
+            e.printStackTrace();
+        }
+        NoteUndoManager undo = new NoteUndoManager(doc, chars);
+        undo.setMemoryLimit(undoMemoryLimit);
+        DocumentCache.Entry entry = new DocumentCache.Entry(note, doc, undo);
+        new CodeHighlighter(doc, () -> {
+            if (textPane.getDocument() == doc) textPane.repaint();
+        });
+        doc.addUndoableEditListener(undo);
+        doc.addDocumentListener(new EditRecorder(entry));
+        return entry;
+    }
+
+    public long getUndoMemoryLimit() {
+        return undoMemoryLimit;
+    }
+
+    /** Sets how much undo history each note keeps in memory before older steps move to disk. */
+    public void setUndoMemoryLimit(long bytes) {
+        undoMemoryLimit = bytes;
+        for (DocumentCache.Entry entry : documentCache.entries()) entry.undoManager.setMemoryLimit(bytes);
+    }
+
+    /** Hands an evicted document's text and formatting back to its note and checkpoints it if it was edited. */
+    private void writeBack(DocumentCache.Entry entry) {
+        if (!entry.edited) return;
+        StyleRuns styles = entry.document.captureStyles();
+        try {
+            entry.note.setContent(entry.document.getText(0, entry.document.getLength()));
+        } catch (BadLocationException e) {
+            e.printStackTrace();
+            return;
+        }
+        entry.note.setStyles(styles);
+        // A note removed or replaced since must not be written again.
+        if (noteService != null && noteService.findNote(entry.note.getId()) == entry.note) noteService.saveNote(entry.note);
+    }
+
+    /**
+     * Shows a note whose text is still being read from a file. The editor stays read-only, and
+     * the text arrives through {@link #appendStreamed} until {@link #endStreaming}.
+     */
+    public void beginStreaming(Note note) {
+        displayNote(note);
+        streamingNote = note;
+        textPane.setEditable(false);
+        titleField.setEnabled(false);
+    }
+
+    /** Appends text read for {@code note}; ignored once another note has been displayed. */
+    public void appendStreamed(Note note, List<String> chunks) {
+        if (note != streamingNote) return;
+        Document doc = textPane.getDocument();
+        int caret = textPane.getCaretPosition();
+        loadingNote = true;
+        doc.removeUndoableEditListener(undoManager);
+        try {
+            for (String chunk : chunks) doc.insertString(doc.getLength(), chunk, null);
+        } catch (BadLocationException e) {
+            e.printStackTrace();
+        } finally {
+            doc.addUndoableEditListener(undoManager);
+            loadingNote = false;
+        }
+        // An insert at the caret would carry it, and the view, to the end of each chunk.
+        textPane.setCaretPosition(caret);
+    }
+
+    /**
+     * Ends streaming into {@code note}. With the complete text the editor becomes editable;
+     * with null (the read failed or was cancelled) the note is closed.
+     */
+    public void endStreaming(Note note, String text) {
+        if (note != streamingNote) return;
+        if (text == null) {
+            displayNote(null);
+            documentCache.remove(note);
+            return;
+        }
+        streamingNote = null;
+        Document doc = textPane.getDocument();
+        if (doc.getLength() != text.length()) {
+            loadingNote = true;
+            doc.removeUndoableEditListener(undoManager);
+            try {
+                doc.remove(0, doc.getLength());
+                doc.insertString(0, text, null);
+            } catch (BadLocationException e) {
+                e.printStackTrace();
+            } finally {
+                doc.addUndoableEditListener(undoManager);
+                loadingNote = false;
+            }
+            textPane.setCaretPosition(0);
+        }
+        textPane.setEditable(true);
+        titleField.setEnabled(true);
+    }
+
     public JTextPane getTextPane() { return textPane; }
     public Note getCurrentNote() { return currentNote; }
     public void addDocumentChangeListener(Runnable listener) { this.documentChangeListener = listener; }
@@ -333,23 +639,223 @@ public class TextEditorPanel extends JPanel {
     public void copy() { textPane.copy(); }
     public void paste() { textPane.paste(); }
     public void selectAll() { textPane.selectAll(); }
+    /** Selects and scrolls to a range of the open note, clamped to its current length. */
+    public void selectRange(int offset, int length) {
+        int docLength = textPane.getDocument().getLength();
+        int start = Math.max(0, Math.min(offset, docLength));
+        textPane.requestFocusInWindow();
+        textPane.select(start, Math.min(docLength, start + Math.max(0, length)));
+    }
+    /** Opens the timeline of the open note's saved revisions below the editor. */
+    public void showHistory() {
+        if (noteService == null || currentEntry == null || streamingNote != null) return;
+        if (historyBar == null) {
+            historyBar = new HistoryBar(this, noteService.getHistory());
+            add(historyBar, BorderLayout.SOUTH);
+        }
+        historyBar.open(currentNote);
+        revalidate();
+    }
+
+    /** Shows {@code view} where the editor is, or the editor again for null. */
+    void showInEditor(Component view) {
+        Component shown = view != null ? view : textPane;
+        if (editorScroll.getViewport().getView() != shown) editorScroll.setViewportView(shown);
+    }
+
+    /**
+     * Makes the open note's text {@code text} as one undoable edit. Only the span between the
+     * parts the two texts share at either end is replaced, so formatting outside it is kept.
+     */
+    void restoreText(String text) {
+        if (currentEntry == null) return;
+        NoteDocument doc = currentEntry.document;
+        try {
+            List<EditOp> ops = EditOp.between(doc.getText(0, doc.getLength()), text);
+            if (ops.isEmpty()) return;
+            clearHighlights();
+            undoManager.beginCompound();
+            try {
+                for (EditOp op : ops) {
+                    if (op.getKind() == EditOp.INSERT) {
+                        // Restored text takes the formatting before it, as typed text would, but not its image.
+                        SimpleAttributeSet attrs = new SimpleAttributeSet(
+                                doc.getCharacterElement(Math.max(0, op.getOffset() - 1)).getAttributes());
+                        attrs.removeAttribute(NoteDocument.IMAGE);
+                        attrs.removeAttribute(StyleConstants.IconAttribute);
+                        attrs.removeAttribute(AbstractDocument.ElementNameAttribute);
+                        doc.insertString(op.getOffset(), op.getText(), attrs);
+                    } else {
+                        doc.remove(op.getOffset(), op.getLength());
+                    }
+                }
+            } finally {
+                undoManager.endCompound();
+            }
+            textPane.setCaretPosition(ops.get(0).getOffset());
+        } catch (BadLocationException e) {
+            e.printStackTrace();
+        }
+    }
+
     public void findReplace() {
-        String find = JOptionPane.showInputDialog(this, "Find:");
-        if (find != null && !find.isEmpty()) {
-            String content = textPane.getText();
-            int idx = content.indexOf(find);
-            if (idx >= 0) {
-                textPane.select(idx, idx + find.length());
-                String replace = JOptionPane.showInputDialog(this, "Replace with:");
-                if (replace != null) {
-                    textPane.replaceSelection(replace);
+        if (findDialog == null) findDialog = new FindReplaceDialog(SwingUtilities.getWindowAncestor(this), this);
+        findDialog.open(textPane.getSelectedText());
+    }
+
+    /** Selects the next (or previous) match from the caret, wrapping around the note. */
+    public boolean find(TextFinder finder, boolean forward) {
+        Document doc = textPane.getDocument();
+        finder.reset(new DocumentCharSequence(doc));
+        int start = textPane.getSelectionStart();
+        int end = textPane.getSelectionEnd();
+        boolean found;
+        if (forward) {
+            found = finder.find(end);
+            // An empty match at the caret would select the same spot again.
+            if (found && finder.end() == end && start == end) found = finder.find(end + 1);
+            if (!found) found = finder.find(0);
+        } else {
+            found = findLastBefore(finder, start) || findLastBefore(finder, doc.getLength() + 1);
+        }
+        if (found) {
+            textPane.select(finder.start(), finder.end());
+            textPane.getCaret().setSelectionVisible(true);
+        }
+        return found;
+    }
+
+    /** Replaces the selection if it is a match, then moves to the next match. */
+    public boolean replace(TextFinder finder, String template) {
+        int start = textPane.getSelectionStart();
+        int end = textPane.getSelectionEnd();
+        StyledDocument doc = textPane.getStyledDocument();
+        finder.reset(new DocumentCharSequence(doc));
+        boolean replaced = false;
+        if (finder.find(start) && finder.start() == start && finder.end() == end) {
+            String text = finder.replacement(template);
+            try {
+                ((AbstractDocument) doc).replace(start, end - start, text, doc.getCharacterElement(start).getAttributes());
+                textPane.setCaretPosition(start + text.length());
+                replaced = true;
+            } catch (BadLocationException e) {
+                e.printStackTrace();
+            }
+        }
+        find(finder, true);
+        return replaced;
+    }
+
+    /**
+     * Replaces every match as one undoable edit. Matches are collected first. Where the text
+     * between the first and last match carries a single style, the whole span is swapped in one
+     * document edit; otherwise matches are replaced from the end backwards, so earlier offsets
+     * stay valid. The view is detached meanwhile and lays the note out once at the end.
+     */
+    public int replaceAll(TextFinder finder, String template) {
+        StyledDocument doc = textPane.getStyledDocument();
+        CharSequence chars = new DocumentCharSequence(doc);
+        finder.reset(chars);
+        int[] ranges = new int[64];
+        List<String> texts = finder.isRegex() ? new ArrayList<>() : null;
+        int count = 0;
+        while (finder.findNext()) {
+            if (count * 2 == ranges.length) ranges = Arrays.copyOf(ranges, ranges.length * 2);
+            ranges[count * 2] = finder.start();
+            ranges[count * 2 + 1] = finder.end();
+            if (texts != null) texts.add(finder.replacement(template));
+            count++;
+        }
+        if (count == 0) return 0;
+        clearHighlights();
+        int caret = textPane.getCaretPosition();
+        undoManager.beginCompound();
+        textPane.setDocument(new DefaultStyledDocument());
+        try {
+            int from = ranges[0];
+            int to = ranges[count * 2 - 1];
+            AttributeSet style = uniformStyle(doc, from, to);
+            if (style != null) {
+                StringBuilder replaced = new StringBuilder(to - from + count * template.length());
+                for (int i = 0; i < count; i++) {
+                    if (i > 0) replaced.append(chars, ranges[i * 2 - 1], ranges[i * 2]);
+                    replaced.append(texts != null ? texts.get(i) : template);
                 }
+                ((AbstractDocument) doc).replace(from, to - from, replaced.toString(), style);
             } else {
-                JOptionPane.showMessageDialog(this, "Not found.");
+                Element run = null;
+                for (int i = count - 1; i >= 0; i--) {
+                    int start = ranges[i * 2];
+                    // Runs only change to the right of the edits so far, so a run that started
+                    // before the previous match still holds this one.
+                    if (run == null || start < run.getStartOffset()) run = doc.getCharacterElement(start);
+                    String text = texts != null ? texts.get(i) : template;
+                    ((AbstractDocument) doc).replace(start, ranges[i * 2 + 1] - start, text, run.getAttributes());
+                }
+            }
+        } catch (BadLocationException e) {
+            e.printStackTrace();
+        } finally {
+            undoManager.endCompound();
+            textPane.setDocument(doc);
+            textPane.setCaretPosition(Math.min(caret, doc.getLength()));
+        }
+        return count;
+    }
+
+    /** The character attributes shared by all of {@code [from, to)}, or null if its paragraphs or runs differ. */
+    private static AttributeSet uniformStyle(StyledDocument doc, int from, int to) {
+        Element root = doc.getDefaultRootElement();
+        AttributeSet paragraphStyle = null;
+        AttributeSet runStyle = null;
+        for (int p = root.getElementIndex(from), last = root.getElementIndex(to); p <= last; p++) {
+            Element paragraph = root.getElement(p);
+            if (paragraphStyle == null) paragraphStyle = paragraph.getAttributes();
+            else if (!paragraphStyle.isEqual(paragraph.getAttributes())) return null;
+            for (int r = 0; r < paragraph.getElementCount(); r++) {
+                AttributeSet attrs = paragraph.getElement(r).getAttributes();
+                if (runStyle == null) runStyle = attrs;
+                else if (runStyle != attrs && !runStyle.isEqual(attrs)) return null;
             }
         }
+        return runStyle;
     }
-    public void setToolbarVisible(boolean visible) { if (toolBar != null) toolBar.setVisible(visible); }
+
+    /** Highlights every match and returns how many there are; only the first few thousand are painted. */
+    public int highlightAll(TextFinder finder) {
+        Metrics.Span span = Metrics.start(Metrics.FIND_IN_NOTE);
+        clearHighlights();
+        finder.reset(new DocumentCharSequence(textPane.getDocument()));
+        Highlighter highlighter = textPane.getHighlighter();
+        int count = 0;
+        while (finder.findNext()) {
+            if (count++ < MAX_FIND_HIGHLIGHTS && finder.end() > finder.start()) {
+                try {
+                    findHighlights.add(highlighter.addHighlight(finder.start(), finder.end(), findPainter));
+                } catch (BadLocationException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+        span.end();
+        return count;
+    }
+
+    public void clearHighlights() {
+        Highlighter highlighter = textPane.getHighlighter();
+        for (Object tag : findHighlights) highlighter.removeHighlight(tag);
+        findHighlights.clear();
+    }
+
+    private static boolean findLastBefore(TextFinder finder, int limit) {
+        int last = -1;
+        for (boolean more = finder.find(0); more && finder.start() < limit; more = finder.findNext()) {
+            last = finder.start();
+        }
+        return last >= 0 && finder.find(last);
+    }
+
+    public void setToolbarVisible(boolean visible) { toolBarVisible = visible; if (toolBar != null) toolBar.setVisible(visible); }
     public void zoomIn() { Font f = textPane.getFont(); textPane.setFont(f.deriveFont(f.getSize2D() + 2f)); }
     public void zoomOut() { Font f = textPane.getFont(); textPane.setFont(f.deriveFont(Math.max(8f, f.getSize2D() - 2f))); }
     public void chooseFontSize() {
@@ -360,25 +866,3 @@ public class TextEditorPanel extends JPanel {
         } catch (Exception ignored) {}
     }
 }
-
-// Simple font chooser for demonstration
-class JFontChooser extends JPanel {
-    private final JComboBox<String> fontBox;
-    private final JComboBox<Integer> sizeBox;
-    public JFontChooser(Font initialFont) {
-        setLayout(new GridLayout(2, 2));
-        fontBox = new JComboBox<>(GraphicsEnvironment.getLocalGraphicsEnvironment().getAvailableFontFamilyNames());
-        sizeBox = new JComboBox<>(new Integer[]{8, 10, 12, 14, 16, 18, 20, 24, 28, 32, 36, 40});
-        add(new JLabel("Font:"));
-        add(fontBox);
-        add(new JLabel("Size:"));
-        add(sizeBox);
-        if (initialFont != null) {
-            fontBox.setSelectedItem(initialFont.getFamily());
-            sizeBox.setSelectedItem(initialFont.getSize());
-        }
-    }
-    public Font getSelectedFont() {
-        return new Font((String) fontBox.getSelectedItem(), Font.PLAIN, (Integer) sizeBox.getSelectedItem());
-    }
-} 
\ No newline at end of file
@@ -0,0 +1,89 @@
+package notepad.ui;
+
+import javax.swing.*;
+import java.awt.*;
+import java.util.function.DoubleSupplier;
+
+/**
+ * An inserted image as the editor shows it: scaled to fit {@link #MAX_WIDTH} at the current
+ * zoom and painted from {@link ImageCache}, with a grey placeholder of the same size until the
+ * image is decoded. The document stores only a reference, {@code hash/WIDTHxHEIGHT}, whose size
+ * lets the placeholder take the final space without reading the file.
+ */
+public class ThumbnailIcon implements Icon {
+    static final int MAX_WIDTH = 480;
+    private static final Color PLACEHOLDER = new Color(0xE4E4E4);
+    private static final Color PLACEHOLDER_BORDER = new Color(0xB0B0B0);
+
+    private final String hash;
+    private final int width;
+    private final int height;
+    private final ImageCache cache;
+    private final DoubleSupplier zoom;
+    private Component painted;
+    private final Runnable repaint = () -> {
+        if (painted != null) painted.repaint();
+    };
+
+    private ThumbnailIcon(String hash, int width, int height, ImageCache cache, DoubleSupplier zoom) {
+        this.hash = hash;
+        this.width = width;
+        this.height = height;
+        this.cache = cache;
+        this.zoom = zoom;
+    }
+
+    /** The reference stored in the document for an image of the given natural size. */
+    public static String reference(String hash, int width, int height) {
+        return hash + "/" + width + "x" + height;
+    }
+
+    /** The icon for a stored reference, or null if it is malformed. */
+    public static ThumbnailIcon parse(String reference, ImageCache cache, DoubleSupplier zoom) {
+        int slash = reference.indexOf('/');
+        int x = reference.indexOf('x', slash + 1);
+        if (slash <= 0 || x < 0) return null;
+        try {
+            int width = Integer.parseInt(reference.substring(slash + 1, x));
+            int height = Integer.parseInt(reference.substring(x + 1));
+            if (width <= 0 || height <= 0) return null;
+            return new ThumbnailIcon(reference.substring(0, slash), width, height, cache, zoom);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    public String getHash() {
+        return hash;
+    }
+
+    @Override
+    public int getIconWidth() {
+        return Math.max(1, (int) Math.round(Math.min(width, MAX_WIDTH) * zoom.getAsDouble()));
+    }
+
+    @Override
+    public int getIconHeight() {
+        return Math.max(1, (int) Math.round((double) height * getIconWidth() / width));
+    }
+
+    @Override
+    public void paintIcon(Component c, Graphics g, int x, int y) {
+        int w = getIconWidth();
+        int h = getIconHeight();
+        painted = c;
+        Image image = cache.get(hash, w, repaint);
+        if (image != null) {
+            g.drawImage(image, x, y, w, h, null);
+            return;
+        }
+        g.setColor(PLACEHOLDER);
+        g.fillRect(x, y, w, h);
+        g.setColor(PLACEHOLDER_BORDER);
+        g.drawRect(x, y, w - 1, h - 1);
+        if (cache.isBroken(hash)) {
+            g.drawLine(x, y, x + w - 1, y + h - 1);
+            g.drawLine(x, y + h - 1, x + w - 1, y);
+        }
+    }
+}